@@ -34,6 +34,7 @@ export interface NoteCommand {
 /**
  * Schema for messages sent to the `dawsheet.status` topic.
  * Represents an acknowledgment or status update from a proxy.
+ * The Java proxy sends these in batches, as a JSON array of statuses per message.
  */
 export interface AckStatus {
   /** The type of the status message, e.g., "ACK". */
@@ -53,4 +54,17 @@ export interface AckStatus {
 
   /** An optional error message if `ok` is false. */
   error?: string;
+
+  /** Number of ACKs for this origin merged into this status, when more than one. */
+  count?: number;
+
+  /** Stage timings in microseconds, when the proxy runs with ACK_LATENCY=true. */
+  latency?: {
+    /** e.g. transit, decode, validate, transform, wait, dispatch, total */
+    stagesUs: Record<string, number>;
+    /** End-to-end percentiles for this command type. */
+    p50Us: number;
+    p99Us: number;
+    p999Us: number;
+  };
 }
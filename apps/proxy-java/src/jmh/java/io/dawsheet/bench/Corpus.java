@@ -0,0 +1,61 @@
+package io.dawsheet.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Representative command streams for the benchmarks: single notes as sent from the grid, chords,
+ * and dense CC automation. Each corpus cycles through enough distinct values that branch
+ * prediction and caches see a realistic mix rather than one repeated message.
+ */
+final class Corpus {
+    static final String NOTES = "notes";
+    static final String CHORDS = "chords";
+    static final String CC = "cc";
+
+    static final String[] NOTE_NAMES = {
+            "C4", "C#4", "Db4", "D4", "Eb4", "E4", "F4", "F#4", "G4", "Ab4", "A4", "Bb4", "B4",
+            "C-1", "G9", "A0", "C8", "E2", "Bb3", "F#5"
+    };
+
+    private static final String[] ROOTS = {"C", "F", "G", "A", "D", "Bb", "Eb", "E"};
+    private static final String[] QUALITIES = {"maj", "min", "7", "maj7", "m7", "dim", "sus4", "9"};
+    private static final String TRANSFORMS =
+            "[{\"op\":\"transpose\",\"semitones\":12},{\"op\":\"humanize\",\"ms\":5}]";
+
+    private Corpus() {}
+
+    /** JSON envelopes for a corpus, as they arrive from Pub/Sub or WebSocket. */
+    static List<String> json(String kind, int size) {
+        List<String> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) out.add(envelope(kind, i));
+        return out;
+    }
+
+    static List<byte[]> bytes(String kind, int size) {
+        List<byte[]> out = new ArrayList<>(size);
+        for (String s : json(kind, size)) out.add(s.getBytes(StandardCharsets.UTF_8));
+        return out;
+    }
+
+    private static String envelope(String kind, int i) {
+        String head = "{\"v\":1,\"id\":\"bench-" + i + "\",\"origin\":\"sheets://Grid!A" + (i + 1)
+                + "\",\"at\":\"now\",\"target\":\"default\",";
+        switch (kind) {
+            case NOTES:
+                return head + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"" + NOTE_NAMES[i % NOTE_NAMES.length]
+                        + "\",\"velocity\":" + (60 + i % 64) + ",\"durationSec\":0.25,\"channel\":" + (1 + i % 4)
+                        + "},\"transform\":" + TRANSFORMS + "}";
+            case CHORDS:
+                return head + "\"type\":\"CHORD.PLAY\",\"payload\":{\"root\":\"" + ROOTS[i % ROOTS.length]
+                        + "\",\"quality\":\"" + QUALITIES[(i / ROOTS.length) % QUALITIES.length]
+                        + "\",\"velocity\":100,\"durationSec\":0.5,\"channel\":1},\"transform\":" + TRANSFORMS + "}";
+            case CC:
+                // A sweep on one controller, the shape of a fader or LFO stream
+                return head + "\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":" + (i % 128) + ",\"channel\":2}}";
+            default:
+                throw new IllegalArgumentException("Unknown corpus " + kind);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.dawsheet.bench;
+
+import io.dawsheet.server.CommandEnvelope;
+import io.dawsheet.server.EnvelopeDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Streaming JSON decode into a reused, slot-backed envelope (the ingress path). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EnvelopeDecodeBenchmark {
+    @Param({Corpus.NOTES, Corpus.CHORDS, Corpus.CC})
+    public String corpus;
+
+    private final EnvelopeDecoder decoder = new EnvelopeDecoder();
+    private final CommandEnvelope env = new CommandEnvelope();
+    private List<byte[]> messages;
+    private int i;
+
+    @Setup
+    public void setup() {
+        messages = Corpus.bytes(corpus, 256);
+    }
+
+    @Benchmark
+    public CommandEnvelope decode() throws IOException {
+        i = (i + 1) & 255;
+        env.reset();
+        return decoder.decode(messages.get(i), env);
+    }
+}
@@ -0,0 +1,35 @@
+package io.dawsheet.bench;
+
+import io.dawsheet.midi.NoteUtil;
+import io.dawsheet.parser.NoteParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** Note-name parsing, called for every NOTE/NOTE.PLAY that carries a name instead of a number. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NoteParsingBenchmark {
+    private int i;
+
+    private String next() {
+        i = (i + 1) % Corpus.NOTE_NAMES.length;
+        return Corpus.NOTE_NAMES[i];
+    }
+
+    @Benchmark
+    public int parseNoteName() {
+        return NoteUtil.parseNoteName(next());
+    }
+
+    @Benchmark
+    public int noteToMidi() {
+        return NoteParser.noteToMidi(next());
+    }
+}
@@ -0,0 +1,59 @@
+package io.dawsheet.bench;
+
+import io.dawsheet.server.CommandEnvelope;
+import io.dawsheet.server.CommandRouter;
+import io.dawsheet.server.EnvelopeDecoder;
+import io.dawsheet.server.StatusPublisher;
+import io.dawsheet.transport.TransportClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end from message bytes: decode, validate, resolve 'at', transform and execute (or schedule,
+ * when humanize pushes a command into the future). Dedup is off so the repeating corpus is not
+ * short-circuited, and statuses go to a no-op publisher.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouterBenchmark {
+    @Param({Corpus.NOTES, Corpus.CHORDS, Corpus.CC})
+    public String corpus;
+
+    private final EnvelopeDecoder decoder = new EnvelopeDecoder();
+    private final CommandEnvelope env = new CommandEnvelope();
+    private CommandRouter router;
+    private List<byte[]> messages;
+    private int i;
+
+    @Setup
+    public void setup() throws Exception {
+        router = new CommandRouter("commands.schema.json", StatusPublisher.noop(), TransportClock.fromEnv(), null);
+        messages = Corpus.bytes(corpus, 256);
+    }
+
+    @TearDown
+    public void tearDown() {
+        router.close();
+    }
+
+    @Benchmark
+    public CommandEnvelope handle() throws IOException {
+        i = (i + 1) & 255;
+        env.reset();
+        decoder.decode(messages.get(i), env);
+        router.handle(env);
+        return env;
+    }
+}
@@ -0,0 +1,73 @@
+package io.dawsheet.bench;
+
+import io.dawsheet.server.CommandEnvelope;
+import io.dawsheet.server.EnvelopeDecoder;
+import io.dawsheet.server.TransformEngine;
+import io.dawsheet.transport.TransportClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The transpose/humanize chain from the corpus, on slot-backed envelopes (transformed in place, as
+ * the router does for decoded messages) and on map-backed payloads (copied per command).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransformBenchmark {
+    @Param({Corpus.NOTES, Corpus.CHORDS, Corpus.CC})
+    public String corpus;
+
+    private final TransformEngine engine = new TransformEngine(TransportClock.fromEnv());
+    private CommandEnvelope[] envs;
+    private int[] slots, notes, velocities, values;
+    private int i;
+
+    @Setup
+    public void setup() throws Exception {
+        List<byte[]> messages = Corpus.bytes(corpus, 256);
+        EnvelopeDecoder decoder = new EnvelopeDecoder();
+        envs = new CommandEnvelope[messages.size()];
+        slots = new int[envs.length];
+        notes = new int[envs.length];
+        velocities = new int[envs.length];
+        values = new int[envs.length];
+        for (int k = 0; k < envs.length; k++) {
+            CommandEnvelope env = decoder.decode(messages.get(k), new CommandEnvelope());
+            envs[k] = env;
+            slots[k] = env.slots;
+            notes[k] = env.note;
+            velocities[k] = env.velocity;
+            values[k] = env.value;
+        }
+    }
+
+    @Benchmark
+    public TransformEngine.Result slots() {
+        i = (i + 1) & 255;
+        CommandEnvelope env = envs[i];
+        // Undo the previous pass so every invocation transposes the original note
+        env.slots = slots[i];
+        env.note = notes[i];
+        env.velocity = velocities[i];
+        env.value = values[i];
+        return engine.apply(env, System.nanoTime());
+    }
+
+    @Benchmark
+    public TransformEngine.Result map() {
+        i = (i + 1) & 255;
+        CommandEnvelope env = envs[i];
+        return engine.apply(env.id, System.nanoTime(), env.transform, new HashMap<>(env.payloadMap()), env.quantize);
+    }
+}
@@ -0,0 +1,48 @@
+package io.dawsheet.bench;
+
+import io.dawsheet.server.CommandEnvelope;
+import io.dawsheet.server.CommandEnvelopeValidator;
+import io.dawsheet.server.EnvelopeDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Envelope validation with the compiled fast path and with the full JSON Schema validator. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValidationBenchmark {
+    @Param({Corpus.NOTES, Corpus.CHORDS, Corpus.CC})
+    public String corpus;
+
+    @Param({"FAST", "FULL"})
+    public String mode;
+
+    private CommandEnvelopeValidator validator;
+    private CommandEnvelope[] envs;
+    private int i;
+
+    @Setup
+    public void setup() throws Exception {
+        validator = new CommandEnvelopeValidator("commands.schema.json", CommandEnvelopeValidator.Mode.valueOf(mode));
+        List<byte[]> messages = Corpus.bytes(corpus, 256);
+        EnvelopeDecoder decoder = new EnvelopeDecoder();
+        envs = new CommandEnvelope[messages.size()];
+        for (int k = 0; k < envs.length; k++) envs[k] = decoder.decode(messages.get(k), new CommandEnvelope());
+    }
+
+    @Benchmark
+    public Collection<String> validate() throws Exception {
+        i = (i + 1) & 255;
+        return validator.validate(envs[i]);
+    }
+}
@@ -1,21 +1,49 @@
 package io.dawsheet;
 
-import com.google.api.core.ApiFuture;
-import com.google.api.core.ApiFutures;
 import com.google.cloud.pubsub.v1.MessageReceiver;
 import com.google.cloud.pubsub.v1.Subscriber;
-import com.google.pubsub.v1.PubsubMessage;
 import com.google.pubsub.v1.ProjectSubscriptionName;
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import com.networknt.schema.ValidationMessage;
+import io.dawsheet.midi.Arpeggiator;
 import io.dawsheet.midi.MidiOut;
-import io.dawsheet.midi.NoteUtil;
+import io.dawsheet.midi.ModulationEngine;
+import io.dawsheet.midi.SongPlayer;
+import io.dawsheet.midi.StepSequencer;
+import io.dawsheet.pubsub.AckPublisherPool;
+import io.dawsheet.server.BatchingStatusPublisher;
+import io.dawsheet.server.BinaryEnvelopeCodec;
+import io.dawsheet.server.CommandEnvelope;
+import io.dawsheet.server.CommandJournal;
+import io.dawsheet.server.CommandRouter;
+import io.dawsheet.server.DedupIndex;
+import io.dawsheet.server.DispatchLanes;
+import io.dawsheet.server.EnvelopeDecoder;
+import io.dawsheet.server.EnvelopePool;
+import io.dawsheet.server.LatencyMetrics;
+import io.dawsheet.server.LatencyStage;
+import io.dawsheet.server.MetricsServer;
+import io.dawsheet.server.StatusPublisher;
+import io.dawsheet.server.WebSocketIngress;
+import io.dawsheet.song.SongCompiler;
+import io.dawsheet.transport.TransportClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -30,10 +58,23 @@ import java.util.concurrent.TimeUnit;
  * - STATUS_TOPIC     (optional)  e.g., dawsheet.status (to publish ACKs)
  * - MIDI_OUT         (optional)  partial name of desired MIDI output device; defaults to Java Synthesizer
  * - PROXY_ID         (optional)  identifier for ACKs (default: java-proxy)
+ * - ACK_BATCH_*      (optional)  batching for the shared ACK publisher, see {@link AckPublisherPool}
+ * - STATUS_BATCH_*   (optional)  status array batching and ACK coalescing, see {@link BatchingStatusPublisher}
+ * - DISPATCH_LANES   (optional)  number of (target, channel) dispatch lanes, see {@link DispatchLanes}
+ * - DEDUP_WINDOW_MS  (optional)  how long command ids are remembered to drop redeliveries, see {@link DedupIndex}
+ * - JOURNAL_DIR      (optional)  records every accepted command for replay, see {@link CommandJournal}
+ * - METRICS_PORT     (optional)  serves per-stage latency percentiles on /metrics, see {@link MetricsServer}
+ * - ACK_LATENCY      (optional)  true to attach each command's stage timings to its ACK
+ * - WS_PORT          (optional)  enables the local WebSocket command ingress, see {@link WebSocketIngress}
+ * - MODULATION_RATE_HZ (optional) control rate for CC ramps and LFOs, see {@link ModulationEngine}
+ * - SONG_FILE        (optional)  song JSON compiled at startup and played from the next TRANSPORT.START, or from a
+ *                                CUE.GOTO/DAW.SCENE.LAUNCH cue, see {@link SongPlayer}
  */
 public class App {
     private static final Logger log = LoggerFactory.getLogger(App.class);
-    private static final Gson gson = new Gson();
+    private static final EnvelopeDecoder decoder = new EnvelopeDecoder();
+    private static final BinaryEnvelopeCodec codec = new BinaryEnvelopeCodec();
+    private static final EnvelopePool envelopes = new EnvelopePool(64);
 
     public static void main(String[] args) throws Exception {
         final String projectId = getenvRequired("GCP_PROJECT_ID");
@@ -41,48 +82,92 @@ public class App {
         final String statusTopic = System.getenv().getOrDefault("STATUS_TOPIC", "");
         final String midiOutName = System.getenv().getOrDefault("MIDI_OUT", "");
         final String proxyId = System.getenv().getOrDefault("PROXY_ID", "java-proxy");
+        final int wsPort = wsPortFromEnv();
 
         log.info("Starting DAWSheet proxy — project={}, sub={}, midiOut='{}'", projectId, subId, midiOutName);
 
-        try (MidiOut midi = new MidiOut(midiOutName)) {
+        final AckPublisherPool acks = AckPublisherPool.fromEnv(projectId);
+        // Statuses are buffered and sent as one JSON array message per flush
+        final BatchingStatusPublisher statuses = statusTopic.isEmpty() ? null
+                : BatchingStatusPublisher.fromEnv(proxyId, json -> acks.publish(statusTopic, ByteString.copyFromUtf8(json)));
+        final StatusPublisher status = statuses != null ? statuses : StatusPublisher.noop();
+        // Shared by both ingresses, so a command id is played at most once however it arrives
+        final DedupIndex dedup = DedupIndex.fromEnv();
+        final CommandJournal journal = CommandJournal.fromEnv();
+        final LatencyMetrics metrics = LatencyMetrics.fromEnv();
+        final MetricsServer metricsServer = MetricsServer.fromEnv(metrics, proxyId);
+        if (metricsServer != null) metricsServer.start();
+
+        // One transport, modulation engine, sequencer and arpeggiator for both ingresses, so a CC, pattern or
+        // held chord has a single owner
+        final TransportClock clock = TransportClock.fromEnv();
+        try (MidiOut midi = new MidiOut(midiOutName);
+             ModulationEngine modulation = ModulationEngine.fromEnv((ch, cc, value) -> midi.controlChange(ch + 1, cc, value), clock);
+             StepSequencer sequencer = new StepSequencer((ch, note, vel, durNanos) -> midi.noteOn(ch + 1, note, vel, durNanos / 1e9), clock);
+             Arpeggiator arpeggiator = new Arpeggiator((ch, note, vel, durNanos) -> midi.noteOn(ch + 1, note, vel, durNanos / 1e9), clock);
+             SongPlayer song = new SongPlayer((type, ch, data1, data2) -> midi.shortMessage(type, ch + 1, data1, data2), clock)) {
+            loadSong(song);
             final CountDownLatch ready = new CountDownLatch(1);
             final ProjectSubscriptionName subscriptionName = ProjectSubscriptionName.of(projectId, subId);
 
+            final DispatchLanes lanes = DispatchLanes.fromEnv();
+            log.info("Dispatching on {} lanes", lanes.laneCount());
+
+            // Runs commands from both ingresses; WebSocket statuses go back on the socket, Pub/Sub ones to STATUS_TOPIC
+            final CommandRouter router = new CommandRouter("commands.schema.json", StatusPublisher.noop(), clock, dedup);
+            router.journalTo(journal);
+            router.metricsTo(metrics);
+            router.midiTo(midi);
+            router.modulationTo(modulation);
+            router.sequencerTo(sequencer);
+            router.arpeggiatorTo(arpeggiator);
+            router.songTo(song);
+            final WebSocketIngress ws = wsPort > 0 ? WebSocketIngress.fromEnv(wsPort, router, proxyId) : null;
+            if (ws != null) ws.start();
+
             MessageReceiver receiver = (message, consumer) -> {
-                String data = message.getData().toStringUtf8();
+                // Decode on the Pub/Sub callback thread, then hand off to the (target, channel) lane
+                CommandEnvelope env = envelopes.acquire();
+                env.stamp(LatencyStage.RECEIVED);
+                if (message.hasPublishTime()) {
+                    env.stamps[LatencyStage.PUBLISHED.ordinal()] =
+                            LatencyMetrics.nanoTimeOf(message.getPublishTime().getSeconds(), message.getPublishTime().getNanos());
+                }
                 try {
-                    JsonObject root = gson.fromJson(data, JsonObject.class);
-                    if (root == null || !root.has("type")) {
-                        throw new IllegalArgumentException("Missing 'type' field");
-                    }
-                    String type = root.get("type").getAsString();
-                    boolean ok = false;
-                    String origin = root.has("origin") ? root.get("origin").getAsString() : null;
-
-                    switch (type) {
-                        case "NOTE":
-                            ok = handleLegacyNote(root, midi);
-                            break;
-                        case "NOTE.PLAY":
-                            ok = handleEnvelopeNote(root, midi);
-                            origin = Optional.ofNullable(origin)
-                                    .orElseGet(() -> root.has("origin") ? root.get("origin").getAsString() : "");
-                            break;
-                        default:
-                            log.debug("Unhandled type: {} — ignoring", type);
+                    byte[] data = message.getData().toByteArray();
+                    if (BinaryEnvelopeCodec.CONTENT_TYPE.equals(message.getAttributesOrDefault(BinaryEnvelopeCodec.ATTRIBUTE, ""))) {
+                        codec.decode(data, 0, data.length, env);
+                    } else {
+                        decoder.decode(data, env);
                     }
-
-                    if (!statusTopic.isEmpty() && origin != null && !origin.isBlank()) {
-                        publishAck(projectId, statusTopic, origin, proxyId, ok, null);
+                    if (env.type == null) {
+                        throw new IllegalArgumentException("Missing 'type' field");
                     }
-                    consumer.ack();
+                    env.stamp(LatencyStage.DECODED);
                 } catch (Exception ex) {
                     log.error("Failed to process message {}: {}", message.getMessageId(), ex.toString());
-                    if (!statusTopic.isEmpty()) {
-                        String origin = safeOrigin(data);
-                        publishAck(projectId, statusTopic, origin, proxyId, false, ex.getMessage());
-                    }
+                    // origin is kept if it was decoded before the failure
+                    status.publish(false, env.origin != null ? env.origin : "", env.target, Instant.now(), "decode_error", ex.getMessage());
+                    envelopes.release(env);
                     consumer.ack(); // avoid redelivery loop for malformed messages
+                    return;
+                }
+
+                // The router dedups, validates, resolves 'at', transforms, journals and executes, as for the
+                // WebSocket ingress; the (target, channel) lane keeps a slow device from blocking the others
+                boolean queued = lanes.offer(env.target, channelOf(env), () -> {
+                    try {
+                        router.handle(env, status);
+                    } finally {
+                        envelopes.release(env);
+                        consumer.ack();
+                    }
+                });
+                if (!queued) {
+                    // Lane is backed up (slow device); let Pub/Sub redeliver instead of blocking other lanes
+                    log.warn("Dispatch lane full for target={} ch={}; nacking {}", env.target, channelOf(env), message.getMessageId());
+                    envelopes.release(env);
+                    consumer.nack();
                 }
             };
 
@@ -100,79 +185,85 @@ public class App {
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 log.info("Shutdown requested. Closing subscriber...");
                 subscriber.stopAsync();
+                try {
+                    subscriber.awaitTerminated(10, TimeUnit.SECONDS);
+                } catch (Exception ignored) {}
+                stopWebSocket(ws, router);
+                lanes.close();
+                if (journal != null) journal.close();
+                if (metricsServer != null) metricsServer.close();
+                if (statuses != null) statuses.close();
+                acks.close();
+                logDedup(dedup);
             }));
 
             // Block main thread
             while (subscriber.isRunning()) {
                 ready.await(1, TimeUnit.MINUTES);
             }
+            stopWebSocket(ws, router);
+            lanes.close();
+            if (journal != null) journal.close();
+            if (metricsServer != null) metricsServer.close();
+            if (statuses != null) statuses.close();
+            acks.close();
+            logDedup(dedup);
             log.info("Exited.");
         }
     }
 
-    private static boolean handleLegacyNote(JsonObject root, MidiOut midi) {
-        // Legacy NOTE structure from GAS Code.gs
-        int channel = getInt(root, "channel", 1);
-        String noteStr = getString(root, "note", "C4");
-        int velocity = getInt(root, "velocity", 100);
-        double durationSec = getDouble(root, "durationSec", 0.5);
-        int note = root.get("note").isJsonPrimitive() && root.get("note").getAsJsonPrimitive().isNumber()
-                ? root.get("note").getAsInt()
-                : NoteUtil.parseNoteName(noteStr);
-
-        log.info("NOTE: ch={}, note={}, vel={}, dur={}s", channel, note, velocity, durationSec);
-        midi.noteOn(channel, note, velocity, durationSec);
-        return true;
+    /** Compiles SONG_FILE into {@code player}, after checking it against {@code song.schema.json}. */
+    private static void loadSong(SongPlayer player) throws Exception {
+        String file = System.getenv("SONG_FILE");
+        if (file == null || file.isBlank()) return;
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode song;
+        try (InputStream is = Files.newInputStream(Path.of(file.trim()))) {
+            song = mapper.readTree(is);
+        }
+        JsonSchema schema;
+        try (InputStream is = App.class.getClassLoader().getResourceAsStream("song.schema.json")) {
+            if (is == null) throw new IllegalStateException("Schema resource not found on classpath: song.schema.json");
+            schema = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7).getSchema(mapper.readTree(is));
+        }
+        Set<ValidationMessage> violations = schema.validate(song);
+        if (!violations.isEmpty()) {
+            List<String> messages = new ArrayList<>(violations.size());
+            for (ValidationMessage m : violations) messages.add(m.getMessage());
+            throw new IllegalArgumentException("SONG_FILE " + file.trim() + " does not match song.schema.json: " + messages);
+        }
+        player.load(new SongCompiler().compile(mapper.convertValue(song, new TypeReference<Map<String, Object>>() {})));
     }
 
-    private static boolean handleEnvelopeNote(JsonObject root, MidiOut midi) {
-        // Envelope NOTE.PLAY with payload
-        JsonObject payload = root.getAsJsonObject("payload");
-        if (payload == null) throw new IllegalArgumentException("Missing payload for NOTE.PLAY");
-
-        int channel = getInt(payload, "channel", 1);
-        int note;
-        JsonElement n = payload.get("note");
-        if (n != null && n.isJsonPrimitive() && n.getAsJsonPrimitive().isNumber()) {
-            note = n.getAsInt();
-        } else {
-            String noteStr = getString(payload, "note", "C4");
-            note = NoteUtil.parseNoteName(noteStr);
+    private static void stopWebSocket(WebSocketIngress ws, CommandRouter router) {
+        if (ws != null) {
+            try {
+                ws.stop(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
-        int velocity = getInt(payload, "velocity", 100);
-        double durationSec = getDouble(payload, "durationSec", 0.5);
+        router.close();
+    }
 
-        log.info("NOTE.PLAY: ch={}, note={}, vel={}, dur={}s", channel, note, velocity, durationSec);
-        midi.noteOn(channel, note, velocity, durationSec);
-        return true;
+    private static void logDedup(DedupIndex dedup) {
+        if (dedup == null) return;
+        log.info("Dedup: {} duplicates dropped, {} new ids (hit rate {})",
+                dedup.hitCount(), dedup.missCount(), String.format("%.3f", dedup.hitRate()));
     }
 
-    private static void publishAck(String projectId, String statusTopic, String origin,
-                                   String proxyId, boolean ok, String error) {
+    /** Lane key: the slot channel, or 1 for commands without one (as MIDI channels are 1-based). */
+    private static int channelOf(CommandEnvelope env) {
+        return env.has(CommandEnvelope.SLOT_CHANNEL) ? env.channel : 1;
+    }
+
+    /** WS_PORT, or 0 (ingress disabled) if it is unset or not a number. */
+    private static int wsPortFromEnv() {
         try {
-            com.google.cloud.pubsub.v1.Publisher publisher =
-                    com.google.cloud.pubsub.v1.Publisher.newBuilder(
-                            com.google.pubsub.v1.TopicName.of(projectId, statusTopic)
-                    ).build();
-            JsonObject ack = new JsonObject();
-            ack.addProperty("type", "ACK");
-            ack.addProperty("origin", origin);
-            ack.addProperty("receivedAt", Instant.now().toString());
-            ack.addProperty("proxy", proxyId);
-            ack.addProperty("ok", ok);
-            if (!ok && error != null) ack.addProperty("error", error);
-
-            PubsubMessage message = PubsubMessage.newBuilder()
-                    .setData(com.google.protobuf.ByteString.copyFromUtf8(ack.toString()))
-                    .build();
-            ApiFuture<String> fut = publisher.publish(message);
-            ApiFutures.addCallback(fut, new com.google.api.core.ApiFutureCallback<>() {
-                @Override public void onFailure(Throwable t) { /* ignore */ }
-                @Override public void onSuccess(String messageId) { /* ignore */ }
-            }, Runnable::run);
-            publisher.shutdown();
-        } catch (Exception ex) {
-            log.debug("ACK publish failed: {}", ex.toString());
+            return Integer.parseInt(System.getenv().getOrDefault("WS_PORT", "0").trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid WS_PORT='{}'; WebSocket ingress disabled", System.getenv("WS_PORT"));
+            return 0;
         }
     }
 
@@ -184,21 +275,4 @@ public class App {
         return v;
     }
 
-    private static String getString(JsonObject o, String key, String def) {
-        return (o.has(key) && o.get(key).isJsonPrimitive()) ? o.get(key).getAsString() : def;
-    }
-    private static int getInt(JsonObject o, String key, int def) {
-        return (o.has(key) && o.get(key).isJsonPrimitive() && o.get(key).getAsJsonPrimitive().isNumber()) ? o.get(key).getAsInt() : def;
-    }
-    private static double getDouble(JsonObject o, String key, double def) {
-        return (o.has(key) && o.get(key).isJsonPrimitive() && o.get(key).getAsJsonPrimitive().isNumber()) ? o.get(key).getAsDouble() : def;
-    }
-
-    private static String safeOrigin(String json) {
-        try {
-            JsonObject obj = gson.fromJson(json, JsonObject.class);
-            if (obj != null && obj.has("origin")) return obj.get("origin").getAsString();
-        } catch (Exception ignored) {}
-        return "";
-    }
 }
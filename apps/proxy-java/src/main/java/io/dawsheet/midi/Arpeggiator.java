@@ -0,0 +1,271 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Proxy-side arpeggiator for ARPEGGIATE.
+ *
+ * Each channel remembers the last chord played on it (see {@link #hold}); an arpeggio runs over that
+ * chord or over explicit notes, so the cloud sends one command per arpeggio instead of one NOTE.PLAY
+ * per note. The play order is compiled once into an int array when the arpeggio starts (or when the
+ * held chord it follows changes), and a single player thread steps every channel's arpeggio off the
+ * transport clock, handing each note to the sink with its gated duration so the note-off is
+ * scheduled with the note-on. The player only picks the notes while it holds the arpeggiator's
+ * monitor; it sends them once it has let go, so CHORD.PLAY updating a held chord, or ARPEGGIATE
+ * stopping one, never waits on the MIDI receiver. There is at most one arpeggio per channel;
+ * starting another replaces it, and stopping or restarting the transport ends them all.
+ */
+public final class Arpeggiator implements AutoCloseable {
+    static final int CHANNELS = 16;
+    static final int MAX_NOTES = 32;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** One channel's running arpeggio (player thread, under the arpeggiator lock). */
+    private static final class Arp {
+        final String style;
+        final boolean follow;      // tracks the channel's held chord
+        final int velocity;
+        final double gate;
+        final double stepTicks;
+        final long totalSteps;     // 0: until stopped
+        final long origin;         // transport origin the ticks are relative to
+        final double startTick;
+        int[] order;               // notes in play order; for "random", the pool to draw from
+        long index;                // steps played so far
+        int last = -1;             // previous random draw
+
+        Arp(int[] order, String style, boolean follow, int velocity, double gate, double stepTicks,
+            long totalSteps, long origin, double startTick) {
+            this.order = order;
+            this.style = style;
+            this.follow = follow;
+            this.velocity = velocity;
+            this.gate = gate;
+            this.stepTicks = stepTicks;
+            this.totalSteps = totalSteps;
+            this.origin = origin;
+            this.startTick = startTick;
+        }
+
+        double nextTick() {
+            return startTick + index * stepTicks;
+        }
+    }
+
+    private final StepSequencer.Sink sink; // arpeggio notes are shaped like sequencer steps
+    private final TransportClock clock;
+    private final int[][] held = new int[CHANNELS][];
+    private final Arp[] arps = new Arp[CHANNELS];
+    private final SplittableRandom random;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private final PendingNotes due = new PendingNotes(); // picked under the monitor, sent outside it
+
+    public Arpeggiator(StepSequencer.Sink sink, TransportClock clock) {
+        this(sink, clock, new SplittableRandom());
+    }
+
+    Arpeggiator(StepSequencer.Sink sink, TransportClock clock, SplittableRandom random) {
+        this.sink = sink;
+        this.clock = clock;
+        this.random = random;
+        this.worker = new Thread(this::run, "arpeggiator");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MAX_PRIORITY);
+        this.worker.start();
+    }
+
+    /**
+     * Remember {@code notes} as the chord held on a channel (0-based), e.g. after CHORD.PLAY. An
+     * arpeggio running over the held chord switches to the new notes from its next step.
+     */
+    public synchronized void hold(int channel, int[] notes) {
+        int ch = channel & 0x0F;
+        held[ch] = notes.clone();
+        Arp arp = arps[ch];
+        if (arp != null && arp.follow) {
+            arp.order = order(held[ch], arp.style);
+            arp.last = -1;
+        }
+    }
+
+    /**
+     * Start an arpeggio on a channel (0-based) at {@code startNanos}. {@code notes} null arpeggiates
+     * the chord held on the channel. {@code style} is up, down, updown or random; {@code rate} is one
+     * step per "1/8", "1/8T", "1/16" or "1/32" (null is 1/16); {@code gate} is the fraction of a step
+     * each note is held. The arpeggio runs for {@code lengthBeats}, and a length of 0 stops the
+     * channel's arpeggio instead.
+     */
+    public void start(int channel, int[] notes, String style, String rate, double gate, double lengthBeats,
+                      int velocity, long startNanos) {
+        int ch = channel & 0x0F;
+        if (lengthBeats <= 0) {
+            stop(ch);
+            return;
+        }
+        double stepTicks = StepSequencer.stepTicks(rate);
+        long totalSteps = Math.max(1L, Math.round(lengthBeats * TempoMap.TICKS_PER_BEAT / stepTicks));
+        synchronized (this) {
+            int[] source = notes != null ? notes : held[ch];
+            if (source == null) throw new IllegalArgumentException("No chord held on channel " + (ch + 1));
+            arps[ch] = new Arp(order(source, style), style, notes == null, Math.max(1, Math.min(127, velocity)),
+                    Math.max(0.0, Math.min(1.0, gate)), stepTicks, totalSteps, clock.originNanos(),
+                    clock.tickAt(startNanos));
+        }
+        LockSupport.unpark(worker);
+    }
+
+    /** Stop a channel's arpeggio (0-based); notes already sounding get their normal note-off. */
+    public synchronized void stop(int channel) {
+        arps[channel & 0x0F] = null;
+    }
+
+    public synchronized void stopAll() {
+        Arrays.fill(arps, null);
+    }
+
+    /** Number of channels with an arpeggio running. */
+    public synchronized int active() {
+        int n = 0;
+        for (Arp arp : arps) if (arp != null) n++;
+        return n;
+    }
+
+    /**
+     * Play order for a style: {@code up} and {@code down} are the sorted notes, {@code updown} goes up
+     * and back down without repeating the top and bottom notes, and {@code random} returns the sorted
+     * pool that steps draw from.
+     */
+    static int[] order(int[] notes, String style) {
+        if (notes.length == 0 || notes.length > MAX_NOTES) {
+            throw new IllegalArgumentException("An arpeggio needs 1-" + MAX_NOTES + " notes");
+        }
+        int[] up = notes.clone();
+        Arrays.sort(up);
+        int n = up.length;
+        switch (style != null ? style : "up") {
+            case "up":
+            case "random":
+                return up;
+            case "down": {
+                int[] down = new int[n];
+                for (int i = 0; i < n; i++) down[i] = up[n - 1 - i];
+                return down;
+            }
+            case "updown": {
+                if (n < 3) return up;
+                int[] updown = Arrays.copyOf(up, 2 * n - 2);
+                for (int i = n - 2; i > 0; i--) updown[2 * n - 2 - i] = up[i];
+                return updown;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown arpeggio style: " + style);
+        }
+    }
+
+    /** Notes from an ARPEGGIATE {@code notes} list: names ("C4") or MIDI numbers. */
+    public static int[] parseNotes(List<?> notes) {
+        int[] out = new int[notes.size()];
+        for (int i = 0; i < out.length; i++) {
+            Object n = notes.get(i);
+            if (n instanceof Number) out[i] = Math.max(0, Math.min(127, ((Number) n).intValue()));
+            else if (n instanceof String) out[i] = NoteUtil.parseNoteName((String) n);
+            else throw new IllegalArgumentException("payload.notes[" + i + "] must be a note name or number");
+        }
+        return out;
+    }
+
+    private void run() {
+        while (running) {
+            long wait;
+            synchronized (this) {
+                wait = advance(System.nanoTime());
+            }
+            due.sendTo(sink);
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    /** Picks the note of every due step into {@link #due} and returns how long to sleep until the next one. */
+    private long advance(long now) {
+        boolean any = false;
+        for (Arp arp : arps) any |= arp != null;
+        if (!any) return IDLE_PARK_NANOS;
+        if (!clock.isRunning()) {
+            Arrays.fill(arps, null);
+            return IDLE_PARK_NANOS;
+        }
+        long origin = clock.originNanos();
+        long nextDue = now + IDLE_PARK_NANOS;
+        for (int ch = 0; ch < CHANNELS; ch++) {
+            Arp arp = arps[ch];
+            if (arp == null) continue;
+            if (arp.origin != origin) { // began before the latest TRANSPORT.START; its step ticks are stale
+                arps[ch] = null;
+                continue;
+            }
+            long due;
+            while ((due = nanosAt(arp.nextTick())) <= now && !finished(arp)) play(ch, arp);
+            if (finished(arp)) {
+                arps[ch] = null;
+                continue;
+            }
+            nextDue = Math.min(nextDue, due);
+        }
+        return Math.max(0L, nextDue - now);
+    }
+
+    private static boolean finished(Arp arp) {
+        return arp.totalSteps > 0 && arp.index >= arp.totalSteps;
+    }
+
+    private void play(int channel, Arp arp) {
+        int[] order = arp.order;
+        int note;
+        if ("random".equals(arp.style)) {
+            // Draw from the pool, never the same note twice in a row
+            int n = order.length;
+            int i;
+            if (n == 1) {
+                i = 0;
+            } else if (arp.last < 0 || arp.last >= n) {
+                i = random.nextInt(n);
+            } else {
+                i = random.nextInt(n - 1);
+                if (i >= arp.last) i++;
+            }
+            arp.last = i;
+            note = order[i];
+        } else {
+            note = order[(int) (arp.index % order.length)];
+        }
+        double start = arp.nextTick();
+        long duration = nanosAt(start + arp.stepTicks * arp.gate) - nanosAt(start);
+        due.add(channel, note, arp.velocity, Math.max(0L, duration));
+        arp.index++;
+    }
+
+    private long nanosAt(double tick) {
+        return clock.nanosAtTick(Math.round(tick));
+    }
+
+    /** Ends every arpeggio and joins the player; notes it already sent keep their gated length. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(1000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        stopAll();
+    }
+}
@@ -0,0 +1,154 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.parser.ChordParser;
+import io.dawsheet.parser.ChordQuality;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Resolves chords to MIDI pitch arrays, caching each (root note, quality, slash bass, voicing)
+ * the first time it is played. Qualities are interned, so the cache is a table per quality indexed
+ * by root, bass and voicing: playing a known chord is a map lookup by identity and an array read,
+ * with no parsing or allocation. Each table holds every root, bass and voicing of its quality, so
+ * only the first {@value #MAX_CACHED_QUALITIES} qualities get one; rarer ones are voiced per call.
+ */
+public final class ChordVoicings {
+    public static final int DEFAULT_OCTAVE = 4;
+    static final int MAX_CACHED_QUALITIES = 64;
+
+    /** How chord tones are stacked above (or around) the root. */
+    public enum Voicing {
+        CLOSE, INV1, INV2, INV3, DROP2, DROP3, OPEN;
+
+        static final int COUNT = values().length;
+
+        /** Parse "close"/"root", "inv1".."inv3" (or "first".."third"), "drop2", "drop3", "open"/"spread"; null is close. */
+        public static Voicing parse(String s) {
+            if (s == null || s.isBlank()) return CLOSE;
+            switch (s.trim().toLowerCase(Locale.ROOT)) {
+                case "close": case "root": return CLOSE;
+                case "inv1": case "first": case "1st": return INV1;
+                case "inv2": case "second": case "2nd": return INV2;
+                case "inv3": case "third": case "3rd": return INV3;
+                case "drop2": return DROP2;
+                case "drop3": return DROP3;
+                case "open": case "spread": return OPEN;
+                default: throw new IllegalArgumentException("Unknown voicing: " + s);
+            }
+        }
+    }
+
+    private final Map<ChordQuality, AtomicReferenceArray<int[]>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Pitches for a CHORD.PLAY payload. {@code root} is a note name with an optional octave ("Eb",
+     * "Eb3"); without one, {@code octave} is used. {@code quality} may carry a slash bass ("7/G").
+     * The returned array is shared and must not be modified.
+     */
+    public int[] resolve(String root, String quality, String voicing, int octave) {
+        ChordParser.Chord chord = ChordParser.quality(quality);
+        return notes(rootNote(root, octave), chord.quality, chord.bassPc, Voicing.parse(voicing));
+    }
+
+    /** MIDI note of a root name, using its own octave if it has one. */
+    static int rootNote(String root, int octave) {
+        if (root == null || root.isEmpty()) throw new IllegalArgumentException("Invalid chord root: " + root);
+        int pc;
+        switch (Character.toUpperCase(root.charAt(0))) {
+            case 'C': pc = 0; break;
+            case 'D': pc = 2; break;
+            case 'E': pc = 4; break;
+            case 'F': pc = 5; break;
+            case 'G': pc = 7; break;
+            case 'A': pc = 9; break;
+            case 'B': pc = 11; break;
+            default: throw new IllegalArgumentException("Invalid chord root: " + root);
+        }
+        int i = 1;
+        for (; i < root.length(); i++) {
+            char ch = root.charAt(i);
+            if (ch == '#') pc++;
+            else if (ch == 'b') pc--;
+            else break;
+        }
+        if (i < root.length()) {
+            // Explicit octave, e.g. "Eb3" or "C-1"
+            try {
+                octave = Integer.parseInt(root.substring(i).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid chord root: " + root);
+            }
+        }
+        return (octave + 1) * 12 + pc;
+    }
+
+    /** Pitches for a full symbol ("Dm7/G") with its root in {@code octave}. */
+    public int[] resolve(String symbol, String voicing, int octave) {
+        ChordParser.Chord chord = ChordParser.parse(symbol);
+        return notes((octave + 1) * 12 + chord.rootPc, chord.quality, chord.bassPc, Voicing.parse(voicing));
+    }
+
+    /** Cached pitches for a chord with its root at MIDI note {@code root} (0-127); {@code bassPc} is -1 for none. */
+    public int[] notes(int root, ChordQuality quality, int bassPc, Voicing voicing) {
+        int r = Math.max(0, Math.min(127, root));
+        int index = (r * 13 + bassPc + 1) * Voicing.COUNT + voicing.ordinal();
+        AtomicReferenceArray<int[]> table = cache.get(quality);
+        if (table == null) {
+            if (cache.size() >= MAX_CACHED_QUALITIES) return voice(r, quality, bassPc, voicing);
+            table = cache.computeIfAbsent(quality, q -> new AtomicReferenceArray<>(128 * 13 * Voicing.COUNT));
+        }
+        int[] notes = table.get(index);
+        if (notes == null) {
+            // Racing threads compute the same array; either copy is fine to keep
+            notes = voice(r, quality, bassPc, voicing);
+            table.set(index, notes);
+        }
+        return notes;
+    }
+
+    /** Number of distinct qualities with cached voicings. */
+    public int cachedQualities() {
+        return cache.size();
+    }
+
+    static int[] voice(int root, ChordQuality quality, int bassPc, Voicing voicing) {
+        int[] iv = quality.intervals();
+        int n = iv.length;
+        int[] notes = new int[n];
+        for (int i = 0; i < n; i++) notes[i] = root + iv[i];
+        switch (voicing) {
+            case INV1: case INV2: case INV3:
+                // Raise the lowest k chord tones an octave
+                int k = Math.min(voicing.ordinal(), n - 1);
+                for (int i = 0; i < k; i++) notes[i] += 12;
+                break;
+            case DROP2:
+                if (n >= 3) notes[n - 2] -= 12;
+                break;
+            case DROP3:
+                if (n >= 4) notes[n - 3] -= 12;
+                break;
+            case OPEN:
+                for (int i = 1; i < n; i += 2) notes[i] += 12;
+                break;
+            default:
+                break;
+        }
+        Arrays.sort(notes);
+        if (bassPc >= 0) {
+            // Slash bass: the nearest note of that pitch class below the voicing
+            int bass = notes[0] - 1 - Math.floorMod(notes[0] - 1 - bassPc, 12);
+            int[] withBass = new int[n + 1];
+            withBass[0] = bass;
+            System.arraycopy(notes, 0, withBass, 1, n);
+            notes = withBass;
+        }
+        int kept = 0;
+        for (int note : notes) if (note >= 0 && note <= 127) notes[kept++] = note;
+        return kept == notes.length ? notes : Arrays.copyOf(notes, kept);
+    }
+}
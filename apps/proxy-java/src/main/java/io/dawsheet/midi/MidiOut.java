@@ -3,9 +3,6 @@ package io.dawsheet.midi;
 import javax.sound.midi.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class MidiOut implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(MidiOut.class);
@@ -13,7 +10,9 @@ public class MidiOut implements AutoCloseable {
     private Synthesizer synth;
     private MidiDevice device;
     private Receiver receiver;
-    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final NoteOffScheduler noteOffs;
+    // Only touched from the note-off wheel thread
+    private final ShortMessage offMessage = new ShortMessage();
 
     public MidiOut(String preferredDeviceName) throws Exception {
         MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
@@ -43,28 +42,98 @@ public class MidiOut implements AutoCloseable {
             receiver = device.getReceiver();
             log.info("Using MIDI device: {}", device.getDeviceInfo().getName());
         }
+        noteOffs = new NoteOffScheduler(this::sendNoteOff);
     }
 
-    public void noteOn(int channel1Based, int note, int velocity, double durationSec) {
+    /** Sends NOTE_ON now and schedules its NOTE_OFF; returns the nanoTime the receiver took it, or 0 on failure. */
+    public long noteOn(int channel1Based, int note, int velocity, double durationSec) {
         try {
             int ch = Math.max(1, Math.min(16, channel1Based)) - 1;
             ShortMessage on = new ShortMessage();
             on.setMessage(ShortMessage.NOTE_ON, ch, clamp(note, 0, 127), clamp(velocity, 0, 127));
-            receiver.send(on, -1);
+            send(on);
+            long sentNanos = System.nanoTime();
 
-            // Schedule NOTE_OFF using a shared ScheduledExecutorService
-            int offNote = clamp(note, 0, 127);
-            int offCh = ch;
-            long delayMs = Math.max(0L, (long)(durationSec * 1000));
-            scheduler.schedule(() -> {
-                try {
-                    ShortMessage off = new ShortMessage();
-                    off.setMessage(ShortMessage.NOTE_OFF, offCh, offNote, 0);
-                    receiver.send(off, -1);
-                } catch (Exception ignored) {}
-            }, delayMs, TimeUnit.MILLISECONDS);
+            // Schedule NOTE_OFF on the timing wheel (no per-note allocation)
+            noteOffs.schedule(ch, clamp(note, 0, 127), (long) (Math.max(0.0, durationSec) * 1e9));
+            return sentNanos;
         } catch (Exception ex) {
             log.error("Failed to send NOTE_ON: {}", ex.toString());
+            return 0L;
+        }
+    }
+
+    /**
+     * Sends NOTE_ON for every pitch in one pass, then schedules their NOTE_OFFs; returns the nanoTime
+     * the last NOTE_ON was sent, or 0 on failure.
+     */
+    public long chordOn(int channel1Based, int[] notes, int velocity, double durationSec) {
+        try {
+            int ch = Math.max(1, Math.min(16, channel1Based)) - 1;
+            int vel = clamp(velocity, 0, 127);
+            for (int note : notes) {
+                ShortMessage on = new ShortMessage();
+                on.setMessage(ShortMessage.NOTE_ON, ch, clamp(note, 0, 127), vel);
+                send(on);
+            }
+            long sentNanos = System.nanoTime();
+            long offNanos = (long) (Math.max(0.0, durationSec) * 1e9);
+            for (int note : notes) noteOffs.scheduleAt(ch, clamp(note, 0, 127), sentNanos + offNanos);
+            return sentNanos;
+        } catch (Exception ex) {
+            log.error("Failed to send chord NOTE_ONs: {}", ex.toString());
+            return 0L;
+        }
+    }
+
+    /** Sends a CONTROL_CHANGE now; returns the nanoTime the receiver took it, or 0 on failure. */
+    public long controlChange(int channel1Based, int cc, int value) {
+        try {
+            int ch = Math.max(1, Math.min(16, channel1Based)) - 1;
+            ShortMessage msg = new ShortMessage();
+            msg.setMessage(ShortMessage.CONTROL_CHANGE, ch, clamp(cc, 0, 127), clamp(value, 0, 127));
+            send(msg);
+            return System.nanoTime();
+        } catch (Exception ex) {
+            log.error("Failed to send CONTROL_CHANGE: {}", ex.toString());
+            return 0L;
+        }
+    }
+
+    /**
+     * Sends one short message now (command is a status nibble such as {@code ShortMessage.NOTE_ON});
+     * unlike {@link #noteOn} nothing is scheduled. Returns the nanoTime the receiver took it, or 0 on failure.
+     */
+    public long shortMessage(int command, int channel1Based, int data1, int data2) {
+        try {
+            int ch = Math.max(1, Math.min(16, channel1Based)) - 1;
+            ShortMessage msg = new ShortMessage();
+            msg.setMessage(command, ch, clamp(data1, 0, 127), clamp(data2, 0, 127));
+            send(msg);
+            return System.nanoTime();
+        } catch (Exception ex) {
+            log.error("Failed to send MIDI message {}: {}", command, ex.toString());
+            return 0L;
+        }
+    }
+
+    private void sendNoteOff(int ch, int note) {
+        try {
+            offMessage.setMessage(ShortMessage.NOTE_OFF, ch, note, 0);
+            send(offMessage);
+        } catch (Exception ignored) {}
+    }
+
+    private void send(ShortMessage msg) {
+        MidiSendEvent event = new MidiSendEvent();
+        event.begin();
+        receiver.send(msg, -1);
+        if (event.shouldCommit()) {
+            event.command = msg.getCommand();
+            event.channel = msg.getChannel() + 1;
+            event.data1 = msg.getData1();
+            event.data2 = msg.getData2();
+            event.commit();
         }
     }
 
@@ -74,9 +143,9 @@ public class MidiOut implements AutoCloseable {
 
     @Override
     public void close() {
+        noteOffs.close(); // flushes pending NOTE_OFFs before the receiver goes away
         try { if (receiver != null) receiver.close(); } catch (Exception ignored) {}
         try { if (device != null && device.isOpen()) device.close(); } catch (Exception ignored) {}
         try { if (synth != null && synth.isOpen()) synth.close(); } catch (Exception ignored) {}
-        scheduler.shutdown();
     }
 }
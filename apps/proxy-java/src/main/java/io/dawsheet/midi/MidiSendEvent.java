@@ -0,0 +1,29 @@
+package io.dawsheet.midi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One short message handed to the MIDI {@code Receiver}; the event duration is the send call. */
+@Name("io.dawsheet.MidiSend")
+@Label("MIDI Send")
+@Category({"DAWSheet", "MIDI"})
+@StackTrace(false)
+final class MidiSendEvent extends Event {
+    @Label("Command")
+    @Description("Status nibble, e.g. 144 for NOTE_ON, 128 for NOTE_OFF")
+    int command;
+
+    @Label("Channel")
+    @Description("MIDI channel (1-16)")
+    int channel;
+
+    @Label("Data 1")
+    int data1;
+
+    @Label("Data 2")
+    int data2;
+}
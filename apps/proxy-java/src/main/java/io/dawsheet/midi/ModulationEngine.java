@@ -0,0 +1,353 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Control-rate engine for CC ramps and LFOs.
+ *
+ * Every (channel, cc) pair owns one slot in preallocated struct-of-arrays state, so a new ramp,
+ * LFO or CC.SET on a controller that is already moving simply overwrites its slot: retargeting
+ * and cancelling are O(1) and allocate nothing. A single thread advances all active slots once
+ * per control tick and only emits values that differ from the last one sent on that controller.
+ * Producers on any thread publish into a lock-free MPSC ring, as for {@link NoteOffScheduler}.
+ * Tempo-synced LFOs take their phase from the transport, so they stay on the grid across tempo
+ * changes.
+ */
+public final class ModulationEngine implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ModulationEngine.class);
+
+    /** Receives CC values on the engine thread. Channel is 0-based. */
+    @FunctionalInterface
+    public interface Sink {
+        void controlChange(int channel, int cc, int value);
+    }
+
+    public static final int DEFAULT_RATE_HZ = 200;
+    private static final int SLOTS = 16 * 128;
+    private static final int RING_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // Slot kinds
+    private static final byte IDLE = 0, RAMP = 1, LFO = 2;
+    // Ring-only ops
+    private static final int SET = 3, CANCEL = 4;
+
+    private static final int SINE = 0, TRI = 1, SAW = 2, SQUARE = 3, RANDOM = 4;
+    private static final int SYNCED = 1 << 19;
+
+    private final Sink sink;
+    private final TransportClock clock;
+    private final long tickNanos;
+
+    // Ingress ring (multi-producer, single-consumer)
+    private final int[] ringOp = new int[RING_SIZE];
+    private final int[] ringArgs = new int[RING_SIZE];
+    private final long[] ringStart = new long[RING_SIZE];
+    private final long[] ringLength = new long[RING_SIZE];
+    private final AtomicLongArray ringPublished = new AtomicLongArray(RING_SIZE);
+    private final AtomicLong claimSeq = new AtomicLong();
+    private final AtomicLong consumedSeq = new AtomicLong();
+
+    // Per-slot state (owned by the engine thread only)
+    private final byte[] kind = new byte[SLOTS];
+    private final byte[] waveform = new byte[SLOTS];
+    private final boolean[] synced = new boolean[SLOTS];
+    private final long[] start = new long[SLOTS];
+    private final long[] length = new long[SLOTS];   // ramp: duration nanos; LFO: period nanos, or ticks if synced
+    private final int[] from = new int[SLOTS];       // ramp start value, LFO center
+    private final int[] to = new int[SLOTS];         // ramp end value, LFO depth
+    private final int[] lastSent = new int[SLOTS];   // -1 until the controller has been sent a value
+    private final int[] active = new int[SLOTS];     // dense list of moving slots
+    private final int[] activeIndex = new int[SLOTS];
+    private int activeCount;
+    private volatile int activeSnapshot;
+
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public ModulationEngine(Sink sink, TransportClock clock) {
+        this(sink, clock, TimeUnit.SECONDS.toNanos(1) / DEFAULT_RATE_HZ);
+    }
+
+    public ModulationEngine(Sink sink, TransportClock clock, long tickNanos) {
+        if (tickNanos <= 0) throw new IllegalArgumentException("tickNanos must be positive");
+        this.sink = sink;
+        this.clock = clock;
+        this.tickNanos = tickNanos;
+        for (int i = 0; i < RING_SIZE; i++) ringPublished.set(i, -1L);
+        Arrays.fill(lastSent, -1);
+        Arrays.fill(activeIndex, -1);
+        this.worker = new Thread(this::run, "cc-modulation");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MAX_PRIORITY);
+        this.worker.start();
+    }
+
+    /** Engine ticking at {@code MODULATION_RATE_HZ} (default {@value #DEFAULT_RATE_HZ}). */
+    public static ModulationEngine fromEnv(Sink sink, TransportClock clock) {
+        int hz = DEFAULT_RATE_HZ;
+        String env = System.getenv("MODULATION_RATE_HZ");
+        if (env != null && !env.isBlank()) {
+            try {
+                hz = Integer.parseInt(env.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid MODULATION_RATE_HZ='{}'", env);
+            }
+        }
+        return new ModulationEngine(sink, clock, TimeUnit.SECONDS.toNanos(1) / Math.max(1, Math.min(1000, hz)));
+    }
+
+    /** Send a value now, stopping any ramp or LFO on that controller. Channel is 0-based. */
+    public void set(int channel, int cc, int value) {
+        publish(SET << 24 | slot(channel, cc), clamp7(value), 0L, 0L);
+    }
+
+    /** Stop any ramp or LFO on a controller, leaving it at its last value. Channel is 0-based. */
+    public void cancel(int channel, int cc) {
+        publish(CANCEL << 24 | slot(channel, cc), 0, 0L, 0L);
+    }
+
+    /**
+     * Move a controller linearly from {@code fromValue} to {@code toValue} over {@code durationNanos},
+     * starting at {@code startNanos}; replaces whatever that controller was doing. Channel is 0-based.
+     */
+    public void ramp(int channel, int cc, int fromValue, int toValue, long durationNanos, long startNanos) {
+        publish(RAMP << 24 | slot(channel, cc), clamp7(fromValue) << 8 | clamp7(toValue), startNanos, Math.max(0L, durationNanos));
+    }
+
+    /**
+     * Oscillate a controller around {@code center}, {@code depth} peak to peak. The rate is
+     * {@code sync} ("1/4", "1/8", "1/8T", "1/16": one cycle per grid step on the transport) or,
+     * when sync is null or "off", {@code rateHz}; a rate of 0 holds the center. Replaces whatever
+     * that controller was doing. Channel is 0-based.
+     */
+    public void lfo(int channel, int cc, String wave, double rateHz, String sync, int depth, int center, long startNanos) {
+        int w = waveform(wave);
+        long syncTicks = syncTicks(sync);
+        long period;
+        int op = LFO << 24 | w << 20 | slot(channel, cc);
+        if (syncTicks > 0) {
+            period = syncTicks;
+            op |= SYNCED;
+        } else {
+            period = rateHz > 0 ? Math.max(1L, (long) (1e9 / rateHz)) : 0L;
+        }
+        publish(op, clamp7(center) << 8 | clamp7(depth), startNanos, period);
+    }
+
+    /** Number of controllers currently ramping or oscillating (approximate when read off-thread). */
+    public int active() {
+        return activeSnapshot + (int) (claimSeq.get() - consumedSeq.get());
+    }
+
+    private void publish(int op, int args, long startNanos, long len) {
+        long seq;
+        while (true) {
+            seq = claimSeq.get();
+            if (seq - consumedSeq.get() >= RING_SIZE) {
+                // Ring full: the engine thread is behind. Back off rather than drop a command.
+                if (!running) return;
+                Thread.onSpinWait();
+                continue;
+            }
+            if (claimSeq.compareAndSet(seq, seq + 1)) break;
+        }
+        int idx = (int) (seq & (RING_SIZE - 1));
+        ringOp[idx] = op;
+        ringArgs[idx] = args;
+        ringStart[idx] = startNanos;
+        ringLength[idx] = len;
+        ringPublished.lazySet(idx, seq);
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            drainRing();
+            if (activeCount == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                nextTick = System.nanoTime();
+                continue;
+            }
+            long now = System.nanoTime();
+            if (now >= nextTick) {
+                advance(now);
+                nextTick = Math.max(nextTick + tickNanos, now);
+            }
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    private void drainRing() {
+        long seq = consumedSeq.get();
+        while (true) {
+            int idx = (int) (seq & (RING_SIZE - 1));
+            if (ringPublished.get(idx) != seq) break;
+            apply(ringOp[idx], ringArgs[idx], ringStart[idx], ringLength[idx]);
+            seq++;
+            consumedSeq.lazySet(seq);
+        }
+        activeSnapshot = activeCount;
+    }
+
+    private void apply(int op, int args, long startNanos, long len) {
+        int s = op & (SLOTS - 1);
+        int k = op >>> 24;
+        switch (k) {
+            case SET:
+                deactivate(s);
+                send(s, args & 0x7F, true);
+                return;
+            case CANCEL:
+                deactivate(s);
+                return;
+            case RAMP:
+                from[s] = (args >>> 8) & 0x7F;
+                to[s] = args & 0x7F;
+                break;
+            case LFO:
+                waveform[s] = (byte) ((op >>> 20) & 0x7);
+                synced[s] = (op & SYNCED) != 0;
+                from[s] = (args >>> 8) & 0x7F;
+                to[s] = args & 0x7F;
+                break;
+            default:
+                return;
+        }
+        kind[s] = (byte) k;
+        start[s] = startNanos;
+        length[s] = len;
+        if (activeIndex[s] < 0) {
+            activeIndex[s] = activeCount;
+            active[activeCount++] = s;
+        }
+    }
+
+    private void advance(long now) {
+        double tick = Double.NaN;
+        for (int i = 0; i < activeCount; ) {
+            int s = active[i];
+            if (kind[s] == RAMP) {
+                long elapsed = now - start[s];
+                if (elapsed < 0) { i++; continue; } // not started yet
+                if (elapsed >= length[s]) {
+                    send(s, to[s], false);
+                    deactivate(s); // swaps another slot into i
+                    continue;
+                }
+                send(s, from[s] + (int) Math.round((to[s] - from[s]) * ((double) elapsed / length[s])), false);
+            } else {
+                if (synced[s] && Double.isNaN(tick)) tick = clock.tickAt(now);
+                send(s, lfoValue(s, now, tick), false);
+            }
+            i++;
+        }
+        activeSnapshot = activeCount;
+    }
+
+    private int lfoValue(int s, long now, double tick) {
+        int center = from[s], depth = to[s];
+        if (length[s] <= 0 || depth == 0) return center;
+        double cycles = synced[s]
+                ? tick / length[s]
+                : (double) Math.max(0L, now - start[s]) / length[s];
+        double cycle = Math.floor(cycles);
+        double p = cycles - cycle;
+        double y;
+        switch (waveform[s]) {
+            case TRI: y = 4 * Math.abs(((p + 0.75) % 1.0) - 0.5) - 1; break;
+            case SAW: y = 2 * p - 1; break;
+            case SQUARE: y = p < 0.5 ? 1 : -1; break;
+            case RANDOM: y = sampleAndHold(s, (long) cycle); break;
+            default: y = Math.sin(2 * Math.PI * p); break;
+        }
+        return clamp7((int) Math.round(center + y * depth / 2.0));
+    }
+
+    /** Deterministic value in [-1, 1] held for one LFO cycle. */
+    private static double sampleAndHold(int slot, long cycle) {
+        long h = (cycle * 0x9E3779B97F4A7C15L) ^ (slot * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return ((h >>> 11) * 0x1.0p-53) * 2 - 1;
+    }
+
+    private void send(int s, int value, boolean always) {
+        if (!always && lastSent[s] == value) return;
+        lastSent[s] = value;
+        try {
+            sink.controlChange(s >>> 7, s & 0x7F, value);
+        } catch (Exception ex) {
+            log.debug("CC sink failed: {}", ex.toString());
+        }
+    }
+
+    private void deactivate(int s) {
+        int i = activeIndex[s];
+        kind[s] = IDLE;
+        if (i < 0) return;
+        int last = active[--activeCount];
+        active[i] = last;
+        activeIndex[last] = i;
+        activeIndex[s] = -1;
+    }
+
+    private static int slot(int channel, int cc) {
+        return (channel & 0x0F) << 7 | (cc & 0x7F);
+    }
+
+    private static int waveform(String wave) {
+        if (wave == null) return SINE;
+        switch (wave.toLowerCase(Locale.ROOT)) {
+            case "sine": return SINE;
+            case "tri": case "triangle": return TRI;
+            case "saw": return SAW;
+            case "square": return SQUARE;
+            case "random": return RANDOM;
+            default: throw new IllegalArgumentException("Unknown LFO waveform: " + wave);
+        }
+    }
+
+    /** Ticks per cycle for an LFO sync setting, or 0 for free-running. */
+    static long syncTicks(String sync) {
+        if (sync == null) return 0;
+        long q = TempoMap.TICKS_PER_BEAT;
+        switch (sync) {
+            case "off": return 0;
+            case "1/4": return q;
+            case "1/8": return q / 2;
+            case "1/8T": return q / 3;
+            case "1/16": return q / 4;
+            default: throw new IllegalArgumentException("Unknown LFO sync: " + sync);
+        }
+    }
+
+    private static int clamp7(int v) {
+        return Math.max(0, Math.min(127, v));
+    }
+
+    /** Stops the engine thread; controllers keep their last values. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(1000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.dawsheet.midi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** A NOTE_OFF fired by the timing wheel. */
+@Name("io.dawsheet.NoteOff")
+@Label("Note Off")
+@Category({"DAWSheet", "MIDI"})
+@StackTrace(false)
+final class NoteOffEvent extends Event {
+    @Label("Channel")
+    @Description("MIDI channel (1-16)")
+    int channel;
+
+    @Label("Note")
+    int note;
+
+    @Label("Scheduled Nanos")
+    @Description("System.nanoTime the note-off was due")
+    long scheduledNanos;
+
+    @Label("Actual Nanos")
+    long actualNanos;
+
+    @Label("Lateness")
+    @Timespan(Timespan.NANOSECONDS)
+    long lateness;
+
+    @Label("Queue Depth")
+    @Description("Note-offs still held in the wheel")
+    int queueDepth;
+}
@@ -0,0 +1,248 @@
+package io.dawsheet.midi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel for NOTE_OFF events.
+ *
+ * Pending note-offs are stored as primitive records (channel, note, due-nanos) in
+ * preallocated arrays; scheduling allocates nothing and is O(1). Producers on any
+ * thread publish into a lock-free MPSC ring, and a single high-priority wheel thread
+ * drains the ring into wheel slots and fires expired entries once per tick.
+ */
+public final class NoteOffScheduler implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(NoteOffScheduler.class);
+
+    /** Receives expired note-offs on the wheel thread. Channel is 0-based. */
+    @FunctionalInterface
+    public interface Sink {
+        void noteOff(int channel, int note);
+    }
+
+    public static final long DEFAULT_TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final int DEFAULT_WHEEL_SIZE = 4096;   // 2.048s per revolution at 500us
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int NIL = -1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Sink sink;
+    private final long tickNanos;
+    private final long startNanos;
+
+    // Ingress ring (multi-producer, single-consumer)
+    private final int ringMask;
+    private final long[] ringDue;
+    private final int[] ringEvent;
+    private final AtomicLongArray ringPublished;
+    private final AtomicLong claimSeq = new AtomicLong();
+    private final AtomicLong consumedSeq = new AtomicLong();
+
+    // Wheel (owned by the wheel thread only)
+    private final int wheelMask;
+    private final int[] slotHead;
+    private long[] dueTick;
+    private int[] event;
+    private int[] next;
+    private int freeHead = NIL;
+    private int pending;
+    private long lastTick;
+
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public NoteOffScheduler(Sink sink) {
+        this(sink, DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE, DEFAULT_CAPACITY);
+    }
+
+    public NoteOffScheduler(Sink sink, long tickNanos, int wheelSize, int capacity) {
+        if (tickNanos <= 0 || tickNanos > TimeUnit.MILLISECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("tickNanos must be in (0, 1ms]");
+        }
+        this.sink = sink;
+        this.tickNanos = tickNanos;
+
+        int ringSize = powerOfTwo(capacity);
+        this.ringMask = ringSize - 1;
+        this.ringDue = new long[ringSize];
+        this.ringEvent = new int[ringSize];
+        this.ringPublished = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) ringPublished.set(i, -1L);
+
+        int slots = powerOfTwo(wheelSize);
+        this.wheelMask = slots - 1;
+        this.slotHead = new int[slots];
+        java.util.Arrays.fill(slotHead, NIL);
+        allocateEntries(ringSize);
+
+        this.startNanos = System.nanoTime();
+        this.lastTick = 0;
+        this.worker = new Thread(this::run, "note-off-wheel");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MAX_PRIORITY);
+        this.worker.start();
+    }
+
+    /**
+     * Schedule a NOTE_OFF for a 0-based channel after the given delay. Safe to call from any thread.
+     */
+    public void schedule(int channel, int note, long delayNanos) {
+        scheduleAt(channel, note, System.nanoTime() + Math.max(0L, delayNanos));
+    }
+
+    /**
+     * Schedule a NOTE_OFF at an absolute {@link System#nanoTime()} deadline. Safe to call from any thread.
+     */
+    public void scheduleAt(int channel, int note, long dueNanos) {
+        int packed = ((channel & 0x0F) << 7) | (note & 0x7F);
+        long seq;
+        while (true) {
+            seq = claimSeq.get();
+            if (seq - consumedSeq.get() > ringMask) {
+                // Ring full: the wheel thread is behind. Back off briefly rather than drop a note-off.
+                if (!running) return;
+                Thread.onSpinWait();
+                continue;
+            }
+            if (claimSeq.compareAndSet(seq, seq + 1)) break;
+        }
+        int idx = (int) (seq & ringMask);
+        ringDue[idx] = dueNanos;
+        ringEvent[idx] = packed;
+        ringPublished.lazySet(idx, seq);
+        LockSupport.unpark(worker);
+    }
+
+    /** Number of note-offs currently held in the wheel (approximate when read off-thread). */
+    public int pending() {
+        return pending + (int) (claimSeq.get() - consumedSeq.get());
+    }
+
+    private void run() {
+        while (running) {
+            drainRing();
+            long nowTick = (System.nanoTime() - startNanos) / tickNanos;
+            if (pending == 0) {
+                // Idle: nothing to expire, skip ahead and sleep until a producer unparks us.
+                lastTick = Math.max(lastTick, nowTick);
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            while (lastTick < nowTick) {
+                lastTick++;
+                expireSlot(lastTick);
+            }
+            long nextTickAt = startNanos + (lastTick + 1) * tickNanos;
+            long wait = nextTickAt - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(this, wait);
+        }
+        // Release everything still held so no note hangs after shutdown.
+        drainRing();
+        for (int s = 0; s <= wheelMask; s++) {
+            for (int e = slotHead[s]; e != NIL; e = next[e]) fire(event[e], startNanos + dueTick[e] * tickNanos);
+            slotHead[s] = NIL;
+        }
+        pending = 0;
+    }
+
+    private void drainRing() {
+        long seq = consumedSeq.get();
+        while (true) {
+            int idx = (int) (seq & ringMask);
+            if (ringPublished.get(idx) != seq) break;
+            insert(ringDue[idx], ringEvent[idx]);
+            seq++;
+            consumedSeq.lazySet(seq);
+        }
+    }
+
+    private void insert(long dueNanos, int packed) {
+        long tick = (dueNanos - startNanos + tickNanos - 1) / tickNanos;
+        if (tick <= lastTick) {
+            fire(packed, dueNanos);
+            return;
+        }
+        if (freeHead == NIL) allocateEntries(dueTick.length * 2);
+        int e = freeHead;
+        freeHead = next[e];
+        dueTick[e] = tick;
+        event[e] = packed;
+        int slot = (int) (tick & wheelMask);
+        next[e] = slotHead[slot];
+        slotHead[slot] = e;
+        pending++;
+    }
+
+    private void expireSlot(long tick) {
+        int slot = (int) (tick & wheelMask);
+        int prev = NIL;
+        int e = slotHead[slot];
+        while (e != NIL) {
+            int n = next[e];
+            if (dueTick[e] <= tick) {
+                if (prev == NIL) slotHead[slot] = n; else next[prev] = n;
+                pending--; // before firing, so the sink never sees itself counted as pending
+                fire(event[e], startNanos + dueTick[e] * tickNanos);
+                next[e] = freeHead;
+                freeHead = e;
+            } else {
+                prev = e; // later revolution
+            }
+            e = n;
+        }
+    }
+
+    private void fire(int packed, long dueNanos) {
+        NoteOffEvent jfr = new NoteOffEvent();
+        jfr.begin();
+        if (jfr.isEnabled()) jfr.actualNanos = System.nanoTime();
+        try {
+            sink.noteOff((packed >>> 7) & 0x0F, packed & 0x7F);
+        } catch (Exception ex) {
+            log.debug("NOTE_OFF sink failed: {}", ex.toString());
+        }
+        if (jfr.shouldCommit()) {
+            jfr.channel = ((packed >>> 7) & 0x0F) + 1;
+            jfr.note = packed & 0x7F;
+            jfr.scheduledNanos = dueNanos;
+            jfr.lateness = Math.max(0L, jfr.actualNanos - dueNanos);
+            jfr.queueDepth = pending;
+            jfr.commit();
+        }
+    }
+
+    private void allocateEntries(int size) {
+        int old = dueTick == null ? 0 : dueTick.length;
+        dueTick = dueTick == null ? new long[size] : java.util.Arrays.copyOf(dueTick, size);
+        event = event == null ? new int[size] : java.util.Arrays.copyOf(event, size);
+        next = next == null ? new int[size] : java.util.Arrays.copyOf(next, size);
+        for (int i = old; i < size; i++) {
+            next[i] = (i == size - 1) ? freeHead : i + 1;
+        }
+        freeHead = old;
+        if (old > 0) log.debug("Note-off wheel grown to {} entries", size);
+    }
+
+    private static int powerOfTwo(int n) {
+        int p = 1;
+        while (p < n) p <<= 1;
+        return p;
+    }
+
+    /** Stops the wheel thread, immediately firing every pending note-off. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(1000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
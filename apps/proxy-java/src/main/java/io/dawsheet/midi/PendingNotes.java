@@ -0,0 +1,49 @@
+package io.dawsheet.midi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Notes a player thread found due while holding its engine's lock, kept in parallel primitive arrays
+ * that grow as needed and are reused on every pass. The player sends them with {@link #sendTo} once
+ * the lock is released, so commands that edit the engine never wait on the MIDI receiver.
+ * Single-threaded: only the owning player thread touches it.
+ */
+final class PendingNotes {
+    private static final Logger log = LoggerFactory.getLogger(PendingNotes.class);
+
+    private int[] channel = new int[16];
+    private int[] note = new int[16];
+    private int[] velocity = new int[16];
+    private long[] duration = new long[16];
+    private int count;
+
+    void add(int ch, int n, int vel, long durationNanos) {
+        if (count == note.length) {
+            int size = count * 2;
+            channel = Arrays.copyOf(channel, size);
+            note = Arrays.copyOf(note, size);
+            velocity = Arrays.copyOf(velocity, size);
+            duration = Arrays.copyOf(duration, size);
+        }
+        channel[count] = ch;
+        note[count] = n;
+        velocity[count] = vel;
+        duration[count] = durationNanos;
+        count++;
+    }
+
+    /** Hands every queued note to {@code sink} in order and empties the queue; a failing send is skipped. */
+    void sendTo(StepSequencer.Sink sink) {
+        for (int i = 0; i < count; i++) {
+            try {
+                sink.note(channel[i], note[i], velocity[i], duration[i]);
+            } catch (Exception ex) {
+                log.debug("Note sink failed: {}", ex.toString());
+            }
+        }
+        count = 0;
+    }
+}
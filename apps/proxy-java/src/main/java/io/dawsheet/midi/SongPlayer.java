@@ -0,0 +1,275 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.song.CueIndex;
+import io.dawsheet.song.SongTimeline;
+import io.dawsheet.transport.TransportClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a compiled {@link SongTimeline} locally, off the transport clock.
+ *
+ * Loading a song sets the transport's tempo map to the song's and arms the player. Playback starts
+ * at the next TRANSPORT.START, or whenever the transport is re-anchored, from the event at the
+ * transport's position. The player thread walks a cursor through the timeline and sleeps until the
+ * next event is due. Sounding notes are tracked in a 128-bit set per channel, so stopping the
+ * transport, relocating or loading another song releases exactly the notes that are still held.
+ *
+ * CUE.GOTO and DAW.SCENE.LAUNCH jump through the song's {@link CueIndex} ({@link #seek},
+ * {@link #launchScene}). The player remembers the last program, pitch bend and controller values it
+ * sent on each channel. A jump releases held notes, sends only the values that differ from the
+ * cue's chase state, and moves the song's own origin so the cue plays at the command's time. The
+ * shared transport is only started if it was stopped, never re-anchored, so patterns and
+ * arpeggios keep their place; a song moved by a jump no longer lines up with bar:beat positions
+ * on the transport until the next TRANSPORT.START.
+ *
+ * Every message, whichever thread produced it, is queued under the player's monitor and sent by the
+ * player thread after it lets go, in queue order, so CUE.GOTO and loads never wait on the MIDI
+ * receiver and a jump's note-offs cannot overtake the notes played after it.
+ */
+public final class SongPlayer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(SongPlayer.class);
+
+    /** Receives short messages on the player thread: a {@link SongTimeline} type, 0-based channel and data bytes. */
+    @FunctionalInterface
+    public interface Sink {
+        void send(int type, int channel, int data1, int data2);
+    }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Sink sink;
+    private final TransportClock clock;
+    private final long[] sounding = new long[32]; // channel c, note n: bit n & 63 of sounding[c << 1 | n >>> 6]
+    // Last values sent per channel, -1 if never (guarded by this)
+    private final int[] program = new int[16];
+    private final int[] bend = new int[16];
+    private final int[] cc = new int[16 * 128];
+    private final Thread worker;
+    private volatile boolean running = true;
+    // Guarded by this
+    private SongTimeline timeline;
+    private long transportOrigin; // the clock's origin when the player last synced to it
+    private long songOrigin;      // nanoTime of song tick 0; the transport's origin unless a jump moved it
+    private int cursor = -1; // -1: armed, waiting for the transport to start
+    private long checkedNanos; // when the player last looked at the clock
+    private int[] outbox = new int[64]; // packed as CueIndex entries, guarded by this
+    private int outboxCount;
+    private int[] sending = new int[64]; // player thread only: the outbox it took last
+
+    public SongPlayer(Sink sink, TransportClock clock) {
+        this.sink = sink;
+        this.clock = clock;
+        Arrays.fill(program, -1);
+        Arrays.fill(bend, -1);
+        Arrays.fill(cc, -1);
+        this.worker = new Thread(this::run, "song-player");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MAX_PRIORITY);
+        this.worker.start();
+    }
+
+    /** Load a song (null unloads), releasing the current one's notes; it plays from the next transport start. */
+    public synchronized void load(SongTimeline song) {
+        silence();
+        timeline = song;
+        cursor = -1;
+        transportOrigin = songOrigin = clock.originNanos();
+        if (song != null) {
+            clock.setTempoMap(song.tempoMap());
+            log.info("Loaded song {}: {} events over {} bars", song.songId(), song.size(), song.bars());
+        }
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * CUE.GOTO: jump to {@code bar[:beat[:ticks]]} or a cue name so that it plays at {@code atNanos},
+     * starting the transport if it is stopped. A running transport is left where it is. Returns the
+     * cue's tick.
+     */
+    public synchronized long seek(String position, long atNanos) {
+        SongTimeline song = requireSong();
+        long tick = song.cues().tick(position);
+        locate(song, tick, atNanos);
+        return tick;
+    }
+
+    /**
+     * DAW.SCENE.LAUNCH: jump to the arrangement item whose scene ref is the scene number ("N" or
+     * "scene:N"). Returns false, doing nothing, if no song is loaded or it has no such scene.
+     */
+    public synchronized boolean launchScene(int scene, long atNanos) {
+        SongTimeline song = timeline;
+        long tick = song != null ? song.cues().scene(scene) : -1L;
+        if (tick < 0) return false;
+        locate(song, tick, atNanos);
+        return true;
+    }
+
+    private void locate(SongTimeline song, long tick, long atNanos) {
+        silence();
+        for (int entry : song.cues().chaseAt(tick)) {
+            int type = CueIndex.type(entry), ch = CueIndex.channel(entry), d1 = CueIndex.data1(entry), d2 = CueIndex.data2(entry);
+            boolean same;
+            switch (type) {
+                case SongTimeline.PROGRAM_CHANGE: same = program[ch] == d1; break;
+                case SongTimeline.PITCH_BEND: same = bend[ch] == (d2 << 7 | d1); break;
+                default: same = cc[ch << 7 | d1] == d2; break;
+            }
+            if (!same) play(type, ch, d1, d2);
+        }
+        cursor = song.indexAtTick(tick);
+        songOrigin = atNanos - clock.tempoMap().tickToNanos(tick);
+        if (!clock.isRunning()) clock.start(songOrigin);
+        transportOrigin = clock.originNanos();
+        LockSupport.unpark(worker);
+    }
+
+    private SongTimeline requireSong() {
+        if (timeline == null) throw new IllegalStateException("No song loaded");
+        return timeline;
+    }
+
+    public synchronized SongTimeline song() {
+        return timeline;
+    }
+
+    /** Index of the next event to play, or -1 while waiting for the transport to start. */
+    public synchronized int cursor() {
+        return cursor;
+    }
+
+    /** Number of notes currently held by the song. */
+    public synchronized int sounding() {
+        int n = 0;
+        for (long bits : sounding) n += Long.bitCount(bits);
+        return n;
+    }
+
+    private void run() {
+        while (running) {
+            long wait;
+            int n;
+            synchronized (this) {
+                wait = advance(System.nanoTime());
+                n = takeOutbox();
+            }
+            sendTaken(n);
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    /** Swaps the outbox into {@link #sending} (under the monitor) and returns how many messages it holds. */
+    private int takeOutbox() {
+        int[] t = sending;
+        sending = outbox;
+        outbox = t;
+        int n = outboxCount;
+        outboxCount = 0;
+        return n;
+    }
+
+    /** Sends the first {@code n} taken messages, outside the monitor. */
+    private void sendTaken(int n) {
+        for (int i = 0; i < n; i++) {
+            int m = sending[i];
+            send(CueIndex.type(m), CueIndex.channel(m), CueIndex.data1(m), CueIndex.data2(m));
+        }
+    }
+
+    /** Plays every due event and returns how long to sleep until the next one. */
+    private long advance(long now) {
+        long since = checkedNanos;
+        checkedNanos = now;
+        SongTimeline song = timeline;
+        if (song == null) return IDLE_PARK_NANOS;
+        if (!clock.isRunning()) {
+            silence();
+            return IDLE_PARK_NANOS;
+        }
+        long o = clock.originNanos();
+        if (o != transportOrigin) {
+            // Transport (re)started or relocated: pick up from where it was when that happened, which
+            // is no earlier than the last look at the clock (and exactly 1:1 for a start at or after it)
+            silence();
+            transportOrigin = songOrigin = o;
+            cursor = song.indexAtTick((long) Math.floor(clock.tickAt(Math.max(o, since))));
+        }
+        if (cursor < 0) return IDLE_PARK_NANOS;
+        while (cursor < song.size()) {
+            long due = songOrigin + clock.tempoMap().tickToNanos(song.tick(cursor));
+            if (due > now) return Math.min(IDLE_PARK_NANOS, due - now);
+            play(song, cursor++);
+        }
+        return IDLE_PARK_NANOS;
+    }
+
+    private void play(SongTimeline song, int i) {
+        play(song.type(i), song.channel(i), song.data1(i), song.data2(i));
+    }
+
+    private void play(int type, int ch, int d1, int d2) {
+        switch (type) {
+            case SongTimeline.NOTE_ON: sounding[ch << 1 | d1 >>> 6] |= 1L << (d1 & 63); break;
+            case SongTimeline.NOTE_OFF: {
+                long bit = 1L << (d1 & 63);
+                if ((sounding[ch << 1 | d1 >>> 6] & bit) == 0) return; // not held, e.g. the end of a note before a cue
+                sounding[ch << 1 | d1 >>> 6] &= ~bit;
+                break;
+            }
+            case SongTimeline.PROGRAM_CHANGE: program[ch] = d1; break;
+            case SongTimeline.PITCH_BEND: bend[ch] = d2 << 7 | d1; break;
+            case SongTimeline.CONTROL_CHANGE: cc[ch << 7 | d1] = d2; break;
+            default: break;
+        }
+        queue(type, ch, d1, d2);
+    }
+
+    /** Note-off for every note the song still holds. */
+    private void silence() {
+        for (int w = 0; w < sounding.length; w++) {
+            long bits = sounding[w];
+            while (bits != 0) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                queue(SongTimeline.NOTE_OFF, w >>> 1, (w & 1) << 6 | bit, 0);
+            }
+            sounding[w] = 0L;
+        }
+    }
+
+    private void queue(int type, int channel, int data1, int data2) {
+        if (outboxCount == outbox.length) outbox = Arrays.copyOf(outbox, outboxCount * 2);
+        outbox[outboxCount++] = type << 20 | channel << 16 | data1 << 8 | data2;
+    }
+
+    private void send(int type, int channel, int data1, int data2) {
+        try {
+            sink.send(type, channel, data1, data2);
+        } catch (Exception ex) {
+            log.debug("Song player sink failed: {}", ex.toString());
+        }
+    }
+
+    /** Stops the player thread and releases any notes the song still holds, sending them from the caller. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(1000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        int n;
+        synchronized (this) {
+            silence();
+            n = takeOutbox();
+        }
+        sendTaken(n);
+    }
+}
@@ -0,0 +1,319 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Proxy-side step sequencer for PATTERN.TRIGGER, STEP.RATCHET and STEP.PROB.
+ *
+ * Patterns are uploaded once and held as parallel primitive arrays (note, velocity, gate,
+ * probability, ratchet count per step); a trigger then plays them locally off the transport clock,
+ * so the cloud sends one command per pattern instead of one NOTE.PLAY per step. STEP.* edits write
+ * straight into those arrays (under the player lock, for visibility) and are heard the next time
+ * the step comes round, including on a pattern that is playing. One player thread serves every
+ * playing pattern: it sleeps until the earliest due step, converts step positions to nanoTime
+ * through the tempo map (so playback follows tempo changes), and drops all playheads when the
+ * transport stops or is restarted. Due notes are collected under the lock and sent to the sink
+ * after it is released, so a slow MIDI device never holds up STEP.* edits or triggers.
+ */
+public final class StepSequencer implements AutoCloseable {
+    /** Receives notes on the player thread. Channel is 0-based. */
+    @FunctionalInterface
+    public interface Sink {
+        void note(int channel, int note, int velocity, long durationNanos);
+    }
+
+    static final int MAX_PATTERNS = 1024;
+    static final int MAX_STEPS = 128;
+    static final int MAX_RATCHET = 8;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** An uploaded pattern; a note of -1 is a rest. */
+    static final class Pattern {
+        final byte[] note;
+        final byte[] velocity;
+        final float[] gate;        // fraction of the step (or ratchet hit) the note is held
+        final float[] probability;
+        final byte[] ratchet;      // hits per step, 1..MAX_RATCHET
+
+        Pattern(int length) {
+            note = new byte[length];
+            velocity = new byte[length];
+            gate = new float[length];
+            probability = new float[length];
+            ratchet = new byte[length];
+        }
+
+        int length() {
+            return note.length;
+        }
+    }
+
+    /** Playback state of one triggered pattern (player thread, under the sequencer lock). */
+    private static final class Playhead {
+        final String id;
+        final Pattern pattern;
+        final int channel;
+        final double stepTicks;
+        final double startTick;
+        final long totalSteps;     // 0: loop until stopped
+        final long origin;         // transport origin the ticks are relative to
+        long index;                // steps started so far
+        int step;                  // step being played
+        int hitsLeft;              // remaining ratchet hits of the current step
+        double hitTicks;           // spacing of those hits, fixed when the step starts
+        double nextTick;
+
+        Playhead(String id, Pattern pattern, int channel, double stepTicks, double startTick, int loops, long origin) {
+            this.id = id;
+            this.pattern = pattern;
+            this.channel = channel;
+            this.stepTicks = stepTicks;
+            this.startTick = startTick;
+            this.totalSteps = (long) loops * pattern.length();
+            this.origin = origin;
+            this.nextTick = startTick;
+        }
+    }
+
+    private final Sink sink;
+    private final TransportClock clock;
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+    private final List<Playhead> playing = new ArrayList<>();
+    private final SplittableRandom random;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private final PendingNotes due = new PendingNotes(); // filled under the lock, sent after it
+
+    public StepSequencer(Sink sink, TransportClock clock) {
+        this(sink, clock, new SplittableRandom());
+    }
+
+    StepSequencer(Sink sink, TransportClock clock, SplittableRandom random) {
+        this.sink = sink;
+        this.clock = clock;
+        this.random = random;
+        this.worker = new Thread(this::run, "step-sequencer");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MAX_PRIORITY);
+        this.worker.start();
+    }
+
+    /**
+     * Upload (or replace) a pattern from PATTERN.TRIGGER {@code steps}: each step is a map with an
+     * optional {@code note} (name or 0-127; absent is a rest), {@code velocity} (default 100),
+     * {@code gate} (0-1, default 0.5), {@code prob} (0-1, default 1) and {@code ratchet} (1-8,
+     * default 1). A playing copy of the old pattern finishes with the old steps.
+     */
+    public void define(String id, List<?> steps) {
+        if (id == null || id.isEmpty()) throw new IllegalArgumentException("payload.pattern is required");
+        if (steps == null || steps.isEmpty() || steps.size() > MAX_STEPS) {
+            throw new IllegalArgumentException("A pattern needs 1-" + MAX_STEPS + " steps");
+        }
+        if (!patterns.containsKey(id) && patterns.size() >= MAX_PATTERNS) {
+            throw new IllegalArgumentException("Too many patterns (max " + MAX_PATTERNS + ")");
+        }
+        Pattern p = new Pattern(steps.size());
+        for (int i = 0; i < steps.size(); i++) {
+            Map<?, ?> step = steps.get(i) instanceof Map ? (Map<?, ?>) steps.get(i) : Map.of();
+            Object note = step.get("note");
+            int n = note instanceof Number ? ((Number) note).intValue()
+                    : note instanceof String ? NoteUtil.parseNoteName((String) note) : -1;
+            // Clamp names as well as numbers, so the byte can only be -1 for a rest
+            p.note[i] = (byte) (note instanceof Number || note instanceof String ? clamp(n, 0, 127) : -1);
+            p.velocity[i] = (byte) clamp(intOr(step.get("velocity"), 100), 1, 127);
+            p.gate[i] = (float) clamp01(doubleOr(step.get("gate"), 0.5));
+            p.probability[i] = (float) clamp01(doubleOr(step.get("prob"), 1.0));
+            p.ratchet[i] = (byte) clamp(intOr(step.get("ratchet"), 1), 1, MAX_RATCHET);
+        }
+        patterns.put(id, p);
+    }
+
+    /**
+     * Start a pattern at {@code startNanos}, one step per {@code rate} ("1/4", "1/8", "1/8T", "1/16",
+     * "1/32"; null is 1/16), for {@code loops} passes (0 loops until stopped). Re-triggering a
+     * playing pattern restarts it. Channel is 0-based.
+     */
+    public void trigger(String id, int channel, String rate, int loops, long startNanos) {
+        Pattern p = pattern(id);
+        double stepTicks = stepTicks(rate);
+        synchronized (this) {
+            removePlayhead(id);
+            playing.add(new Playhead(id, p, channel & 0x0F, stepTicks, clock.tickAt(startNanos),
+                    Math.max(0, loops), clock.originNanos()));
+        }
+        LockSupport.unpark(worker);
+    }
+
+    /** Stop a playing pattern; notes already sounding get their normal note-off. */
+    public synchronized void stop(String id) {
+        removePlayhead(id);
+    }
+
+    public synchronized void stopAll() {
+        playing.clear();
+    }
+
+    /** STEP.RATCHET: hits per step (1-8), heard the next time the step plays. */
+    public synchronized void setRatchet(String id, int step, int count) {
+        Pattern p = pattern(id);
+        p.ratchet[checkStep(p, id, step)] = (byte) clamp(count, 1, MAX_RATCHET);
+    }
+
+    /** STEP.PROB: chance (0-1) the step plays, heard the next time the step comes round. */
+    public synchronized void setProbability(String id, int step, double probability) {
+        Pattern p = pattern(id);
+        p.probability[checkStep(p, id, step)] = (float) clamp01(probability);
+    }
+
+    /** Number of patterns currently playing. */
+    public synchronized int playing() {
+        return playing.size();
+    }
+
+    /** Number of uploaded patterns. */
+    public int patterns() {
+        return patterns.size();
+    }
+
+    Pattern pattern(String id) {
+        Pattern p = id != null ? patterns.get(id) : null;
+        if (p == null) throw new IllegalArgumentException("Unknown pattern: " + id);
+        return p;
+    }
+
+    private void run() {
+        while (running) {
+            long wait;
+            synchronized (this) {
+                wait = advance(System.nanoTime());
+            }
+            due.sendTo(sink);
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    /** Queues every due step on {@link #due} and returns how long to sleep until the next one. */
+    private long advance(long now) {
+        if (playing.isEmpty()) return IDLE_PARK_NANOS;
+        if (!clock.isRunning()) {
+            playing.clear();
+            return IDLE_PARK_NANOS;
+        }
+        long origin = clock.originNanos();
+        long nextDue = now + IDLE_PARK_NANOS;
+        for (int i = 0; i < playing.size(); ) {
+            Playhead ph = playing.get(i);
+            if (ph.origin != origin) { // transport restarted: positions no longer line up
+                playing.remove(i);
+                continue;
+            }
+            long due;
+            while ((due = nanosAt(ph.nextTick)) <= now && !finished(ph)) play(ph);
+            if (finished(ph)) {
+                playing.remove(i);
+                continue;
+            }
+            nextDue = Math.min(nextDue, due);
+            i++;
+        }
+        return Math.max(0L, nextDue - now);
+    }
+
+    private boolean finished(Playhead ph) {
+        return ph.totalSteps > 0 && ph.index >= ph.totalSteps && ph.hitsLeft == 0;
+    }
+
+    /** Plays the event at {@code ph.nextTick}: a step start or the next ratchet hit, then moves on. */
+    private void play(Playhead ph) {
+        Pattern p = ph.pattern;
+        if (ph.hitsLeft == 0) {
+            int step = (int) (ph.index % p.length());
+            ph.index++;
+            float prob = p.probability[step];
+            if (p.note[step] < 0 || (prob < 1f && random.nextDouble() >= prob)) {
+                ph.nextTick = stepStart(ph, ph.index);
+                return;
+            }
+            ph.step = step;
+            ph.hitsLeft = p.ratchet[step];
+            ph.hitTicks = ph.stepTicks / ph.hitsLeft;
+        }
+        int step = ph.step;
+        double start = ph.nextTick;
+        long duration = nanosAt(start + ph.hitTicks * p.gate[step]) - nanosAt(start);
+        due.add(ph.channel, p.note[step], p.velocity[step], Math.max(0L, duration));
+        ph.hitsLeft--;
+        ph.nextTick = ph.hitsLeft > 0 ? start + ph.hitTicks : stepStart(ph, ph.index);
+    }
+
+    private static double stepStart(Playhead ph, long index) {
+        return ph.startTick + index * ph.stepTicks;
+    }
+
+    private long nanosAt(double tick) {
+        return clock.nanosAtTick(Math.round(tick));
+    }
+
+    private void removePlayhead(String id) {
+        playing.removeIf(ph -> ph.id.equals(id));
+    }
+
+    private static int checkStep(Pattern p, String id, int step) {
+        if (step < 0 || step >= p.length()) {
+            throw new IllegalArgumentException("Pattern " + id + " has no step " + step);
+        }
+        return step;
+    }
+
+    /** Transport ticks per step for a rate. */
+    static double stepTicks(String rate) {
+        int q = TempoMap.TICKS_PER_BEAT;
+        if (rate == null) return q / 4.0;
+        switch (rate) {
+            case "1/4": return q;
+            case "1/8": return q / 2.0;
+            case "1/8T": return q / 3.0;
+            case "1/16": return q / 4.0;
+            case "1/32": return q / 8.0;
+            default: throw new IllegalArgumentException("Unknown pattern rate: " + rate);
+        }
+    }
+
+    private static int intOr(Object v, int def) {
+        return v instanceof Number ? ((Number) v).intValue() : def;
+    }
+
+    private static double doubleOr(Object v, double def) {
+        return v instanceof Number ? ((Number) v).doubleValue() : def;
+    }
+
+    private static int clamp(int v, int lo, int hi) {
+        return Math.max(lo, Math.min(hi, v));
+    }
+
+    private static double clamp01(double v) {
+        return Math.max(0.0, Math.min(1.0, v));
+    }
+
+    /** Stops the player thread; sounding notes still get their note-offs from {@link MidiOut}. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(1000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        stopAll();
+    }
+}
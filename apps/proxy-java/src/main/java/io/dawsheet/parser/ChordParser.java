@@ -0,0 +1,240 @@
+package io.dawsheet.parser;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses chord symbols ("Cmaj7", "F#m7b5", "Bb13#11", "C/E") and bare qualities ("m9", "7(b9)",
+ * "sus4", "6/9") into an interned {@link ChordQuality} plus root and slash-bass pitch classes.
+ *
+ * Supported: major/minor/dim/aug/sus2/sus4/power (5) triads; 6, 6/9, 7, maj7, mMaj7, dim7, m7b5 (ø)
+ * and 7sus4 sevenths; 9/11/13 extensions; add2/add4/add9/add11/add13; b5, #5, b9, #9, #11 and b13
+ * alterations (optionally in parentheses); no3/no5; "alt"; a slash bass note; and spelled-out
+ * qualities such as "minor seventh" (for {@link #quality} only). Results are
+ * memoized per string, so repeated symbols cost one map lookup.
+ */
+public final class ChordParser {
+    private static final int MAX_CACHED = 4096;
+    private static final Map<String, Chord> SYMBOLS = new ConcurrentHashMap<>();
+    private static final Map<String, Chord> QUALITIES = new ConcurrentHashMap<>();
+    /** Spelled-out qualities, as in song chord objects ("major seventh"). */
+    private static final Map<String, String> WORDS = Map.of(
+            "major", "", "minor", "m", "dominant", "7", "diminished", "dim", "augmented", "aug",
+            "major seventh", "maj7", "minor seventh", "m7", "dominant seventh", "7",
+            "diminished seventh", "dim7", "half diminished", "m7b5");
+
+    private ChordParser() {}
+
+    /** A parsed chord; {@code rootPc} is -1 for a bare quality, {@code bassPc} is -1 without a slash bass. */
+    public static final class Chord {
+        public final int rootPc;
+        public final ChordQuality quality;
+        public final int bassPc;
+
+        Chord(int rootPc, ChordQuality quality, int bassPc) {
+            this.rootPc = rootPc;
+            this.quality = quality;
+            this.bassPc = bassPc;
+        }
+    }
+
+    /** Parse a full symbol with its root, e.g. "Dm7/G". */
+    public static Chord parse(String symbol) {
+        Chord c = SYMBOLS.get(symbol);
+        if (c != null) return c;
+        String s = normalize(symbol);
+        int[] end = new int[1];
+        int root = pitchClass(s, 0, end);
+        if (root < 0) throw new IllegalArgumentException("Chord symbol must start with a note name: " + symbol);
+        Chord q = parseQuality(s.substring(end[0]), symbol);
+        c = new Chord(root, q.quality, q.bassPc);
+        if (SYMBOLS.size() < MAX_CACHED) SYMBOLS.put(symbol, c);
+        return c;
+    }
+
+    /** Parse a quality without a root, e.g. "maj7", "m7b5", "7/E"; the empty string is a major triad. */
+    public static Chord quality(String quality) {
+        String key = quality == null ? "" : quality;
+        Chord c = QUALITIES.get(key);
+        if (c != null) return c;
+        String words = WORDS.get(key.trim().toLowerCase(Locale.ROOT).replace('-', ' '));
+        c = parseQuality(normalize(words != null ? words : key), key);
+        if (QUALITIES.size() < MAX_CACHED) QUALITIES.put(key, c);
+        return c;
+    }
+
+    /**
+     * Pitch class (0-11) of the note name starting at {@code from} (letter plus any number of # or b),
+     * or -1 if there is none; {@code end[0]} receives the index after it.
+     */
+    public static int pitchClass(String s, int from, int[] end) {
+        if (from >= s.length()) return -1;
+        int pc;
+        switch (Character.toUpperCase(s.charAt(from))) {
+            case 'C': pc = 0; break;
+            case 'D': pc = 2; break;
+            case 'E': pc = 4; break;
+            case 'F': pc = 5; break;
+            case 'G': pc = 7; break;
+            case 'A': pc = 9; break;
+            case 'B': pc = 11; break;
+            default: return -1;
+        }
+        int i = from + 1;
+        while (i < s.length()) {
+            char ch = s.charAt(i);
+            if (ch == '#') pc++;
+            else if (ch == 'b') pc--;
+            else break;
+            i++;
+        }
+        end[0] = i;
+        return Math.floorMod(pc, 12);
+    }
+
+    private static Chord parseQuality(String s, String original) {
+        int bass = -1;
+        int slash = s.lastIndexOf('/');
+        if (slash >= 0 && slash + 1 < s.length() && Character.isLetter(s.charAt(slash + 1))) {
+            int[] end = new int[1];
+            bass = pitchClass(s, slash + 1, end);
+            if (bass < 0 || end[0] != s.length()) throw unknown(original);
+            s = s.substring(0, slash);
+        }
+        return new Chord(-1, ChordQuality.of(mask(s, original)), bass);
+    }
+
+    private static int mask(String s, String original) {
+        int third = 4, fifth = 7, seventh = -1, extra = 0;
+        boolean majorSeventh = false, dim = false, halfDim = false;
+        int i = 0, n = s.length();
+        while (i < n) {
+            char ch = s.charAt(i);
+            if (ch == '(' || ch == ')' || ch == ',' || ch == ' ') {
+                i++;
+            } else if (s.startsWith("major", i) || s.startsWith("maj", i) || s.startsWith("Maj", i)) {
+                majorSeventh = true;
+                i += s.startsWith("major", i) ? 5 : 3;
+            } else if (ch == 'M') {
+                majorSeventh = true;
+                i++;
+            } else if (s.startsWith("minor", i) || s.startsWith("min", i)) {
+                third = 3;
+                i += s.startsWith("minor", i) ? 5 : 3;
+            } else if (ch == 'm' || (ch == '-' && i == 0)) {
+                third = 3;
+                i++;
+            } else if (s.startsWith("no", i) || s.startsWith("omit", i)) {
+                i += s.startsWith("no", i) ? 2 : 4;
+                int deg = number(s, i);
+                if (deg == 3) third = -1;
+                else if (deg == 5) fifth = -1;
+                else throw unknown(original);
+                i++;
+            } else if (s.startsWith("dim", i) || ch == 'o') {
+                third = 3;
+                fifth = 6;
+                dim = true;
+                i += ch == 'o' ? 1 : 3;
+            } else if (s.startsWith("halfdim", i)) {
+                third = 3;
+                fifth = 6;
+                halfDim = true;
+                i += 7;
+            } else if (s.startsWith("aug", i) || (ch == '+' && (i == 0 || i + 1 == n))) {
+                fifth = 8;
+                i += ch == '+' ? 1 : 3;
+            } else if (s.startsWith("sus", i)) {
+                i += 3;
+                if (i < n && s.charAt(i) == '2') { third = 2; i++; }
+                else { third = 5; if (i < n && s.charAt(i) == '4') i++; }
+            } else if (s.startsWith("alt", i)) {
+                seventh = Math.max(seventh, 0);
+                fifth = -1;
+                extra |= bit(13) | bit(15) | bit(20);
+                i += 3;
+            } else if (s.startsWith("add", i)) {
+                i += 3;
+                int deg = number(s, i);
+                if (deg < 0) throw unknown(original);
+                i += digits(deg);
+                extra |= bit(degree(deg, original));
+            } else if (ch == 'b' || ch == '#' || (ch == '+' && i > 0) || (ch == '-' && i > 0)) {
+                int shift = ch == 'b' || ch == '-' ? -1 : 1;
+                int deg = number(s, i + 1);
+                if (deg < 0) throw unknown(original);
+                i += 1 + digits(deg);
+                if (deg == 5) fifth = 7 + shift;
+                else extra |= bit(degree(deg, original) + shift);
+            } else if (Character.isDigit(ch)) {
+                int num = number(s, i);
+                i += digits(num);
+                if (num == 6 && i + 1 < n && s.charAt(i) == '/' && s.charAt(i + 1) == '9') {
+                    i += 2;
+                    num = 69;
+                }
+                switch (num) {
+                    case 5: third = -1; break;
+                    case 6: extra |= bit(9); break;
+                    case 69: extra |= bit(9) | bit(14); break;
+                    case 7: seventh = Math.max(seventh, 0); break;
+                    case 9: seventh = Math.max(seventh, 0); extra |= bit(14); break;
+                    case 11: seventh = Math.max(seventh, 0); extra |= bit(14) | bit(17); break;
+                    case 13: seventh = Math.max(seventh, 0); extra |= bit(14) | bit(21); break;
+                    case 2: extra |= bit(14); break; // C2: the 9th added to the triad
+                    default: throw unknown(original);
+                }
+            } else {
+                throw unknown(original);
+            }
+        }
+        if (seventh >= 0) seventh = majorSeventh ? 11 : dim ? 9 : 10;
+        if (third == 3 && (extra & bit(21)) != 0) extra |= bit(17); // minor 13ths keep the 11th
+        if (halfDim) seventh = 10;
+        int mask = 1;
+        if (third >= 0) mask |= bit(third);
+        if (fifth >= 0) mask |= bit(fifth);
+        if (seventh >= 0) mask |= bit(seventh);
+        return mask | extra;
+    }
+
+    /** Semitones above the root for a scale degree, an octave up for 9/11/13. */
+    private static int degree(int deg, String original) {
+        switch (deg) {
+            case 2: return 2;
+            case 4: return 5;
+            case 6: return 9;
+            case 9: return 14;
+            case 11: return 17;
+            case 13: return 21;
+            default: throw unknown(original);
+        }
+    }
+
+    private static int number(String s, int from) {
+        int v = -1;
+        for (int i = from; i < s.length() && Character.isDigit(s.charAt(i)); i++) {
+            v = (v < 0 ? 0 : v * 10) + (s.charAt(i) - '0');
+        }
+        return v;
+    }
+
+    private static int digits(int v) {
+        return v >= 10 ? 2 : 1;
+    }
+
+    private static int bit(int semitones) {
+        return 1 << semitones;
+    }
+
+    private static String normalize(String s) {
+        return s.trim()
+                .replace('♯', '#').replace('♭', 'b')
+                .replace("Δ", "maj").replace("°", "dim").replace("ø", "halfdim");
+    }
+
+    private static IllegalArgumentException unknown(String quality) {
+        return new IllegalArgumentException("Unknown chord quality: " + quality);
+    }
+}
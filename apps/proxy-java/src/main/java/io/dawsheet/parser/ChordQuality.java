@@ -0,0 +1,51 @@
+package io.dawsheet.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A chord quality reduced to its interval set: bit {@code i} of {@link #mask} is set when the chord
+ * contains the note {@code i} semitones above the root (two octaves, so 9ths, 11ths and 13ths keep
+ * their register). Instances are interned by mask, so "maj7", "M7" and "Δ7" are the same object and
+ * can key identity-based caches. Masks come from client chord symbols, so at most
+ * {@value #MAX_INTERNED} are interned; past that, new masks get a fresh instance on each call.
+ */
+public final class ChordQuality {
+    static final int MAX_INTERNED = 4096;
+    private static final Map<Integer, ChordQuality> BY_MASK = new ConcurrentHashMap<>();
+
+    public final int mask;
+    private final int[] intervals;
+
+    private ChordQuality(int mask) {
+        this.mask = mask;
+        this.intervals = new int[Integer.bitCount(mask)];
+        int n = 0;
+        for (int i = 0; i < 32; i++) if ((mask & (1 << i)) != 0) intervals[n++] = i;
+    }
+
+    /** The interned quality for an interval mask (bit 0, the root, is always added). */
+    public static ChordQuality of(int mask) {
+        int key = mask | 1;
+        ChordQuality q = BY_MASK.get(key);
+        if (q != null) return q;
+        if (BY_MASK.size() >= MAX_INTERNED) return new ChordQuality(key);
+        return BY_MASK.computeIfAbsent(key, ChordQuality::new);
+    }
+
+    /** Semitone offsets above the root, ascending. Shared; do not modify. */
+    public int[] intervals() {
+        return intervals;
+    }
+
+    public int size() {
+        return intervals.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ChordQuality[");
+        for (int i = 0; i < intervals.length; i++) sb.append(i == 0 ? "" : ",").append(intervals[i]);
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,125 @@
+package io.dawsheet.parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A scale compiled from interval names ("1P", "2M", "3m", "4A", "7m", ...) to a 12-bit pitch-class
+ * mask: bit {@code i} is set when the scale contains the note {@code i} semitones above its tonic.
+ *
+ * Each (mask, root) pair also has a 128-entry nearest-in-scale table, built once and shared between
+ * scales with the same shape, so fitting a note to the scale is a single array read. Ties between
+ * the scale tones below and above a note go down.
+ */
+public final class Scale {
+    private static final int[] DEGREE_SEMITONES = {0, 2, 4, 5, 7, 9, 11};
+    private static final Map<Integer, byte[]> FIT_TABLES = new ConcurrentHashMap<>();
+
+    public final String name;
+    public final int tonicPc;
+    public final int mask;
+    private final byte[][] fit = new byte[12][];
+
+    private Scale(String name, int tonicPc, int mask) {
+        this.name = name;
+        this.tonicPc = tonicPc;
+        this.mask = mask;
+        for (int root = 0; root < 12; root++) fit[root] = fitTable(mask, root);
+    }
+
+    /** Compile a scale object's {@code tonic} ("C", "Bb") and {@code intervals}. */
+    public static Scale compile(String name, String tonic, List<String> intervals) {
+        int[] end = new int[1];
+        int tonicPc = tonic == null ? -1 : ChordParser.pitchClass(tonic.trim(), 0, end);
+        if (tonicPc < 0 || end[0] != tonic.trim().length()) {
+            throw new IllegalArgumentException("Invalid scale tonic: " + tonic);
+        }
+        if (intervals == null || intervals.isEmpty()) {
+            throw new IllegalArgumentException("Scale " + name + " has no intervals");
+        }
+        int mask = 1;
+        for (String interval : intervals) mask |= 1 << Math.floorMod(semitones(interval), 12);
+        return new Scale(name, tonicPc, mask);
+    }
+
+    /**
+     * Semitones spanned by an interval name: a degree and a quality, in either order ("3M" or "M3").
+     * Qualities are P(erfect), M(ajor), m(inor), A(ugmented) and d(iminished), with repeated A/d
+     * stacking; degrees above 7 are compound ("9M" is 14).
+     */
+    public static int semitones(String interval) {
+        String s = interval == null ? "" : interval.trim();
+        int i = 0;
+        while (i < s.length() && !Character.isDigit(s.charAt(i))) i++;
+        int j = i;
+        while (j < s.length() && Character.isDigit(s.charAt(j))) j++;
+        String quality = i > 0 ? s.substring(0, i) : s.substring(j);
+        if (i == j || (i > 0 && j != s.length()) || quality.isEmpty()) throw invalid(interval);
+        int degree = Integer.parseInt(s.substring(i, j));
+        if (degree < 1) throw invalid(interval);
+        int simple = (degree - 1) % 7;
+        boolean perfect = simple == 0 || simple == 3 || simple == 4;
+        int offset;
+        char q = quality.charAt(0);
+        if (q == 'P' || q == 'M' || q == 'm') {
+            if (quality.length() != 1 || (q == 'P') != perfect) throw invalid(interval);
+            offset = q == 'm' ? -1 : 0;
+        } else if (q == 'A' || q == 'd') {
+            for (int k = 1; k < quality.length(); k++) if (quality.charAt(k) != q) throw invalid(interval);
+            // A diminished imperfect interval is a semitone below minor
+            offset = q == 'A' ? quality.length() : -quality.length() - (perfect ? 0 : 1);
+        } else {
+            throw invalid(interval);
+        }
+        return DEGREE_SEMITONES[simple] + 12 * ((degree - 1) / 7) + offset;
+    }
+
+    /** Nearest-in-scale table for the scale rooted on pitch class {@code rootPc}. Shared; do not modify. */
+    public byte[] fit(int rootPc) {
+        return fit[Math.floorMod(rootPc, 12)];
+    }
+
+    /** Whether pitch class {@code pc} is in the scale rooted on {@code rootPc}. */
+    public boolean contains(int pc, int rootPc) {
+        return (mask & (1 << Math.floorMod(pc - rootPc, 12))) != 0;
+    }
+
+    public int size() {
+        return Integer.bitCount(mask);
+    }
+
+    /** Shared nearest-in-scale table for a pitch-class mask (bit 0, the root, is always added) on a root. */
+    static byte[] fitTable(int mask, int rootPc) {
+        int m = (mask | 1) & 0xFFF;
+        int key = m << 4 | rootPc;
+        byte[] table = FIT_TABLES.get(key);
+        if (table != null) return table;
+        return FIT_TABLES.computeIfAbsent(key, k -> buildFitTable(m, rootPc));
+    }
+
+    private static byte[] buildFitTable(int mask, int rootPc) {
+        byte[] table = new byte[128];
+        for (int n = 0; n < 128; n++) {
+            int fitted = n;
+            for (int d = 0; d < 12; d++) {
+                int down = n - d, up = n + d;
+                if (down >= 0 && (mask & (1 << Math.floorMod(down - rootPc, 12))) != 0) { fitted = down; break; }
+                if (up <= 127 && (mask & (1 << Math.floorMod(up - rootPc, 12))) != 0) { fitted = up; break; }
+            }
+            table[n] = (byte) fitted;
+        }
+        return table;
+    }
+
+    private static IllegalArgumentException invalid(String interval) {
+        return new IllegalArgumentException("Invalid interval: " + interval);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Scale[").append(name).append(' ').append(tonicPc).append(':');
+        for (int i = 0; i < 12; i++) if ((mask & (1 << i)) != 0) sb.append(' ').append(i);
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,125 @@
+package io.dawsheet.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named scales, compiled once when they are loaded.
+ *
+ * Scales are looked up by name ignoring case, spaces, '-' and '_' ("Harmonic Minor" and
+ * "harmonic_minor" are the same scale). The {@link #defaults()} registry holds the examples from
+ * {@code scale.schema.json} on the classpath plus, if {@code SCALE_LIBRARY} names a file, the scale
+ * objects in it; later definitions of a name replace earlier ones.
+ */
+public final class ScaleRegistry {
+    private static final Logger log = LoggerFactory.getLogger(ScaleRegistry.class);
+    static final String SCHEMA_RESOURCE = "scale.schema.json";
+
+    private static final class Defaults {
+        static final ScaleRegistry INSTANCE = loadDefaults();
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Scale> byName = new ConcurrentHashMap<>();
+
+    /** Registry shared by transform pipelines, loaded on first use. */
+    public static ScaleRegistry defaults() {
+        return Defaults.INSTANCE;
+    }
+
+    /** Compile and register a scale, replacing any scale with the same name. */
+    public Scale register(String name, String tonic, List<String> intervals) {
+        if (name == null || key(name).isEmpty()) throw new IllegalArgumentException("Scale name is required");
+        Scale scale = Scale.compile(name, tonic, intervals);
+        byName.put(key(name), scale);
+        return scale;
+    }
+
+    /**
+     * Register the scales in a JSON document: a scale object, an array of them, or a schema whose
+     * {@code examples} are scale objects. Returns the number registered.
+     */
+    public int load(InputStream json) throws IOException {
+        JsonNode root = mapper.readTree(json);
+        JsonNode scales = root != null && root.has("examples") ? root.get("examples") : root;
+        if (scales == null) return 0;
+        if (!scales.isArray()) {
+            register(scales);
+            return 1;
+        }
+        for (JsonNode scale : scales) register(scale);
+        return scales.size();
+    }
+
+    /** The scale with this name, or null. */
+    public Scale get(String name) {
+        return name == null ? null : byName.get(key(name));
+    }
+
+    /**
+     * Nearest-in-scale table for {@code name} on {@code root} (a note name such as "D" or "Bb"); a
+     * null or blank root uses the scale's own tonic.
+     */
+    public byte[] fitTable(String name, String root) {
+        Scale scale = get(name);
+        if (scale == null) throw new IllegalArgumentException("Unknown scale: " + name);
+        if (root == null || root.isBlank()) return scale.fit(scale.tonicPc);
+        int[] end = new int[1];
+        String r = root.trim();
+        int pc = ChordParser.pitchClass(r, 0, end);
+        if (pc < 0 || end[0] != r.length()) throw new IllegalArgumentException("Invalid scale root: " + root);
+        return scale.fit(pc);
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    private void register(JsonNode scale) {
+        List<String> intervals = new ArrayList<>();
+        for (JsonNode interval : scale.path("intervals")) intervals.add(interval.asText());
+        register(scale.path("name").asText(null), scale.path("tonic").asText(null), intervals);
+    }
+
+    private static String key(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch != ' ' && ch != '-' && ch != '_') sb.append(ch);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static ScaleRegistry loadDefaults() {
+        ScaleRegistry registry = new ScaleRegistry();
+        try (InputStream is = ScaleRegistry.class.getClassLoader().getResourceAsStream(SCHEMA_RESOURCE)) {
+            if (is != null) registry.load(is);
+            else log.warn("{} not found on classpath; no built-in scales", SCHEMA_RESOURCE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load " + SCHEMA_RESOURCE, e);
+        }
+        String library = System.getenv("SCALE_LIBRARY");
+        if (library != null && !library.isBlank()) {
+            try (InputStream is = Files.newInputStream(Path.of(library.trim()))) {
+                int n = registry.load(is);
+                log.info("Loaded {} scales from {}", n, library);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load SCALE_LIBRARY " + library, e);
+            }
+        }
+        return registry;
+    }
+}
@@ -0,0 +1,158 @@
+package io.dawsheet.pubsub;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.TopicName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Process-wide pool of long-lived Pub/Sub publishers used for ACK/status messages.
+ *
+ * One {@link Publisher} is created lazily per topic and reused for the lifetime of the
+ * proxy, so an ACK costs a batched enqueue instead of a gRPC channel setup.
+ *
+ * Environment variables (all optional):
+ * - ACK_BATCH_MAX_MESSAGES  element count that triggers a flush (default: 100)
+ * - ACK_BATCH_MAX_BYTES     request bytes that trigger a flush (default: 65536)
+ * - ACK_BATCH_DELAY_MS      max time a message waits in a batch (default: 5)
+ */
+public final class AckPublisherPool implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(AckPublisherPool.class);
+
+    /** The part of {@link Publisher} the pool uses, so tests can count what it creates and closes. */
+    interface TopicPublisher {
+        ApiFuture<String> publish(PubsubMessage message);
+        void publishAllOutstanding();
+        void shutdown();
+        boolean awaitTermination(long duration, TimeUnit unit) throws InterruptedException;
+    }
+
+    private final Function<String, TopicPublisher> factory;
+    private final Map<String, TopicPublisher> publishers = new ConcurrentHashMap<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean closed;
+
+    public AckPublisherPool(String projectId, long maxMessages, long maxBytes, long delayMs) {
+        this(publisherFactory(projectId, BatchingSettings.newBuilder()
+                .setElementCountThreshold(Math.max(1L, maxMessages))
+                .setRequestByteThreshold(Math.max(1L, maxBytes))
+                .setDelayThreshold(org.threeten.bp.Duration.ofMillis(Math.max(1L, delayMs)))
+                .build()));
+    }
+
+    /** Creates publishers through {@code factory}, called at most once per topic. */
+    AckPublisherPool(Function<String, TopicPublisher> factory) {
+        this.factory = factory;
+    }
+
+    public static AckPublisherPool fromEnv(String projectId) {
+        return new AckPublisherPool(projectId,
+                getenvLong("ACK_BATCH_MAX_MESSAGES", 100L),
+                getenvLong("ACK_BATCH_MAX_BYTES", 64L * 1024L),
+                getenvLong("ACK_BATCH_DELAY_MS", 5L));
+    }
+
+    /**
+     * Enqueue a message on the shared publisher for the given topic. Never throws;
+     * failures (including asynchronous ones) are counted in {@link #failureCount()}.
+     */
+    public void publish(String topic, ByteString data) {
+        if (closed) {
+            failed.incrementAndGet();
+            log.debug("ACK dropped after shutdown (topic={})", topic);
+            return;
+        }
+        try {
+            TopicPublisher publisher = publishers.computeIfAbsent(topic, factory);
+            ApiFuture<String> fut = publisher.publish(PubsubMessage.newBuilder().setData(data).build());
+            ApiFutures.addCallback(fut, new ApiFutureCallback<>() {
+                @Override public void onFailure(Throwable t) {
+                    long n = failed.incrementAndGet();
+                    log.warn("ACK publish failed (topic={}, failures={}): {}", topic, n, t.toString());
+                }
+                @Override public void onSuccess(String messageId) {
+                    published.incrementAndGet();
+                }
+            }, Runnable::run);
+        } catch (Exception ex) {
+            long n = failed.incrementAndGet();
+            log.warn("ACK publish failed (topic={}, failures={}): {}", topic, n, ex.toString());
+        }
+    }
+
+    public long publishedCount() { return published.get(); }
+
+    public long failureCount() { return failed.get(); }
+
+    private static Function<String, TopicPublisher> publisherFactory(String projectId, BatchingSettings batching) {
+        return topic -> newPublisher(projectId, batching, topic);
+    }
+
+    private static TopicPublisher newPublisher(String projectId, BatchingSettings batching, String topic) {
+        Publisher p;
+        try {
+            log.info("Creating ACK publisher for topic={}", topic);
+            p = Publisher.newBuilder(TopicName.of(projectId, topic))
+                    .setBatchingSettings(batching)
+                    .build();
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed to create publisher for topic " + topic, ex);
+        }
+        return new TopicPublisher() {
+            @Override public ApiFuture<String> publish(PubsubMessage message) { return p.publish(message); }
+            @Override public void publishAllOutstanding() { p.publishAllOutstanding(); }
+            @Override public void shutdown() { p.shutdown(); }
+            @Override public boolean awaitTermination(long duration, TimeUnit unit) throws InterruptedException {
+                return p.awaitTermination(duration, unit);
+            }
+        };
+    }
+
+    /**
+     * Flushes pending batches and shuts down every pooled publisher. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Map.Entry<String, TopicPublisher> e : publishers.entrySet()) {
+            TopicPublisher p = e.getValue();
+            try {
+                p.publishAllOutstanding();
+                p.shutdown();
+                if (!p.awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.warn("ACK publisher for topic={} did not terminate in time", e.getKey());
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                log.warn("ACK publisher shutdown failed (topic={}): {}", e.getKey(), ex.toString());
+            }
+        }
+        publishers.clear();
+        log.info("ACK publishers closed — published={}, failed={}", published.get(), failed.get());
+    }
+
+    private static long getenvLong(String key, long def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException ex) {
+            log.warn("Ignoring invalid {}='{}'", key, v);
+            return def;
+        }
+    }
+}
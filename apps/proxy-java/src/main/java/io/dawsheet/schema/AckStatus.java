@@ -1,5 +1,8 @@
 package io.dawsheet.schema;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Represents an ACK status message to be sent back to Pub/Sub.
  * This is a simple Plain Old Java Object (POJO) for Gson to serialize.
@@ -14,4 +17,27 @@ public class AckStatus {
     public boolean ok;
     public String code;
     public String error;
+    /** Number of ACKs for this origin merged into this one by a coalescing publisher; absent when 1. */
+    public Integer count;
+    /** Per-item statuses, only set on the aggregated ACK of a BATCH envelope. */
+    public List<Item> items;
+    /** Stage timings for this command, only set when the proxy runs with {@code ACK_LATENCY=true}. */
+    public Latency latency;
+
+    public static class Item {
+        public String id;
+        public boolean ok;
+        public String effectiveAt;
+        public String code;
+        public String error;
+    }
+
+    public static class Latency {
+        /** Microseconds spent in each stage this command went through, plus "total". */
+        public Map<String, Long> stagesUs;
+        /** End-to-end percentiles for this command type since the proxy started (or the last metrics reset). */
+        public long p50Us;
+        public long p99Us;
+        public long p999Us;
+    }
 }
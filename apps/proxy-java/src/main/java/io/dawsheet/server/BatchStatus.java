@@ -0,0 +1,53 @@
+package io.dawsheet.server;
+
+import io.dawsheet.schema.AckStatus;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the per-item statuses of a BATCH envelope and publishes them as one aggregated ACK once
+ * every item has reported (items may finish at different scheduled times).
+ */
+final class BatchStatus {
+    private final String origin;
+    private final String target;
+    private final Instant anchor;
+    private final AckStatus.Item[] items;
+    private final AtomicInteger remaining;
+    private final StatusPublisher replyTo;
+
+    BatchStatus(String origin, String target, Instant anchor, int size, StatusPublisher replyTo) {
+        this.origin = origin;
+        this.target = target;
+        this.anchor = anchor;
+        this.items = new AckStatus.Item[size];
+        this.remaining = new AtomicInteger(size);
+        this.replyTo = replyTo;
+        if (size == 0) flush();
+    }
+
+    /** Status sink for item {@code index}; each item must report exactly once. */
+    StatusPublisher item(int index, String id) {
+        return (ok, itemOrigin, itemTarget, effectiveAt, code, error) -> {
+            AckStatus.Item item = new AckStatus.Item();
+            item.id = id;
+            item.ok = ok;
+            item.effectiveAt = effectiveAt != null ? effectiveAt.toString() : null;
+            item.code = code;
+            item.error = error;
+            items[index] = item;
+            if (remaining.decrementAndGet() == 0) flush();
+        };
+    }
+
+    private void flush() {
+        // The decrement that reaches zero happens-after every item write
+        List<AckStatus.Item> all = Arrays.asList(items);
+        boolean ok = true;
+        for (AckStatus.Item item : items) ok &= item.ok;
+        replyTo.publishBatch(ok, origin, target, anchor, all);
+    }
+}
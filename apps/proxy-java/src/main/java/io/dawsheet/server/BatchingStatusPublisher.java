@@ -0,0 +1,255 @@
+package io.dawsheet.server;
+
+import com.google.gson.Gson;
+import io.dawsheet.schema.AckStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Buffers statuses and sends them downstream as one JSON array per flush.
+ *
+ * {@link #publish} only builds the {@link AckStatus} and claims a slot in a bounded lock-free MPSC
+ * ring; a single flusher thread drains the ring and hands the serialized array to the sink once
+ * {@code maxBatch} statuses are pending or the oldest has waited {@code maxDelayMs}. Within one
+ * flush, successful ACKs for the same origin and target are coalesced into a single status whose
+ * {@code count} says how many it stands for; NACKs, batch statuses and ACKs carrying latency are
+ * always sent as-is.
+ *
+ * The proxy identity is fixed at construction. If the ring is full, or the publisher is closed,
+ * the status is sent on the caller's thread as an array of one rather than dropped.
+ */
+public final class BatchingStatusPublisher implements StatusPublisher, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(BatchingStatusPublisher.class);
+
+    public static final int DEFAULT_MAX_BATCH = 64;
+    public static final long DEFAULT_MAX_DELAY_MS = 10;
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String proxyId;
+    private final Consumer<String> sink;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final boolean coalesce;
+    private final Gson gson = new Gson();
+
+    private final int mask;
+    private final AckStatus[] ring;
+    private final long[] enqueuedNanos;
+    private final AtomicLongArray published;
+    private final AtomicLong claimSeq = new AtomicLong();
+    private final AtomicLong consumedSeq = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean open = true;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+
+    /**
+     * @param proxyId  identity stamped on every status, resolved once by the caller
+     * @param sink     receives each flushed JSON array; called from the flusher thread (or the
+     *                 publishing thread on overflow), must not block for long
+     */
+    public BatchingStatusPublisher(String proxyId, Consumer<String> sink, int maxBatch, long maxDelayMs,
+                                   boolean coalesce, int capacity) {
+        this.proxyId = proxyId;
+        this.sink = sink;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, maxDelayMs));
+        this.coalesce = coalesce;
+        int size = powerOfTwo(Math.max(2, capacity));
+        this.mask = size - 1;
+        this.ring = new AckStatus[size];
+        this.enqueuedNanos = new long[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) published.set(i, -1L);
+        this.flusher = new Thread(this::run, "status-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Publisher tuned by {@code STATUS_BATCH_MAX} (default {@value #DEFAULT_MAX_BATCH}),
+     * {@code STATUS_BATCH_DELAY_MS} (default {@value #DEFAULT_MAX_DELAY_MS}) and
+     * {@code STATUS_COALESCE} (default true).
+     */
+    public static BatchingStatusPublisher fromEnv(String proxyId, Consumer<String> sink) {
+        int maxBatch = (int) getenvLong("STATUS_BATCH_MAX", DEFAULT_MAX_BATCH);
+        long delayMs = getenvLong("STATUS_BATCH_DELAY_MS", DEFAULT_MAX_DELAY_MS);
+        boolean coalesce = !"false".equalsIgnoreCase(System.getenv().getOrDefault("STATUS_COALESCE", "true").trim());
+        return new BatchingStatusPublisher(proxyId, sink, maxBatch, delayMs, coalesce, DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
+        enqueue(status(ok, origin, target, effectiveAt, code, error));
+    }
+
+    @Override
+    public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error,
+                        AckStatus.Latency latency) {
+        AckStatus status = status(ok, origin, target, effectiveAt, code, error);
+        status.latency = latency;
+        enqueue(status);
+    }
+
+    @Override
+    public void publishBatch(boolean ok, String origin, String target, Instant effectiveAt, List<AckStatus.Item> items) {
+        AckStatus status = status(ok, origin, target, effectiveAt, ok ? null : "batch_partial", null);
+        status.items = items;
+        enqueue(status);
+    }
+
+    /** Array messages handed to the sink. */
+    public long flushCount() { return flushes.get(); }
+
+    /** ACKs folded into an earlier ACK for the same origin. */
+    public long coalescedCount() { return coalesced.get(); }
+
+    /** Statuses sent on the caller's thread because the ring was full. */
+    public long overflowCount() { return overflows.get(); }
+
+    /** Flush whatever is pending and stop the flusher; later statuses are sent one by one. */
+    @Override
+    public void close() {
+        open = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private AckStatus status(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
+        AckStatus status = new AckStatus();
+        status.type = ok ? "ACK" : "NACK";
+        status.origin = origin;
+        status.target = target;
+        status.receivedAt = Instant.now().toString();
+        status.effectiveAt = effectiveAt != null ? effectiveAt.toString() : null;
+        status.proxy = proxyId;
+        status.ok = ok;
+        status.code = code;
+        status.error = error;
+        return status;
+    }
+
+    private void enqueue(AckStatus status) {
+        if (!open || !offer(status)) {
+            if (open) overflows.incrementAndGet();
+            List<AckStatus> one = new ArrayList<>(1);
+            one.add(status);
+            send(one);
+        }
+    }
+
+    private boolean offer(AckStatus status) {
+        long seq;
+        do {
+            seq = claimSeq.get();
+            if (seq - consumedSeq.get() > mask) return false;
+        } while (!claimSeq.compareAndSet(seq, seq + 1));
+        int idx = (int) (seq & mask);
+        ring[idx] = status;
+        enqueuedNanos[idx] = System.nanoTime();
+        published.lazySet(idx, seq);
+        // Wake the flusher to start the delay clock, or to flush a full batch early
+        long queued = seq - consumedSeq.get() + 1;
+        if (queued == 1 || queued >= maxBatch) LockSupport.unpark(flusher);
+        return true;
+    }
+
+    private void run() {
+        List<AckStatus> pending = new ArrayList<>(maxBatch);
+        Map<String, AckStatus> acksByOrigin = new HashMap<>();
+        long firstNanos = 0;
+        while (true) {
+            long seq = consumedSeq.get();
+            while (pending.size() < maxBatch) {
+                int idx = (int) (seq & mask);
+                if (published.get(idx) != seq) break;
+                AckStatus status = ring[idx];
+                long at = enqueuedNanos[idx];
+                ring[idx] = null;
+                seq++;
+                consumedSeq.lazySet(seq);
+                if (pending.isEmpty()) firstNanos = at;
+                if (!merge(acksByOrigin, status)) pending.add(status);
+            }
+
+            boolean drained = claimSeq.get() == consumedSeq.get();
+            if (!pending.isEmpty() && (pending.size() >= maxBatch || !open
+                    || System.nanoTime() - firstNanos >= maxDelayNanos)) {
+                send(pending);
+                pending = new ArrayList<>(maxBatch);
+                acksByOrigin.clear();
+                continue;
+            }
+            if (!open && drained && pending.isEmpty()) return;
+            if (drained) {
+                long wait = pending.isEmpty() ? IDLE_PARK_NANOS : maxDelayNanos - (System.nanoTime() - firstNanos);
+                if (wait > 0) LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+
+    /** Fold a plain ACK into a pending ACK for the same origin and target; false if it must be sent on its own. */
+    private boolean merge(Map<String, AckStatus> acksByOrigin, AckStatus status) {
+        if (!coalesce || status.origin == null) return false;
+        if (!status.ok || status.items != null || status.latency != null) {
+            // Later ACKs must not be folded into one that was sent before this status, and
+            // timings belong to a single command
+            acksByOrigin.remove(status.origin);
+            return false;
+        }
+        AckStatus first = acksByOrigin.get(status.origin);
+        if (first == null || !Objects.equals(first.target, status.target)) {
+            acksByOrigin.put(status.origin, status);
+            return false;
+        }
+        first.count = first.count == null ? 2 : first.count + 1;
+        if (status.effectiveAt != null) first.effectiveAt = status.effectiveAt;
+        coalesced.incrementAndGet();
+        return true;
+    }
+
+    private void send(List<AckStatus> statuses) {
+        try {
+            sink.accept(gson.toJson(statuses));
+            flushes.incrementAndGet();
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish {} statuses: {}", statuses.size(), e.toString());
+        }
+    }
+
+    private static int powerOfTwo(int n) {
+        int p = 1;
+        while (p < n) p <<= 1;
+        return p;
+    }
+
+    private static long getenvLong(String key, long def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException ex) {
+            log.warn("Ignoring invalid {}='{}'", key, v);
+            return def;
+        }
+    }
+}
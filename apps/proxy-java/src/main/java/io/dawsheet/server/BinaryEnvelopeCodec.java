@@ -0,0 +1,399 @@
+package io.dawsheet.server;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary wire format for {@link CommandEnvelope}.
+ *
+ * A frame is {@code MAGIC, VERSION, varint count} followed by {@code count} envelopes. Each envelope is:
+ * <ul>
+ *   <li>varint type code: 1-based index into {@link EnvelopeDecoder#KNOWN_TYPES} (append-only), or 0 followed by the type string</li>
+ *   <li>varint {@code v}, then a varint bitmask of the fields that follow</li>
+ *   <li>id, origin, quantize, target as length-prefixed UTF-8; {@code at} as a kind byte
+ *       (now, bar:beat, bar:beat:ticks as varints, or a raw string)</li>
+ *   <li>payload: varint slot mask, then the slots packed as varints (value zig-zag, durationSec in
+ *       microseconds), then a length-prefixed JSON blob for fields without a slot (0 when none)</li>
+ *   <li>transform and meta as length-prefixed JSON blobs; they are rare and free-form</li>
+ * </ul>
+ * JSON stays the default everywhere. Pub/Sub messages opt in with the {@value #ATTRIBUTE} attribute
+ * set to {@value #CONTENT_TYPE}; WebSocket binary frames are recognized by the leading magic byte,
+ * which can never start a JSON document.
+ */
+public final class BinaryEnvelopeCodec {
+    public static final String ATTRIBUTE = "content-type";
+    public static final String CONTENT_TYPE = "application/x-dawsheet-envelope";
+    public static final byte MAGIC = (byte) 0xD5;
+    public static final byte VERSION = 1;
+
+    private static final int F_ID = 1, F_ORIGIN = 1 << 1, F_AT = 1 << 2, F_QUANTIZE = 1 << 3,
+            F_TARGET = 1 << 4, F_PAYLOAD = 1 << 5, F_TRANSFORM = 1 << 6, F_META = 1 << 7;
+    private static final int AT_NOW = 0, AT_BAR_BEAT = 1, AT_BAR_BEAT_TICKS = 2, AT_STRING = 3;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** True if the bytes start a binary envelope frame rather than JSON. */
+    public static boolean isBinary(byte[] data, int offset, int length) {
+        return length > 0 && data[offset] == MAGIC;
+    }
+
+    /** Encode one envelope as a single-envelope frame. */
+    public byte[] encode(CommandEnvelope env) throws IOException {
+        Buffer out = new Buffer(64);
+        out.put(MAGIC);
+        out.put(VERSION);
+        out.varint(1);
+        writeEnvelope(out, env);
+        return out.toArray();
+    }
+
+    /** Encode several envelopes into one frame. */
+    public byte[] encode(List<CommandEnvelope> envs) throws IOException {
+        Buffer out = new Buffer(64 * Math.max(1, envs.size()));
+        out.put(MAGIC);
+        out.put(VERSION);
+        out.varint(envs.size());
+        for (CommandEnvelope env : envs) writeEnvelope(out, env);
+        return out.toArray();
+    }
+
+    /** Decode a single-envelope frame into {@code into} (which is reset first). */
+    public CommandEnvelope decode(byte[] data, int offset, int length, CommandEnvelope into) throws IOException {
+        Reader in = new Reader(data, offset, length);
+        if (in.header() != 1) throw new IOException("Expected a single-envelope frame");
+        into.reset();
+        readEnvelope(in, into);
+        return into;
+    }
+
+    /**
+     * Decode every envelope in a frame into instances from {@code pool}; {@code sink} takes ownership of
+     * each. Mirrors {@link EnvelopeDecoder#decodeFrame}.
+     */
+    public int decodeFrame(byte[] data, int offset, int length, EnvelopePool pool, Consumer<CommandEnvelope> sink) throws IOException {
+        Reader in = new Reader(data, offset, length);
+        int count = in.header();
+        for (int i = 0; i < count; i++) {
+            CommandEnvelope env = pool.acquire();
+            try {
+                readEnvelope(in, env);
+            } catch (IOException | RuntimeException e) {
+                pool.release(env);
+                throw e;
+            }
+            sink.accept(env);
+        }
+        return count;
+    }
+
+    private void writeEnvelope(Buffer out, CommandEnvelope env) throws IOException {
+        int code = typeCode(env.type);
+        out.varint(code);
+        if (code == 0) out.string(env.type != null ? env.type : "");
+        out.varint(env.v);
+        boolean payload = env.hasPayload();
+        int fields = (env.id != null ? F_ID : 0) | (env.origin != null ? F_ORIGIN : 0) | (env.at != null ? F_AT : 0)
+                | (env.quantize != null ? F_QUANTIZE : 0) | (env.target != null ? F_TARGET : 0)
+                | (payload ? F_PAYLOAD : 0) | (env.transform != null ? F_TRANSFORM : 0) | (env.meta != null ? F_META : 0);
+        out.varint(fields);
+        if (env.id != null) out.string(env.id);
+        if (env.origin != null) out.string(env.origin);
+        if (env.at != null) writeAt(out, env.at);
+        if (env.quantize != null) out.string(env.quantize);
+        if (env.target != null) out.string(env.target);
+        if (payload) {
+            if (env.payload != null) {
+                // Map-backed envelope (built in code): ship the map as the free-form part
+                out.varint(0);
+                out.blob(mapper.writeValueAsBytes(env.payload));
+            } else {
+                writeSlots(out, env);
+                out.blob(env.extra.isEmpty() ? null : mapper.writeValueAsBytes(env.extra));
+            }
+        }
+        if (env.transform != null) out.blob(mapper.writeValueAsBytes(env.transform));
+        if (env.meta != null) out.blob(mapper.writeValueAsBytes(env.meta));
+    }
+
+    private static void writeSlots(Buffer out, CommandEnvelope env) {
+        int slots = env.slots;
+        out.varint(slots);
+        if ((slots & CommandEnvelope.SLOT_NOTE) != 0) out.varint(env.note);
+        if ((slots & CommandEnvelope.SLOT_NOTE_NAME) != 0) out.string(env.noteName);
+        if ((slots & CommandEnvelope.SLOT_VELOCITY) != 0) out.varint(env.velocity);
+        if ((slots & CommandEnvelope.SLOT_CHANNEL) != 0) out.varint(env.channel);
+        if ((slots & CommandEnvelope.SLOT_CC) != 0) out.varint(env.cc);
+        if ((slots & CommandEnvelope.SLOT_VALUE) != 0) out.varint((env.value << 1) ^ (env.value >> 31));
+        if ((slots & CommandEnvelope.SLOT_DURATION) != 0) {
+            long micros = Math.round(env.durationSec * 1e6);
+            out.varlong((micros << 1) ^ (micros >> 63));
+        }
+        if ((slots & CommandEnvelope.SLOT_PROGRAM) != 0) out.varint(env.program);
+    }
+
+    private static void writeAt(Buffer out, String at) {
+        if ("now".equals(at)) {
+            out.put((byte) AT_NOW);
+            return;
+        }
+        int[] parts = barBeat(at);
+        if (parts == null) {
+            out.put((byte) AT_STRING);
+            out.string(at);
+            return;
+        }
+        out.put((byte) (parts.length == 2 ? AT_BAR_BEAT : AT_BAR_BEAT_TICKS));
+        for (int p : parts) out.varint(p);
+    }
+
+    private void readEnvelope(Reader in, CommandEnvelope env) throws IOException {
+        int code = in.varint();
+        if (code == 0) {
+            env.type = in.string();
+        } else if (code <= EnvelopeDecoder.KNOWN_TYPES.length) {
+            env.type = EnvelopeDecoder.KNOWN_TYPES[code - 1];
+        } else {
+            throw new IOException("Unknown type code " + code);
+        }
+        env.v = in.varint();
+        int fields = in.varint();
+        if ((fields & F_ID) != 0) env.id = in.string();
+        if ((fields & F_ORIGIN) != 0) env.origin = in.string();
+        if ((fields & F_AT) != 0) env.at = readAt(in);
+        if ((fields & F_QUANTIZE) != 0) env.quantize = in.string();
+        if ((fields & F_TARGET) != 0) env.target = in.string();
+        if ((fields & F_PAYLOAD) != 0) {
+            env.payloadPresent = true;
+            readSlots(in, env);
+            Object extra = readBlob(in);
+            if (extra instanceof Map) {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) extra).entrySet()) {
+                    String key = String.valueOf(e.getKey());
+                    if (!toSlot(env, key, e.getValue())) env.extra.put(key, e.getValue());
+                }
+            }
+        }
+        if ((fields & F_TRANSFORM) != 0) env.transform = castList(readBlob(in));
+        if ((fields & F_META) != 0) env.meta = castMap(readBlob(in));
+    }
+
+    private static void readSlots(Reader in, CommandEnvelope env) throws IOException {
+        int slots = in.varint();
+        env.slots = slots;
+        if ((slots & CommandEnvelope.SLOT_NOTE) != 0) env.note = in.varint();
+        if ((slots & CommandEnvelope.SLOT_NOTE_NAME) != 0) env.noteName = in.string();
+        if ((slots & CommandEnvelope.SLOT_VELOCITY) != 0) env.velocity = in.varint();
+        if ((slots & CommandEnvelope.SLOT_CHANNEL) != 0) env.channel = in.varint();
+        if ((slots & CommandEnvelope.SLOT_CC) != 0) env.cc = in.varint();
+        if ((slots & CommandEnvelope.SLOT_VALUE) != 0) {
+            int z = in.varint();
+            env.value = (z >>> 1) ^ -(z & 1);
+        }
+        if ((slots & CommandEnvelope.SLOT_DURATION) != 0) {
+            long z = in.varlong();
+            env.durationSec = ((z >>> 1) ^ -(z & 1)) / 1e6;
+        }
+        if ((slots & CommandEnvelope.SLOT_PROGRAM) != 0) env.program = in.varint();
+    }
+
+    /** Move a free-form payload field into its slot (map-backed senders); false if it has none. */
+    private static boolean toSlot(CommandEnvelope env, String key, Object value) {
+        boolean isInt = value instanceof Integer || value instanceof Long;
+        int v = isInt ? ((Number) value).intValue() : 0;
+        switch (key) {
+            case "note":
+                if (isInt) { env.note = v; env.slots |= CommandEnvelope.SLOT_NOTE; return true; }
+                if (value instanceof String) { env.noteName = (String) value; env.slots |= CommandEnvelope.SLOT_NOTE_NAME; return true; }
+                return false;
+            case "velocity": if (!isInt) return false; env.velocity = v; env.slots |= CommandEnvelope.SLOT_VELOCITY; return true;
+            case "channel": if (!isInt) return false; env.channel = v; env.slots |= CommandEnvelope.SLOT_CHANNEL; return true;
+            case "cc": if (!isInt) return false; env.cc = v; env.slots |= CommandEnvelope.SLOT_CC; return true;
+            case "value": if (!isInt) return false; env.value = v; env.slots |= CommandEnvelope.SLOT_VALUE; return true;
+            case "program": if (!isInt) return false; env.program = v; env.slots |= CommandEnvelope.SLOT_PROGRAM; return true;
+            case "durationSec":
+                if (!(value instanceof Number)) return false;
+                env.durationSec = ((Number) value).doubleValue();
+                env.slots |= CommandEnvelope.SLOT_DURATION;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String readAt(Reader in) throws IOException {
+        int kind = in.get();
+        switch (kind) {
+            case AT_NOW:
+                return "now";
+            case AT_BAR_BEAT:
+                return in.varint() + ":" + in.varint();
+            case AT_BAR_BEAT_TICKS:
+                return in.varint() + ":" + in.varint() + ":" + in.varint();
+            case AT_STRING:
+                return in.string();
+            default:
+                throw new IOException("Unknown 'at' kind " + kind);
+        }
+    }
+
+    private Object readBlob(Reader in) throws IOException {
+        int len = in.varint();
+        if (len == 0) return null;
+        int off = in.skip(len);
+        try (JsonParser p = mapper.getFactory().createParser(in.data, off, len)) {
+            return EnvelopeDecoder.readValue(p, p.nextToken());
+        }
+    }
+
+    private static int typeCode(String type) {
+        if (type == null) return 0;
+        String[] known = EnvelopeDecoder.KNOWN_TYPES;
+        for (int i = 0; i < known.length; i++) {
+            if (known[i] == type || known[i].equals(type)) return i + 1;
+        }
+        return 0;
+    }
+
+    /** "bar:beat" or "bar:beat:ticks" as non-negative ints, or null if {@code at} is anything else. */
+    private static int[] barBeat(String at) {
+        int[] parts = new int[3];
+        int n = 0, value = 0, digits = 0;
+        for (int i = 0; i <= at.length(); i++) {
+            char c = i < at.length() ? at.charAt(i) : ':';
+            if (c >= '0' && c <= '9') {
+                if (++digits > 9) return null;
+                value = value * 10 + (c - '0');
+            } else if (c == ':' && digits > 0 && n < 3) {
+                parts[n++] = value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        return n >= 2 ? Arrays.copyOf(parts, n) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> castList(Object o) {
+        return o instanceof List ? (List<Map<String, Object>>) o : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castMap(Object o) {
+        return o instanceof Map ? (Map<String, Object>) o : null;
+    }
+
+    private static final class Buffer {
+        private byte[] buf;
+        private int len;
+
+        Buffer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void put(byte b) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[len++] = b;
+        }
+
+        void varint(int v) {
+            while ((v & ~0x7F) != 0) {
+                put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            put((byte) v);
+        }
+
+        void varlong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            put((byte) v);
+        }
+
+        void string(String s) {
+            blob(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void blob(byte[] bytes) {
+            if (bytes == null) {
+                varint(0);
+                return;
+            }
+            varint(bytes.length);
+            if (len + bytes.length > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + bytes.length));
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(buf, len);
+        }
+    }
+
+    private static final class Reader {
+        final byte[] data;
+        private int pos;
+        private final int end;
+
+        Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        int header() throws IOException {
+            if (get() != (MAGIC & 0xFF)) throw new IOException("Not a binary envelope frame");
+            int version = get();
+            if (version != VERSION) throw new IOException("Unsupported binary envelope version " + version);
+            return varint();
+        }
+
+        int get() throws IOException {
+            if (pos >= end) throw new IOException("Truncated binary envelope");
+            return data[pos++] & 0xFF;
+        }
+
+        int varint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = get();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long varlong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = get();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int skip(int n) throws IOException {
+            if (n < 0 || n > end - pos) throw new IOException("Truncated binary envelope");
+            int at = pos;
+            pos += n;
+            return at;
+        }
+
+        String string() throws IOException {
+            int n = varint();
+            int at = skip(n);
+            return new String(data, at, n, StandardCharsets.UTF_8);
+        }
+    }
+}
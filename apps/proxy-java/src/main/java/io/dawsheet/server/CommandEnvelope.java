@@ -1,6 +1,10 @@
 package io.dawsheet.server;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,4 +29,118 @@ public class CommandEnvelope {
     public List<Map<String, Object>> transform;
     @JsonProperty("meta")
     public Map<String, Object> meta;
+
+    // Primitive payload slots, filled by EnvelopeDecoder instead of a boxed payload map.
+    // A slot is only meaningful when its bit is set in 'slots'.
+    public static final int SLOT_NOTE = 1;
+    public static final int SLOT_NOTE_NAME = 1 << 1;
+    public static final int SLOT_VELOCITY = 1 << 2;
+    public static final int SLOT_CHANNEL = 1 << 3;
+    public static final int SLOT_CC = 1 << 4;
+    public static final int SLOT_VALUE = 1 << 5;
+    public static final int SLOT_DURATION = 1 << 6;
+    public static final int SLOT_PROGRAM = 1 << 7;
+
+    @JsonIgnore public int slots;
+    @JsonIgnore public int note;
+    @JsonIgnore public String noteName;
+    @JsonIgnore public int velocity;
+    @JsonIgnore public int channel;
+    @JsonIgnore public int cc;
+    @JsonIgnore public int value;
+    @JsonIgnore public int program;
+    @JsonIgnore public double durationSec;
+    /** True once a "payload" object was decoded, even if all of its fields went into slots. */
+    @JsonIgnore public boolean payloadPresent;
+    /** Decoded payload fields without a primitive slot. Reused across decodes. */
+    @JsonIgnore public final Map<String, Object> extra = new HashMap<>();
+    /** Decoded top-level fields the envelope does not define, so validation can reject them. Reused across decodes. */
+    @JsonIgnore public final Map<String, Object> unknown = new HashMap<>();
+    /** System.nanoTime at each {@link LatencyStage} this command has reached, by ordinal; 0 if not reached. */
+    @JsonIgnore public final long[] stamps = new long[LatencyStage.COUNT];
+
+    public boolean has(int slot) {
+        return (slots & slot) != 0;
+    }
+
+    /** Stamp {@code stage} with the current nanoTime. */
+    public void stamp(LatencyStage stage) {
+        stamps[stage.ordinal()] = System.nanoTime();
+    }
+
+    public boolean hasPayload() {
+        return payload != null || payloadPresent;
+    }
+
+    /**
+     * Payload as a map. Slot-backed envelopes materialize (and cache) the map on first call, so
+     * only consumers that still need the boxed form pay for it.
+     */
+    public Map<String, Object> payloadMap() {
+        if (payload == null && payloadPresent) {
+            payload = toPayloadMap();
+        }
+        return payload;
+    }
+
+    /** Fresh map view of the payload (slots plus extra fields) that leaves the envelope untouched. */
+    public Map<String, Object> toPayloadMap() {
+        if (payload != null) return new HashMap<>(payload);
+        Map<String, Object> m = new HashMap<>(extra);
+        if (has(SLOT_NOTE)) m.put("note", note);
+        else if (has(SLOT_NOTE_NAME)) m.put("note", noteName);
+        if (has(SLOT_VELOCITY)) m.put("velocity", velocity);
+        if (has(SLOT_CHANNEL)) m.put("channel", channel);
+        if (has(SLOT_CC)) m.put("cc", cc);
+        if (has(SLOT_VALUE)) m.put("value", value);
+        if (has(SLOT_PROGRAM)) m.put("program", program);
+        if (has(SLOT_DURATION)) m.put("durationSec", durationSec);
+        return m;
+    }
+
+    /** Clears every field so a pooled envelope can be decoded into again. */
+    public void reset() {
+        v = 0;
+        type = id = origin = at = quantize = target = null;
+        payload = null;
+        transform = null;
+        meta = null;
+        slots = 0;
+        note = velocity = channel = cc = value = program = 0;
+        noteName = null;
+        durationSec = 0.0;
+        payloadPresent = false;
+        extra.clear();
+        unknown.clear();
+        Arrays.fill(stamps, 0L);
+    }
+
+    /** Detached copy, for envelopes that must outlive a pooled instance (e.g. scheduled commands). */
+    public CommandEnvelope copy() {
+        CommandEnvelope c = new CommandEnvelope();
+        c.v = v;
+        c.type = type;
+        c.id = id;
+        c.origin = origin;
+        c.at = at;
+        c.quantize = quantize;
+        c.target = target;
+        c.payload = payload != null ? new HashMap<>(payload) : null;
+        c.transform = transform != null ? new ArrayList<>(transform) : null;
+        c.meta = meta;
+        c.slots = slots;
+        c.note = note;
+        c.noteName = noteName;
+        c.velocity = velocity;
+        c.channel = channel;
+        c.cc = cc;
+        c.value = value;
+        c.program = program;
+        c.durationSec = durationSec;
+        c.payloadPresent = payloadPresent;
+        c.extra.putAll(extra);
+        c.unknown.putAll(unknown);
+        System.arraycopy(stamps, 0, c.stamps, 0, stamps.length);
+        return c;
+    }
 }
@@ -4,16 +4,57 @@ import com.networknt.schema.JsonSchema;
 import com.networknt.schema.JsonSchemaFactory;
 import com.networknt.schema.SpecVersion;
 import com.networknt.schema.ValidationMessage;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Validates envelopes against {@code commands.schema.json}.
+ *
+ * Types with a compiled payload rule go through {@link FastEnvelopeValidator}; anything else (unknown
+ * types, payload schemas the fast path cannot compile) uses the full networknt schema. The mode can be
+ * forced with {@code PROXY_VALIDATION}: {@code fast} (default), {@code full}, or {@code both}, which
+ * runs both, logs any disagreement and trusts the full schema.
+ */
 public class CommandEnvelopeValidator {
+    private static final Logger log = LoggerFactory.getLogger(CommandEnvelopeValidator.class);
+
+    public enum Mode {
+        FAST, FULL, BOTH;
+
+        static Mode fromEnv() {
+            String v = System.getenv("PROXY_VALIDATION");
+            if (v == null || v.isBlank()) return FAST;
+            try {
+                return Mode.valueOf(v.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return FAST;
+            }
+        }
+    }
+
     private final JsonSchema schema;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final FastEnvelopeValidator fast;
+    private final Mode mode;
+    // Absent envelope fields are omitted, not serialized as nulls the schema would reject
+    private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
     public CommandEnvelopeValidator(String schemaResourcePath) throws Exception {
+        this(schemaResourcePath, Mode.fromEnv());
+    }
+
+    public CommandEnvelopeValidator(String schemaResourcePath, Mode mode) throws Exception {
         JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7);
         try (InputStream is = CommandEnvelopeValidator.class.getClassLoader().getResourceAsStream(schemaResourcePath)) {
             if (is == null) {
@@ -21,11 +62,58 @@ public class CommandEnvelopeValidator {
             }
             JsonNode schemaNode = mapper.readTree(is);
             this.schema = factory.getSchema(schemaNode);
+            this.fast = compileFast(schemaNode);
+        }
+        this.mode = mode;
+    }
+
+    private static FastEnvelopeValidator compileFast(JsonNode schemaNode) {
+        try {
+            FastEnvelopeValidator v = FastEnvelopeValidator.compile(schemaNode);
+            log.info("Compiled fast validators for {} command types", v.supportedTypes().size());
+            return v;
+        } catch (FastEnvelopeValidator.UnsupportedSchemaException | RuntimeException e) {
+            log.warn("Could not compile fast validators, using the full schema only: {}", e.toString());
+            return null;
+        }
+    }
+
+    /** Violation messages for the envelope; empty when it is valid. */
+    public Collection<String> validate(CommandEnvelope envelope) throws Exception {
+        boolean fastPath = fast != null && mode != Mode.FULL && fast.supports(envelope.type);
+        if (!fastPath) return messages(validateFull(envelope));
+        List<String> fastResult = fast.validate(envelope);
+        if (mode != Mode.BOTH) return fastResult;
+
+        Collection<String> fullResult = messages(validateFull(envelope));
+        if (fastResult.isEmpty() != fullResult.isEmpty()) {
+            log.warn("Validator disagreement for {} id={}: fast={} full={}", envelope.type, envelope.id, fastResult, fullResult);
         }
+        return fullResult;
     }
 
-    public Set<ValidationMessage> validate(CommandEnvelope envelope) throws Exception {
+    /** Full JSON Schema validation of the envelope. */
+    public Set<ValidationMessage> validateFull(CommandEnvelope envelope) throws Exception {
         JsonNode node = mapper.valueToTree(envelope);
+        if (envelope.payload == null && envelope.payloadPresent) {
+            // Slot-backed envelope: validate a map view without materializing it on the envelope
+            ((ObjectNode) node).set("payload", mapper.valueToTree(envelope.toPayloadMap()));
+        }
+        for (Map.Entry<String, Object> e : envelope.unknown.entrySet()) {
+            if (!node.has(e.getKey())) ((ObjectNode) node).set(e.getKey(), mapper.valueToTree(e.getValue()));
+        }
         return schema.validate(node);
     }
+
+    /** Fast-path result, or null if the type has no compiled validator. */
+    List<String> validateFast(CommandEnvelope envelope) {
+        return fast != null && fast.supports(envelope.type) ? fast.validate(envelope) : null;
+    }
+
+    private static Collection<String> messages(Set<ValidationMessage> violations) {
+        if (violations.isEmpty()) return List.of();
+        List<String> out = new ArrayList<>(violations.size());
+        for (ValidationMessage m : violations) out.add(m.getMessage());
+        return out;
+    }
 }
@@ -0,0 +1,33 @@
+package io.dawsheet.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One {@link CommandRouter#handle} call: admission, validation, transform and inline execution or scheduling. */
+@Name("io.dawsheet.Command")
+@Label("Command")
+@Category({"DAWSheet", "Commands"})
+@Description("A command envelope handled by the router")
+@StackTrace(false)
+final class CommandEvent extends Event {
+    @Label("Id")
+    String id;
+
+    @Label("Type")
+    String type;
+
+    @Label("Target")
+    String target;
+
+    @Label("Channel")
+    @Description("MIDI channel (1-16), or 0 if the command has none")
+    int channel;
+
+    @Label("Queue Depth")
+    @Description("Commands waiting for their 'at' time when this one was handled")
+    int queueDepth;
+}
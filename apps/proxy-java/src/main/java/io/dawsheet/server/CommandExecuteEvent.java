@@ -0,0 +1,42 @@
+package io.dawsheet.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** A command running at its due time, inline or from the scheduler; late starts show up in {@code lateness}. */
+@Name("io.dawsheet.CommandExecute")
+@Label("Command Execute")
+@Category({"DAWSheet", "Commands"})
+@Description("A command executed at (or after) its scheduled time")
+@StackTrace(false)
+final class CommandExecuteEvent extends Event {
+    @Label("Id")
+    String id;
+
+    @Label("Type")
+    String type;
+
+    @Label("Channel")
+    int channel;
+
+    @Label("Scheduled Nanos")
+    @Description("System.nanoTime the command was due")
+    long scheduledNanos;
+
+    @Label("Actual Nanos")
+    @Description("System.nanoTime execution started")
+    long actualNanos;
+
+    @Label("Lateness")
+    @Timespan(Timespan.NANOSECONDS)
+    long lateness;
+
+    @Label("Queue Depth")
+    @Description("Commands still waiting in the scheduler")
+    int queueDepth;
+}
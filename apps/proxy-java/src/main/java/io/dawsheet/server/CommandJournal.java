@@ -0,0 +1,182 @@
+package io.dawsheet.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of every command the proxy accepted, for show forensics and replay.
+ *
+ * The journal is a directory of fixed-size segment files, each memory-mapped once when it is
+ * created, so an append is a copy into the mapping with no syscall. When a record does not fit the
+ * rest of the current segment, the next segment is created. Segment layout (little-endian):
+ * <pre>
+ *   header:  int MAGIC, int VERSION, long createdAt (epoch millis)
+ *   record:  int length, long receivedAt (epoch nanos), long effectiveAt (epoch nanos),
+ *            byte[length - 16] single-envelope {@link BinaryEnvelopeCodec} frame
+ * </pre>
+ * A length of 0 ends the segment. The length is written after the rest of the record, so a record
+ * torn by a crash reads as the end of the segment.
+ *
+ * Envelopes are journaled after transforms, with the transform list dropped, so replaying a record
+ * plays exactly what was played. Pages are flushed by the OS; {@link #close()} forces them.
+ */
+public final class CommandJournal implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(CommandJournal.class);
+
+    public static final int MAGIC = 0x44534A31; // "DSJ1"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_HEADER_BYTES = 20;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".dsj";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final BinaryEnvelopeCodec codec = new BinaryEnvelopeCodec();
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private boolean closed;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public CommandJournal(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = (int) Math.min(Integer.MAX_VALUE, Math.max(4096L, segmentBytes));
+        Files.createDirectories(dir);
+        // Continue after the newest existing segment; earlier runs are never overwritten
+        try (Stream<Path> files = Files.list(dir)) {
+            this.segmentIndex = files.mapToInt(CommandJournal::segmentNumber).max().orElse(0);
+        }
+        roll();
+    }
+
+    /**
+     * Journal in {@code JOURNAL_DIR} with segments of {@code JOURNAL_SEGMENT_MB} (default 64), or
+     * null if {@code JOURNAL_DIR} is not set.
+     */
+    public static CommandJournal fromEnv() throws IOException {
+        String dir = System.getenv("JOURNAL_DIR");
+        if (dir == null || dir.isBlank()) return null;
+        long segmentBytes = DEFAULT_SEGMENT_BYTES;
+        String mb = System.getenv("JOURNAL_SEGMENT_MB");
+        if (mb != null && !mb.isBlank()) {
+            try {
+                segmentBytes = Long.parseLong(mb.trim()) * 1024 * 1024;
+            } catch (NumberFormatException ex) {
+                log.warn("Ignoring invalid JOURNAL_SEGMENT_MB='{}'", mb);
+            }
+        }
+        return new CommandJournal(Paths.get(dir.trim()), segmentBytes);
+    }
+
+    /**
+     * Record an accepted envelope. {@code transformed} is the transformed payload for map-backed
+     * envelopes, or null if the envelope's slots were transformed in place. Never throws; failures
+     * are counted in {@link #droppedCount()}.
+     */
+    public void append(CommandEnvelope env, Map<String, Object> transformed, Instant receivedAt, Instant effectiveAt) {
+        byte[] frame;
+        try {
+            CommandEnvelope record = env.copy();
+            record.transform = null;
+            if (transformed != null) record.payload = transformed;
+            frame = codec.encode(record);
+        } catch (IOException | RuntimeException e) {
+            dropped.incrementAndGet();
+            log.warn("Could not journal {} id={}: {}", env.type, env.id, e.toString());
+            return;
+        }
+        int length = 16 + frame.length;
+        if (RECORD_HEADER_BYTES + frame.length > segmentBytes - HEADER_BYTES - 4) {
+            dropped.incrementAndGet();
+            log.warn("Journal record for id={} is larger than a segment ({} bytes)", env.id, frame.length);
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                dropped.incrementAndGet();
+                return;
+            }
+            try {
+                // Keep 4 bytes for the terminating zero length
+                if (segment.remaining() < RECORD_HEADER_BYTES + frame.length + 4) roll();
+            } catch (IOException e) {
+                dropped.incrementAndGet();
+                log.warn("Could not roll journal segment: {}", e.toString());
+                return;
+            }
+            int pos = segment.position();
+            segment.putLong(pos + 4, epochNanos(receivedAt));
+            segment.putLong(pos + 12, epochNanos(effectiveAt));
+            segment.put(pos + RECORD_HEADER_BYTES, frame);
+            segment.putInt(pos, length);
+            segment.position(pos + RECORD_HEADER_BYTES + frame.length);
+        }
+        appended.incrementAndGet();
+    }
+
+    public Path directory() { return dir; }
+
+    public long appendedCount() { return appended.get(); }
+
+    public long droppedCount() { return dropped.get(); }
+
+    /** Force the current segment to disk. Records appended after close are dropped. */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        segment.force();
+        segment = null;
+        log.info("Journal closed — appended={}, dropped={}", appended.get(), dropped.get());
+    }
+
+    private void roll() throws IOException {
+        if (segment != null) segment.force();
+        segmentIndex++;
+        Path file = dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            segment = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putLong(System.currentTimeMillis());
+        log.info("Journal segment {}", file);
+    }
+
+    static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) return 0;
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static long epochNanos(Instant t) {
+        return t == null ? 0L : t.getEpochSecond() * 1_000_000_000L + t.getNano();
+    }
+
+    static Instant instant(long epochNanos) {
+        return epochNanos == 0L ? null
+                : Instant.ofEpochSecond(Math.floorDiv(epochNanos, 1_000_000_000L), Math.floorMod(epochNanos, 1_000_000_000L));
+    }
+}
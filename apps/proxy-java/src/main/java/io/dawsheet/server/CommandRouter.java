@@ -1,119 +1,543 @@
 package io.dawsheet.server;
 
+import io.dawsheet.midi.Arpeggiator;
+import io.dawsheet.midi.ChordVoicings;
 import io.dawsheet.midi.MidiOut;
+import io.dawsheet.midi.ModulationEngine;
+import io.dawsheet.midi.NoteUtil;
+import io.dawsheet.midi.SongPlayer;
+import io.dawsheet.midi.StepSequencer;
+import io.dawsheet.transport.TransportClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.sound.midi.ShortMessage;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import com.networknt.schema.ValidationMessage;
+public class CommandRouter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(CommandRouter.class);
+    static final String BATCH = "BATCH";
+    static final String LEGACY_NOTE = "NOTE";
 
-public class CommandRouter {
     private final CommandEnvelopeValidator validator;
-    private final TransformEngine transformEngine = new TransformEngine();
+    private final TransformEngine transformEngine;
     private final StatusPublisher statusPublisher;
+    private final TransportClock clock;
+    private final CommandScheduler scheduler;
+    private final DedupIndex dedup; // null when disabled
+    private final ChordVoicings chords = new ChordVoicings();
+    private volatile MidiOut midi; // null: chords are resolved but not sent
+    private volatile ModulationEngine modulation; // null: CC commands are checked but not sent
+    private volatile StepSequencer sequencer; // null: pattern commands are checked but not played
+    private volatile Arpeggiator arpeggiator; // null: ARPEGGIATE is checked but not played
+    private volatile SongPlayer song; // null: CUE.GOTO is checked but moves no song
+    private volatile CommandJournal journal; // null when disabled
+    private volatile LatencyMetrics metrics; // null when disabled
 
     public CommandRouter(String schemaResourcePath, StatusPublisher statusPublisher) throws Exception {
+        this(schemaResourcePath, statusPublisher, TransportClock.fromEnv());
+    }
+
+    public CommandRouter(String schemaResourcePath, StatusPublisher statusPublisher, TransportClock clock) throws Exception {
+        this(schemaResourcePath, statusPublisher, clock, DedupIndex.fromEnv());
+    }
+
+    public CommandRouter(String schemaResourcePath, StatusPublisher statusPublisher, TransportClock clock,
+                         DedupIndex dedup) throws Exception {
         this.validator = new CommandEnvelopeValidator(schemaResourcePath);
         this.statusPublisher = statusPublisher;
+        this.clock = clock;
+        this.transformEngine = new TransformEngine(clock);
+        this.scheduler = new CommandScheduler(clock);
+        this.dedup = dedup;
+    }
+
+    public TransportClock clock() {
+        return clock;
+    }
+
+    /** Record every accepted command, after transforms, in {@code journal} (null to stop). */
+    public void journalTo(CommandJournal journal) {
+        this.journal = journal;
+    }
+
+    /** Send chords to {@code midi} (null to stop). */
+    public void midiTo(MidiOut midi) {
+        this.midi = midi;
+    }
+
+    /** Run CC.SET, CC.RAMP and CC.LFO through {@code modulation} (null to stop). */
+    public void modulationTo(ModulationEngine modulation) {
+        this.modulation = modulation;
+    }
+
+    /** Play PATTERN.TRIGGER and apply STEP.* edits on {@code sequencer} (null to stop). */
+    public void sequencerTo(StepSequencer sequencer) {
+        this.sequencer = sequencer;
+    }
+
+    /** Play ARPEGGIATE on {@code arpeggiator} and tell it which chord each channel holds (null to stop). */
+    public void arpeggiatorTo(Arpeggiator arpeggiator) {
+        this.arpeggiator = arpeggiator;
+    }
+
+    /** Seek {@code song} for CUE.GOTO and for DAW.SCENE.LAUNCH scenes it knows (null to stop). */
+    public void songTo(SongPlayer song) {
+        this.song = song;
+    }
+
+    /** Record stage latencies of executed commands in {@code metrics} (null to stop). */
+    public void metricsTo(LatencyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Dedup index consulted before execution, or null if dedup is disabled. */
+    public DedupIndex dedup() {
+        return dedup;
     }
 
     public void handle(CommandEnvelope env) {
+        handle(env, statusPublisher);
+    }
+
+    /**
+     * Handle an envelope, reporting its ACK/NACK to {@code replyTo} instead of the router's own
+     * publisher (e.g. back to the WebSocket connection it arrived on).
+     */
+    public void handle(CommandEnvelope env, StatusPublisher replyTo) {
+        // Allocation is scalar-replaced and commit() is a no-op unless a JFR recording enables the event
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        try {
+            route(env, replyTo);
+        } finally {
+            if (event.shouldCommit() && env != null) {
+                event.id = env.id;
+                event.type = env.type;
+                event.target = env.target;
+                event.channel = channelOf(env, null);
+                event.queueDepth = scheduler.queued();
+                event.commit();
+            }
+        }
+    }
+
+    private void route(CommandEnvelope env, StatusPublisher replyTo) {
+        // Ingresses stamp arrival themselves; direct callers (tests, replay) are received now
+        if (env != null && env.stamps[LatencyStage.RECEIVED.ordinal()] == 0) env.stamp(LatencyStage.RECEIVED);
+        long receivedNanos = env != null ? env.stamps[LatencyStage.RECEIVED.ordinal()] : System.nanoTime();
+        if (dedup != null && env != null && env.id != null && !env.id.isEmpty()) {
+            // Redelivered copies get the first copy's ACK instead of playing again
+            long seen = dedup.admit(env.id);
+            if (seen != DedupIndex.MISS) {
+                Instant effectiveAt = seen == DedupIndex.IN_FLIGHT ? null : DedupIndex.effectiveAt(seen);
+                replyTo.publish(true, env.origin, env.target, effectiveAt, "duplicate", null);
+                return;
+            }
+            replyTo = dedup.recording(env.id, replyTo);
+        }
+        if (env != null && LEGACY_NOTE.equals(env.type)) {
+            // Flat NOTE from the Sheets add-on predates the envelope schema; it always plays now
+            env.stamp(LatencyStage.VALIDATED);
+            dispatch(env, System.nanoTime(), receivedNanos, replyTo);
+            return;
+        }
+        if (!admit(env, replyTo)) return;
+        env.stamp(LatencyStage.VALIDATED);
+
+        // Resolve 'at' once against the transport clock
+        long anchorNanos;
+        try {
+            anchorNanos = scheduler.resolveAt(env.at);
+        } catch (IllegalArgumentException e) {
+            publishNack(replyTo, env.origin, env.target, Instant.now(), "invalid_at", e.getMessage());
+            return;
+        } catch (IllegalStateException e) {
+            publishNack(replyTo, env.origin, env.target, Instant.now(), "transport_stopped", e.getMessage());
+            return;
+        }
+
+        if (BATCH.equals(env.type)) {
+            handleBatch(env, anchorNanos, receivedNanos, replyTo);
+        } else {
+            dispatch(env, anchorNanos, receivedNanos, replyTo);
+        }
+    }
+
+    /** Required-field and schema checks; publishes the NACK and returns false if the envelope is rejected. */
+    private boolean admit(CommandEnvelope env, StatusPublisher replyTo) {
         // Basic required field checks before schema validation
         if (env == null || env.v != 1 || env.type == null || env.type.isEmpty() ||
                 env.id == null || env.id.isEmpty() || env.origin == null || env.origin.isEmpty() ||
                 env.at == null || env.at.isEmpty() || env.target == null || env.target.isEmpty() ||
-                env.payload == null) {
-            publishNack(env != null ? env.origin : null, env != null ? env.target : null, Instant.now(), "missing_required", "Envelope is missing required fields");
-            return;
+                !env.hasPayload()) {
+            publishNack(replyTo, env != null ? env.origin : null, env != null ? env.target : null, Instant.now(), "missing_required", "Envelope is missing required fields");
+            return false;
         }
 
-        Set<com.networknt.schema.ValidationMessage> violations;
+        Collection<String> violations;
         try {
             violations = validator.validate(env);
         } catch (Exception e) {
-            publishNack(env.origin, env.target, Instant.now(), "validation_error", e.getMessage());
-            return;
+            publishNack(replyTo, env.origin, env.target, Instant.now(), "validation_error", e.getMessage());
+            return false;
         }
         if (!violations.isEmpty()) {
-            publishNack(env.origin, env.target, Instant.now(), "schema_violation", violations.toString());
-            return;
+            publishNack(replyTo, env.origin, env.target, Instant.now(), "schema_violation", violations.toString());
+            return false;
         }
+        return true;
+    }
 
+    /** Transform, journal, then execute now or schedule for the due time. */
+    private void dispatch(CommandEnvelope env, long anchorNanos, long receivedNanos, StatusPublisher replyTo) {
         // Apply transforms (v1: transpose -> quantize -> humanize)
-    TransformEngine.Result tr = transformEngine.apply(env.id, env.at, env.transform, new HashMap<>(env.payload), env.quantize);
-        Map<String, Object> payload = tr.payload;
-        Instant effectiveAt = tr.effectiveAt;
+        // Slot-backed envelopes (EnvelopeDecoder) are transformed in place on their primitive slots
+        TransformEngine.Result tr;
+        try {
+            tr = env.payload == null
+                    ? transformEngine.apply(env, anchorNanos)
+                    : transformEngine.apply(env.id, anchorNanos, env.transform, new HashMap<>(env.payload), env.quantize);
+        } catch (IllegalArgumentException e) {
+            // e.g. scale_fit naming a scale that is not loaded
+            publishNack(replyTo, env.origin, env.target, Instant.now(), "invalid_transform", e.getMessage());
+            return;
+        }
+        long dueNanos = anchorNanos + tr.delayNanos;
+        env.stamp(LatencyStage.TRANSFORMED);
+        env.stamps[LatencyStage.SCHEDULED.ordinal()] = dueNanos;
+        CommandJournal j = journal;
+        if (j != null) j.append(env, tr.payload, CommandScheduler.toInstant(receivedNanos), tr.effectiveAt);
+
+        if (scheduler.isDue(dueNanos)) {
+            execute(env, tr.payload, dueNanos, tr.effectiveAt, replyTo);
+        } else {
+            // Pooled envelopes are recycled once handle() returns, so keep a detached copy
+            CommandEnvelope held = tr.payload == null ? env.copy() : env;
+            scheduler.schedule(dueNanos, () -> execute(held, tr.payload, dueNanos, tr.effectiveAt, replyTo));
+        }
+    }
 
+    /**
+     * Expand a BATCH envelope into sub-commands that share its anchor, origin, quantize and transform
+     * chain. Each item may be offset from the anchor by {@code offsetTicks} (transport ticks) or
+     * {@code offsetMs}. Item statuses are collected and reported as one aggregated ACK.
+     */
+    private void handleBatch(CommandEnvelope batch, long anchorNanos, long receivedNanos, StatusPublisher replyTo) {
+        List<?> items = (List<?>) batch.payloadMap().get("items");
+        BatchStatus status = new BatchStatus(batch.origin, batch.target, CommandScheduler.toInstant(anchorNanos), items.size(), replyTo);
+        double anchorTick = clock.tickAt(anchorNanos);
+        for (int i = 0; i < items.size(); i++) {
+            Map<?, ?> item = (Map<?, ?>) items.get(i);
+            CommandEnvelope sub = new CommandEnvelope();
+            sub.v = batch.v;
+            sub.type = (String) item.get("type");
+            sub.id = item.get("id") instanceof String ? (String) item.get("id") : batch.id + "#" + i;
+            sub.origin = batch.origin;
+            sub.at = batch.at;
+            sub.quantize = batch.quantize;
+            sub.target = item.get("target") instanceof String ? (String) item.get("target") : batch.target;
+            sub.payload = castMap(item.get("payload"));
+            sub.transform = batch.transform;
+            sub.meta = batch.meta;
+            System.arraycopy(batch.stamps, 0, sub.stamps, 0, sub.stamps.length);
+
+            StatusPublisher itemReply = status.item(i, sub.id);
+            if (BATCH.equals(sub.type)) {
+                publishNack(itemReply, sub.origin, sub.target, Instant.now(), "nested_batch", "BATCH items cannot be batches");
+                continue;
+            }
+            if (!admit(sub, itemReply)) continue;
+            sub.stamp(LatencyStage.VALIDATED);
+
+            long itemAnchor = anchorNanos;
+            if (item.get("offsetTicks") instanceof Number) {
+                // Measured through the tempo map, so offsets follow tempo changes inside the batch
+                long baseTick = (long) Math.floor(anchorTick);
+                long offset = ((Number) item.get("offsetTicks")).longValue();
+                itemAnchor += clock.nanosAtTick(baseTick + offset) - clock.nanosAtTick(baseTick);
+            } else if (item.get("offsetMs") instanceof Number) {
+                itemAnchor += (long) (((Number) item.get("offsetMs")).doubleValue() * 1_000_000L);
+            }
+            dispatch(sub, itemAnchor, receivedNanos, itemReply);
+        }
+    }
+
+    private void execute(CommandEnvelope env, Map<String, Object> transformed, long dueNanos, Instant effectiveAt,
+                         StatusPublisher replyTo) {
+        CommandExecuteEvent event = new CommandExecuteEvent();
+        event.begin();
         try {
+            Map<String, Object> payload = transformed != null ? transformed : env.payloadMap();
+            if (event.isEnabled()) {
+                event.actualNanos = System.nanoTime();
+                event.scheduledNanos = dueNanos;
+                event.lateness = Math.max(0L, event.actualNanos - dueNanos);
+            }
             switch (env.type) {
+                case "TRANSPORT.START":
+                    clock.start(dueNanos);
+                    break;
+                case "TRANSPORT.STOP":
+                    clock.stop();
+                    break;
+                case "TRANSPORT.TEMPO_SET":
+                    handleTempoSet(payload, dueNanos);
+                    break;
+                case LEGACY_NOTE:
+                    handleLegacyNote(env);
+                    break;
                 case "NOTE.PLAY":
-                    handleNotePlay(payload);
+                    handleNotePlay(env, payload);
                     break;
                 case "CC.SET":
-                    handleCcSet(payload);
+                    handleCcSet(env, payload);
                     break;
                 case "CC.RAMP":
-                    handleCcRamp(payload);
+                    handleCcRamp(env, payload, dueNanos);
+                    break;
+                case "CC.LFO":
+                    handleCcLfo(env, payload, dueNanos);
                     break;
                 case "PROGRAM.CHANGE":
-                    handleProgramChange(payload);
+                    handleProgramChange(env, payload);
                     break;
                 case "CHORD.PLAY":
-                    handleChordPlay(payload);
+                    handleChordPlay(env, payload);
+                    break;
+                case "ARPEGGIATE":
+                    handleArpeggiate(env, payload, dueNanos);
+                    break;
+                case "PATTERN.TRIGGER":
+                    handlePatternTrigger(env, payload, dueNanos);
+                    break;
+                case "STEP.RATCHET":
+                case "STEP.PROB":
+                    handleStepEdit(env.type, payload);
                     break;
                 case "DAW.CLIP.LAUNCH":
                     handleDawClipLaunch(payload);
                     break;
                 case "DAW.SCENE.LAUNCH":
-                    handleDawSceneLaunch(payload);
+                    handleDawSceneLaunch(payload, dueNanos);
+                    break;
+                case "CUE.GOTO":
+                    handleCueGoto(payload, dueNanos);
                     break;
                 default:
-                    publishNack(env.origin, env.target, effectiveAt, "unknown_type", "Unknown command type: " + env.type);
+                    publishNack(replyTo, env.origin, env.target, effectiveAt, "unknown_type", "Unknown command type: " + env.type);
                     return;
             }
-            publishAck(env.origin, env.target, effectiveAt);
+            // Handlers that talk to the MIDI receiver stamp the send themselves
+            if (env.stamps[LatencyStage.SENT.ordinal()] == 0) env.stamp(LatencyStage.SENT);
+            LatencyMetrics m = metrics;
+            if (m == null) {
+                publishAck(replyTo, env.origin, env.target, effectiveAt);
+            } else {
+                m.record(env);
+                if (m.inAck()) replyTo.publish(true, env.origin, env.target, effectiveAt, null, null, m.latency(env));
+                else publishAck(replyTo, env.origin, env.target, effectiveAt);
+            }
         } catch (Exception e) {
-            publishNack(env.origin, env.target, effectiveAt, "execution_error", e.getMessage());
+            publishNack(replyTo, env.origin, env.target, effectiveAt, "execution_error", e.getMessage());
+        } finally {
+            if (event.shouldCommit()) {
+                event.id = env.id;
+                event.type = env.type;
+                event.channel = channelOf(env, transformed);
+                event.queueDepth = scheduler.queued();
+                event.commit();
+            }
+        }
+    }
+
+    /** 1-based MIDI channel from the slot or payload, 0 if the command has none. */
+    private static int channelOf(CommandEnvelope env, Map<String, Object> payload) {
+        if (env.has(CommandEnvelope.SLOT_CHANNEL)) return env.channel;
+        Map<String, Object> p = payload != null ? payload : env.payload;
+        Object ch = p != null ? p.get("channel") : null;
+        return ch instanceof Number ? ((Number) ch).intValue() : 0;
+    }
+
+    private void handleTempoSet(Map<String, Object> payload, long atNanos) {
+        Object bpm = payload.get("bpm");
+        if (!(bpm instanceof Number)) throw new IllegalArgumentException("payload.bpm must be a number");
+        clock.setTempo(atNanos, ((Number) bpm).doubleValue());
+    }
+
+    /** Flat NOTE fields live in the slots; missing ones default to C4, velocity 100, half a second on channel 1. */
+    private void handleLegacyNote(CommandEnvelope env) {
+        int note = env.has(CommandEnvelope.SLOT_NOTE) ? env.note
+                : NoteUtil.parseNoteName(env.has(CommandEnvelope.SLOT_NOTE_NAME) ? env.noteName : "C4");
+        MidiOut out = midi;
+        if (out == null) return;
+        long sent = out.noteOn(env.has(CommandEnvelope.SLOT_CHANNEL) ? env.channel : 1, note,
+                env.has(CommandEnvelope.SLOT_VELOCITY) ? env.velocity : 100,
+                env.has(CommandEnvelope.SLOT_DURATION) ? env.durationSec : 0.5);
+        if (sent != 0L) env.stamps[LatencyStage.SENT.ordinal()] = sent;
+    }
+
+    private void handleNotePlay(CommandEnvelope env, Map<String, Object> payload) {
+        Object note = payload.get("note");
+        int midiNote = note instanceof String ? NoteUtil.parseNoteName((String) note) : intField(payload, "note");
+        Object durationSec = payload.get("durationSec");
+        if (!(durationSec instanceof Number)) throw new IllegalArgumentException("payload.durationSec must be a number");
+        MidiOut out = midi;
+        if (out == null) return;
+        long sent = out.noteOn(channelOf(env, payload), midiNote, intField(payload, "velocity"),
+                ((Number) durationSec).doubleValue());
+        if (sent != 0L) env.stamps[LatencyStage.SENT.ordinal()] = sent;
+    }
+
+    private void handleCcSet(CommandEnvelope env, Map<String, Object> payload) {
+        int cc = intField(payload, "cc");
+        int value = intField(payload, "value");
+        ModulationEngine m = modulation;
+        if (m != null) m.set(channelOf(env, payload) - 1, cc, value);
+    }
+
+    private void handleCcRamp(CommandEnvelope env, Map<String, Object> payload, long startNanos) {
+        int cc = intField(payload, "cc");
+        int from = intField(payload, "from");
+        int to = intField(payload, "to");
+        Object timeMs = payload.get("timeMs");
+        if (!(timeMs instanceof Number)) throw new IllegalArgumentException("payload.timeMs must be a number");
+        ModulationEngine m = modulation;
+        if (m != null) {
+            m.ramp(channelOf(env, payload) - 1, cc, from, to, (long) (((Number) timeMs).doubleValue() * 1e6), startNanos);
         }
     }
 
-    private void handleNotePlay(Map<String, Object> payload) {
-        MidiOut.playRaw(payload);
+    private void handleCcLfo(CommandEnvelope env, Map<String, Object> payload, long startNanos) {
+        int cc = intField(payload, "cc");
+        Object rate = payload.get("rateHz");
+        ModulationEngine m = modulation;
+        if (m != null) {
+            m.lfo(channelOf(env, payload) - 1, cc, (String) payload.get("waveform"),
+                    rate instanceof Number ? ((Number) rate).doubleValue() : 0.0, (String) payload.get("sync"),
+                    intField(payload, "depth"), intField(payload, "center"), startNanos);
+        }
+    }
+
+    private static int intField(Map<String, Object> payload, String name) {
+        Object v = payload.get(name);
+        if (!(v instanceof Number)) throw new IllegalArgumentException("payload." + name + " must be a number");
+        return ((Number) v).intValue();
+    }
+
+    /** PROGRAM.CHANGE, preceded by bank select (CC0 bankMsb, CC32 bankLsb) for whichever bank bytes are given. */
+    private void handleProgramChange(CommandEnvelope env, Map<String, Object> payload) {
+        int program = intField(payload, "program");
+        MidiOut out = midi;
+        if (out == null) return;
+        int channel = channelOf(env, payload);
+        if (payload.get("bankMsb") instanceof Number) out.controlChange(channel, 0, intField(payload, "bankMsb"));
+        if (payload.get("bankLsb") instanceof Number) out.controlChange(channel, 32, intField(payload, "bankLsb"));
+        long sent = out.shortMessage(ShortMessage.PROGRAM_CHANGE, channel, program, 0);
+        if (sent != 0L) env.stamps[LatencyStage.SENT.ordinal()] = sent;
+    }
+
+    private void handleChordPlay(CommandEnvelope env, Map<String, Object> payload) {
+        int[] notes = chords.resolve((String) payload.get("root"), (String) payload.get("quality"),
+                (String) payload.get("voicing"), intOr(payload.get("octave"), ChordVoicings.DEFAULT_OCTAVE));
+        Arpeggiator a = arpeggiator;
+        if (a != null) a.hold(channelOf(env, payload) - 1, notes);
+        MidiOut out = midi;
+        if (out == null) return;
+        long sent = out.chordOn(channelOf(env, payload), notes, intOr(payload.get("velocity"), 100),
+                payload.get("durationSec") instanceof Number ? ((Number) payload.get("durationSec")).doubleValue() : 0.5);
+        if (sent != 0L) env.stamps[LatencyStage.SENT.ordinal()] = sent;
     }
 
-    private void handleCcSet(Map<String, Object> payload) {
-        MidiOut.ccSet(payload);
+    private void handleArpeggiate(CommandEnvelope env, Map<String, Object> payload, long startNanos) {
+        Object gate = payload.get("gate");
+        Object lengthBeats = payload.get("lengthBeats");
+        if (!(gate instanceof Number)) throw new IllegalArgumentException("payload.gate must be a number");
+        if (!(lengthBeats instanceof Number)) throw new IllegalArgumentException("payload.lengthBeats must be a number");
+        Object notes = payload.get("notes");
+        Arpeggiator a = arpeggiator;
+        if (a == null) return;
+        a.start(channelOf(env, payload) - 1, notes instanceof List ? Arpeggiator.parseNotes((List<?>) notes) : null,
+                (String) payload.get("style"), (String) payload.get("rate"), ((Number) gate).doubleValue(),
+                ((Number) lengthBeats).doubleValue(), intOr(payload.get("velocity"), 100), startNanos);
     }
 
-    private void handleCcRamp(Map<String, Object> payload) {
-        MidiOut.ccRamp(payload);
+    private void handlePatternTrigger(CommandEnvelope env, Map<String, Object> payload, long startNanos) {
+        String id = (String) payload.get("pattern");
+        StepSequencer s = sequencer;
+        if (s == null) return;
+        Object steps = payload.get("steps");
+        if (steps instanceof List) s.define(id, (List<?>) steps);
+        if (Boolean.TRUE.equals(payload.get("stop"))) {
+            s.stop(id);
+            return;
+        }
+        s.trigger(id, channelOf(env, payload) - 1, (String) payload.get("rate"), intOr(payload.get("loops"), 1), startNanos);
     }
 
-    private void handleProgramChange(Map<String, Object> payload) {
-        MidiOut.programChange(payload);
+    private void handleStepEdit(String type, Map<String, Object> payload) {
+        String id = (String) payload.get("pattern");
+        int step = intField(payload, "step");
+        StepSequencer s = sequencer;
+        if (s == null) return;
+        if ("STEP.RATCHET".equals(type)) {
+            s.setRatchet(id, step, intField(payload, "ratchet"));
+        } else {
+            Object prob = payload.get("prob");
+            if (!(prob instanceof Number)) throw new IllegalArgumentException("payload.prob must be a number");
+            s.setProbability(id, step, ((Number) prob).doubleValue());
+        }
     }
 
-    private void handleChordPlay(Map<String, Object> payload) {
-        MidiOut.playChord(payload);
+    private static int intOr(Object v, int def) {
+        return v instanceof Number ? ((Number) v).intValue() : def;
     }
 
     private void handleDawClipLaunch(Map<String, Object> payload) {
         // Stub: wire to DAW integration later
-        System.out.println("DAW.CLIP.LAUNCH: " + payload);
+        log.info("DAW.CLIP.LAUNCH not wired to a DAW yet: {}", payload);
     }
 
-    private void handleDawSceneLaunch(Map<String, Object> payload) {
+    private void handleDawSceneLaunch(Map<String, Object> payload, long atNanos) {
+        SongPlayer s = song;
+        if (s != null && payload.get("scene") instanceof Number && s.launchScene(((Number) payload.get("scene")).intValue(), atNanos)) {
+            return;
+        }
         // Stub: wire to DAW integration later
-        System.out.println("DAW.SCENE.LAUNCH: " + payload);
+        log.info("DAW.SCENE.LAUNCH not in the loaded song and not wired to a DAW yet: {}", payload);
+    }
+
+    private void handleCueGoto(Map<String, Object> payload, long atNanos) {
+        Object position = payload.get("position");
+        if (!(position instanceof String)) throw new IllegalArgumentException("payload.position must be a string");
+        SongPlayer s = song;
+        if (s != null) s.seek((String) position, atNanos);
+    }
+
+    private static void publishAck(StatusPublisher to, String origin, String target, Instant effectiveAt) {
+        to.publish(true, origin, target, effectiveAt, null, null);
+    }
+
+    private static void publishNack(StatusPublisher to, String origin, String target, Instant effectiveAt, String code, String error) {
+        to.publish(false, origin, target, effectiveAt, code, error);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castMap(Object o) {
+        return o instanceof Map ? (Map<String, Object>) o : null;
     }
 
-    private void publishAck(String origin, String target, Instant effectiveAt) {
-        statusPublisher.publish(true, origin, target, effectiveAt, null, null);
+    /** Number of commands waiting for their 'at' time. */
+    public int pendingScheduled() {
+        return scheduler.queued();
     }
 
-    private void publishNack(String origin, String target, Instant effectiveAt, String code, String error) {
-        statusPublisher.publish(false, origin, target, effectiveAt, code, error);
+    @Override
+    public void close() {
+        scheduler.close();
     }
 }
@@ -0,0 +1,208 @@
+package io.dawsheet.server;
+
+import io.dawsheet.transport.TransportClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lookahead scheduler for envelope {@code at} times.
+ *
+ * {@link #resolveAt(String)} turns "now", "bar:beat[:ticks]" or an ISO-8601 datetime into an
+ * absolute {@link System#nanoTime()} deadline once, against the transport clock. Future commands
+ * are queued and run from a single high-priority dispatch thread, which wakes shortly before each
+ * deadline and spins the remainder so commands land on the grid regardless of delivery jitter.
+ */
+public class CommandScheduler implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(CommandScheduler.class);
+
+    /** Deadlines closer than this are executed inline by the caller. */
+    static final long IMMEDIATE_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    /** How early the dispatch thread wakes before a deadline to absorb park/wakeup latency. */
+    static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(300);
+
+    private final TransportClock clock;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private long seq;
+    private Thread dispatcher;
+    private volatile boolean running = true;
+
+    private static final class Entry implements Comparable<Entry> {
+        final long dueNanos;
+        final long seq;
+        final Runnable task;
+
+        Entry(long dueNanos, long seq, Runnable task) {
+            this.dueNanos = dueNanos;
+            this.seq = seq;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int c = Long.compare(dueNanos - o.dueNanos, 0L);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    public CommandScheduler(TransportClock clock) {
+        this.clock = clock;
+    }
+
+    public TransportClock clock() { return clock; }
+
+    /**
+     * Resolve an envelope {@code at} value to an absolute nanoTime.
+     *
+     * @throws IllegalArgumentException if the value is not one of the supported formats
+     * @throws IllegalStateException if a bar:beat position is given while the transport is stopped
+     */
+    public long resolveAt(String at) {
+        long now = System.nanoTime();
+        if (at == null || at.isEmpty() || "now".equals(at)) return now;
+        if (Character.isDigit(at.charAt(0)) && at.indexOf('T') < 0) {
+            return resolveBarBeat(at);
+        }
+        try {
+            Instant when = parseIso(at);
+            Duration ahead = Duration.between(Instant.now(), when);
+            // Clamp to a day either way so the nanos arithmetic cannot overflow
+            long aheadNanos = Math.max(-TimeUnit.DAYS.toNanos(1), Math.min(TimeUnit.DAYS.toNanos(1),
+                    ahead.getSeconds() * 1_000_000_000L + ahead.getNano()));
+            return now + aheadNanos;
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new IllegalArgumentException("Unsupported 'at' value: " + at);
+        }
+    }
+
+    private static Instant parseIso(String at) {
+        try {
+            return OffsetDateTime.parse(at).toInstant();
+        } catch (DateTimeParseException e) {
+            // No offset given: treat as UTC
+            return LocalDateTime.parse(at).toInstant(ZoneOffset.UTC);
+        }
+    }
+
+    private long resolveBarBeat(String at) {
+        int[] parts = new int[3];
+        int n = 0;
+        int val = 0;
+        boolean digits = false;
+        for (int i = 0; i < at.length(); i++) {
+            char c = at.charAt(i);
+            if (c >= '0' && c <= '9') {
+                val = val * 10 + (c - '0');
+                digits = true;
+            } else if (c == ':' && digits && n < 2) {
+                parts[n++] = val;
+                val = 0;
+                digits = false;
+            } else {
+                throw new IllegalArgumentException("Unsupported 'at' value: " + at);
+            }
+        }
+        if (!digits || n < 1) throw new IllegalArgumentException("Unsupported 'at' value: " + at);
+        parts[n] = val;
+        if (!clock.isRunning()) throw new IllegalStateException("Transport is stopped");
+        return clock.nanosAt(parts[0], parts[1], n == 2 ? parts[2] : 0);
+    }
+
+    /** True if a deadline is close enough (or already past) to run inline. */
+    public boolean isDue(long dueNanos) {
+        return dueNanos - System.nanoTime() <= IMMEDIATE_NANOS;
+    }
+
+    /** Wall-clock instant corresponding to a nanoTime deadline, for ACK reporting. */
+    public static Instant toInstant(long nanos) {
+        return Instant.now().plusNanos(nanos - System.nanoTime());
+    }
+
+    /** Queue a task to run on the dispatch thread at the given nanoTime. */
+    public void schedule(long dueNanos, Runnable task) {
+        lock.lock();
+        try {
+            if (!running) throw new IllegalStateException("Scheduler is closed");
+            if (dispatcher == null) startDispatcher();
+            Entry e = new Entry(dueNanos, seq++, task);
+            queue.add(e);
+            if (queue.peek() == e) changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startDispatcher() {
+        dispatcher = new Thread(this::dispatchLoop, "command-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.setPriority(Thread.MAX_PRIORITY);
+        dispatcher.start();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            Entry next;
+            lock.lock();
+            try {
+                next = queue.peek();
+                if (next == null) {
+                    changed.await();
+                    continue;
+                }
+                long wait = next.dueNanos - System.nanoTime() - SPIN_NANOS;
+                if (wait > 0) {
+                    changed.awaitNanos(wait);
+                    continue;
+                }
+                queue.poll();
+            } catch (InterruptedException ie) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            while (next.dueNanos - System.nanoTime() > 0) {
+                Thread.onSpinWait();
+            }
+            try {
+                next.task.run();
+            } catch (Exception e) {
+                log.error("Scheduled command failed", e);
+            }
+        }
+    }
+
+    /** Stops the dispatch thread; queued commands that have not fired are dropped. */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            queue.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (dispatcher != null) dispatcher.interrupt();
+    }
+}
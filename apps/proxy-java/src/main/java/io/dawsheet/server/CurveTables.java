@@ -0,0 +1,103 @@
+package io.dawsheet.server;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shared 128-entry lookup tables for 7-bit level transforms (curve, limit, velocity_curve).
+ *
+ * MIDI data bytes are always 0..127, so every level op is materialized once into a {@code byte[128]}
+ * and applying it is a single array load. Curve tables are cached per (shape, amount) with the
+ * amount quantized to 1/{@value #AMOUNT_STEPS}; tables returned from here are shared and must not
+ * be modified.
+ */
+public final class CurveTables {
+    public static final int AMOUNT_STEPS = 256;
+
+    private static final String[] SHAPES = {"exp", "log", "sine"};
+    // Indexed by shape * (AMOUNT_STEPS + 1) + quantized amount; readers never see a half-built table
+    private static final AtomicReferenceArray<byte[]> CACHE = new AtomicReferenceArray<>(SHAPES.length * (AMOUNT_STEPS + 1));
+    private static final byte[] IDENTITY = new byte[128];
+
+    static {
+        for (int i = 0; i < 128; i++) IDENTITY[i] = (byte) i;
+    }
+
+    private CurveTables() {}
+
+    /** Identity table (shared). */
+    public static byte[] identity() {
+        return IDENTITY;
+    }
+
+    /** Curve table for a shape ("exp", "log", "sine") and amount in [0, 1]; unknown shapes are linear. */
+    public static byte[] curve(String shape, double amount) {
+        int s = shapeIndex(shape);
+        if (s < 0) return IDENTITY;
+        int q = (int) Math.round(Math.max(0.0, Math.min(1.0, amount)) * AMOUNT_STEPS);
+        int slot = s * (AMOUNT_STEPS + 1) + q;
+        byte[] table = CACHE.get(slot);
+        if (table == null) {
+            // Concurrent builders produce identical tables; the first one published is shared
+            table = build(SHAPES[s], (double) q / AMOUNT_STEPS);
+            if (!CACHE.compareAndSet(slot, null, table)) table = CACHE.get(slot);
+        }
+        return table;
+    }
+
+    /** Clamp table for [min, max], with bounds limited to the 7-bit range. */
+    public static byte[] limit(int min, int max) {
+        if (min > max) { int tmp = min; min = max; max = tmp; }
+        int lo = Math.max(0, Math.min(127, min));
+        int hi = Math.max(0, Math.min(127, max));
+        byte[] table = new byte[128];
+        for (int i = 0; i < 128; i++) table[i] = (byte) Math.max(lo, Math.min(hi, i));
+        return table;
+    }
+
+    /** Table equivalent to applying {@code first} and then {@code second}. */
+    public static byte[] compose(byte[] first, byte[] second) {
+        if (first == null || first == IDENTITY) return second;
+        if (second == null || second == IDENTITY) return first;
+        byte[] table = new byte[128];
+        for (int i = 0; i < 128; i++) table[i] = second[first[i]];
+        return table;
+    }
+
+    /** Look up a value, clamping out-of-range input to 0..127 first. */
+    public static int apply(byte[] table, int v) {
+        return table[v < 0 ? 0 : (v > 127 ? 127 : v)];
+    }
+
+    private static int shapeIndex(String shape) {
+        for (int i = 0; i < SHAPES.length; i++) {
+            if (SHAPES[i].equals(shape)) return i;
+        }
+        return -1;
+    }
+
+    private static byte[] build(String shape, double amount) {
+        byte[] table = new byte[128];
+        for (int v = 0; v < 128; v++) {
+            double x = v / 127.0;
+            double y;
+            switch (shape) {
+                case "exp":
+                    y = Math.pow(x, 1.0 + 4.0 * amount);
+                    break;
+                case "log":
+                    y = Math.log1p((Math.E - 1) * x) / Math.log(Math.E);
+                    // mix towards linear based on amount
+                    y = (1 - amount) * x + amount * y;
+                    break;
+                case "sine":
+                    y = (1 - amount) * x + amount * Math.sin(x * Math.PI / 2.0);
+                    break;
+                default:
+                    y = x;
+            }
+            int out = (int) Math.round(y * 127.0);
+            table[v] = (byte) Math.max(0, Math.min(127, out));
+        }
+        return table;
+    }
+}
@@ -0,0 +1,253 @@
+package io.dawsheet.server;
+
+import io.dawsheet.schema.AckStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-windowed, memory-bounded index of recently seen command ids, used to make redelivered
+ * commands (Pub/Sub is at-least-once) idempotent.
+ *
+ * Ids are hashed to 64 bits and kept in a ring of {@code generations} open-addressing tables of
+ * primitive longs, each fronted by a small Bloom filter so most unseen ids are rejected without
+ * probing. The newest generation takes inserts; every {@code window / generations} (or earlier, if
+ * it fills up) the oldest generation is cleared and becomes the newest, so an id is remembered for
+ * between {@code window * (generations - 1) / generations} and {@code window}, and memory never
+ * grows past the preallocated tables.
+ *
+ * Only successful executions are cached. A command whose status is a NACK is marked for retry, so a
+ * redelivery after a transient failure runs again.
+ */
+public final class DedupIndex {
+    private static final Logger log = LoggerFactory.getLogger(DedupIndex.class);
+
+    /** {@link #admit} result: the id is new (or its last attempt failed) and should be executed. */
+    public static final long MISS = Long.MIN_VALUE;
+    /** {@link #admit} result: an earlier copy is still scheduled or running. */
+    public static final long IN_FLIGHT = Long.MIN_VALUE + 1;
+
+    public static final long DEFAULT_WINDOW_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private static final byte EMPTY = 0, PENDING = 1, DONE = 2, RETRY = 3;
+    private static final int BLOOM_BITS_PER_ID = 8;
+
+    private final Generation[] gens;
+    private final long rotateNanos;
+    private final int maxPerGeneration;
+    private int current;
+    private long rotatedAt;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param windowMs    how long an id is remembered (at most)
+     * @param capacity    ids remembered per window before generations rotate early
+     * @param generations number of rotating tables; more means a tighter lower bound on the window
+     */
+    public DedupIndex(long windowMs, int capacity, int generations) {
+        int n = Math.max(2, generations);
+        this.gens = new Generation[n];
+        this.maxPerGeneration = Math.max(16, capacity / n);
+        for (int i = 0; i < n; i++) gens[i] = new Generation(maxPerGeneration);
+        this.rotateNanos = Math.max(1L, TimeUnit.MILLISECONDS.toNanos(windowMs) / n);
+        this.rotatedAt = System.nanoTime();
+    }
+
+    /**
+     * Index from {@code DEDUP_WINDOW_MS} (default 5 minutes) and {@code DEDUP_CAPACITY}
+     * (default {@value #DEFAULT_CAPACITY}), or null if the window is 0 (dedup disabled).
+     */
+    public static DedupIndex fromEnv() {
+        long window = getenvLong("DEDUP_WINDOW_MS", DEFAULT_WINDOW_MS);
+        if (window <= 0) return null;
+        return new DedupIndex(window, (int) getenvLong("DEDUP_CAPACITY", DEFAULT_CAPACITY), 4);
+    }
+
+    /**
+     * Check an id and, if it is new, record it as in flight. Returns {@link #MISS} if the command
+     * should be executed, {@link #IN_FLIGHT} if an earlier copy has not reported yet, or otherwise
+     * the epoch nanos of the earlier copy's effective time.
+     */
+    public synchronized long admit(String id) {
+        long now = System.nanoTime();
+        if (now - rotatedAt >= rotateNanos) expire(now);
+        long key = hash(id);
+        for (int i = 0; i < gens.length; i++) {
+            Generation g = gens[Math.floorMod(current - i, gens.length)];
+            int slot = g.find(key);
+            if (slot < 0) continue;
+            byte state = g.states[slot];
+            if (state == RETRY) {
+                g.states[slot] = PENDING;
+                misses.incrementAndGet();
+                return MISS;
+            }
+            hits.incrementAndGet();
+            return state == PENDING ? IN_FLIGHT : g.effectiveAt[slot];
+        }
+        misses.incrementAndGet();
+        Generation g = gens[current];
+        if (g.size >= maxPerGeneration) {
+            rotate(now);
+            g = gens[current];
+        }
+        g.insert(key);
+        return MISS;
+    }
+
+    /** Record the outcome of an admitted command; only successes are served to later duplicates. */
+    public synchronized void complete(String id, boolean ok, Instant effectiveAt) {
+        long key = hash(id);
+        for (int i = 0; i < gens.length; i++) {
+            Generation g = gens[Math.floorMod(current - i, gens.length)];
+            int slot = g.find(key);
+            if (slot < 0) continue;
+            g.states[slot] = ok ? DONE : RETRY;
+            g.effectiveAt[slot] = effectiveAt != null ? effectiveAt.getEpochSecond() * 1_000_000_000L + effectiveAt.getNano() : 0L;
+            return;
+        }
+        // Rotated out while in flight; nothing to cache
+    }
+
+    /** Wraps {@code to} so the status published for {@code id} is also recorded here. */
+    public StatusPublisher recording(String id, StatusPublisher to) {
+        return new StatusPublisher() {
+            @Override
+            public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
+                complete(id, ok, effectiveAt);
+                to.publish(ok, origin, target, effectiveAt, code, error);
+            }
+
+            @Override
+            public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error,
+                                AckStatus.Latency latency) {
+                complete(id, ok, effectiveAt);
+                to.publish(ok, origin, target, effectiveAt, code, error, latency);
+            }
+
+            @Override
+            public void publishBatch(boolean ok, String origin, String target, Instant effectiveAt, List<AckStatus.Item> items) {
+                complete(id, ok, effectiveAt);
+                to.publishBatch(ok, origin, target, effectiveAt, items);
+            }
+        };
+    }
+
+    /** Effective time for an {@link #admit} result that is neither {@link #MISS} nor {@link #IN_FLIGHT}. */
+    public static Instant effectiveAt(long admitted) {
+        return admitted == 0L ? null : Instant.ofEpochSecond(Math.floorDiv(admitted, 1_000_000_000L), Math.floorMod(admitted, 1_000_000_000L));
+    }
+
+    public long hitCount() { return hits.get(); }
+
+    public long missCount() { return misses.get(); }
+
+    /** Fraction of admitted ids that were duplicates. */
+    public double hitRate() {
+        long h = hits.get(), m = misses.get();
+        return h + m == 0 ? 0.0 : (double) h / (h + m);
+    }
+
+    /** Rotate once per elapsed period since the last rotation, so an idle index forgets everything it outlived. */
+    private void expire(long now) {
+        long due = Math.min((now - rotatedAt) / rotateNanos, gens.length);
+        for (long i = 0; i < due; i++) rotate(now);
+    }
+
+    private void rotate(long now) {
+        current = (current + 1) % gens.length;
+        gens[current].clear();
+        rotatedAt = now;
+    }
+
+    /** 64-bit FNV-1a over the id's chars, finished with the murmur3 mixer; never 0 (the empty key). */
+    static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /** One open-addressing table (load factor at most 1/2) plus its Bloom prefilter. */
+    private static final class Generation {
+        final long[] keys;
+        final byte[] states;
+        final long[] effectiveAt;
+        final long[] bloom;
+        final int mask;
+        final int bloomMask;
+        int size;
+
+        Generation(int maxIds) {
+            int size = powerOfTwo(maxIds * 2);
+            this.keys = new long[size];
+            this.states = new byte[size];
+            this.effectiveAt = new long[size];
+            this.mask = size - 1;
+            int bloomBits = powerOfTwo(maxIds * BLOOM_BITS_PER_ID);
+            this.bloom = new long[Math.max(1, bloomBits >>> 6)];
+            this.bloomMask = bloomBits - 1;
+        }
+
+        int find(long key) {
+            // Two probes from disjoint halves of the hash
+            int b1 = (int) key & bloomMask, b2 = (int) (key >>> 32) & bloomMask;
+            if ((bloom[b1 >>> 6] & (1L << b1)) == 0 || (bloom[b2 >>> 6] & (1L << b2)) == 0) return -1;
+            for (int i = (int) (key ^ (key >>> 29)) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) return i;
+                if (states[i] == EMPTY) return -1;
+            }
+        }
+
+        void insert(long key) {
+            int b1 = (int) key & bloomMask, b2 = (int) (key >>> 32) & bloomMask;
+            bloom[b1 >>> 6] |= 1L << b1;
+            bloom[b2 >>> 6] |= 1L << b2;
+            int i = (int) (key ^ (key >>> 29)) & mask;
+            while (states[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = key;
+            states[i] = PENDING;
+            size++;
+        }
+
+        void clear() {
+            if (size == 0) return;
+            Arrays.fill(keys, 0L);
+            Arrays.fill(states, EMPTY);
+            Arrays.fill(bloom, 0L);
+            size = 0;
+        }
+    }
+
+    private static int powerOfTwo(int n) {
+        int p = 1;
+        while (p < n) p <<= 1;
+        return p;
+    }
+
+    private static long getenvLong(String key, long def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException ex) {
+            log.warn("Ignoring invalid {}='{}'", key, v);
+            return def;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package io.dawsheet.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ordered, parallel dispatch of commands, striped by (target, MIDI channel).
+ *
+ * Each key hashes onto one of a fixed number of lanes. A lane is a bounded lock-free MPSC ring
+ * drained by its own worker thread, so tasks for one (target, channel) run strictly in submission
+ * order (no note-on/note-off reordering) while different channels run on different cores. Lanes
+ * never block each other: {@link #offer} fails instead of waiting when a lane is full, so one slow
+ * device cannot stall ingress for the rest.
+ */
+public final class DispatchLanes implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(DispatchLanes.class);
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Lane[] lanes;
+    private final int laneMask;
+    private volatile boolean running = true;
+
+    public DispatchLanes(int laneCount, int capacityPerLane) {
+        int n = powerOfTwo(Math.max(1, laneCount));
+        this.laneMask = n - 1;
+        this.lanes = new Lane[n];
+        for (int i = 0; i < n; i++) lanes[i] = new Lane(i, powerOfTwo(Math.max(2, capacityPerLane)));
+    }
+
+    /**
+     * Lanes from {@code DISPATCH_LANES} (default: available processors) and
+     * {@code DISPATCH_LANE_CAPACITY} (default {@value #DEFAULT_CAPACITY}).
+     */
+    public static DispatchLanes fromEnv() {
+        int lanes = getenvInt("DISPATCH_LANES", Runtime.getRuntime().availableProcessors());
+        int capacity = getenvInt("DISPATCH_LANE_CAPACITY", DEFAULT_CAPACITY);
+        return new DispatchLanes(lanes, capacity);
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    /** Lane index for a (target, channel) key; stable for the lifetime of this instance. */
+    public int laneFor(String target, int channel) {
+        int h = (target == null ? 0 : target.hashCode()) * 31 + channel;
+        h ^= (h >>> 16);
+        return h & laneMask;
+    }
+
+    /**
+     * Queue a task on the lane for (target, channel). Returns false if that lane is full or the
+     * dispatcher is closed; the caller decides whether to retry, nack or drop.
+     */
+    public boolean offer(String target, int channel, Runnable task) {
+        if (!running) return false;
+        return lanes[laneFor(target, channel)].offer(task);
+    }
+
+    /** Tasks queued across all lanes (approximate). */
+    public int queued() {
+        int total = 0;
+        for (Lane lane : lanes) total += lane.size();
+        return total;
+    }
+
+    /** Stop accepting tasks, run what is already queued and stop the workers. */
+    @Override
+    public void close() {
+        running = false;
+        for (Lane lane : lanes) lane.stop();
+        for (Lane lane : lanes) {
+            try {
+                lane.worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static final class Lane {
+        private final int mask;
+        private final Runnable[] tasks;
+        private final AtomicLongArray published;
+        private final AtomicLong claimSeq = new AtomicLong();
+        private final AtomicLong consumedSeq = new AtomicLong();
+        private final Thread worker;
+        private volatile boolean open = true;
+
+        Lane(int index, int size) {
+            this.mask = size - 1;
+            this.tasks = new Runnable[size];
+            this.published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) published.set(i, -1L);
+            this.worker = new Thread(this::run, "dispatch-lane-" + index);
+            this.worker.setDaemon(true);
+            this.worker.setPriority(Thread.MAX_PRIORITY);
+            this.worker.start();
+        }
+
+        boolean offer(Runnable task) {
+            long seq;
+            do {
+                seq = claimSeq.get();
+                if (seq - consumedSeq.get() > mask) return false;
+            } while (!claimSeq.compareAndSet(seq, seq + 1));
+            int idx = (int) (seq & mask);
+            tasks[idx] = task;
+            published.lazySet(idx, seq);
+            LockSupport.unpark(worker);
+            return true;
+        }
+
+        int size() {
+            return (int) (claimSeq.get() - consumedSeq.get());
+        }
+
+        void stop() {
+            open = false;
+            LockSupport.unpark(worker);
+        }
+
+        private void run() {
+            while (true) {
+                if (drain() == 0) {
+                    if (!open && claimSeq.get() == consumedSeq.get()) return;
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        }
+
+        private int drain() {
+            long seq = consumedSeq.get();
+            int ran = 0;
+            while (true) {
+                int idx = (int) (seq & mask);
+                if (published.get(idx) != seq) break;
+                Runnable task = tasks[idx];
+                tasks[idx] = null;
+                seq++;
+                consumedSeq.lazySet(seq);
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.error("Dispatch task failed on {}: {}", Thread.currentThread().getName(), t.toString());
+                }
+                ran++;
+            }
+            return ran;
+        }
+    }
+
+    private static int powerOfTwo(int n) {
+        int p = 1;
+        while (p < n) p <<= 1;
+        return p;
+    }
+
+    private static int getenvInt(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException ex) {
+            log.warn("Ignoring invalid {}='{}'", key, v);
+            return def;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package io.dawsheet.server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Single-pass streaming decoder for command envelopes.
+ *
+ * Reads the JSON once with Jackson's {@link JsonParser} straight into a (typically pooled)
+ * {@link CommandEnvelope}. MIDI payload fields go into primitive slots; the command type and the
+ * "now" marker are interned against known constants; field names come from Jackson's symbol table.
+ * Only free-form parts (ids, transform lists, meta, unknown payload fields) allocate.
+ *
+ * Legacy flat NOTE messages (note/velocity/channel/durationSec at the top level) decode into the
+ * same slots. Top-level slot fields are only kept for type NOTE, and never replace a field the
+ * payload set. Every top-level field the envelope does not define is also kept in
+ * {@link CommandEnvelope#unknown}, so validation rejects it like the schema does.
+ */
+public final class EnvelopeDecoder {
+    static final String[] KNOWN_TYPES = {
+            "NOTE", "NOTE.PLAY", "CHORD.PLAY", "ARPEGGIATE", "PATTERN.TRIGGER", "STEP.RATCHET", "STEP.PROB",
+            "CC.SET", "CC.RAMP", "CC.LFO", "PROGRAM.CHANGE", "PITCH.BEND", "AFTERTOUCH",
+            "DAW.CLIP.LAUNCH", "DAW.SCENE.LAUNCH", "DAW.TRACK.ARM",
+            "OSC.SEND", "DEVICE.PARAM_SET", "MACRO.TRIGGER", "CUE.GOTO",
+            "TRANSPORT.START", "TRANSPORT.STOP", "TRANSPORT.TEMPO_SET", "SYNC.MIDI_CLOCK_TX",
+            "BATCH"
+    };
+    private static final char[][] KNOWN_TYPE_CHARS = new char[KNOWN_TYPES.length][];
+    private static final char[] NOW = "now".toCharArray();
+    private static final int NOTE_SLOTS = CommandEnvelope.SLOT_NOTE | CommandEnvelope.SLOT_NOTE_NAME;
+
+    static {
+        for (int i = 0; i < KNOWN_TYPES.length; i++) KNOWN_TYPE_CHARS[i] = KNOWN_TYPES[i].toCharArray();
+    }
+
+    private final JsonFactory factory = new JsonFactory();
+
+    /** Decode into {@code into} (which is reset first) and return it. */
+    public CommandEnvelope decode(byte[] data, CommandEnvelope into) throws IOException {
+        return decode(data, 0, data.length, into);
+    }
+
+    public CommandEnvelope decode(byte[] data, int offset, int length, CommandEnvelope into) throws IOException {
+        into.reset();
+        try (JsonParser p = factory.createParser(data, offset, length)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Envelope must be a JSON object");
+            }
+            readEnvelope(p, into);
+        }
+        return into;
+    }
+
+    /**
+     * Decode a frame holding one envelope object or a JSON array of them. Each envelope is decoded
+     * into an instance from {@code pool} and passed to {@code sink}, which takes ownership of it.
+     * Returns the number of envelopes decoded; envelopes before a malformed element are still delivered.
+     */
+    public int decodeFrame(byte[] data, int offset, int length, EnvelopePool pool, Consumer<CommandEnvelope> sink) throws IOException {
+        int count = 0;
+        try (JsonParser p = factory.createParser(data, offset, length)) {
+            JsonToken t = p.nextToken();
+            boolean array = t == JsonToken.START_ARRAY;
+            if (array) t = p.nextToken();
+            while (t == JsonToken.START_OBJECT) {
+                CommandEnvelope env = pool.acquire();
+                try {
+                    readEnvelope(p, env);
+                } catch (IOException | RuntimeException e) {
+                    pool.release(env);
+                    throw e;
+                }
+                sink.accept(env);
+                count++;
+                if (!array) return count;
+                t = p.nextToken();
+            }
+            if (!array || t != JsonToken.END_ARRAY) {
+                throw new IOException("Frame must be an envelope object or an array of envelope objects");
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decode one envelope object from a parser positioned on its START_OBJECT token; used by
+     * ingress paths that carry several envelopes in one frame.
+     */
+    public void readEnvelope(JsonParser p, CommandEnvelope into) throws IOException {
+        int payloadSlots = 0; // slots filled from the payload object
+        int flatSlots = 0;    // slots filled from top-level fields
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken t = p.nextToken();
+            switch (field) {
+                case "v":
+                    into.v = t == JsonToken.VALUE_NUMBER_INT ? p.getIntValue() : -1;
+                    break;
+                case "type":
+                    into.type = t == JsonToken.VALUE_STRING ? internType(p) : null;
+                    break;
+                case "id":
+                    into.id = textOrNull(p, t);
+                    break;
+                case "origin":
+                    into.origin = textOrNull(p, t);
+                    break;
+                case "at":
+                    into.at = t == JsonToken.VALUE_STRING
+                            ? (matches(p, NOW) ? "now" : p.getText())
+                            : null;
+                    break;
+                case "quantize":
+                    into.quantize = textOrNull(p, t);
+                    break;
+                case "target":
+                    into.target = textOrNull(p, t);
+                    break;
+                case "payload":
+                    if (t == JsonToken.START_OBJECT) {
+                        into.payloadPresent = true;
+                        payloadSlots = readPayload(p, into);
+                    } else {
+                        p.skipChildren();
+                    }
+                    break;
+                case "transform":
+                    if (t == JsonToken.START_ARRAY) {
+                        into.transform = readTransforms(p);
+                    } else {
+                        p.skipChildren();
+                    }
+                    break;
+                case "meta":
+                    Object meta = readValue(p, t);
+                    into.meta = meta instanceof Map ? castMap(meta) : null;
+                    break;
+                default:
+                    // Legacy flat NOTE fields live at the top level
+                    int slots = slotsOf(field);
+                    if (slots != 0 && (payloadSlots & slots) == 0 && readSlot(p, t, field, into)) {
+                        flatSlots |= slots;
+                    }
+                    into.unknown.put(field, readValue(p, t));
+            }
+        }
+        // The type may come after the fields, so stray top-level fields are dropped once it is known
+        if (!"NOTE".equals(into.type)) into.slots &= ~(flatSlots & ~payloadSlots);
+    }
+
+    /** Reads payload fields into slots or 'extra'; returns the slots it filled. */
+    private int readPayload(JsonParser p, CommandEnvelope into) throws IOException {
+        int filled = 0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken t = p.nextToken();
+            if (readSlot(p, t, field, into)) {
+                filled |= slotsOf(field);
+            } else {
+                into.extra.put(field, readValue(p, t));
+            }
+        }
+        return filled;
+    }
+
+    /** Slots a payload field can fill (both note slots for "note"), or 0 if it has none. */
+    private static int slotsOf(String field) {
+        switch (field) {
+            case "note": return NOTE_SLOTS;
+            case "velocity": return CommandEnvelope.SLOT_VELOCITY;
+            case "channel": return CommandEnvelope.SLOT_CHANNEL;
+            case "cc": return CommandEnvelope.SLOT_CC;
+            case "value": return CommandEnvelope.SLOT_VALUE;
+            case "program": return CommandEnvelope.SLOT_PROGRAM;
+            case "durationSec": return CommandEnvelope.SLOT_DURATION;
+            default: return 0;
+        }
+    }
+
+    /** Store a payload field in its primitive slot; returns false if the field has no slot. */
+    private static boolean readSlot(JsonParser p, JsonToken t, String field, CommandEnvelope into) throws IOException {
+        boolean isInt = t == JsonToken.VALUE_NUMBER_INT;
+        switch (field) {
+            case "note":
+                // A later "note" replaces an earlier one, whichever form each has
+                if (isInt) {
+                    into.note = p.getIntValue();
+                    into.slots = into.slots & ~NOTE_SLOTS | CommandEnvelope.SLOT_NOTE;
+                    return true;
+                }
+                if (t == JsonToken.VALUE_STRING) {
+                    into.noteName = p.getText();
+                    into.slots = into.slots & ~NOTE_SLOTS | CommandEnvelope.SLOT_NOTE_NAME;
+                    return true;
+                }
+                return false;
+            case "velocity":
+                if (!isInt) return false;
+                into.velocity = p.getIntValue();
+                into.slots |= CommandEnvelope.SLOT_VELOCITY;
+                return true;
+            case "channel":
+                if (!isInt) return false;
+                into.channel = p.getIntValue();
+                into.slots |= CommandEnvelope.SLOT_CHANNEL;
+                return true;
+            case "cc":
+                if (!isInt) return false;
+                into.cc = p.getIntValue();
+                into.slots |= CommandEnvelope.SLOT_CC;
+                return true;
+            case "value":
+                if (!isInt) return false;
+                into.value = p.getIntValue();
+                into.slots |= CommandEnvelope.SLOT_VALUE;
+                return true;
+            case "program":
+                if (!isInt) return false;
+                into.program = p.getIntValue();
+                into.slots |= CommandEnvelope.SLOT_PROGRAM;
+                return true;
+            case "durationSec":
+                if (!isInt && t != JsonToken.VALUE_NUMBER_FLOAT) return false;
+                into.durationSec = p.getDoubleValue();
+                into.slots |= CommandEnvelope.SLOT_DURATION;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static List<Map<String, Object>> readTransforms(JsonParser p) throws IOException {
+        List<Map<String, Object>> out = new ArrayList<>(4);
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            Object op = readValue(p, t);
+            if (op instanceof Map) out.add(castMap(op));
+        }
+        return out;
+    }
+
+    /** Generic value reader for free-form parts (Integer/Long/Double/String/Boolean/Map/List/null). */
+    static Object readValue(JsonParser p, JsonToken t) throws IOException {
+        switch (t) {
+            case START_OBJECT: {
+                Map<String, Object> m = new LinkedHashMap<>();
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String k = p.getCurrentName();
+                    m.put(k, readValue(p, p.nextToken()));
+                }
+                return m;
+            }
+            case START_ARRAY: {
+                List<Object> l = new ArrayList<>();
+                JsonToken n;
+                while ((n = p.nextToken()) != JsonToken.END_ARRAY) l.add(readValue(p, n));
+                return l;
+            }
+            case VALUE_STRING:
+                return p.getText();
+            case VALUE_NUMBER_INT:
+                return p.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return p.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    private static String textOrNull(JsonParser p, JsonToken t) throws IOException {
+        return t == JsonToken.VALUE_STRING ? p.getText() : null;
+    }
+
+    /** Return the shared constant for a known command type, without allocating a String. */
+    private static String internType(JsonParser p) throws IOException {
+        for (int i = 0; i < KNOWN_TYPE_CHARS.length; i++) {
+            if (matches(p, KNOWN_TYPE_CHARS[i])) return KNOWN_TYPES[i];
+        }
+        return p.getText();
+    }
+
+    private static boolean matches(JsonParser p, char[] expected) throws IOException {
+        if (p.getTextLength() != expected.length) return false;
+        char[] buf = p.getTextCharacters();
+        int off = p.getTextOffset();
+        for (int i = 0; i < expected.length; i++) {
+            if (buf[off + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castMap(Object o) {
+        return (Map<String, Object>) o;
+    }
+}
@@ -0,0 +1,33 @@
+package io.dawsheet.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of reusable {@link CommandEnvelope} instances for the decode path.
+ *
+ * Ingress threads {@link #acquire()} an envelope, decode into it, hand it to the router and
+ * {@link #release(CommandEnvelope)} it afterwards. The router copies any envelope it has to keep
+ * (scheduled commands), so releasing right after {@code handle} returns is safe.
+ */
+public final class EnvelopePool {
+    private final ArrayBlockingQueue<CommandEnvelope> free;
+
+    public EnvelopePool(int capacity) {
+        this.free = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    public CommandEnvelope acquire() {
+        CommandEnvelope env = free.poll();
+        return env != null ? env : new CommandEnvelope();
+    }
+
+    public void release(CommandEnvelope env) {
+        if (env == null) return;
+        env.reset();
+        free.offer(env); // dropped if the pool is already full
+    }
+
+    public int available() {
+        return free.size();
+    }
+}
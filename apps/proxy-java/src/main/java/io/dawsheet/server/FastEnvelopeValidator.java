@@ -0,0 +1,515 @@
+package io.dawsheet.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Per-command-type validators compiled at startup from {@code commands.schema.json}.
+ *
+ * The envelope properties, the transform/meta definitions and every payload referenced from
+ * {@code typedPayload} are compiled into small rule objects that check the decoded envelope directly:
+ * primitive slots are checked without boxing and nothing is converted to a JSON tree. Top-level
+ * fields the envelope does not define ({@link CommandEnvelope#unknown}) are rejected when the schema
+ * disallows additional properties, as the full schema does. Types whose
+ * payload schema uses keywords this compiler does not understand are left out, and
+ * {@link #supports(String)} returns false for them so the caller can fall back to the full schema.
+ */
+final class FastEnvelopeValidator {
+    /** A schema construct the compiler does not translate; the caller falls back to the full schema. */
+    static final class UnsupportedSchemaException extends Exception {
+        UnsupportedSchemaException(String keyword) {
+            super("Unsupported schema keyword: " + keyword);
+        }
+    }
+
+    private final Map<String, Field> envelopeFields;
+    private final String[] envelopeRequired;
+    private final boolean envelopeAdditional;
+    private final Map<String, ObjectRule> payloadRules;
+
+    private FastEnvelopeValidator(Map<String, Field> envelopeFields, String[] envelopeRequired, boolean envelopeAdditional,
+                                  Map<String, ObjectRule> payloadRules) {
+        this.envelopeFields = envelopeFields;
+        this.envelopeRequired = envelopeRequired;
+        this.envelopeAdditional = envelopeAdditional;
+        this.payloadRules = payloadRules;
+    }
+
+    /** Compile the rules from the parsed envelope schema. */
+    static FastEnvelopeValidator compile(JsonNode schema) throws UnsupportedSchemaException {
+        Compiler c = new Compiler(schema);
+        Map<String, Field> fields = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> it = schema.path("properties").fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> e = it.next();
+            if ("payload".equals(e.getKey())) continue; // replaced by the typed payload rules
+            fields.put(e.getKey(), c.field(e.getKey(), e.getValue()));
+        }
+        Map<String, ObjectRule> payloads = new HashMap<>();
+        for (JsonNode branch : c.resolve(schema.path("allOf").path(0)).path("oneOf")) {
+            JsonNode typeConst = branch.path("properties").path("type").path("const");
+            if (!typeConst.isTextual()) continue;
+            try {
+                payloads.put(typeConst.asText(), c.object(c.resolve(branch.path("properties").path("payload"))));
+            } catch (UnsupportedSchemaException e) {
+                // left to the full schema
+            }
+        }
+        JsonNode additional = schema.path("additionalProperties");
+        if (!additional.isMissingNode() && !additional.isBoolean()) throw new UnsupportedSchemaException("additionalProperties");
+        return new FastEnvelopeValidator(fields, strings(schema.path("required")),
+                additional.isMissingNode() || additional.asBoolean(), Collections.unmodifiableMap(payloads));
+    }
+
+    /** True if the type has a compiled payload rule. */
+    boolean supports(String type) {
+        return type != null && payloadRules.containsKey(type);
+    }
+
+    Set<String> supportedTypes() {
+        return payloadRules.keySet();
+    }
+
+    /** Violations found in the envelope; empty when it is valid. Only call for supported types. */
+    List<String> validate(CommandEnvelope env) {
+        List<String> out = null;
+        for (String name : envelopeRequired) {
+            if (!present(env, name)) out = add(out, "$." + name + ": is missing but it is required");
+        }
+        out = checkInt(out, "v", env.v);
+        out = checkString(out, "type", env.type);
+        out = checkString(out, "id", env.id);
+        out = checkString(out, "origin", env.origin);
+        out = checkString(out, "at", env.at);
+        out = checkString(out, "quantize", env.quantize);
+        out = checkString(out, "target", env.target);
+        out = checkValue(out, "transform", env.transform);
+        out = checkValue(out, "meta", env.meta);
+        if (!envelopeAdditional && !env.unknown.isEmpty()) {
+            for (String name : env.unknown.keySet()) {
+                out = add(out, "$." + name + ": is not defined in the schema and the schema does not allow additional properties");
+            }
+        }
+
+        ObjectRule payload = payloadRules.get(env.type);
+        if (payload != null && env.hasPayload()) {
+            out = env.payload != null
+                    ? payload.check(out, "$.payload", env.payload)
+                    : payload.checkSlots(out, env);
+        }
+        return out == null ? Collections.emptyList() : out;
+    }
+
+    private List<String> checkInt(List<String> out, String name, int v) {
+        Field f = envelopeFields.get(name);
+        return f == null ? out : f.checkLong(out, "$." + name, v);
+    }
+
+    private List<String> checkString(List<String> out, String name, String v) {
+        Field f = envelopeFields.get(name);
+        return f == null || v == null ? out : f.checkString(out, "$." + name, v);
+    }
+
+    private List<String> checkValue(List<String> out, String name, Object v) {
+        Field f = envelopeFields.get(name);
+        return f == null || v == null ? out : f.check(out, "$." + name, v);
+    }
+
+    private static boolean present(CommandEnvelope env, String name) {
+        switch (name) {
+            case "v": return true; // primitive; a missing v decodes as 0 and fails its const
+            case "type": return env.type != null;
+            case "id": return env.id != null;
+            case "origin": return env.origin != null;
+            case "at": return env.at != null;
+            case "quantize": return env.quantize != null;
+            case "target": return env.target != null;
+            case "payload": return env.hasPayload();
+            case "transform": return env.transform != null;
+            case "meta": return env.meta != null;
+            default: return false;
+        }
+    }
+
+    private static List<String> add(List<String> out, String message) {
+        if (out == null) out = new ArrayList<>(2);
+        out.add(message);
+        return out;
+    }
+
+    private static String[] strings(JsonNode array) {
+        String[] out = new String[array.size()];
+        for (int i = 0; i < out.length; i++) out[i] = array.get(i).asText();
+        return out;
+    }
+
+    // Slot bits that back a payload property, by name
+    private static int slotFor(String name) {
+        switch (name) {
+            case "note": return CommandEnvelope.SLOT_NOTE | CommandEnvelope.SLOT_NOTE_NAME;
+            case "velocity": return CommandEnvelope.SLOT_VELOCITY;
+            case "channel": return CommandEnvelope.SLOT_CHANNEL;
+            case "cc": return CommandEnvelope.SLOT_CC;
+            case "value": return CommandEnvelope.SLOT_VALUE;
+            case "program": return CommandEnvelope.SLOT_PROGRAM;
+            case "durationSec": return CommandEnvelope.SLOT_DURATION;
+            default: return 0;
+        }
+    }
+
+    private static final int ALL_SLOTS = CommandEnvelope.SLOT_NOTE | CommandEnvelope.SLOT_NOTE_NAME
+            | CommandEnvelope.SLOT_VELOCITY | CommandEnvelope.SLOT_CHANNEL | CommandEnvelope.SLOT_CC
+            | CommandEnvelope.SLOT_VALUE | CommandEnvelope.SLOT_PROGRAM | CommandEnvelope.SLOT_DURATION;
+
+    private static String slotName(int bit) {
+        switch (bit) {
+            case CommandEnvelope.SLOT_NOTE:
+            case CommandEnvelope.SLOT_NOTE_NAME: return "note";
+            case CommandEnvelope.SLOT_VELOCITY: return "velocity";
+            case CommandEnvelope.SLOT_CHANNEL: return "channel";
+            case CommandEnvelope.SLOT_CC: return "cc";
+            case CommandEnvelope.SLOT_VALUE: return "value";
+            case CommandEnvelope.SLOT_PROGRAM: return "program";
+            default: return "durationSec";
+        }
+    }
+
+    /** Compiled object schema: properties, required names, anyOf-required groups and additionalProperties. */
+    static final class ObjectRule {
+        final Map<String, Field> properties;
+        final String[] required;
+        final String[][] anyOfRequired;
+        final boolean additional;
+        final int allowedSlots;
+
+        ObjectRule(Map<String, Field> properties, String[] required, String[][] anyOfRequired, boolean additional) {
+            this.properties = properties;
+            this.required = required;
+            this.anyOfRequired = anyOfRequired;
+            this.additional = additional;
+            int slots = 0;
+            for (String name : properties.keySet()) slots |= slotFor(name);
+            this.allowedSlots = additional ? ALL_SLOTS : slots;
+        }
+
+        List<String> check(List<String> out, String path, Map<?, ?> obj) {
+            for (String name : required) {
+                if (!obj.containsKey(name)) out = add(out, path + "." + name + ": is missing but it is required");
+            }
+            for (String[] group : anyOfRequired) {
+                boolean any = false;
+                for (String name : group) any |= obj.containsKey(name);
+                if (!any) out = add(out, path + ": must have one of " + String.join(", ", group));
+            }
+            for (Map.Entry<?, ?> e : obj.entrySet()) {
+                String name = String.valueOf(e.getKey());
+                Field f = properties.get(name);
+                if (f != null) {
+                    out = f.check(out, path + "." + name, e.getValue());
+                } else if (!additional) {
+                    out = add(out, path + "." + name + ": is not defined in the schema and the schema does not allow additional properties");
+                }
+            }
+            return out;
+        }
+
+        /** Same as {@link #check} against a slot-backed payload, reading slots without boxing. */
+        List<String> checkSlots(List<String> out, CommandEnvelope env) {
+            for (String name : required) {
+                if (!hasField(env, name)) out = add(out, "$.payload." + name + ": is missing but it is required");
+            }
+            for (String[] group : anyOfRequired) {
+                boolean any = false;
+                for (String name : group) any |= hasField(env, name);
+                if (!any) out = add(out, "$.payload: must have one of " + String.join(", ", group));
+            }
+            int stray = env.slots & ~allowedSlots;
+            if (stray != 0) {
+                out = add(out, "$.payload." + slotName(Integer.lowestOneBit(stray))
+                        + ": is not defined in the schema and the schema does not allow additional properties");
+            }
+            out = checkSlot(out, env, "note");
+            out = checkSlot(out, env, "velocity");
+            out = checkSlot(out, env, "channel");
+            out = checkSlot(out, env, "cc");
+            out = checkSlot(out, env, "value");
+            out = checkSlot(out, env, "program");
+            out = checkSlot(out, env, "durationSec");
+            if (!env.extra.isEmpty()) {
+                for (Map.Entry<String, Object> e : env.extra.entrySet()) {
+                    Field f = properties.get(e.getKey());
+                    if (f != null) {
+                        out = f.check(out, "$.payload." + e.getKey(), e.getValue());
+                    } else if (!additional) {
+                        out = add(out, "$.payload." + e.getKey() + ": is not defined in the schema and the schema does not allow additional properties");
+                    }
+                }
+            }
+            return out;
+        }
+
+        private List<String> checkSlot(List<String> out, CommandEnvelope env, String name) {
+            Field f = properties.get(name);
+            if (f == null) return out;
+            String path = "$.payload." + name;
+            switch (name) {
+                case "note":
+                    if (env.has(CommandEnvelope.SLOT_NOTE)) return f.checkLong(out, path, env.note);
+                    if (env.has(CommandEnvelope.SLOT_NOTE_NAME)) return f.checkString(out, path, env.noteName);
+                    return out;
+                case "velocity":
+                    return env.has(CommandEnvelope.SLOT_VELOCITY) ? f.checkLong(out, path, env.velocity) : out;
+                case "channel":
+                    return env.has(CommandEnvelope.SLOT_CHANNEL) ? f.checkLong(out, path, env.channel) : out;
+                case "cc":
+                    return env.has(CommandEnvelope.SLOT_CC) ? f.checkLong(out, path, env.cc) : out;
+                case "value":
+                    return env.has(CommandEnvelope.SLOT_VALUE) ? f.checkLong(out, path, env.value) : out;
+                case "program":
+                    return env.has(CommandEnvelope.SLOT_PROGRAM) ? f.checkLong(out, path, env.program) : out;
+                default:
+                    return env.has(CommandEnvelope.SLOT_DURATION) ? f.checkDouble(out, path, env.durationSec) : out;
+            }
+        }
+
+        private static boolean hasField(CommandEnvelope env, String name) {
+            int slot = slotFor(name);
+            return (slot != 0 && (env.slots & slot) != 0) || env.extra.containsKey(name);
+        }
+    }
+
+    static final int STRING = 1, INTEGER = 1 << 1, NUMBER = 1 << 2, BOOLEAN = 1 << 3,
+            ARRAY = 1 << 4, OBJECT = 1 << 5, NULL = 1 << 6, ANY = 0x7f;
+
+    /** One alternative of a property schema (a oneOf/anyOf branch, or the schema itself). */
+    static final class Alt {
+        int kinds = ANY;
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+        int minLength;
+        int minItems;
+        int maxItems = Integer.MAX_VALUE;
+        Pattern pattern;
+        boolean dateTime;
+        Set<Object> enumValues;
+        Object constValue;
+        Field items;
+        ObjectRule object;
+
+        boolean matchesLong(long v) {
+            if ((kinds & (INTEGER | NUMBER)) == 0 || v < min || v > max) return false;
+            if (constValue != null && !(constValue instanceof Number && ((Number) constValue).longValue() == v)) return false;
+            return enumValues == null || enumValues.contains(v);
+        }
+
+        boolean matchesDouble(double v) {
+            if ((kinds & NUMBER) == 0 || v < min || v > max) return false;
+            return constValue == null && enumValues == null;
+        }
+
+        boolean matchesString(String s) {
+            if ((kinds & STRING) == 0 || s.length() < minLength) return false;
+            if (constValue != null && !constValue.equals(s)) return false;
+            if (enumValues != null && !enumValues.contains(s)) return false;
+            if (pattern != null && !pattern.matcher(s).find()) return false;
+            return !dateTime || isDateTime(s);
+        }
+    }
+
+    /** Compiled property schema: a value is valid if any alternative matches. */
+    static final class Field {
+        final String name;
+        final Alt[] alts;
+
+        Field(String name, Alt[] alts) {
+            this.name = name;
+            this.alts = alts;
+        }
+
+        List<String> checkLong(List<String> out, String path, long v) {
+            for (Alt a : alts) if (a.matchesLong(v)) return out;
+            return add(out, path + ": value " + v + " does not match the schema");
+        }
+
+        List<String> checkDouble(List<String> out, String path, double v) {
+            for (Alt a : alts) if (a.matchesDouble(v)) return out;
+            return add(out, path + ": value " + v + " does not match the schema");
+        }
+
+        List<String> checkString(List<String> out, String path, String s) {
+            for (Alt a : alts) if (a.matchesString(s)) return out;
+            return add(out, path + ": value '" + s + "' does not match the schema");
+        }
+
+        List<String> check(List<String> out, String path, Object v) {
+            if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte) {
+                return checkLong(out, path, ((Number) v).longValue());
+            }
+            if (v instanceof Number) return checkDouble(out, path, ((Number) v).doubleValue());
+            if (v instanceof String) return checkString(out, path, (String) v);
+            int kind = v == null ? NULL : v instanceof Boolean ? BOOLEAN : v instanceof Map ? OBJECT : v instanceof List ? ARRAY : 0;
+            for (Alt a : alts) {
+                if ((a.kinds & kind) == 0) continue;
+                if (a.enumValues != null && !a.enumValues.contains(v)) continue;
+                if (kind == ARRAY && (((List<?>) v).size() < a.minItems || ((List<?>) v).size() > a.maxItems)) continue;
+                if (kind == OBJECT && a.object != null) {
+                    List<String> nested = a.object.check(null, path, (Map<?, ?>) v);
+                    if (nested != null) {
+                        if (alts.length == 1) { for (String m : nested) out = add(out, m); return out; }
+                        continue;
+                    }
+                } else if (kind == ARRAY && a.items != null) {
+                    List<String> nested = null;
+                    List<?> list = (List<?>) v;
+                    for (int i = 0; i < list.size(); i++) nested = a.items.check(nested, path + "[" + i + "]", list.get(i));
+                    if (nested != null) {
+                        if (alts.length == 1) { for (String m : nested) out = add(out, m); return out; }
+                        continue;
+                    }
+                }
+                return out;
+            }
+            return add(out, path + ": value does not match the schema");
+        }
+    }
+
+    private static boolean isDateTime(String s) {
+        try {
+            OffsetDateTime.parse(s);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /** Translates the subset of draft-07 used by the command schema; anything else is unsupported. */
+    private static final class Compiler {
+        private static final Set<String> IGNORED = Set.of("description", "title", "$comment", "examples", "default");
+        private final JsonNode root;
+
+        Compiler(JsonNode root) {
+            this.root = root;
+        }
+
+        JsonNode resolve(JsonNode node) throws UnsupportedSchemaException {
+            JsonNode ref = node.get("$ref");
+            if (ref == null) return node;
+            String path = ref.asText();
+            if (!path.startsWith("#/")) throw new UnsupportedSchemaException("$ref " + path);
+            JsonNode target = root.at(path.substring(1));
+            if (target.isMissingNode()) throw new UnsupportedSchemaException("$ref " + path);
+            return resolve(target);
+        }
+
+        Field field(String name, JsonNode schema) throws UnsupportedSchemaException {
+            schema = resolve(schema);
+            JsonNode branches = schema.has("oneOf") ? schema.get("oneOf") : schema.get("anyOf");
+            if (branches == null) return new Field(name, new Alt[]{alt(schema)});
+            Alt[] alts = new Alt[branches.size()];
+            for (int i = 0; i < alts.length; i++) alts[i] = alt(resolve(branches.get(i)));
+            return new Field(name, alts);
+        }
+
+        ObjectRule object(JsonNode schema) throws UnsupportedSchemaException {
+            Map<String, Field> props = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> it = schema.path("properties").fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> e = it.next();
+                props.put(e.getKey(), field(e.getKey(), e.getValue()));
+            }
+            List<String[]> groups = new ArrayList<>();
+            for (JsonNode all : schema.path("allOf")) {
+                JsonNode anyOf = all.get("anyOf");
+                if (anyOf == null || all.size() != 1) throw new UnsupportedSchemaException("allOf");
+                List<String> names = new ArrayList<>();
+                for (JsonNode req : anyOf) {
+                    if (req.size() != 1 || req.path("required").size() != 1) throw new UnsupportedSchemaException("anyOf");
+                    names.add(req.path("required").get(0).asText());
+                }
+                groups.add(names.toArray(new String[0]));
+            }
+            JsonNode additional = schema.path("additionalProperties");
+            if (!additional.isMissingNode() && !additional.isBoolean()) throw new UnsupportedSchemaException("additionalProperties");
+            return new ObjectRule(props, strings(schema.path("required")), groups.toArray(new String[0][]),
+                    additional.isMissingNode() || additional.asBoolean());
+        }
+
+        private Alt alt(JsonNode schema) throws UnsupportedSchemaException {
+            Alt a = new Alt();
+            Iterator<String> names = schema.fieldNames();
+            while (names.hasNext()) {
+                String k = names.next();
+                JsonNode v = schema.get(k);
+                switch (k) {
+                    case "type":
+                        a.kinds = 0;
+                        if (v.isArray()) for (JsonNode t : v) a.kinds |= kind(t.asText());
+                        else a.kinds = kind(v.asText());
+                        break;
+                    case "minimum": a.min = v.asDouble(); break;
+                    case "maximum": a.max = v.asDouble(); break;
+                    case "minLength": a.minLength = v.asInt(); break;
+                    case "minItems": a.minItems = v.asInt(); break;
+                    case "maxItems": a.maxItems = v.asInt(); break;
+                    case "pattern": a.pattern = Pattern.compile(v.asText()); break;
+                    case "format":
+                        if (!"date-time".equals(v.asText())) throw new UnsupportedSchemaException("format " + v.asText());
+                        a.dateTime = true;
+                        break;
+                    case "const": a.constValue = literal(v); break;
+                    case "enum":
+                        a.enumValues = new HashSet<>();
+                        for (JsonNode e : v) a.enumValues.add(literal(e));
+                        break;
+                    case "items": a.items = field("items", v); break;
+                    case "properties":
+                    case "required":
+                    case "additionalProperties":
+                    case "allOf":
+                        break; // handled by object() below
+                    default:
+                        if (!IGNORED.contains(k)) throw new UnsupportedSchemaException(k);
+                }
+            }
+            if (schema.has("properties") || schema.has("required") || schema.has("additionalProperties") || schema.has("allOf")) {
+                a.object = object(schema);
+            }
+            if (a.constValue != null && a.kinds == ANY) {
+                a.kinds = a.constValue instanceof String ? STRING : (INTEGER | NUMBER);
+            }
+            return a;
+        }
+
+        private static Object literal(JsonNode v) {
+            if (v.isNull()) return null;
+            if (v.isIntegralNumber()) return v.asLong();
+            if (v.isNumber()) return v.asDouble();
+            if (v.isBoolean()) return v.asBoolean();
+            return v.asText();
+        }
+
+        private static int kind(String type) throws UnsupportedSchemaException {
+            switch (type) {
+                case "string": return STRING;
+                case "integer": return INTEGER;
+                case "number": return INTEGER | NUMBER;
+                case "boolean": return BOOLEAN;
+                case "array": return ARRAY;
+                case "object": return OBJECT;
+                case "null": return NULL;
+                default: throw new UnsupportedSchemaException("type " + type);
+            }
+        }
+    }
+}
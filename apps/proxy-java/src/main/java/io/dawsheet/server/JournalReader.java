@@ -0,0 +1,73 @@
+package io.dawsheet.server;
+
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Reads the records of a {@link CommandJournal} directory (or a single segment) in append order. */
+public final class JournalReader {
+
+    /** Receives each record; the envelope is a fresh instance the visitor may keep. */
+    public interface Visitor {
+        void record(CommandEnvelope env, Instant receivedAt, Instant effectiveAt) throws Exception;
+    }
+
+    private final BinaryEnvelopeCodec codec = new BinaryEnvelopeCodec();
+
+    /** Visit every record under {@code path}; returns the number of records read. */
+    public long forEach(Path path, Visitor visitor) throws Exception {
+        long n = 0;
+        for (Path segment : segments(path)) n += readSegment(segment, visitor);
+        return n;
+    }
+
+    /** Segment files in append order: {@code path} itself if it is a file. */
+    public static List<Path> segments(Path path) throws IOException {
+        if (!Files.isDirectory(path)) return List.of(path);
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(f -> CommandJournal.segmentNumber(f) > 0)
+                    .sorted(Comparator.comparingInt(CommandJournal::segmentNumber))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long readSegment(Path file, Visitor visitor) throws Exception {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < CommandJournal.HEADER_BYTES || buf.getInt() != CommandJournal.MAGIC) {
+            throw new IOException("Not a command journal segment: " + file);
+        }
+        int version = buf.getInt();
+        if (version != CommandJournal.VERSION) throw new IOException("Unsupported journal version " + version + " in " + file);
+        buf.getLong(); // createdAt
+
+        long n = 0;
+        byte[] frame = new byte[256];
+        while (buf.remaining() >= 4) {
+            int length = buf.getInt();
+            if (length == 0) break;
+            if (length < 16 || length > buf.remaining()) throw new IOException("Corrupt record at " + (buf.position() - 4) + " in " + file);
+            Instant receivedAt = CommandJournal.instant(buf.getLong());
+            Instant effectiveAt = CommandJournal.instant(buf.getLong());
+            int frameLength = length - 16;
+            if (frame.length < frameLength) frame = new byte[Math.max(frameLength, frame.length * 2)];
+            buf.get(frame, 0, frameLength);
+            visitor.record(codec.decode(frame, 0, frameLength, new CommandEnvelope()), receivedAt, effectiveAt);
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,90 @@
+package io.dawsheet.server;
+
+import io.dawsheet.midi.Arpeggiator;
+import io.dawsheet.midi.MidiOut;
+import io.dawsheet.midi.ModulationEngine;
+import io.dawsheet.midi.SongPlayer;
+import io.dawsheet.midi.StepSequencer;
+import io.dawsheet.transport.TransportClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a command journal back through {@link CommandRouter}.
+ *
+ * Records were journaled after transforms, so each is replayed with {@code at: now}, no quantize
+ * and no transform list. In timed mode records are spaced by their original effective times; in
+ * fast mode they are sent back to back, for load testing.
+ *
+ * Usage: {@code JournalReplay <journal dir or segment> [--fast]}. Uses the same environment as the
+ * proxy (MIDI_OUT, PROXY_TEMPO_BPM, MODULATION_RATE_HZ) and wires the same engines, so notes, CCs,
+ * patterns and arpeggios reach the device; dedup is off so every record plays.
+ */
+public final class JournalReplay {
+    private static final Logger log = LoggerFactory.getLogger(JournalReplay.class);
+
+    private JournalReplay() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            log.error("Usage: JournalReplay <journal dir or segment file> [--fast]");
+            System.exit(2); // usage error, as distinct from a replay that failed
+        }
+        Path path = Paths.get(args[0]);
+        boolean fast = args.length > 1 && "--fast".equals(args[1]);
+
+        AtomicLong acks = new AtomicLong(), nacks = new AtomicLong();
+        StatusPublisher counting = (ok, origin, target, effectiveAt, code, error) -> {
+            if (ok) {
+                acks.incrementAndGet();
+            } else {
+                nacks.incrementAndGet();
+                log.debug("NACK {} {}: {}", origin, code, error);
+            }
+        };
+        TransportClock clock = TransportClock.fromEnv();
+        try (MidiOut midi = new MidiOut(System.getenv().getOrDefault("MIDI_OUT", ""));
+             ModulationEngine modulation = ModulationEngine.fromEnv((ch, cc, value) -> midi.controlChange(ch + 1, cc, value), clock);
+             StepSequencer sequencer = new StepSequencer((ch, note, vel, durNanos) -> midi.noteOn(ch + 1, note, vel, durNanos / 1e9), clock);
+             Arpeggiator arpeggiator = new Arpeggiator((ch, note, vel, durNanos) -> midi.noteOn(ch + 1, note, vel, durNanos / 1e9), clock);
+             SongPlayer song = new SongPlayer((type, ch, data1, data2) -> midi.shortMessage(type, ch + 1, data1, data2), clock);
+             CommandRouter router = new CommandRouter("commands.schema.json", counting, clock, null)) {
+            router.midiTo(midi);
+            router.modulationTo(modulation);
+            router.sequencerTo(sequencer);
+            router.arpeggiatorTo(arpeggiator);
+            router.songTo(song);
+            long started = System.nanoTime();
+            long n = replay(path, router, fast);
+            // Let scheduled note-offs and the last commands finish
+            while (router.pendingScheduled() > 0) Thread.sleep(10);
+            Duration took = Duration.ofNanos(System.nanoTime() - started);
+            log.info("Replayed {} records in {} ms ({} mode): {} ACK, {} NACK",
+                    n, took.toMillis(), fast ? "fast" : "timed", acks.get(), nacks.get());
+        }
+    }
+
+    /** Replay every record under {@code path} through {@code router}; returns the number of records sent. */
+    public static long replay(Path path, CommandRouter router, boolean fast) throws Exception {
+        long startNanos = System.nanoTime();
+        Instant[] first = new Instant[1];
+        return new JournalReader().forEach(path, (env, receivedAt, effectiveAt) -> {
+            if (!fast && effectiveAt != null) {
+                if (first[0] == null) first[0] = effectiveAt;
+                long due = startNanos + Duration.between(first[0], effectiveAt).toNanos();
+                for (long wait; (wait = due - System.nanoTime()) > 0; ) LockSupport.parkNanos(wait);
+            }
+            env.at = "now";
+            env.quantize = null;
+            env.transform = null;
+            router.handle(env);
+        });
+    }
+}
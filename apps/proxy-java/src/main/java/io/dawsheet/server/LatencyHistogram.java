@@ -0,0 +1,92 @@
+package io.dawsheet.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HdrHistogram-style log-linear buckets.
+ *
+ * Values below 64ns get a bucket each; above that every power of two is split into 64 linear
+ * sub-buckets, so any recorded value is reported within 1/64 (about 1.6%) of its true value, from
+ * nanoseconds up to ~36 minutes (2^41 ns). {@link #record} is a single atomic increment and never allocates;
+ * percentiles are computed by scanning the 2304 counters, so read them off the hot path.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /** Record one duration in nanoseconds; negatives count as 0, values past the range are clamped. */
+    public void record(long nanos) {
+        long v = Math.max(0L, Math.min(MAX_VALUE, nanos));
+        counts.incrementAndGet(index(v));
+        if (v > max.get()) max.accumulateAndGet(v, Math::max);
+    }
+
+    /** Current snapshot; concurrent records may or may not be included. */
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        return new Snapshot(c, total, max.get());
+    }
+
+    /** Clear all counts, e.g. after a scrape that wants per-interval percentiles. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0L);
+        max.set(0L);
+    }
+
+    static int index(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /** Largest value that lands in bucket {@code index}, so percentiles err on the slow side. */
+    static long highestValue(int index) {
+        if (index < SUB_COUNT) return index;
+        int exp = index / SUB_COUNT + SUB_BITS - 1;
+        long sub = index % SUB_COUNT;
+        long width = 1L << (exp - SUB_BITS);
+        return ((SUB_COUNT + sub) << (exp - SUB_BITS)) + width - 1;
+    }
+
+    /** Point-in-time copy of the counters. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.max = max;
+        }
+
+        public long count() { return count; }
+
+        public long max() { return max; }
+
+        /** Value at quantile {@code q} (0..1) in nanoseconds, or 0 if nothing was recorded. */
+        public long percentile(double q) {
+            if (count == 0) return 0L;
+            long rank = Math.max(1L, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestValue(i), max);
+            }
+            return max;
+        }
+    }
+}
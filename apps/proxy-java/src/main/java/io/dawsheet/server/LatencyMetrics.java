@@ -0,0 +1,178 @@
+package io.dawsheet.server;
+
+import io.dawsheet.schema.AckStatus;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-command-type latency histograms, one per {@link LatencyStage} interval plus end to end.
+ *
+ * {@link #record} reads the stamps a command collected on its way from Pub/Sub (or a WebSocket
+ * frame) to the MIDI receiver and adds each interval to its type's histograms. Recording is
+ * lock-free; at most {@value #MAX_TYPES} types get their own histograms and the rest share
+ * {@code "other"}, so a client inventing types cannot grow memory. The end-to-end percentiles put
+ * on ACKs are recomputed at most once per refresh interval per type, not on every ACK.
+ */
+public final class LatencyMetrics {
+    static final int MAX_TYPES = 64;
+    static final String TOTAL = "total";
+    private static final String OTHER = "other";
+    private static final int TOTAL_INDEX = 0; // PUBLISHED has no interval, so its slot holds the total
+    static final long DEFAULT_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, TypeHistograms> byType = new ConcurrentHashMap<>();
+    private final boolean inAck;
+    private final long refreshNanos;
+
+    /** @param inAck whether ACKs should carry {@link AckStatus.Latency} for the command they report */
+    public LatencyMetrics(boolean inAck) {
+        this(inAck, DEFAULT_REFRESH_NANOS);
+    }
+
+    /** @param refreshNanos how stale the percentiles on an ACK may get before they are recomputed */
+    LatencyMetrics(boolean inAck, long refreshNanos) {
+        this.inAck = inAck;
+        this.refreshNanos = refreshNanos;
+    }
+
+    /** Metrics with {@code ACK_LATENCY} (default false) deciding whether ACKs carry timings. */
+    public static LatencyMetrics fromEnv() {
+        return new LatencyMetrics("true".equalsIgnoreCase(System.getenv().getOrDefault("ACK_LATENCY", "false").trim()));
+    }
+
+    public boolean inAck() {
+        return inAck;
+    }
+
+    /**
+     * Move an epoch timestamp (e.g. Pub/Sub {@code publishTime}) onto the nanoTime clock used for
+     * stamps. Differences against it include any skew between the publisher's clock and ours.
+     */
+    public static long nanoTimeOf(long epochSecond, int nanos) {
+        Instant now = Instant.now();
+        long ago = (now.getEpochSecond() - epochSecond) * 1_000_000_000L + (now.getNano() - nanos);
+        return System.nanoTime() - ago;
+    }
+
+    /** Add a sent command's stage intervals to its type's histograms. */
+    public void record(CommandEnvelope env) {
+        LatencyHistogram[] h = histograms(env.type).stages;
+        long[] s = env.stamps;
+        long first = 0, prev = 0;
+        for (int i = 0; i < LatencyStage.COUNT; i++) {
+            if (s[i] == 0) continue;
+            if (prev != 0) h[i].record(s[i] - prev);
+            else first = s[i];
+            prev = s[i];
+        }
+        if (first != 0 && prev != first) h[TOTAL_INDEX].record(prev - first);
+    }
+
+    /**
+     * This command's intervals plus its type's end-to-end percentiles, for an ACK. The percentiles
+     * come from a snapshot at most one refresh interval old, so ACKs do not scan the histogram.
+     */
+    public AckStatus.Latency latency(CommandEnvelope env) {
+        AckStatus.Latency l = new AckStatus.Latency();
+        l.stagesUs = new LinkedHashMap<>();
+        long[] s = env.stamps;
+        long first = 0, prev = 0;
+        for (int i = 0; i < LatencyStage.COUNT; i++) {
+            if (s[i] == 0) continue;
+            if (prev != 0) l.stagesUs.put(LatencyStage.of(i).interval, micros(s[i] - prev));
+            else first = s[i];
+            prev = s[i];
+        }
+        l.stagesUs.put(TOTAL, micros(prev - first));
+        TotalPercentiles total = histograms(env.type).total(refreshNanos);
+        l.p50Us = total.p50Us;
+        l.p99Us = total.p99Us;
+        l.p999Us = total.p999Us;
+        return l;
+    }
+
+    /**
+     * Percentiles by type, then interval: {@code count}, {@code p50Us}, {@code p90Us}, {@code p99Us},
+     * {@code p999Us} and {@code maxUs}. Intervals nothing was recorded for are left out.
+     */
+    public Map<String, Map<String, Map<String, Long>>> snapshot() {
+        Map<String, Map<String, Map<String, Long>>> out = new TreeMap<>();
+        byType.forEach((type, t) -> {
+            LatencyHistogram[] h = t.stages;
+            Map<String, Map<String, Long>> stages = new LinkedHashMap<>();
+            for (int i = 0; i < h.length; i++) {
+                LatencyHistogram.Snapshot snap = h[i].snapshot();
+                if (snap.count() == 0) continue;
+                Map<String, Long> p = new LinkedHashMap<>();
+                p.put("count", snap.count());
+                p.put("p50Us", micros(snap.percentile(0.50)));
+                p.put("p90Us", micros(snap.percentile(0.90)));
+                p.put("p99Us", micros(snap.percentile(0.99)));
+                p.put("p999Us", micros(snap.percentile(0.999)));
+                p.put("maxUs", micros(snap.max()));
+                stages.put(i == TOTAL_INDEX ? TOTAL : LatencyStage.of(i).interval, p);
+            }
+            if (!stages.isEmpty()) out.put(type, stages);
+        });
+        return out;
+    }
+
+    /** Start every histogram over, so the next snapshot covers only what follows. */
+    public void reset() {
+        for (TypeHistograms t : byType.values()) {
+            for (LatencyHistogram histogram : t.stages) histogram.reset();
+            t.total = null;
+        }
+    }
+
+    private TypeHistograms histograms(String type) {
+        String key = type != null ? type : OTHER;
+        TypeHistograms h = byType.get(key);
+        if (h != null) return h;
+        if (byType.size() >= MAX_TYPES) key = OTHER;
+        return byType.computeIfAbsent(key, k -> new TypeHistograms());
+    }
+
+    /** One type's histograms, by stage, and the last end-to-end percentiles computed from them. */
+    private static final class TypeHistograms {
+        final LatencyHistogram[] stages = new LatencyHistogram[LatencyStage.COUNT];
+        volatile TotalPercentiles total;
+
+        TypeHistograms() {
+            for (int i = 0; i < stages.length; i++) stages[i] = new LatencyHistogram();
+        }
+
+        /** Cached end-to-end percentiles, recomputed once they are {@code refreshNanos} old. */
+        TotalPercentiles total(long refreshNanos) {
+            TotalPercentiles t = total;
+            long now = System.nanoTime();
+            if (t == null || now - t.atNanos >= refreshNanos) {
+                // Racing threads may both recompute; either result is as good as the other
+                t = new TotalPercentiles(stages[TOTAL_INDEX].snapshot(), now);
+                total = t;
+            }
+            return t;
+        }
+    }
+
+    private static final class TotalPercentiles {
+        final long p50Us, p99Us, p999Us;
+        final long atNanos;
+
+        TotalPercentiles(LatencyHistogram.Snapshot snap, long atNanos) {
+            this.p50Us = micros(snap.percentile(0.50));
+            this.p99Us = micros(snap.percentile(0.99));
+            this.p999Us = micros(snap.percentile(0.999));
+            this.atNanos = atNanos;
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(Math.max(0L, nanos));
+    }
+}
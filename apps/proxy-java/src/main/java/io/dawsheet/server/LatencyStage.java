@@ -0,0 +1,34 @@
+package io.dawsheet.server;
+
+/**
+ * Points in a command's life that are stamped on {@link CommandEnvelope#stamps}, in order. The
+ * duration recorded for a stage is the time since the nearest earlier stage that was stamped, so
+ * paths that skip a stage (the Pub/Sub note path does not validate or transform) still add up.
+ */
+public enum LatencyStage {
+    /** Pub/Sub {@code publishTime}, moved onto the local nanoTime clock (so it includes clock skew). */
+    PUBLISHED(null),
+    /** Message or frame handed to the proxy. */
+    RECEIVED("transit"),
+    DECODED("decode"),
+    VALIDATED("validate"),
+    TRANSFORMED("transform"),
+    /** The time the command was due to play; the preceding interval is the intended wait. */
+    SCHEDULED("wait"),
+    /** Handed to the MIDI {@code Receiver}; the preceding interval is dispatch lateness. */
+    SENT("dispatch");
+
+    public static final int COUNT = values().length;
+    private static final LatencyStage[] VALUES = values();
+
+    /** Name of the interval that ends at this stage, or null for the first stage. */
+    public final String interval;
+
+    LatencyStage(String interval) {
+        this.interval = interval;
+    }
+
+    static LatencyStage of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,102 @@
+package io.dawsheet.server;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP endpoint for latency percentiles.
+ *
+ * {@code GET /metrics} returns {@link LatencyMetrics#snapshot()} as JSON under {@code "latency"};
+ * {@code GET /metrics?reset=true} also clears the histograms afterwards, so a scraper polling with
+ * it sees per-interval percentiles and drift is not averaged away over the process lifetime.
+ */
+public final class MetricsServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MetricsServer.class);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LatencyMetrics latency;
+    private final String proxyId;
+    private final Gson gson = new Gson();
+
+    public MetricsServer(InetSocketAddress address, LatencyMetrics latency, String proxyId) throws IOException {
+        this.latency = latency;
+        this.proxyId = proxyId;
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Server on {@code METRICS_HOST} (default 127.0.0.1) and {@code METRICS_PORT}, or null if the
+     * port is unset or 0.
+     */
+    public static MetricsServer fromEnv(LatencyMetrics latency, String proxyId) throws IOException {
+        int port;
+        try {
+            port = Integer.parseInt(System.getenv().getOrDefault("METRICS_PORT", "0").trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid METRICS_PORT='{}'", System.getenv("METRICS_PORT"));
+            return null;
+        }
+        if (port <= 0) return null;
+        String host = System.getenv().getOrDefault("METRICS_HOST", "127.0.0.1");
+        return new MetricsServer(new InetSocketAddress(host, port), latency, proxyId);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Metrics endpoint on http://{}/metrics", server.getAddress());
+    }
+
+    /** Bound address (useful when started on port 0). */
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("proxy", proxyId);
+            body.put("latency", latency.snapshot());
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.contains("reset=true")) latency.reset();
+
+            byte[] json = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
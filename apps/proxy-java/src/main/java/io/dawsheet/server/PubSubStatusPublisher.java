@@ -4,40 +4,82 @@ import com.google.gson.Gson;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.PubsubMessage;
 import io.dawsheet.schema.AckStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.time.Instant;
+import java.util.List;
 
 public class PubSubStatusPublisher implements StatusPublisher {
+    private static final Logger log = LoggerFactory.getLogger(PubSubStatusPublisher.class);
+
     private final com.google.cloud.pubsub.v1.Publisher publisher;
     private final Gson gson = new Gson();
+    private final String proxyId;
 
     public PubSubStatusPublisher(com.google.cloud.pubsub.v1.Publisher publisher) {
+        this(publisher, defaultProxyId());
+    }
+
+    public PubSubStatusPublisher(com.google.cloud.pubsub.v1.Publisher publisher, String proxyId) {
         this.publisher = publisher;
+        this.proxyId = proxyId;
+    }
+
+    /** {@code java-rt-bridge@<hostname>}; resolving the host name can hit DNS, so do it once at startup. */
+    public static String defaultProxyId() {
+        try {
+            return "java-rt-bridge@" + InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "java-rt-bridge";
+        }
     }
 
     @Override
     public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
-        try {
-            AckStatus status = new AckStatus();
-            status.type = ok ? "ACK" : "NACK";
-            status.origin = origin;
-            status.target = target;
-            status.receivedAt = Instant.now().toString();
-            status.effectiveAt = effectiveAt != null ? effectiveAt.toString() : null;
-            status.proxy = "java-rt-bridge@" + InetAddress.getLocalHost().getHostName();
-            status.ok = ok;
-            status.code = code;
-            status.error = error;
+        send(status(ok, origin, target, effectiveAt, code, error));
+    }
 
+    @Override
+    public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error,
+                        AckStatus.Latency latency) {
+        AckStatus status = status(ok, origin, target, effectiveAt, code, error);
+        status.latency = latency;
+        send(status);
+    }
+
+    @Override
+    public void publishBatch(boolean ok, String origin, String target, Instant effectiveAt, List<AckStatus.Item> items) {
+        AckStatus status = status(ok, origin, target, effectiveAt, ok ? null : "batch_partial", null);
+        status.items = items;
+        send(status);
+    }
+
+    private AckStatus status(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
+        AckStatus status = new AckStatus();
+        status.type = ok ? "ACK" : "NACK";
+        status.origin = origin;
+        status.target = target;
+        status.receivedAt = Instant.now().toString();
+        status.effectiveAt = effectiveAt != null ? effectiveAt.toString() : null;
+        status.proxy = proxyId;
+        status.ok = ok;
+        status.code = code;
+        status.error = error;
+        return status;
+    }
+
+    private void send(AckStatus status) {
+        try {
             String jsonStatus = gson.toJson(status);
             ByteString data = ByteString.copyFromUtf8(jsonStatus);
             PubsubMessage pubsubMessage = PubsubMessage.newBuilder().setData(data).build();
 
             publisher.publish(pubsubMessage);
-            System.out.println("Published status: " + jsonStatus);
+            log.debug("Published status: {}", jsonStatus);
         } catch (Exception e) {
-            System.err.println("Failed to publish status: " + e.getMessage());
+            log.warn("Failed to publish status: {}", e.toString());
         }
     }
 }
@@ -1,15 +1,30 @@
 package io.dawsheet.server;
 
-import com.google.gson.Gson;
-import com.google.protobuf.ByteString;
-import com.google.pubsub.v1.PubsubMessage;
 import io.dawsheet.schema.AckStatus;
 
 import java.time.Instant;
+import java.util.List;
 
 public interface StatusPublisher {
     void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error);
 
+    /** A status carrying the command's stage timings; publishers that cannot send them drop them. */
+    default void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error,
+                         AckStatus.Latency latency) {
+        publish(ok, origin, target, effectiveAt, code, error);
+    }
+
+    /**
+     * One aggregated status for a BATCH envelope. Publishers that can carry per-item status override
+     * this; the default reports a single ACK/NACK summarizing the items.
+     */
+    default void publishBatch(boolean ok, String origin, String target, Instant effectiveAt, List<AckStatus.Item> items) {
+        int failed = 0;
+        for (AckStatus.Item item : items) if (!item.ok) failed++;
+        publish(ok, origin, target, effectiveAt, ok ? null : "batch_partial",
+                ok ? null : failed + " of " + items.size() + " batch items failed");
+    }
+
     static StatusPublisher noop() {
         return (ok, origin, target, effectiveAt, code, error) -> {};
     }
@@ -1,185 +1,145 @@
 package io.dawsheet.server;
 
-import io.dawsheet.parser.NoteParser;
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
 
 import java.security.SecureRandom;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 public class TransformEngine {
     private static final SecureRandom rnd = new SecureRandom();
 
+    /** Max number of distinct transform chains kept compiled. */
+    static final int PIPELINE_CACHE_SIZE = 256;
+
+    private final TransportClock clock;
+    private final Map<List<Map<String, Object>>, TransformPipeline> pipelines =
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Map<String, Object>>, TransformPipeline> eldest) {
+                    return size() > PIPELINE_CACHE_SIZE;
+                }
+            };
+
+    public TransformEngine() {
+        this(TransportClock.fromEnv());
+    }
+
+    public TransformEngine(TransportClock clock) {
+        this.clock = clock;
+    }
+
     public static class Result {
         public final Map<String, Object> payload;
         public final long delayMs;
+        public final long delayNanos;
         public final Instant effectiveAt;
 
-        public Result(Map<String, Object> payload, long delayMs, Instant effectiveAt) {
+        public Result(Map<String, Object> payload, long delayNanos, Instant effectiveAt) {
             this.payload = payload;
-            this.delayMs = delayMs;
+            this.delayNanos = delayNanos;
+            this.delayMs = delayNanos / 1_000_000L;
             this.effectiveAt = effectiveAt;
         }
     }
 
     public Result apply(String idSeed, String at, List<Map<String, Object>> transforms, Map<String, Object> payload, String quantizeSetting) {
-        long delayMs = 0;
-        if (transforms != null) {
-        int idx = 0;
-        for (Map<String, Object> t : transforms) {
-                Object opObj = t.get("op");
-                if (!(opObj instanceof String)) continue;
-                String op = ((String) opObj).toLowerCase(Locale.ROOT);
-                switch (op) {
-                    case "transpose":
-                        applyTranspose(t, payload);
-                        break;
-                    case "quantize":
-                        delayMs = applyQuantize(delayMs, t, quantizeSetting);
-                        break;
-                    case "humanize":
-            delayMs = applyHumanize(delayMs, t, idSeed, idx);
-                        break;
-                    case "limit":
-                        applyLimit(t, payload);
-                        break;
-                    case "curve":
-                        applyCurve(t, payload);
-                        break;
-                    default:
-                        // ignore others in v1
-                        break;
-                }
-        idx++;
-            }
-        }
-        Instant effectiveAt = Instant.now().plusMillis(delayMs);
-        return new Result(payload, delayMs, effectiveAt);
+        return apply(idSeed, System.nanoTime(), transforms, payload, quantizeSetting);
     }
 
-    private void applyTranspose(Map<String, Object> t, Map<String, Object> payload) {
-        Object semitonesObj = t.get("semitones");
-        if (!(semitonesObj instanceof Number)) return;
-        int semitones = ((Number) semitonesObj).intValue();
-        Object note = payload.get("note");
-        if (note == null) return;
-        int midi;
-        if (note instanceof Number) {
-            midi = ((Number) note).intValue();
-        } else if (note instanceof String) {
-            midi = NoteParser.noteToMidi((String) note);
-        } else {
-            return;
-        }
-        int out = Math.max(0, Math.min(127, midi + semitones));
-        payload.put("note", out);
+    /**
+     * Apply transforms relative to an already-resolved anchor nanoTime; {@code effectiveAt} is the anchor
+     * plus any delay introduced by quantize/humanize.
+     */
+    public Result apply(String idSeed, long anchorNanos, List<Map<String, Object>> transforms, Map<String, Object> payload, String quantizeSetting) {
+        TransformEvent event = new TransformEvent();
+        event.begin();
+        long delayNanos = compile(transforms).run(idSeed, anchorNanos, payload, quantizeSetting);
+        commit(event, idSeed, transforms, delayNanos);
+        Instant effectiveAt = CommandScheduler.toInstant(anchorNanos + delayNanos);
+        return new Result(payload, delayNanos, effectiveAt);
     }
 
-    private long applyQuantize(long currentDelayMs, Map<String, Object> t, String quantizeSetting) {
-        String grid = quantizeSetting;
-        Object gridObj = t.get("grid");
-        if (gridObj instanceof String) grid = (String) gridObj;
-        if (grid == null || grid.equals("off")) return currentDelayMs;
-        double bpm = 120.0; // default tempo; can be overridden by env
-        try {
-            String env = System.getenv("PROXY_TEMPO_BPM");
-            if (env != null) bpm = Double.parseDouble(env);
-        } catch (Exception ignored) {}
-        double beatMs = 60000.0 / bpm;
-        double gridMs;
-        switch (grid) {
-            case "1/4": gridMs = beatMs; break;
-            case "1/8": gridMs = beatMs / 2.0; break;
-            case "1/8T": gridMs = beatMs / 3.0; break;
-            case "1/16": gridMs = beatMs / 4.0; break;
-            case "bar": gridMs = beatMs * 4.0; break; // assume 4/4
-            default:
-                gridMs = beatMs / 4.0;
-        }
-        long q = Math.round(currentDelayMs / gridMs) * (long) gridMs;
-        return Math.max(0, q);
+    /**
+     * Apply an envelope's transforms to its primitive payload slots in place; {@code Result.payload} is null.
+     */
+    public Result apply(CommandEnvelope env, long anchorNanos) {
+        TransformEvent event = new TransformEvent();
+        event.begin();
+        long delayNanos = compile(env.transform).run(env.id, anchorNanos, env, env.quantize);
+        commit(event, env.id, env.transform, delayNanos);
+        Instant effectiveAt = CommandScheduler.toInstant(anchorNanos + delayNanos);
+        return new Result(null, delayNanos, effectiveAt);
     }
 
-    private long applyHumanize(long currentDelayMs, Map<String, Object> t, String seed, int index) {
-        Object msObj = t.get("ms");
-        int range = (msObj instanceof Number) ? Math.max(0, ((Number) msObj).intValue()) : 0;
-        int jitter = 0;
-        if (range > 0) {
-            // deterministic pseudo-random based on seed and index
-            int h = 0;
-            String s = String.valueOf(seed) + ":" + index;
-            for (int i = 0; i < s.length(); i++) {
-                h = 31 * h + s.charAt(i);
-            }
-            // map hash to [-range, +range]
-            int span = range * 2 + 1;
-            int mod = Math.floorMod(h, span);
-            jitter = mod - range;
-        }
-        long out = currentDelayMs + jitter;
-        return Math.max(0, out);
+    private static void commit(TransformEvent event, String id, List<Map<String, Object>> transforms, long delayNanos) {
+        if (!event.shouldCommit()) return;
+        event.id = id;
+        event.ops = transforms != null ? transforms.size() : 0;
+        event.delay = delayNanos;
+        event.commit();
     }
 
-    private void applyLimit(Map<String, Object> t, Map<String, Object> payload) {
-        int min = getInt(t.get("min"), 0);
-        int max = getInt(t.get("max"), 127);
-        if (min > max) { int tmp = min; min = max; max = tmp; }
-        // Common fields to clamp: velocity, value
-        if (payload.containsKey("velocity")) {
-            int v = getInt(payload.get("velocity"), 100);
-            payload.put("velocity", clamp(v, min, max));
+    /**
+     * Compiled pipeline for a transform list, from a bounded LRU keyed by the list's content
+     * (so equal chains arriving as distinct objects share one pipeline).
+     */
+    TransformPipeline compile(List<Map<String, Object>> transforms) {
+        if (transforms == null || transforms.isEmpty()) return TransformPipeline.IDENTITY;
+        synchronized (pipelines) {
+            TransformPipeline p = pipelines.get(transforms);
+            if (p != null) return p;
         }
-        if (payload.containsKey("value")) {
-            int v = getInt(payload.get("value"), 0);
-            payload.put("value", clamp(v, min, max));
+        TransformPipeline compiled = TransformPipeline.compile(transforms, this::quantizeStage);
+        List<Map<String, Object>> key = new ArrayList<>(transforms.size());
+        for (Map<String, Object> t : transforms) key.add(new LinkedHashMap<>(t));
+        synchronized (pipelines) {
+            TransformPipeline raced = pipelines.putIfAbsent(key, compiled);
+            return raced != null ? raced : compiled;
         }
     }
 
-    private void applyCurve(Map<String, Object> t, Map<String, Object> payload) {
-        String shape = String.valueOf(t.getOrDefault("shape", "exp"));
-        double amount = getDouble(t.get("amount"), 0.5);
-        amount = Math.max(0.0, Math.min(1.0, amount));
-
-        if (payload.containsKey("velocity")) {
-            int v = getInt(payload.get("velocity"), 100);
-            payload.put("velocity", applyCurveToValue(v, shape, amount));
-        }
-        if (payload.containsKey("value")) {
-            int v = getInt(payload.get("value"), 0);
-            payload.put("value", applyCurveToValue(v, shape, amount));
+    int cachedPipelines() {
+        synchronized (pipelines) {
+            return pipelines.size();
         }
     }
 
-    private int applyCurveToValue(int v, String shape, double amount) {
-        double x = Math.max(0, Math.min(127, v)) / 127.0;
-        double y;
-        switch (shape) {
-            case "exp":
-                y = Math.pow(x, 1.0 + 4.0 * amount);
-                break;
-            case "log":
-                y = Math.log1p((Math.E - 1) * x) / Math.log(Math.E);
-                // mix towards linear based on amount
-                y = (1 - amount) * x + amount * y;
-                break;
-            case "sine":
-                y = (1 - amount) * x + amount * Math.sin(x * Math.PI / 2.0);
-                break;
-            default:
-                y = x;
-        }
-        int out = (int) Math.round(y * 127.0);
-        if (out < 0) out = 0; if (out > 127) out = 127; return out;
+    private TransformPipeline.DelayStage quantizeStage(String opGrid) {
+        return (anchorNanos, delayNanos, seed, quantizeSetting) ->
+                applyQuantize(anchorNanos, delayNanos, opGrid != null ? opGrid : quantizeSetting);
     }
 
-    private int getInt(Object o, int def) {
-        return (o instanceof Number) ? ((Number) o).intValue() : def;
-    }
-    private double getDouble(Object o, double def) {
-        return (o instanceof Number) ? ((Number) o).doubleValue() : def;
-    }
-    private int clamp(int x, int min, int max) {
-        if (x < min) return min; if (x > max) return max; return x;
+    /**
+     * Snap the target time forward to the next grid line of the transport, honouring the tempo map
+     * and the meter in effect at that position. Returns the new delay from the anchor.
+     */
+    private long applyQuantize(long anchorNanos, long currentDelayNanos, String grid) {
+        if (grid == null || grid.equals("off")) return currentDelayNanos;
+
+        TempoMap map = clock.tempoMap();
+        long target = anchorNanos + currentDelayNanos;
+        double tick = clock.tickAt(target);
+        long at = (long) Math.floor(tick);
+        long q = TempoMap.TICKS_PER_BEAT; // quarter-note ticks
+        long gridTicks;
+        switch (grid) {
+            case "1/4": gridTicks = q; break;
+            case "1/8": gridTicks = q / 2; break;
+            case "1/8T": gridTicks = q / 3; break;
+            case "1/16": gridTicks = q / 4; break;
+            case "bar":
+            case "scene": gridTicks = map.ticksPerBarAt(at); break;
+            default: gridTicks = q / 4;
+        }
+        // Grid lines are aligned to the start of the current bar so odd meters stay on the grid
+        long barStart = map.barStartTick(at);
+        long snapped = barStart + (long) Math.ceil((tick - barStart) / gridTicks - 1e-6) * gridTicks;
+        long out = clock.nanosAtTick(snapped) - anchorNanos;
+        return Math.max(0, out);
     }
 }
@@ -0,0 +1,25 @@
+package io.dawsheet.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** One {@link TransformEngine#apply} call. */
+@Name("io.dawsheet.Transform")
+@Label("Transform")
+@Category({"DAWSheet", "Commands"})
+@StackTrace(false)
+final class TransformEvent extends Event {
+    @Label("Id")
+    String id;
+
+    @Label("Ops")
+    int ops;
+
+    @Label("Delay")
+    @Timespan(Timespan.NANOSECONDS)
+    long delay;
+}
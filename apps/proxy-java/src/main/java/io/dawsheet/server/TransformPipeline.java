@@ -0,0 +1,200 @@
+package io.dawsheet.server;
+
+import io.dawsheet.parser.NoteParser;
+import io.dawsheet.parser.ScaleRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Immutable, compiled form of an envelope {@code transform} list.
+ *
+ * Ops are dispatched once at compile time: note ops (transpose, and scale_fit as a lookup in a
+ * precompiled {@link ScaleRegistry} table) fold into a single {@link IntUnaryOperator},
+ * level ops fold into composed 128-entry lookup tables (limit/curve for velocity and value, plus
+ * velocity_curve for velocity only), and timing ops (quantize/humanize) into an ordered array of
+ * primitive delay stages. Running a pipeline does no string switching and no per-op map lookups.
+ */
+final class TransformPipeline {
+    static final TransformPipeline IDENTITY = new TransformPipeline(null, null, null, new DelayStage[0]);
+
+    /** Timing stage: returns the new delay (nanos from the anchor). */
+    interface DelayStage {
+        long apply(long anchorNanos, long delayNanos, String idSeed, String quantizeSetting);
+    }
+
+    /** Supplies quantize stages, which need the engine's transport clock. */
+    interface QuantizeFactory {
+        DelayStage quantize(String grid);
+    }
+
+    private final IntUnaryOperator noteOp;
+    private final byte[] velocityTable;
+    private final byte[] valueTable;
+    private final DelayStage[] delayStages;
+
+    private TransformPipeline(IntUnaryOperator noteOp, byte[] velocityTable, byte[] valueTable, DelayStage[] delayStages) {
+        this.noteOp = noteOp;
+        this.velocityTable = velocityTable;
+        this.valueTable = valueTable;
+        this.delayStages = delayStages;
+    }
+
+    static TransformPipeline compile(List<Map<String, Object>> transforms, QuantizeFactory quantize) {
+        if (transforms == null || transforms.isEmpty()) return IDENTITY;
+        IntUnaryOperator noteOp = null;
+        byte[] velocityTable = null;
+        byte[] valueTable = null;
+        List<DelayStage> delays = new ArrayList<>();
+        int idx = 0;
+        for (Map<String, Object> t : transforms) {
+            Object opObj = t.get("op");
+            if (!(opObj instanceof String)) continue;
+            String op = ((String) opObj).toLowerCase(Locale.ROOT);
+            switch (op) {
+                case "transpose": {
+                    Object semitonesObj = t.get("semitones");
+                    if (!(semitonesObj instanceof Number)) break;
+                    int semitones = ((Number) semitonesObj).intValue();
+                    noteOp = andThen(noteOp, n -> clamp(n + semitones, 0, 127));
+                    break;
+                }
+                case "scale_fit": {
+                    Object scaleObj = t.get("scale");
+                    Object rootObj = t.get("root");
+                    byte[] table = ScaleRegistry.defaults().fitTable(
+                            scaleObj instanceof String ? (String) scaleObj : null,
+                            rootObj instanceof String ? (String) rootObj : null);
+                    noteOp = andThen(noteOp, n -> table[clamp(n, 0, 127)]);
+                    break;
+                }
+                case "quantize": {
+                    Object gridObj = t.get("grid");
+                    delays.add(quantize.quantize(gridObj instanceof String ? (String) gridObj : null));
+                    break;
+                }
+                case "humanize": {
+                    Object msObj = t.get("ms");
+                    int range = (msObj instanceof Number) ? Math.max(0, ((Number) msObj).intValue()) : 0;
+                    if (range > 0) delays.add(humanize(range, idx));
+                    break;
+                }
+                case "limit": {
+                    int min = getInt(t.get("min"), 0);
+                    int max = getInt(t.get("max"), 127);
+                    byte[] table = CurveTables.limit(min, max);
+                    velocityTable = CurveTables.compose(velocityTable, table);
+                    valueTable = CurveTables.compose(valueTable, table);
+                    break;
+                }
+                case "curve": {
+                    byte[] table = curveTable(t);
+                    velocityTable = CurveTables.compose(velocityTable, table);
+                    valueTable = CurveTables.compose(valueTable, table);
+                    break;
+                }
+                case "velocity_curve": {
+                    velocityTable = CurveTables.compose(velocityTable, curveTable(t));
+                    break;
+                }
+                default:
+                    // ignore others in v1
+                    break;
+            }
+            idx++;
+        }
+        return new TransformPipeline(noteOp, velocityTable, valueTable, delays.toArray(new DelayStage[0]));
+    }
+
+    /** Applies value ops to the payload in place and returns the delay from the anchor in nanos. */
+    long run(String idSeed, long anchorNanos, Map<String, Object> payload, String quantizeSetting) {
+        if (noteOp != null) {
+            Object note = payload.get("note");
+            int midi = -1;
+            if (note instanceof Number) {
+                midi = ((Number) note).intValue();
+            } else if (note instanceof String) {
+                midi = NoteParser.noteToMidi((String) note);
+            }
+            if (midi >= 0) payload.put("note", noteOp.applyAsInt(midi));
+        }
+        if (velocityTable != null && payload.containsKey("velocity")) {
+            payload.put("velocity", CurveTables.apply(velocityTable, getInt(payload.get("velocity"), 100)));
+        }
+        if (valueTable != null && payload.containsKey("value")) {
+            payload.put("value", CurveTables.apply(valueTable, getInt(payload.get("value"), 0)));
+        }
+        long delayNanos = 0;
+        for (DelayStage stage : delayStages) {
+            delayNanos = stage.apply(anchorNanos, delayNanos, idSeed, quantizeSetting);
+        }
+        return delayNanos;
+    }
+
+    /**
+     * Slot-backed variant of {@link #run(String, long, Map, String)}: transforms the envelope's primitive
+     * payload slots in place, without boxing.
+     */
+    long run(String idSeed, long anchorNanos, CommandEnvelope env, String quantizeSetting) {
+        if (noteOp != null) {
+            if (env.has(CommandEnvelope.SLOT_NOTE_NAME) && !env.has(CommandEnvelope.SLOT_NOTE)) {
+                env.note = NoteParser.noteToMidi(env.noteName);
+                env.slots = (env.slots | CommandEnvelope.SLOT_NOTE) & ~CommandEnvelope.SLOT_NOTE_NAME;
+            }
+            if (env.has(CommandEnvelope.SLOT_NOTE) && env.note >= 0) env.note = noteOp.applyAsInt(env.note);
+        }
+        if (velocityTable != null && env.has(CommandEnvelope.SLOT_VELOCITY)) {
+            env.velocity = CurveTables.apply(velocityTable, env.velocity);
+        }
+        if (valueTable != null && env.has(CommandEnvelope.SLOT_VALUE)) {
+            env.value = CurveTables.apply(valueTable, env.value);
+        }
+        long delayNanos = 0;
+        for (DelayStage stage : delayStages) {
+            delayNanos = stage.apply(anchorNanos, delayNanos, idSeed, quantizeSetting);
+        }
+        return delayNanos;
+    }
+
+    private static DelayStage humanize(int range, int index) {
+        int span = range * 2 + 1;
+        return (anchorNanos, delayNanos, seed, quantizeSetting) -> {
+            // deterministic pseudo-random based on seed and index
+            int h = 0;
+            String s = String.valueOf(seed);
+            for (int i = 0; i < s.length(); i++) {
+                h = 31 * h + s.charAt(i);
+            }
+            h = 31 * h + ':';
+            String suffix = Integer.toString(index);
+            for (int i = 0; i < suffix.length(); i++) {
+                h = 31 * h + suffix.charAt(i);
+            }
+            // map hash to [-range, +range]
+            int jitter = Math.floorMod(h, span) - range;
+            return Math.max(0, delayNanos + jitter * 1_000_000L);
+        };
+    }
+
+    private static byte[] curveTable(Map<String, Object> t) {
+        String shape = String.valueOf(t.getOrDefault("shape", "exp"));
+        return CurveTables.curve(shape, getDouble(t.get("amount"), 0.5));
+    }
+
+    private static IntUnaryOperator andThen(IntUnaryOperator first, IntUnaryOperator next) {
+        return first == null ? next : first.andThen(next);
+    }
+
+    private static int getInt(Object o, int def) {
+        return (o instanceof Number) ? ((Number) o).intValue() : def;
+    }
+    private static double getDouble(Object o, double def) {
+        return (o instanceof Number) ? ((Number) o).doubleValue() : def;
+    }
+    private static int clamp(int x, int min, int max) {
+        if (x < min) return min; if (x > max) return max; return x;
+    }
+}
@@ -0,0 +1,210 @@
+package io.dawsheet.server;
+
+import com.google.gson.Gson;
+import io.dawsheet.schema.AckStatus;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Low-latency command ingress for local clients (web UI, LAN controllers).
+ *
+ * Frames carry the same envelope JSON as Pub/Sub, either a single object or an array of envelopes.
+ * Text and binary frames are both accepted; binary frames are decoded straight from the frame bytes,
+ * and may use the compact {@link BinaryEnvelopeCodec} format instead of JSON (told apart by its magic byte).
+ * Envelopes go directly into {@link CommandRouter#handle(CommandEnvelope, StatusPublisher)} and each
+ * ACK/NACK is pushed back on the same socket, in the frame kind the client last used.
+ *
+ * Backpressure is per connection: at most {@code maxInFlight} commands (queued, scheduled or
+ * awaiting their status frame) are accepted at a time, and anything beyond that is NACKed with
+ * code {@code backpressure} instead of being queued.
+ */
+public class WebSocketIngress extends WebSocketServer {
+    private static final Logger log = LoggerFactory.getLogger(WebSocketIngress.class);
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private final CommandRouter router;
+    private final EnvelopeDecoder decoder = new EnvelopeDecoder();
+    private final BinaryEnvelopeCodec codec = new BinaryEnvelopeCodec();
+    private final EnvelopePool envelopes = new EnvelopePool(256);
+    private final Gson gson = new Gson();
+    private final String proxyId;
+    private final int maxInFlight;
+
+    public WebSocketIngress(InetSocketAddress address, CommandRouter router, String proxyId, int maxInFlight) {
+        super(address);
+        this.router = router;
+        this.proxyId = proxyId;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        setReuseAddr(true);
+        setTcpNoDelay(true);
+    }
+
+    /** Listens on {@code WS_HOST} (default 0.0.0.0) and the given port; {@code WS_MAX_IN_FLIGHT} caps each connection. */
+    public static WebSocketIngress fromEnv(int port, CommandRouter router, String proxyId) {
+        String host = System.getenv().getOrDefault("WS_HOST", "0.0.0.0");
+        int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        try {
+            String v = System.getenv("WS_MAX_IN_FLIGHT");
+            if (v != null && !v.isBlank()) maxInFlight = Integer.parseInt(v.trim());
+        } catch (NumberFormatException ignored) {}
+        return new WebSocketIngress(new InetSocketAddress(host, port), router, proxyId, maxInFlight);
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        conn.setAttachment(new Connection(conn));
+        log.info("WebSocket client connected: {}", conn.getRemoteSocketAddress());
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        log.info("WebSocket client disconnected: {} (code: {})", conn.getRemoteSocketAddress(), code);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        handleFrame(conn, data, 0, data.length, false);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        if (message.hasArray()) {
+            handleFrame(conn, message.array(), message.arrayOffset() + message.position(), message.remaining(), true);
+        } else {
+            byte[] data = new byte[message.remaining()];
+            message.get(data);
+            handleFrame(conn, data, 0, data.length, true);
+        }
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        log.error("WebSocket error{}: {}", conn != null ? " on " + conn.getRemoteSocketAddress() : "", ex.toString());
+    }
+
+    @Override
+    public void onStart() {
+        log.info("WebSocket ingress listening on {}", getAddress());
+        setConnectionLostTimeout(100);
+    }
+
+    private void handleFrame(WebSocket conn, byte[] data, int offset, int length, boolean binary) {
+        Connection c = conn.getAttachment();
+        if (c == null) return;
+        c.binary = binary;
+        long receivedNanos = System.nanoTime();
+        try {
+            if (binary && BinaryEnvelopeCodec.isBinary(data, offset, length)) {
+                codec.decodeFrame(data, offset, length, envelopes, env -> dispatch(c, env, receivedNanos));
+            } else {
+                decoder.decodeFrame(data, offset, length, envelopes, env -> dispatch(c, env, receivedNanos));
+            }
+        } catch (IOException e) {
+            c.send(false, null, null, Instant.now(), "decode_error", e.getMessage());
+        }
+    }
+
+    private void dispatch(Connection c, CommandEnvelope env, long receivedNanos) {
+        env.stamps[LatencyStage.RECEIVED.ordinal()] = receivedNanos;
+        env.stamp(LatencyStage.DECODED);
+        try {
+            if (!c.tryAcquire()) {
+                c.send(false, env.origin, env.target, Instant.now(), "backpressure",
+                        "Too many commands in flight on this connection (max " + maxInFlight + ")");
+                return;
+            }
+            router.handle(env, c);
+        } catch (RuntimeException e) {
+            c.publish(false, env.origin, env.target, Instant.now(), "execution_error", e.getMessage());
+        } finally {
+            // The router keeps its own copy of anything it schedules
+            envelopes.release(env);
+        }
+    }
+
+    /** Per-connection status channel; every accepted command gets exactly one status through it. */
+    private final class Connection implements StatusPublisher {
+        private final WebSocket socket;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        volatile boolean binary;
+
+        Connection(WebSocket socket) {
+            this.socket = socket;
+        }
+
+        boolean tryAcquire() {
+            if (inFlight.incrementAndGet() <= maxInFlight) return true;
+            inFlight.decrementAndGet();
+            return false;
+        }
+
+        @Override
+        public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
+            inFlight.decrementAndGet();
+            send(ok, origin, target, effectiveAt, code, error);
+        }
+
+        @Override
+        public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error,
+                            AckStatus.Latency latency) {
+            inFlight.decrementAndGet();
+            AckStatus status = status(ok, origin, target, effectiveAt, code, error);
+            status.latency = latency;
+            send(status);
+        }
+
+        @Override
+        public void publishBatch(boolean ok, String origin, String target, Instant effectiveAt, List<AckStatus.Item> items) {
+            inFlight.decrementAndGet();
+            AckStatus status = status(ok, origin, target, effectiveAt, ok ? null : "batch_partial", null);
+            status.items = items;
+            send(status);
+        }
+
+        void send(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
+            send(status(ok, origin, target, effectiveAt, code, error));
+        }
+
+        private AckStatus status(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
+            AckStatus status = new AckStatus();
+            status.type = ok ? "ACK" : "NACK";
+            status.origin = origin;
+            status.target = target;
+            status.receivedAt = Instant.now().toString();
+            status.effectiveAt = effectiveAt != null ? effectiveAt.toString() : null;
+            status.proxy = proxyId;
+            status.ok = ok;
+            status.code = code;
+            status.error = error;
+            return status;
+        }
+
+        private void send(AckStatus status) {
+            if (!socket.isOpen()) return;
+            String json = gson.toJson(status);
+            try {
+                if (binary) {
+                    socket.send(json.getBytes(StandardCharsets.UTF_8));
+                } else {
+                    socket.send(json);
+                }
+            } catch (RuntimeException e) {
+                // Connection went away between the isOpen check and the send
+                log.debug("Dropped status frame for {}: {}", socket.getRemoteSocketAddress(), e.toString());
+            }
+        }
+    }
+}
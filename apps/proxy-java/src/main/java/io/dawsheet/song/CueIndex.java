@@ -0,0 +1,184 @@
+package io.dawsheet.song;
+
+import io.dawsheet.transport.TempoMap;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Where a song's cues are and what a receiver must be sent to jump there.
+ *
+ * Cues are section ids, section names, arrangement scene refs (always as {@code scene:N}) and
+ * {@code meta.markers}, matched ignoring case; the first occurrence of a name wins. Positions can
+ * also be given as {@code bar[:beat[:ticks]]}, which is read before any cue name. Alongside the
+ * cues, the index keeps the chase state at every bar line: the last program, pitch bend and
+ * controller values sent on each channel before that bar. {@link #chaseAt} starts from the nearest
+ * bar and folds in at most one bar of events, so a jump costs microseconds however far into the
+ * song it lands.
+ *
+ * Chase entries are packed ints, {@code type << 20 | channel << 16 | data1 << 8 | data2}, with
+ * data bytes as in the timeline (program in data1; pitch bend LSB, MSB; controller, value).
+ */
+public final class CueIndex {
+    private static final int[] NONE = new int[0];
+
+    private final SongTimeline song;
+    private final Map<String, Long> cues;
+    private final int[][] barChase; // barChase[b]: state before the first event of bar b + 1
+
+    CueIndex(SongTimeline song, Map<String, Long> cues) {
+        this.song = song;
+        this.cues = Map.copyOf(cues);
+        this.barChase = new int[song.bars()][];
+        ChaseState state = new ChaseState();
+        int i = 0;
+        for (int b = 0; b < barChase.length; b++) {
+            for (int end = song.indexAtBar(b + 1); i < end; i++) state.apply(song, i);
+            barChase[b] = state.entries();
+        }
+    }
+
+    /** Number of named cues. */
+    public int size() {
+        return cues.size();
+    }
+
+    /** Tick of a named cue, or -1 if the song has none by that name. */
+    public long cue(String name) {
+        Long tick = name != null ? cues.get(key(name)) : null;
+        return tick != null ? tick : -1L;
+    }
+
+    /**
+     * Tick of a CUE.GOTO {@code position}: {@code bar[:beat[:ticks]]} (1-based bar and beat), or
+     * else a cue name. Throws if neither matches.
+     */
+    public long tick(String position) {
+        if (position == null || position.isBlank()) throw new IllegalArgumentException("payload.position is required");
+        int[] pos = position(position.trim());
+        if (pos == null) {
+            long tick = cue(position);
+            if (tick >= 0) return tick;
+            throw new IllegalArgumentException("Unknown cue: " + position);
+        }
+        if (pos[0] < 1 || pos[0] > song.bars() || pos[1] < 1 || pos[2] < 0) {
+            throw new IllegalArgumentException("Position " + position + " is outside the song (bars 1-" + song.bars() + ")");
+        }
+        TempoMap tempo = song.tempoMap();
+        return tempo.toTick(pos[0], pos[1], pos[2]);
+    }
+
+    /** {bar, beat, ticks} of a {@code bar[:beat[:ticks]]} string, or null if it is not one. */
+    private static int[] position(String s) {
+        String[] parts = s.split(":", -1);
+        if (parts.length > 3) return null;
+        int[] pos = {1, 1, 0};
+        try {
+            for (int p = 0; p < parts.length; p++) pos[p] = Integer.parseInt(parts[p].trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return pos;
+    }
+
+    /**
+     * Tick of a DAW.SCENE.LAUNCH scene, registered from a scene ref "N" or "scene:N", or -1 if the
+     * song has neither.
+     */
+    public long scene(int scene) {
+        return cue(sceneCue(Integer.toString(scene)));
+    }
+
+    /**
+     * Cue name of an arrangement scene ref: a bare number "N" becomes "scene:N", so it never shadows
+     * bar N.
+     */
+    static String sceneCue(String ref) {
+        if (ref == null) return null;
+        String r = ref.trim();
+        return position(r) != null && r.indexOf(':') < 0 ? "scene:" + r : r;
+    }
+
+    /** Chase state in effect just before the events at {@code tick}, as packed entries. */
+    public int[] chaseAt(long tick) {
+        if (tick <= 0 || barChase.length == 0) return NONE;
+        int bar = song.barAt(tick);
+        int from = song.indexAtBar(bar);
+        int to = song.indexAtTick(tick);
+        if (from >= to) return barChase[bar - 1];
+        ChaseState state = new ChaseState();
+        state.load(barChase[bar - 1]);
+        for (int i = from; i < to; i++) state.apply(song, i);
+        return state.entries();
+    }
+
+    public static int type(int entry) { return entry >>> 20; }
+
+    public static int channel(int entry) { return (entry >>> 16) & 0xF; }
+
+    public static int data1(int entry) { return (entry >>> 8) & 0x7F; }
+
+    public static int data2(int entry) { return entry & 0x7F; }
+
+    static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Dense last-value state per channel while scanning the timeline; -1 is "never sent". */
+    private static final class ChaseState {
+        final int[] program = new int[16];
+        final int[] bend = new int[16];
+        final int[] cc = new int[16 * 128];
+
+        ChaseState() {
+            Arrays.fill(program, -1);
+            Arrays.fill(bend, -1);
+            Arrays.fill(cc, -1);
+        }
+
+        void apply(SongTimeline song, int i) {
+            int ch = song.channel(i);
+            switch (song.type(i)) {
+                case SongTimeline.PROGRAM_CHANGE: program[ch] = song.data1(i); break;
+                case SongTimeline.PITCH_BEND: bend[ch] = song.data2(i) << 7 | song.data1(i); break;
+                case SongTimeline.CONTROL_CHANGE: cc[ch << 7 | song.data1(i)] = song.data2(i); break;
+                default: break;
+            }
+        }
+
+        void load(int[] entries) {
+            for (int e : entries) {
+                int ch = channel(e);
+                switch (type(e)) {
+                    case SongTimeline.PROGRAM_CHANGE: program[ch] = data1(e); break;
+                    case SongTimeline.PITCH_BEND: bend[ch] = data2(e) << 7 | data1(e); break;
+                    default: cc[ch << 7 | data1(e)] = data2(e); break;
+                }
+            }
+        }
+
+        int[] entries() {
+            int n = 0;
+            for (int v : program) if (v >= 0) n++;
+            for (int v : bend) if (v >= 0) n++;
+            for (int v : cc) if (v >= 0) n++;
+            if (n == 0) return NONE;
+            int[] out = new int[n];
+            int k = 0;
+            for (int ch = 0; ch < 16; ch++) {
+                if (program[ch] >= 0) out[k++] = entry(SongTimeline.PROGRAM_CHANGE, ch, program[ch], 0);
+                for (int c = 0; c < 128; c++) {
+                    int v = cc[ch << 7 | c];
+                    if (v >= 0) out[k++] = entry(SongTimeline.CONTROL_CHANGE, ch, c, v);
+                }
+                if (bend[ch] >= 0) out[k++] = entry(SongTimeline.PITCH_BEND, ch, bend[ch] & 0x7F, bend[ch] >>> 7);
+            }
+            return out;
+        }
+
+        private static int entry(int type, int channel, int data1, int data2) {
+            return type << 20 | channel << 16 | data1 << 8 | data2;
+        }
+    }
+}
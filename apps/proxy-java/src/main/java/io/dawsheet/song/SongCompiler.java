@@ -0,0 +1,184 @@
+package io.dawsheet.song;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dawsheet.midi.ChordVoicings;
+import io.dawsheet.midi.NoteUtil;
+import io.dawsheet.transport.TempoMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a song object ({@code song.schema.json}) into a {@link SongTimeline}.
+ *
+ * The tempo map comes from {@code meta} (bpm, timeSignature, tempoChanges). Each arrangement item
+ * places its section at {@code startBar}, {@code repeat} times back to back. A section's chords
+ * follow each other from the section start, each lasting {@code beats} (positive) beats of the
+ * meter, and each chord is voiced and played as note-ons with matching note-offs. A chord that
+ * runs past the section end is cut off there, and chords that start after it are dropped. The symbol
+ * {@code N.C.} is a rest. A chord's {@code notes}, when given, are played instead of its voiced
+ * symbol. {@code meta} may also set {@code channel} (1-16, default 1), {@code velocity} (default
+ * 100), {@code octave} (default 4) and {@code voicing} (default close) for the whole song. A
+ * section may set a {@code program} (0-127) and controller values ({@code cc}: {"74": 100}),
+ * sent at the start of every pass through it.
+ *
+ * Cues for the {@link CueIndex} are {@code meta.markers} ([{"name": "drop", "bar": 33}]), then the
+ * section id, section name and scene ref of each arrangement item, in song order. A bare numeric
+ * scene ref "N" is registered as "scene:N".
+ */
+public final class SongCompiler {
+    private static final TypeReference<Map<String, Object>> SONG = new TypeReference<>() {};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ChordVoicings voicings;
+
+    public SongCompiler() {
+        this(new ChordVoicings());
+    }
+
+    public SongCompiler(ChordVoicings voicings) {
+        this.voicings = voicings;
+    }
+
+    public SongTimeline compile(InputStream json) throws IOException {
+        return compile(mapper.readValue(json, SONG));
+    }
+
+    @SuppressWarnings("unchecked")
+    public SongTimeline compile(Map<String, Object> song) {
+        Map<String, Object> meta = song.get("meta") instanceof Map ? (Map<String, Object>) song.get("meta") : Map.of();
+        TempoMap tempo = TempoMap.fromSongMeta(meta);
+        int channel = Math.max(1, Math.min(16, intOf(meta.get("channel"), 1))) - 1;
+        int velocity = Math.max(1, Math.min(127, intOf(meta.get("velocity"), 100)));
+        int octave = intOf(meta.get("octave"), ChordVoicings.DEFAULT_OCTAVE);
+        String voicing = meta.get("voicing") instanceof String ? (String) meta.get("voicing") : null;
+
+        Map<String, Map<?, ?>> sections = new HashMap<>();
+        for (Map<?, ?> section : maps(song.get("sections"))) {
+            Object id = section.get("sectionId");
+            if (!(id instanceof String)) throw new IllegalArgumentException("Section without a sectionId");
+            sections.put((String) id, section);
+        }
+        List<Map<?, ?>> arrangement = maps(song.get("arrangement"));
+        arrangement.sort(Comparator.<Map<?, ?>>comparingDouble(a -> doubleOf(a.get("startBar"), 1.0))
+                .thenComparingDouble(a -> doubleOf(a.get("arrangementIndex"), 0.0)));
+
+        SongTimeline.Builder out = new SongTimeline.Builder((String) song.get("songId"), tempo);
+        for (Map<?, ?> marker : maps(meta.get("markers"))) {
+            if (marker.get("name") instanceof String && marker.get("bar") instanceof Number) {
+                out.cue((String) marker.get("name"), barTick(tempo, Math.max(1.0, doubleOf(marker.get("bar"), 1.0))));
+            }
+        }
+        for (Map<?, ?> item : arrangement) {
+            String id = (String) item.get("sectionId");
+            Map<?, ?> section = sections.get(id);
+            if (section == null) throw new IllegalArgumentException("Arrangement refers to unknown section: " + id);
+            double lengthBars = doubleOf(section.get("lengthBars"), 0.0);
+            double startBar = Math.max(1.0, doubleOf(item.get("startBar"), 1.0));
+            int repeat = Math.max(1, intOf(item.get("repeat"), 1));
+            long first = barTick(tempo, startBar);
+            out.cue(id, first);
+            out.cue(stringOf(section.get("sectionName"), stringOf(section.get("name"), null)), first);
+            out.cue(CueIndex.sceneCue(stringOf(item.get("sceneRef"), null)), first);
+            for (int r = 0; r < repeat; r++) {
+                long start = barTick(tempo, startBar + r * lengthBars);
+                long end = barTick(tempo, startBar + (r + 1) * lengthBars);
+                setControllers(out, id, section, start, channel);
+                playChords(out, tempo, id, maps(section.get("chords")), start, end, channel, velocity, octave, voicing);
+                out.end(end);
+            }
+        }
+        return out.build();
+    }
+
+    private static void setControllers(SongTimeline.Builder out, String sectionId, Map<?, ?> section, long at, int channel) {
+        if (section.get("program") instanceof Number) {
+            out.add(at, SongTimeline.PROGRAM_CHANGE, channel, data(((Number) section.get("program")).intValue()), 0);
+        }
+        if (section.get("cc") instanceof Map) {
+            for (Map.Entry<?, ?> cc : ((Map<?, ?>) section.get("cc")).entrySet()) {
+                int controller;
+                try {
+                    controller = Integer.parseInt(String.valueOf(cc.getKey()).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Section " + sectionId + ": controller must be a number: " + cc.getKey());
+                }
+                out.add(at, SongTimeline.CONTROL_CHANGE, channel, data(controller), data(intOf(cc.getValue(), 0)));
+            }
+        }
+    }
+
+    private void playChords(SongTimeline.Builder out, TempoMap tempo, String sectionId, List<Map<?, ?>> chords,
+                            long start, long end, int channel, int velocity, int octave, String voicing) {
+        long at = start;
+        for (Map<?, ?> chord : chords) {
+            if (at >= end) break;
+            double beats = doubleOf(chord.get("beats"), 0.0);
+            // A zero-length chord would put each note-off on its note-on's tick and leave the note hanging
+            if (!(beats > 0)) {
+                throw new IllegalArgumentException("Section " + sectionId + ": chord beats must be positive: " + chord.get("beats"));
+            }
+            long length = Math.round(beats * tempo.ticksPerBeatAt(at));
+            long off = Math.min(end, at + length);
+            int[] notes = notes(chord, sectionId, voicing, octave);
+            for (int note : notes) {
+                out.add(at, SongTimeline.NOTE_ON, channel, note, velocity);
+                out.add(off, SongTimeline.NOTE_OFF, channel, note, 0);
+            }
+            at += length;
+        }
+    }
+
+    private int[] notes(Map<?, ?> chord, String sectionId, String voicing, int octave) {
+        Object explicit = chord.get("notes");
+        if (explicit instanceof List && !((List<?>) explicit).isEmpty()) {
+            List<?> names = (List<?>) explicit;
+            int[] notes = new int[names.size()];
+            for (int i = 0; i < notes.length; i++) notes[i] = NoteUtil.parseNoteName(String.valueOf(names.get(i)));
+            return notes;
+        }
+        Object symbol = chord.get("symbol");
+        if (!(symbol instanceof String) || "N.C.".equalsIgnoreCase(((String) symbol).trim())) return new int[0];
+        try {
+            return voicings.resolve((String) symbol, voicing, octave);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Section " + sectionId + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Tick at a (possibly fractional) 1-based bar. */
+    private static long barTick(TempoMap tempo, double bar) {
+        int whole = (int) Math.floor(bar);
+        long tick = tempo.toTick(whole, 1, 0);
+        double fraction = bar - whole;
+        return fraction == 0.0 ? tick : tick + Math.round(fraction * tempo.ticksPerBarAt(tick));
+    }
+
+    private static List<Map<?, ?>> maps(Object o) {
+        List<Map<?, ?>> out = new ArrayList<>();
+        if (o instanceof List) for (Object e : (List<?>) o) if (e instanceof Map) out.add((Map<?, ?>) e);
+        return out;
+    }
+
+    private static int data(int v) {
+        return Math.max(0, Math.min(127, v));
+    }
+
+    private static String stringOf(Object o, String def) {
+        return o instanceof String ? (String) o : def;
+    }
+
+    private static int intOf(Object o, int def) {
+        return o instanceof Number ? ((Number) o).intValue() : def;
+    }
+
+    private static double doubleOf(Object o, double def) {
+        return o instanceof Number ? ((Number) o).doubleValue() : def;
+    }
+}
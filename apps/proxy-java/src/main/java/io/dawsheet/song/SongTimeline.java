@@ -0,0 +1,183 @@
+package io.dawsheet.song;
+
+import io.dawsheet.transport.TempoMap;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A compiled song: every MIDI event it plays, sorted by transport tick.
+ *
+ * Events are held in parallel primitive arrays (tick, type, channel, data1, data2). Types are MIDI
+ * status nibbles and channels are 0-based, so an event is one short message. At the same tick,
+ * note-offs sort before program, controller and pitch-bend changes, which sort before note-ons,
+ * so a chord tone repeated across a chord change is released and struck again. A bar index
+ * (the first event of every bar) makes seeking to a bar O(1) and to a tick O(log n), and the
+ * {@link CueIndex} built with the timeline resolves named cues and chase state.
+ */
+public final class SongTimeline {
+    public static final int NOTE_OFF = 0x80;
+    public static final int NOTE_ON = 0x90;
+    public static final int CONTROL_CHANGE = 0xB0;
+    public static final int PROGRAM_CHANGE = 0xC0;
+    public static final int PITCH_BEND = 0xE0;
+
+    // Sort priority at equal ticks, indexed by type >> 4 - 8
+    private static final int[] PRIORITY = {0, 4, 0, 2, 1, 0, 3};
+    private static final int[] TYPE_BY_PRIORITY = {NOTE_OFF, PROGRAM_CHANGE, CONTROL_CHANGE, PITCH_BEND, NOTE_ON};
+    private static final long MAX_TICK = (1L << 40) - 1;
+
+    private final String songId;
+    private final TempoMap tempoMap;
+    private final long[] tick;
+    private final byte[] type;
+    private final byte[] channel;
+    private final byte[] data1;
+    private final byte[] data2;
+    private final long endTick;
+    private final long[] barTick;   // barTick[b]: start of bar b + 1
+    private final int[] barFirst;   // barFirst[b]: first event at or after barTick[b]
+    private final CueIndex cues;
+
+    private SongTimeline(String songId, TempoMap tempoMap, long[] packed, int size, long endTick,
+                         Map<String, Long> cues) {
+        this.songId = songId;
+        this.tempoMap = tempoMap;
+        long[] events = Arrays.copyOf(packed, size);
+        Arrays.sort(events);
+        tick = new long[size];
+        type = new byte[size];
+        channel = new byte[size];
+        data1 = new byte[size];
+        data2 = new byte[size];
+        for (int i = 0; i < size; i++) {
+            long e = events[i];
+            tick[i] = e >>> 23;
+            type[i] = (byte) TYPE_BY_PRIORITY[(int) (e >>> 18) & 0x7];
+            channel[i] = (byte) ((e >>> 14) & 0xF);
+            data1[i] = (byte) ((e >>> 7) & 0x7F);
+            data2[i] = (byte) (e & 0x7F);
+        }
+        this.endTick = Math.max(endTick, size > 0 ? tick[size - 1] : 0L);
+
+        int bars = 0;
+        while (tempoMap.toTick(bars + 1, 1, 0) < this.endTick) bars++;
+        barTick = new long[Math.max(1, bars)];
+        barFirst = new int[barTick.length];
+        for (int b = 0; b < barTick.length; b++) {
+            barTick[b] = tempoMap.toTick(b + 1, 1, 0);
+            barFirst[b] = lowerBound(barTick[b], b > 0 ? barFirst[b - 1] : 0);
+        }
+        this.cues = new CueIndex(this, cues);
+    }
+
+    public String songId() { return songId; }
+
+    /** Tempo and meter the ticks were compiled against. */
+    public TempoMap tempoMap() { return tempoMap; }
+
+    public int size() { return tick.length; }
+
+    /** Tick at which the song ends (its last section's end). */
+    public long endTick() { return endTick; }
+
+    /** Number of bars the song spans. */
+    public int bars() { return barTick.length; }
+
+    /** Named cues and chase state. */
+    public CueIndex cues() { return cues; }
+
+    public long tick(int i) { return tick[i]; }
+
+    /** MIDI status nibble of event {@code i}, e.g. {@link #NOTE_ON}. */
+    public int type(int i) { return type[i] & 0xFF; }
+
+    /** 0-based MIDI channel of event {@code i}. */
+    public int channel(int i) { return channel[i]; }
+
+    public int data1(int i) { return data1[i]; }
+
+    public int data2(int i) { return data2[i]; }
+
+    /** Tick at which a 1-based bar starts. */
+    public long barTick(int bar) {
+        return barTick[checkBar(bar) - 1];
+    }
+
+    /** Index of the first event of a 1-based bar (or {@link #size()} if the bar has none after it). */
+    public int indexAtBar(int bar) {
+        return barFirst[checkBar(bar) - 1];
+    }
+
+    /** Index of the first event at or after {@code tick}. */
+    public int indexAtTick(long tick) {
+        if (tick <= 0) return 0;
+        return lowerBound(tick, barFirst[barAt(tick) - 1]);
+    }
+
+    /** 1-based bar containing {@code tick} (the first or last bar outside the song). */
+    public int barAt(long tick) {
+        int b = Arrays.binarySearch(barTick, tick);
+        return (b >= 0 ? b : Math.max(0, -b - 2)) + 1;
+    }
+
+    private int lowerBound(long t, int from) {
+        int lo = from, hi = tick.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tick[mid] < t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int checkBar(int bar) {
+        if (bar < 1 || bar > barTick.length) {
+            throw new IllegalArgumentException("Bar " + bar + " is outside the song (1-" + barTick.length + ")");
+        }
+        return bar;
+    }
+
+    /** Collects events in any order; {@link #build} sorts them into a timeline. */
+    static final class Builder {
+        private final String songId;
+        private final TempoMap tempoMap;
+        private long[] packed = new long[256];
+        private int size;
+        private long endTick;
+        private final Map<String, Long> cues = new LinkedHashMap<>();
+
+        Builder(String songId, TempoMap tempoMap) {
+            this.songId = songId;
+            this.tempoMap = tempoMap;
+        }
+
+        /** Adds an event; channel is 0-based, data bytes are 0-127. */
+        Builder add(long tick, int type, int channel, int data1, int data2) {
+            if (tick < 0 || tick > MAX_TICK) throw new IllegalArgumentException("Event tick out of range: " + tick);
+            int priority = type >= NOTE_OFF && type <= PITCH_BEND ? PRIORITY[(type >> 4) - 8] : 0;
+            if (TYPE_BY_PRIORITY[priority] != type) throw new IllegalArgumentException("Unsupported event type: " + type);
+            if (size == packed.length) packed = Arrays.copyOf(packed, size * 2);
+            // tick:40 | priority:3 | channel:4 | data1:7 | data2:7, so a plain sort orders the timeline
+            packed[size++] = tick << 23 | (long) priority << 18 | (long) (channel & 0xF) << 14
+                    | (long) (data1 & 0x7F) << 7 | (data2 & 0x7F);
+            return this;
+        }
+
+        Builder end(long tick) {
+            endTick = Math.max(endTick, tick);
+            return this;
+        }
+
+        /** Names a position; the first cue with a name (ignoring case) wins. */
+        Builder cue(String name, long tick) {
+            if (name != null && !name.isBlank()) cues.putIfAbsent(CueIndex.key(name), tick);
+            return this;
+        }
+
+        SongTimeline build() {
+            return new SongTimeline(songId, tempoMap, packed, size, endTick, cues);
+        }
+    }
+}
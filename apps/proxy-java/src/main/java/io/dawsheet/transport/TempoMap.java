@@ -0,0 +1,242 @@
+package io.dawsheet.transport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, piecewise-constant tempo and time-signature map.
+ *
+ * Positions are bar:beat:ticks (bars and beats 1-based, ticks 0-based at {@link #TICKS_PER_BEAT}
+ * per quarter note); beats follow the meter's denominator, so a beat in 6/8 is an eighth note.
+ * BPM is always quarter notes per minute. Segments are held in parallel primitive arrays and every
+ * conversion is a binary search plus arithmetic, i.e. O(log n) in the number of changes.
+ */
+public final class TempoMap {
+    public static final int TICKS_PER_BEAT = 480;
+
+    // Segment i starts at startTick[i] / startNanos[i] and runs at nanosPerTick[i].
+    private final long[] startTick;
+    private final double[] startNanos;
+    private final double[] nanosPerTick;
+    private final double[] bpm;
+    // Meter in effect for segment i: bar number barNumber[i] begins at barTick[i].
+    private final int[] barNumber;
+    private final long[] barTick;
+    private final int[] beatsPerBar;
+    private final int[] beatUnit;
+
+    public TempoMap(double bpm, int beatsPerBar) {
+        this(bpm, beatsPerBar, 4);
+    }
+
+    public TempoMap(double bpm, int beatsPerBar, int beatUnit) {
+        this(new long[]{0L}, new double[]{0.0}, new double[]{checkBpm(bpm)},
+                new int[]{1}, new long[]{0L}, new int[]{checkMeter(beatsPerBar)}, new int[]{checkUnit(beatUnit)});
+    }
+
+    private TempoMap(long[] startTick, double[] startNanos, double[] bpm,
+                     int[] barNumber, long[] barTick, int[] beatsPerBar, int[] beatUnit) {
+        this.startTick = startTick;
+        this.startNanos = startNanos;
+        this.bpm = bpm;
+        this.barNumber = barNumber;
+        this.barTick = barTick;
+        this.beatsPerBar = beatsPerBar;
+        this.beatUnit = beatUnit;
+        this.nanosPerTick = new double[bpm.length];
+        for (int i = 0; i < bpm.length; i++) {
+            nanosPerTick[i] = 60_000_000_000.0 / (bpm[i] * TICKS_PER_BEAT);
+            if (i > 0) {
+                startNanos[i] = startNanos[i - 1] + (startTick[i] - startTick[i - 1]) * nanosPerTick[i - 1];
+            }
+        }
+    }
+
+    /**
+     * Build a map from a song {@code meta} object: {@code bpm}, optional {@code timeSignature} ("3/4"),
+     * and optional {@code tempoChanges}: [{"bar": 17, "bpm": 90, "timeSignature": "6/8"}, ...].
+     */
+    public static TempoMap fromSongMeta(Map<String, Object> meta) {
+        double bpm = meta != null && meta.get("bpm") instanceof Number ? ((Number) meta.get("bpm")).doubleValue() : 120.0;
+        int[] sig = parseTimeSignature(meta != null ? meta.get("timeSignature") : null, new int[]{4, 4});
+        TempoMap map = new TempoMap(bpm, sig[0], sig[1]);
+        Object changes = meta != null ? meta.get("tempoChanges") : null;
+        if (changes instanceof List) {
+            List<Map<?, ?>> sorted = new ArrayList<>();
+            for (Object o : (List<?>) changes) if (o instanceof Map) sorted.add((Map<?, ?>) o);
+            sorted.sort((a, b) -> Integer.compare(intOf(a.get("bar"), 1), intOf(b.get("bar"), 1)));
+            for (Map<?, ?> c : sorted) {
+                int bar = Math.max(1, intOf(c.get("bar"), 1));
+                long tick = map.toTick(bar, 1, 0);
+                if (c.get("timeSignature") != null) {
+                    int[] ts = parseTimeSignature(c.get("timeSignature"), new int[]{map.beatsPerBarAt(tick), map.beatUnitAt(tick)});
+                    map = map.withMeterAtBar(bar, ts[0], ts[1]);
+                }
+                if (c.get("bpm") instanceof Number) {
+                    map = map.withTempoAt(tick, ((Number) c.get("bpm")).doubleValue());
+                }
+            }
+        }
+        return map;
+    }
+
+    /** Returns a copy with the tempo changed from {@code tick} onward (later changes are dropped). */
+    public TempoMap withTempoAt(long tick, double newBpm) {
+        checkBpm(newBpm);
+        int i = segmentForTick(tick);
+        int n = startTick[i] == tick ? i : i + 1;
+        long[] st = Arrays.copyOf(startTick, n + 1);
+        double[] sn = Arrays.copyOf(startNanos, n + 1);
+        double[] b = Arrays.copyOf(bpm, n + 1);
+        int[] bn = Arrays.copyOf(barNumber, n + 1);
+        long[] bt = Arrays.copyOf(barTick, n + 1);
+        int[] bpb = Arrays.copyOf(beatsPerBar, n + 1);
+        int[] bu = Arrays.copyOf(beatUnit, n + 1);
+        st[n] = tick;
+        b[n] = newBpm;
+        bn[n] = barNumber[i];
+        bt[n] = barTick[i];
+        bpb[n] = beatsPerBar[i];
+        bu[n] = beatUnit[i];
+        return new TempoMap(st, sn, b, bn, bt, bpb, bu);
+    }
+
+    /** Returns a copy with a new meter starting at the given bar (later changes are dropped). */
+    public TempoMap withMeterAtBar(int bar, int newBeatsPerBar, int newBeatUnit) {
+        checkMeter(newBeatsPerBar);
+        checkUnit(newBeatUnit);
+        long tick = toTick(bar, 1, 0);
+        int i = segmentForTick(tick);
+        int n = startTick[i] == tick ? i : i + 1;
+        long[] st = Arrays.copyOf(startTick, n + 1);
+        double[] sn = Arrays.copyOf(startNanos, n + 1);
+        double[] b = Arrays.copyOf(bpm, n + 1);
+        int[] bn = Arrays.copyOf(barNumber, n + 1);
+        long[] bt = Arrays.copyOf(barTick, n + 1);
+        int[] bpb = Arrays.copyOf(beatsPerBar, n + 1);
+        int[] bu = Arrays.copyOf(beatUnit, n + 1);
+        st[n] = tick;
+        b[n] = bpm[i];
+        bn[n] = bar;
+        bt[n] = tick;
+        bpb[n] = newBeatsPerBar;
+        bu[n] = newBeatUnit;
+        return new TempoMap(st, sn, b, bn, bt, bpb, bu);
+    }
+
+    /** Initial tempo. */
+    public double bpm() { return bpm[0]; }
+
+    /** Initial beats per bar. */
+    public int beatsPerBar() { return beatsPerBar[0]; }
+
+    public double bpmAt(long tick) { return bpm[segmentForTick(tick)]; }
+
+    public int beatsPerBarAt(long tick) { return beatsPerBar[segmentForTick(tick)]; }
+
+    public int beatUnitAt(long tick) { return beatUnit[segmentForTick(tick)]; }
+
+    public int ticksPerBeatAt(long tick) { return ticksPerBeat(segmentForTick(tick)); }
+
+    public long ticksPerBarAt(long tick) {
+        int i = segmentForTick(tick);
+        return (long) beatsPerBar[i] * ticksPerBeat(i);
+    }
+
+    /** Tick at which the bar containing {@code tick} starts. */
+    public long barStartTick(long tick) {
+        int i = segmentForTick(tick);
+        long perBar = (long) beatsPerBar[i] * ticksPerBeat(i);
+        return barTick[i] + Math.floorDiv(tick - barTick[i], perBar) * perBar;
+    }
+
+    /** Absolute tick of a 1-based bar/beat position. */
+    public long toTick(int bar, int beat, int ticks) {
+        int b = Math.max(1, bar);
+        int i = segmentForBar(b);
+        int tpb = ticksPerBeat(i);
+        return barTick[i] + (long) (b - barNumber[i]) * beatsPerBar[i] * tpb
+                + (long) (Math.max(1, beat) - 1) * tpb + Math.max(0, ticks);
+    }
+
+    /** Nanoseconds from song start to the given absolute tick. */
+    public long tickToNanos(long tick) {
+        int i = segmentForTick(tick);
+        return Math.round(startNanos[i] + (tick - startTick[i]) * nanosPerTick[i]);
+    }
+
+    /** Absolute (fractional) tick reached after the given nanoseconds from song start. */
+    public double nanosToTick(long nanos) {
+        int lo = 0, hi = startNanos.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (startNanos[mid] <= nanos) lo = mid; else hi = mid - 1;
+        }
+        return startTick[lo] + (nanos - startNanos[lo]) / nanosPerTick[lo];
+    }
+
+    public long positionToNanos(int bar, int beat, int ticks) {
+        return tickToNanos(toTick(bar, beat, ticks));
+    }
+
+    private int ticksPerBeat(int segment) {
+        return TICKS_PER_BEAT * 4 / beatUnit[segment];
+    }
+
+    private int segmentForTick(long tick) {
+        int lo = 0, hi = startTick.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (startTick[mid] <= tick) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private int segmentForBar(int bar) {
+        int lo = 0, hi = barNumber.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (barNumber[mid] <= bar) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private static int[] parseTimeSignature(Object o, int[] def) {
+        if (!(o instanceof String)) return def;
+        String s = ((String) o).trim();
+        int slash = s.indexOf('/');
+        if (slash <= 0) return def;
+        try {
+            int num = Integer.parseInt(s.substring(0, slash).trim());
+            int den = Integer.parseInt(s.substring(slash + 1).trim());
+            checkMeter(num);
+            checkUnit(den);
+            return new int[]{num, den};
+        } catch (IllegalArgumentException e) {
+            return def;
+        }
+    }
+
+    private static int intOf(Object o, int def) {
+        return o instanceof Number ? ((Number) o).intValue() : def;
+    }
+
+    private static double checkBpm(double bpm) {
+        if (!(bpm > 0)) throw new IllegalArgumentException("bpm must be > 0");
+        return bpm;
+    }
+
+    private static int checkMeter(int beatsPerBar) {
+        if (beatsPerBar <= 0) throw new IllegalArgumentException("beatsPerBar must be > 0");
+        return beatsPerBar;
+    }
+
+    private static int checkUnit(int beatUnit) {
+        if (beatUnit != 1 && beatUnit != 2 && beatUnit != 4 && beatUnit != 8 && beatUnit != 16 && beatUnit != 32) {
+            throw new IllegalArgumentException("beat unit must be a power of two between 1 and 32");
+        }
+        return beatUnit;
+    }
+}
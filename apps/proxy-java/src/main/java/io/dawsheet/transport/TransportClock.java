@@ -0,0 +1,70 @@
+package io.dawsheet.transport;
+
+/**
+ * Maps the transport's musical timeline onto {@link System#nanoTime()}.
+ *
+ * The song position 1:1 is anchored at {@code originNanos}; the tempo map converts positions into
+ * offsets from that anchor. The clock runs from construction until {@link #stop()}.
+ */
+public class TransportClock {
+    private volatile TempoMap tempoMap;
+    private volatile long originNanos;
+    private volatile boolean running = true;
+
+    public TransportClock(TempoMap tempoMap) {
+        this.tempoMap = tempoMap;
+        this.originNanos = System.nanoTime();
+    }
+
+    /** Default clock at {@code PROXY_TEMPO_BPM} (read once) or 120 BPM, in 4/4. */
+    public static TransportClock fromEnv() {
+        double bpm = 120.0;
+        try {
+            String env = System.getenv("PROXY_TEMPO_BPM");
+            if (env != null) bpm = Double.parseDouble(env);
+        } catch (Exception ignored) {}
+        return new TransportClock(new TempoMap(bpm > 0 ? bpm : 120.0, 4));
+    }
+
+    public TempoMap tempoMap() { return tempoMap; }
+
+    public void setTempoMap(TempoMap tempoMap) { this.tempoMap = tempoMap; }
+
+    public long originNanos() { return originNanos; }
+
+    /** Re-anchor position 1:1 at the given nanoTime. */
+    public void setOrigin(long originNanos) { this.originNanos = originNanos; }
+
+    public boolean isRunning() { return running; }
+
+    /** Start (or restart) playback from 1:1 at the given nanoTime. */
+    public synchronized void start(long atNanos) {
+        originNanos = atNanos;
+        running = true;
+    }
+
+    public synchronized void stop() {
+        running = false;
+    }
+
+    /** Change tempo from the transport position at {@code atNanos} onward, keeping earlier positions fixed. */
+    public synchronized void setTempo(long atNanos, double bpm) {
+        long tick = (long) Math.max(0.0, Math.floor(tickAt(atNanos)));
+        tempoMap = tempoMap.withTempoAt(tick, bpm);
+    }
+
+    /** Absolute nanoTime at which the given 1-based bar/beat(/ticks) position plays. */
+    public long nanosAt(int bar, int beat, int ticks) {
+        return originNanos + tempoMap.positionToNanos(bar, beat, ticks);
+    }
+
+    /** Absolute nanoTime at which the given tick plays. */
+    public long nanosAtTick(long tick) {
+        return originNanos + tempoMap.tickToNanos(tick);
+    }
+
+    /** Transport position, in (fractional) ticks, at the given nanoTime. */
+    public double tickAt(long nanos) {
+        return tempoMap.nanosToTick(nanos - originNanos);
+    }
+}
@@ -0,0 +1,97 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.transport.TransportClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.dawsheet.midi.EngineFixtures.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArpeggiatorTest {
+
+    private final TransportClock clock = EngineFixtures.fastClock();
+
+    @Test
+    public void testCompilesPlayOrders() {
+        int[] chord = {67, 60, 64, 72};
+        assertArrayEquals(new int[]{60, 64, 67, 72}, Arpeggiator.order(chord, "up"));
+        assertArrayEquals(new int[]{72, 67, 64, 60}, Arpeggiator.order(chord, "down"));
+        assertArrayEquals(new int[]{60, 64, 67, 72, 67, 64}, Arpeggiator.order(chord, "updown"));
+        assertArrayEquals(new int[]{60, 64}, Arpeggiator.order(new int[]{64, 60}, "updown"));
+        assertThrows(IllegalArgumentException.class, () -> Arpeggiator.order(chord, "sideways"));
+        assertThrows(IllegalArgumentException.class, () -> Arpeggiator.order(new int[0], "up"));
+    }
+
+    @Test
+    public void testPlaysStepsWithGateForLengthBeats() throws Exception {
+        EngineFixtures.Notes sink = new EngineFixtures.Notes();
+        try (Arpeggiator arp = new Arpeggiator(sink, clock)) {
+            // Two beats of 1/16 = 8 steps
+            arp.start(4, new int[]{64, 60, 67}, "updown", "1/16", 0.5, 2, 90, System.nanoTime());
+            await(() -> arp.active() == 0, 2000);
+            assertEquals(0, arp.active());
+        }
+        assertEquals(List.of(60, 64, 67, 64, 60, 64, 67, 64), sink.notes());
+        long halfStep = TimeUnit.MILLISECONDS.toNanos(25) / 2;
+        for (long[] p : sink.played) {
+            assertEquals(4, p[0]);
+            assertEquals(90, p[2]);
+            assertTrue(Math.abs(p[3] - halfStep) < TimeUnit.MILLISECONDS.toNanos(1), "Gate 0.5 holds half a step");
+        }
+    }
+
+    @Test
+    public void testFollowsHeldChordAndRandomNeverRepeats() throws Exception {
+        EngineFixtures.Notes sink = new EngineFixtures.Notes();
+        try (Arpeggiator arp = new Arpeggiator(sink, clock)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> arp.start(0, null, "up", "1/32", 0.5, 1, 100, System.nanoTime()));
+            arp.hold(0, new int[]{48, 52, 55});
+            arp.start(0, null, "random", "1/32", 0.5, 0, 100, System.nanoTime()); // length 0: nothing to stop
+            assertEquals(0, arp.active());
+            arp.start(0, null, "random", "1/32", 0.5, 16, 100, System.nanoTime());
+            Thread.sleep(60);
+            arp.hold(0, new int[]{50, 53});
+            Thread.sleep(60);
+            arp.start(0, null, "random", "1/32", 0.5, 0, 100, System.nanoTime());
+            assertEquals(0, arp.active(), "Length 0 stops the channel's arpeggio");
+        }
+        List<Integer> notes = sink.notes();
+        assertTrue(notes.size() >= 6, "Should have played: " + notes);
+        assertTrue(notes.contains(50) || notes.contains(53), "Should follow the new held chord: " + notes);
+        for (int i = 1; i < notes.size(); i++) {
+            assertFalse(notes.get(i - 1).equals(notes.get(i)), "Random must not repeat a note: " + notes);
+        }
+    }
+
+    @Test
+    public void testSlowSinkDoesNotBlockHoldOrStop() throws Exception {
+        EngineFixtures.StuckSink sink = new EngineFixtures.StuckSink();
+        try (Arpeggiator arp = new Arpeggiator(sink, clock)) {
+            arp.hold(0, new int[]{60, 64, 67});
+            arp.start(0, null, "up", "1/16", 0.5, 4, 100, System.nanoTime());
+            sink.awaitStuck();
+            // The player is blocked in the sink; CHORD.PLAY and ARPEGGIATE length 0 must not queue behind it
+            CompletableFuture.runAsync(() -> {
+                arp.hold(0, new int[]{62, 65, 69});
+                arp.stop(0);
+            }).get(1, TimeUnit.SECONDS);
+            assertEquals(0, arp.active());
+            sink.release();
+        }
+    }
+
+    @Test
+    public void testTransportStopEndsArpeggios() throws Exception {
+        try (Arpeggiator arp = new Arpeggiator((ch, note, vel, dur) -> {}, clock)) {
+            arp.start(1, new int[]{60}, "up", "1/8", 1.0, 64, 100, System.nanoTime());
+            assertEquals(1, arp.active());
+            clock.stop();
+            await(() -> arp.active() == 0, 2000);
+            assertEquals(0, arp.active());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.parser.ChordParser;
+import io.dawsheet.parser.ChordQuality;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChordVoicingsTest {
+
+    private static int[] intervals(String quality) {
+        return ChordParser.quality(quality).quality.intervals();
+    }
+
+    @Test
+    public void testQualities() {
+        assertArrayEquals(new int[]{0, 4, 7}, intervals(""));
+        assertArrayEquals(new int[]{0, 3, 7}, intervals("m"));
+        assertArrayEquals(new int[]{0, 3, 6}, intervals("dim"));
+        assertArrayEquals(new int[]{0, 4, 8}, intervals("aug"));
+        assertArrayEquals(new int[]{0, 5, 7}, intervals("sus4"));
+        assertArrayEquals(new int[]{0, 2, 7}, intervals("sus2"));
+        assertArrayEquals(new int[]{0, 7}, intervals("5"));
+        assertArrayEquals(new int[]{0, 4, 7, 10}, intervals("7"));
+        assertArrayEquals(new int[]{0, 4, 7, 11}, intervals("maj7"));
+        assertArrayEquals(new int[]{0, 3, 7, 10}, intervals("m7"));
+        assertArrayEquals(new int[]{0, 3, 7, 11}, intervals("mMaj7"));
+        assertArrayEquals(new int[]{0, 3, 6, 9}, intervals("dim7"));
+        assertArrayEquals(new int[]{0, 3, 6, 10}, intervals("m7b5"));
+        assertArrayEquals(new int[]{0, 3, 6, 10}, intervals("ø"));
+        assertArrayEquals(new int[]{0, 5, 7, 10}, intervals("7sus4"));
+        assertArrayEquals(new int[]{0, 4, 7, 9, 14}, intervals("6/9"));
+        assertArrayEquals(new int[]{0, 4, 7, 10, 14}, intervals("9"));
+        assertArrayEquals(new int[]{0, 4, 7, 10, 13}, intervals("7(b9)"));
+        assertArrayEquals(new int[]{0, 4, 7, 10, 14, 18}, intervals("9#11"));
+        assertArrayEquals(new int[]{0, 3, 7, 10, 14, 17, 21}, intervals("m13"));
+        assertArrayEquals(new int[]{0, 4, 7, 14}, intervals("add9"));
+        assertArrayEquals(new int[]{0, 3, 7, 10}, intervals("minor seventh"));
+    }
+
+    @Test
+    public void testQualitiesAreInterned() {
+        assertSame(ChordParser.quality("maj7").quality, ChordParser.quality("M7").quality);
+        assertSame(ChordParser.quality("maj7").quality, ChordParser.quality("Δ7").quality);
+        assertSame(ChordQuality.of(0b10010001), ChordParser.quality("").quality);
+    }
+
+    @Test
+    public void testSymbolsAndSlashBass() {
+        ChordParser.Chord c = ChordParser.parse("F#m7b5");
+        assertEquals(6, c.rootPc);
+        assertArrayEquals(new int[]{0, 3, 6, 10}, c.quality.intervals());
+        assertEquals(-1, c.bassPc);
+
+        ChordParser.Chord slash = ChordParser.parse("Cmaj7/G");
+        assertEquals(0, slash.rootPc);
+        assertEquals(7, slash.bassPc);
+        assertEquals(-1, ChordParser.parse("C6/9").bassPc, "6/9 is a quality, not a slash chord");
+
+        assertThrows(IllegalArgumentException.class, () -> ChordParser.parse("H7"));
+        assertThrows(IllegalArgumentException.class, () -> ChordParser.quality("maj7q"));
+    }
+
+    @Test
+    public void testVoicings() {
+        ChordVoicings v = new ChordVoicings();
+        assertArrayEquals(new int[]{60, 64, 67, 71}, v.resolve("C", "maj7", null, 4));
+        assertArrayEquals(new int[]{48, 52, 55}, v.resolve("C3", "", null, 4), "octave in the root wins");
+        assertArrayEquals(new int[]{64, 67, 72}, v.resolve("C", "", "inv1", 4));
+        assertArrayEquals(new int[]{67, 72, 76}, v.resolve("C", "", "inv2", 4));
+        assertArrayEquals(new int[]{55, 60, 64, 71}, v.resolve("C", "maj7", "drop2", 4));
+        assertArrayEquals(new int[]{52, 60, 64, 67}, v.resolve("C", "/E", null, 4), "slash bass below the chord");
+        assertArrayEquals(new int[]{50, 53, 57, 60}, v.resolve("Dm7", null, 3));
+        assertThrows(IllegalArgumentException.class, () -> v.resolve("C", "", "drop9", 4));
+    }
+
+    @Test
+    public void testResolvedChordsAreCached() {
+        ChordVoicings v = new ChordVoicings();
+        int[] first = v.resolve("Eb", "m9", "open", 4);
+        assertSame(first, v.resolve("Eb", "m9", "open", 4));
+        assertSame(first, v.resolve("D#", "min9", "spread", 4), "same root, interned quality and voicing");
+        assertEquals(1, v.cachedQualities());
+    }
+
+    @Test
+    public void testCacheIsBoundedByQualityCount() {
+        ChordVoicings v = new ChordVoicings();
+        for (int i = 0; i < ChordVoicings.MAX_CACHED_QUALITIES * 2; i++) {
+            // A distinct interval set each time, as a client inventing chords would send
+            ChordQuality q = ChordQuality.of(0b10010001 | (i << 12));
+            assertEquals(60, v.notes(60, q, -1, ChordVoicings.Voicing.CLOSE)[0]);
+        }
+        assertEquals(ChordVoicings.MAX_CACHED_QUALITIES, v.cachedQualities());
+    }
+
+    @Test
+    public void testNotesOutsideMidiRangeAreDropped() {
+        ChordVoicings v = new ChordVoicings();
+        for (int n : v.resolve("G9", "13", null, 4)) assertTrue(n >= 0 && n <= 127);
+    }
+}
@@ -0,0 +1,113 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Clock, wait loop and recording sinks shared by the engine tests. */
+public final class EngineFixtures {
+
+    private EngineFixtures() {}
+
+    /** 600 BPM in 4/4: a 1/16 step is 25ms. */
+    public static TransportClock fastClock() {
+        return new TransportClock(new TempoMap(600, 4));
+    }
+
+    /** Polls until {@code done} holds or {@code timeoutMs} passes; callers assert the outcome themselves. */
+    public static void await(BooleanSupplier done, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (!done.getAsBoolean() && System.nanoTime() < deadline) Thread.sleep(2);
+    }
+
+    /** Records each note as {channel, note, velocity, durationNanos}. */
+    public static final class Notes implements StepSequencer.Sink {
+        public final List<long[]> played = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void note(int channel, int note, int velocity, long durationNanos) {
+            played.add(new long[]{channel, note, velocity, durationNanos});
+        }
+
+        /** Just the note numbers, in the order they were sent. */
+        public List<Integer> notes() {
+            return played.stream().map(p -> (int) p[1]).toList();
+        }
+    }
+
+    /** Records each song message as {type, data1, data2}. */
+    public static final class Messages implements SongPlayer.Sink {
+        public final List<int[]> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(int type, int channel, int data1, int data2) {
+            sent.add(new int[]{type, data1, data2});
+        }
+
+        public int[] last() {
+            return sent.get(sent.size() - 1);
+        }
+
+        @Override
+        public String toString() {
+            return sent.stream().map(Arrays::toString).toList().toString();
+        }
+    }
+
+    /** Records each controller change as {channel, cc, value}. */
+    public static final class Controls implements ModulationEngine.Sink {
+        public final List<int[]> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void controlChange(int channel, int cc, int value) {
+            sent.add(new int[]{channel, cc, value});
+        }
+
+        /** Sent values for one controller, in order. */
+        public List<Integer> values(int channel, int cc) {
+            return sent.stream().filter(m -> m[0] == channel && m[1] == cc).map(m -> m[2]).toList();
+        }
+    }
+
+    /** Holds the first caller until {@link #release()}, standing in for a MIDI receiver that stalls. */
+    public static final class StuckSink implements StepSequencer.Sink, SongPlayer.Sink {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void note(int channel, int note, int velocity, long durationNanos) {
+            block();
+        }
+
+        @Override
+        public void send(int type, int channel, int data1, int data2) {
+            block();
+        }
+
+        /** Waits until the player thread is stuck inside the sink. */
+        public void awaitStuck() throws InterruptedException {
+            assertTrue(entered.await(2, TimeUnit.SECONDS), "The player never reached the sink");
+        }
+
+        public void release() {
+            released.countDown();
+        }
+
+        private void block() {
+            entered.countDown();
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.dawsheet.midi.EngineFixtures.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModulationEngineTest {
+
+    private final TransportClock clock = new TransportClock(new TempoMap(120, 4));
+
+    @Test
+    public void testRampEmitsMonotonicDistinctValuesAndEndsOnTarget() throws Exception {
+        EngineFixtures.Controls sent = new EngineFixtures.Controls();
+        try (ModulationEngine engine = new ModulationEngine(sent, clock,
+                TimeUnit.MILLISECONDS.toNanos(1))) {
+            engine.ramp(0, 74, 0, 127, TimeUnit.MILLISECONDS.toNanos(60), System.nanoTime());
+            await(() -> engine.active() == 0, 2000);
+            assertEquals(0, engine.active());
+        }
+        List<Integer> v = sent.values(0, 74);
+        assertTrue(v.size() > 5, "Ramp should emit intermediate values: " + v);
+        assertEquals(127, v.get(v.size() - 1).intValue());
+        for (int i = 1; i < v.size(); i++) {
+            assertTrue(v.get(i) > v.get(i - 1), "Values must rise and never repeat: " + v);
+        }
+    }
+
+    @Test
+    public void testNewRampRetargetsTheSameController() throws Exception {
+        EngineFixtures.Controls sent = new EngineFixtures.Controls();
+        try (ModulationEngine engine = new ModulationEngine(sent, clock)) {
+            engine.ramp(2, 1, 0, 127, TimeUnit.SECONDS.toNanos(30), System.nanoTime());
+            engine.ramp(2, 1, 100, 20, TimeUnit.MILLISECONDS.toNanos(20), System.nanoTime());
+            await(() -> engine.active() == 0, 2000);
+            assertEquals(0, engine.active(), "The long ramp must be replaced, not kept alongside");
+        }
+        List<Integer> v = sent.values(2, 1);
+        assertEquals(20, v.get(v.size() - 1).intValue());
+    }
+
+    @Test
+    public void testSquareLfoOnlyEmitsChanges() throws Exception {
+        EngineFixtures.Controls sent = new EngineFixtures.Controls();
+        try (ModulationEngine engine = new ModulationEngine(sent, clock,
+                TimeUnit.MILLISECONDS.toNanos(1))) {
+            engine.lfo(0, 10, "square", 20.0, "off", 100, 64, System.nanoTime());
+            Thread.sleep(120);
+            assertEquals(1, engine.active());
+            // CC.SET on the same controller stops the LFO and is always sent
+            engine.set(0, 10, 64);
+            await(() -> engine.active() == 0, 2000);
+            assertEquals(0, engine.active());
+        }
+        List<Integer> v = sent.values(0, 10);
+        assertEquals(64, v.get(v.size() - 1).intValue());
+        List<Integer> lfo = v.subList(0, v.size() - 1);
+        assertTrue(lfo.size() >= 2, "Square LFO should have flipped: " + v);
+        for (int i = 0; i < lfo.size(); i++) {
+            assertTrue(lfo.get(i) == 114 || lfo.get(i) == 14, "Square wave swings +-depth/2: " + v);
+            if (i > 0) assertFalse(lfo.get(i - 1).equals(lfo.get(i)), "Unchanged values must not be resent: " + v);
+        }
+    }
+
+    @Test
+    public void testSyncGridsAndUnknownWaveform() {
+        assertEquals(TempoMap.TICKS_PER_BEAT, ModulationEngine.syncTicks("1/4"));
+        assertEquals(TempoMap.TICKS_PER_BEAT / 3, ModulationEngine.syncTicks("1/8T"));
+        assertEquals(0, ModulationEngine.syncTicks("off"));
+        try (ModulationEngine engine = new ModulationEngine((ch, cc, v) -> {}, clock)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> engine.lfo(0, 1, "wobble", 1.0, null, 10, 64, System.nanoTime()));
+        }
+    }
+}
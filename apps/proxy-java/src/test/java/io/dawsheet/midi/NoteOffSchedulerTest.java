@@ -0,0 +1,73 @@
+package io.dawsheet.midi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NoteOffSchedulerTest {
+
+    @Test
+    public void testFiresInDueOrderAndNotEarly() throws Exception {
+        List<Integer> fired = new ArrayList<>();
+        List<Long> firedAt = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        try (NoteOffScheduler wheel = new NoteOffScheduler((ch, note) -> {
+            fired.add(note);
+            firedAt.add(System.nanoTime() - start);
+            done.countDown();
+        })) {
+            wheel.schedule(0, 62, TimeUnit.MILLISECONDS.toNanos(30));
+            wheel.schedule(0, 60, TimeUnit.MILLISECONDS.toNanos(10));
+            wheel.schedule(0, 61, TimeUnit.MILLISECONDS.toNanos(20));
+            assertTrue(done.await(2, TimeUnit.SECONDS), "All note-offs should fire");
+        }
+        assertEquals(List.of(60, 61, 62), fired);
+        assertTrue(firedAt.get(0) >= TimeUnit.MILLISECONDS.toNanos(10), "NOTE_OFF fired early");
+    }
+
+    @Test
+    public void testBeyondOneRevolutionAndGrowth() throws Exception {
+        CountDownLatch done = new CountDownLatch(64);
+        // Tiny wheel and capacity so entries wrap around and the entry pool has to grow
+        try (NoteOffScheduler wheel = new NoteOffScheduler((ch, note) -> done.countDown(),
+                TimeUnit.MILLISECONDS.toNanos(1), 8, 16)) {
+            for (int i = 0; i < 64; i++) {
+                wheel.schedule(i % 16, i, TimeUnit.MILLISECONDS.toNanos(5 + i));
+            }
+            assertTrue(done.await(2, TimeUnit.SECONDS), "All note-offs should fire");
+            assertEquals(0, wheel.pending());
+        }
+    }
+
+    @Test
+    public void testSinkDoesNotSeeItsOwnNoteOffAsPending() throws Exception {
+        NoteOffScheduler[] wheel = new NoteOffScheduler[1];
+        int[] pendingInSink = {-1};
+        CountDownLatch done = new CountDownLatch(1);
+        try (NoteOffScheduler w = new NoteOffScheduler((ch, note) -> {
+            pendingInSink[0] = wheel[0].pending();
+            done.countDown();
+        })) {
+            wheel[0] = w;
+            w.schedule(0, 60, TimeUnit.MILLISECONDS.toNanos(5));
+            assertTrue(done.await(2, TimeUnit.SECONDS), "NOTE_OFF should fire");
+            assertEquals(0, w.pending());
+        }
+        assertEquals(0, pendingInSink[0], "A firing note-off is no longer pending");
+    }
+
+    @Test
+    public void testCloseFlushesPending() {
+        int[] count = {0};
+        NoteOffScheduler wheel = new NoteOffScheduler((ch, note) -> count[0]++);
+        wheel.schedule(3, 64, TimeUnit.SECONDS.toNanos(30));
+        wheel.close();
+        assertEquals(1, count[0], "Pending NOTE_OFF should be released on close");
+    }
+}
@@ -0,0 +1,179 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.song.SongCompiler;
+import io.dawsheet.song.SongTimeline;
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.dawsheet.midi.EngineFixtures.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SongPlayerTest {
+
+    // Two one-bar sections of single-note chords in 4/4: C4 and D4 for two beats each, then E4 for a bar
+    private static SongTimeline song(double bpm) {
+        Map<String, Object> song = Map.of("songId", "s", "meta", Map.of("bpm", bpm, "timeSignature", "4/4"),
+                "sections", List.of(
+                        Map.of("sectionId", "a", "lengthBars", 1, "chords", List.of(
+                                Map.of("symbol", "x", "beats", 2, "notes", List.of("C4")),
+                                Map.of("symbol", "x", "beats", 2, "notes", List.of("D4")))),
+                        Map.of("sectionId", "b", "lengthBars", 1, "chords", List.of(
+                                Map.of("symbol", "x", "beats", 4, "notes", List.of("E4"))))),
+                "arrangement", List.of(
+                        Map.of("arrangementIndex", 1, "sectionId", "a", "startBar", 1),
+                        Map.of("arrangementIndex", 2, "sectionId", "b", "startBar", 2)));
+        return new SongCompiler().compile(song);
+    }
+
+    @Test
+    public void testWaitsForTransportStartThenPlaysInOrder() throws Exception {
+        TransportClock clock = new TransportClock(new TempoMap(120, 4));
+        EngineFixtures.Messages sent = new EngineFixtures.Messages();
+        try (SongPlayer player = new SongPlayer(sent, clock)) {
+            SongTimeline song = song(600);
+            player.load(song);
+            assertEquals(600.0, clock.tempoMap().bpm(), 1e-9, "Loading sets the song's tempo map");
+            Thread.sleep(30);
+            assertTrue(sent.sent.isEmpty(), "Armed songs wait for the transport to start");
+
+            long start = System.nanoTime();
+            clock.start(start);
+            await(() -> player.cursor() >= song.size(), 2000);
+            long elapsed = System.nanoTime() - start;
+            assertEquals(song.size(), player.cursor());
+            assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(790), "Last note-off is at bar 3: " + elapsed);
+            assertEquals(0, player.sounding());
+        }
+        int on = SongTimeline.NOTE_ON, off = SongTimeline.NOTE_OFF;
+        assertEvents(sent, new int[][]{{on, 60, 100}, {off, 60, 0}, {on, 62, 100}, {off, 62, 0}, {on, 64, 100}, {off, 64, 0}});
+    }
+
+    @Test
+    public void testStopReleasesHeldNotesAndRestartRelocates() throws Exception {
+        TransportClock clock = new TransportClock(new TempoMap(120, 4));
+        EngineFixtures.Messages sent = new EngineFixtures.Messages();
+        try (SongPlayer player = new SongPlayer(sent, clock)) {
+            // 60 BPM: the first note is held for two seconds
+            player.load(song(60));
+            clock.start(System.nanoTime());
+            await(() -> player.cursor() >= 1, 2000);
+            assertEquals(1, player.sounding());
+            clock.stop();
+            await(() -> player.sounding() == 0, 2000);
+            assertEquals(0, player.sounding());
+            awaitSent(sent, 2);
+            assertArrayEquals(new int[]{SongTimeline.NOTE_OFF, 60, 0}, sent.last());
+
+            // Restart with 1:1 3.9s ago, just before bar 2: picks up there, not from the top
+            clock.start(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(3900));
+            await(() -> player.cursor() >= 5, 2000);
+            awaitSent(sent, 3);
+            assertArrayEquals(new int[]{SongTimeline.NOTE_ON, 64, 100}, sent.last());
+        }
+    }
+
+    @Test
+    public void testSeekSendsOnlyTheChaseStateThatDiffers() throws Exception {
+        // 60 BPM, one bar (4s) per section: a and b share program 5 with different CC74, c switches to program 7
+        SongTimeline song = new SongCompiler().compile(Map.of("songId", "s", "meta", Map.of("bpm", 60),
+                "sections", List.of(
+                        Map.of("sectionId", "a", "lengthBars", 1, "program", 5, "cc", Map.of("74", 40),
+                                "chords", List.of(Map.of("symbol", "x", "beats", 4, "notes", List.of("C4")))),
+                        Map.of("sectionId", "b", "lengthBars", 1, "cc", Map.of("74", 90),
+                                "chords", List.of(Map.of("symbol", "x", "beats", 4, "notes", List.of("E4")))),
+                        Map.of("sectionId", "c", "lengthBars", 1, "program", 7,
+                                "chords", List.of(Map.of("symbol", "x", "beats", 4, "notes", List.of("G4"))))),
+                "arrangement", List.of(
+                        Map.of("arrangementIndex", 1, "sectionId", "a", "startBar", 1),
+                        Map.of("arrangementIndex", 2, "sectionId", "b", "startBar", 2, "sceneRef", "scene:4"),
+                        Map.of("arrangementIndex", 3, "sectionId", "c", "startBar", 3))));
+        TransportClock clock = new TransportClock(new TempoMap(120, 4));
+        clock.stop();
+        EngineFixtures.Messages sent = new EngineFixtures.Messages();
+        try (SongPlayer player = new SongPlayer(sent, clock)) {
+            player.load(song);
+            assertThrows(IllegalArgumentException.class, () -> player.seek("bridge", System.nanoTime()));
+
+            // Nothing sent yet: the whole chase state before c goes out, then c's own events
+            assertEquals(2 * 4 * TempoMap.TICKS_PER_BEAT, player.seek("c", System.nanoTime()));
+            assertTrue(clock.isRunning(), "Seeking starts the transport");
+            awaitSounding(player, 67);
+            assertEvents(sent, new int[][]{{SongTimeline.PROGRAM_CHANGE, 5, 0}, {SongTimeline.CONTROL_CHANGE, 74, 90},
+                    {SongTimeline.PROGRAM_CHANGE, 7, 0}, {SongTimeline.NOTE_ON, 67, 100}});
+
+            // Back to b by scene: G4 released, program 5 and CC74 40 differ from what was sent
+            sent.sent.clear();
+            assertTrue(player.launchScene(4, System.nanoTime()));
+            assertFalse(player.launchScene(5, System.nanoTime()));
+            awaitSounding(player, 64);
+            assertEvents(sent, new int[][]{{SongTimeline.NOTE_OFF, 67, 0}, {SongTimeline.PROGRAM_CHANGE, 5, 0},
+                    {SongTimeline.CONTROL_CHANGE, 74, 40}, {SongTimeline.CONTROL_CHANGE, 74, 90}, {SongTimeline.NOTE_ON, 64, 100}});
+
+            // b again: program 5 is already set, only CC74 needs resending
+            sent.sent.clear();
+            player.seek("B", System.nanoTime());
+            awaitSounding(player, 64);
+            assertEvents(sent, new int[][]{{SongTimeline.NOTE_OFF, 64, 0}, {SongTimeline.CONTROL_CHANGE, 74, 40},
+                    {SongTimeline.CONTROL_CHANGE, 74, 90}, {SongTimeline.NOTE_ON, 64, 100}});
+        }
+    }
+
+    private static void awaitSounding(SongPlayer player, int note) throws InterruptedException {
+        await(() -> player.sounding() > 0, 2000);
+        assertEquals(1, player.sounding(), "Expected " + note + " to be held");
+    }
+
+    @Test
+    public void testSeekLeavesARunningTransportAndItsPatternsInPlace() throws Exception {
+        TransportClock clock = new TransportClock(new TempoMap(120, 4));
+        EngineFixtures.Messages sent = new EngineFixtures.Messages();
+        try (SongPlayer player = new SongPlayer(sent, clock);
+             StepSequencer seq = new StepSequencer((ch, note, vel, dur) -> {}, clock)) {
+            player.load(song(60));
+            clock.start(System.nanoTime());
+            long origin = clock.originNanos();
+            seq.define("p", List.of(Map.of("note", 60)));
+            seq.trigger("p", 1, "1/16", 0, System.nanoTime());
+
+            // Jump to b (E4) while everything is running
+            assertEquals(4 * TempoMap.TICKS_PER_BEAT, player.seek("b", System.nanoTime()));
+            awaitSounding(player, 64);
+            assertEquals(origin, clock.originNanos(), "CUE.GOTO must not re-anchor the shared transport");
+            Thread.sleep(50);
+            assertEquals(1, seq.playing(), "Patterns on the transport keep running");
+            awaitSent(sent, 3);
+            assertArrayEquals(new int[]{SongTimeline.NOTE_ON, 64, 100}, sent.last());
+        }
+    }
+
+    @Test
+    public void testSlowSinkDoesNotBlockSeek() throws Exception {
+        TransportClock clock = new TransportClock(new TempoMap(120, 4));
+        EngineFixtures.StuckSink sink = new EngineFixtures.StuckSink();
+        try (SongPlayer player = new SongPlayer(sink, clock)) {
+            player.load(song(60));
+            clock.start(System.nanoTime());
+            sink.awaitStuck();
+            // The player is stuck sending C4; CUE.GOTO only queues its messages
+            CompletableFuture.runAsync(() -> player.seek("b", System.nanoTime())).get(1, TimeUnit.SECONDS);
+            sink.release();
+        }
+    }
+
+    /** Sends happen on the player thread after it releases its lock, so wait for them. */
+    private static void awaitSent(EngineFixtures.Messages sink, int n) throws InterruptedException {
+        await(() -> sink.sent.size() >= n, 2000);
+    }
+
+    private static void assertEvents(EngineFixtures.Messages sink, int[][] expected) throws InterruptedException {
+        awaitSent(sink, expected.length);
+        assertEquals(expected.length, sink.sent.size(), "Sent " + sink);
+        for (int i = 0; i < expected.length; i++) assertArrayEquals(expected[i], sink.sent.get(i));
+    }
+}
@@ -0,0 +1,116 @@
+package io.dawsheet.midi;
+
+import io.dawsheet.transport.TransportClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.dawsheet.midi.EngineFixtures.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepSequencerTest {
+
+    private final TransportClock clock = EngineFixtures.fastClock();
+
+    @SafeVarargs
+    private static List<Map<String, Object>> steps(Map<String, Object>... steps) {
+        return List.of(steps);
+    }
+
+    @Test
+    public void testPlaysStepsInOrderWithRestsAndGate() throws Exception {
+        EngineFixtures.Notes sink = new EngineFixtures.Notes();
+        try (StepSequencer seq = new StepSequencer(sink, clock)) {
+            seq.define("p1", steps(
+                    Map.of("note", "C4", "velocity", 90, "gate", 0.5),
+                    Map.of(),
+                    Map.of("note", 64),
+                    Map.of("note", "G4", "gate", 1.0)));
+            seq.trigger("p1", 2, "1/16", 1, System.nanoTime());
+            await(() -> seq.playing() == 0, 2000);
+            assertEquals(0, seq.playing());
+        }
+        List<long[]> played = sink.played;
+        assertEquals(3, played.size());
+        assertEquals(List.of(60, 64, 67), sink.notes());
+        assertEquals(2, played.get(0)[0]);
+        assertEquals(90, played.get(0)[2]);
+        assertEquals(100, played.get(1)[2]);
+        long step = TimeUnit.MILLISECONDS.toNanos(25);
+        assertTrue(Math.abs(played.get(0)[3] - step / 2) < TimeUnit.MILLISECONDS.toNanos(1), "Gate 0.5 holds half a step");
+        assertTrue(Math.abs(played.get(2)[3] - step) < TimeUnit.MILLISECONDS.toNanos(1), "Gate 1 holds the whole step");
+    }
+
+    @Test
+    public void testRatchetAndProbabilityEditsApplyLive() throws Exception {
+        EngineFixtures.Notes sink = new EngineFixtures.Notes();
+        try (StepSequencer seq = new StepSequencer(sink, clock)) {
+            seq.define("p2", steps(Map.of("note", 60), Map.of("note", 62)));
+            seq.setRatchet("p2", 0, 3);
+            seq.setProbability("p2", 1, 0.0);
+            seq.trigger("p2", 0, "1/16", 2, System.nanoTime());
+            await(() -> seq.playing() == 0, 2000);
+        }
+        // Step 0 three times per pass, step 1 never
+        assertEquals(List.of(60, 60, 60, 60, 60, 60), sink.notes());
+    }
+
+    @Test
+    public void testLoopsUntilStoppedAndTransportStopEndsPlayback() throws Exception {
+        EngineFixtures.Notes sink = new EngineFixtures.Notes();
+        try (StepSequencer seq = new StepSequencer(sink, clock)) {
+            seq.define("loop", steps(Map.of("note", 48)));
+            seq.trigger("loop", 0, "1/32", 0, System.nanoTime());
+            Thread.sleep(100);
+            assertEquals(1, seq.playing());
+            seq.stop("loop");
+            assertEquals(0, seq.playing());
+            assertTrue(sink.played.size() >= 4, "Should have looped: " + sink.notes());
+
+            seq.trigger("loop", 0, "1/32", 0, System.nanoTime());
+            clock.stop();
+            await(() -> seq.playing() == 0, 2000);
+            assertEquals(0, seq.playing(), "Stopping the transport drops playheads");
+        }
+    }
+
+    @Test
+    public void testSlowSinkDoesNotBlockEdits() throws Exception {
+        EngineFixtures.StuckSink sink = new EngineFixtures.StuckSink();
+        try (StepSequencer seq = new StepSequencer(sink, clock)) {
+            seq.define("slow", steps(Map.of("note", 60), Map.of("note", 62)));
+            seq.trigger("slow", 0, "1/16", 0, System.nanoTime());
+            sink.awaitStuck();
+            // The player thread is stuck in the sink; edits must not wait for it
+            CompletableFuture.runAsync(() -> seq.setProbability("slow", 1, 0.5)).get(1, TimeUnit.SECONDS);
+            sink.release();
+            seq.stopAll();
+        }
+    }
+
+    @Test
+    public void testNoteNamesAreClampedToMidiRange() {
+        try (StepSequencer seq = new StepSequencer((ch, note, vel, dur) -> {}, clock)) {
+            seq.define("range", steps(Map.of("note", "C10"), Map.of("note", 200), Map.of()));
+            StepSequencer.Pattern p = seq.pattern("range");
+            assertEquals(127, p.note[0], "C10 is 132, which must not wrap to a negative byte");
+            assertEquals(127, p.note[1]);
+            assertEquals(-1, p.note[2], "a step without a note is still a rest");
+        }
+    }
+
+    @Test
+    public void testRejectsUnknownPatternsStepsAndRates() {
+        try (StepSequencer seq = new StepSequencer((ch, note, vel, dur) -> {}, clock)) {
+            assertThrows(IllegalArgumentException.class, () -> seq.trigger("nope", 0, null, 1, System.nanoTime()));
+            seq.define("p", steps(Map.of("note", 60)));
+            assertThrows(IllegalArgumentException.class, () -> seq.setRatchet("p", 1, 2));
+            assertThrows(IllegalArgumentException.class, () -> seq.trigger("p", 0, "1/5", 1, System.nanoTime()));
+            assertThrows(IllegalArgumentException.class, () -> seq.define("empty", List.of()));
+            assertEquals(1, seq.patterns());
+        }
+    }
+}
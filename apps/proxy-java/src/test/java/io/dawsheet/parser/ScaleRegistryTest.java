@@ -0,0 +1,68 @@
+package io.dawsheet.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScaleRegistryTest {
+
+    @Test
+    public void testIntervalNames() {
+        assertEquals(0, Scale.semitones("1P"));
+        assertEquals(3, Scale.semitones("3m"));
+        assertEquals(4, Scale.semitones("M3"));
+        assertEquals(6, Scale.semitones("4A"));
+        assertEquals(6, Scale.semitones("5d"));
+        assertEquals(9, Scale.semitones("7d"));
+        assertEquals(14, Scale.semitones("9M"));
+        assertThrows(IllegalArgumentException.class, () -> Scale.semitones("5M"));
+        assertThrows(IllegalArgumentException.class, () -> Scale.semitones("3P"));
+        assertThrows(IllegalArgumentException.class, () -> Scale.semitones("x"));
+    }
+
+    @Test
+    public void testDefaultsLoadSchemaExamples() {
+        Scale major = ScaleRegistry.defaults().get("major");
+        assertNotNull(major);
+        assertEquals(0, major.tonicPc);
+        assertEquals(0b1010_1011_0101, major.mask);
+        Scale dorian = ScaleRegistry.defaults().get("Dorian");
+        assertEquals(2, dorian.tonicPc);
+        assertEquals(0b0110_1010_1101, dorian.mask);
+    }
+
+    @Test
+    public void testFitSnapsToNearestScaleToneWithTiesDown() {
+        byte[] cMajor = ScaleRegistry.defaults().fitTable("Major", "C");
+        assertEquals(60, cMajor[60]);
+        assertEquals(60, cMajor[61]); // C# ties between C and D
+        assertEquals(62, cMajor[63]); // D# ties too
+        assertEquals(69, cMajor[70]);
+        assertEquals(65, cMajor[65]);
+        assertEquals(127, cMajor[127]); // G9
+        // No root: the scale's own tonic (D dorian has the same notes as C major)
+        assertArrayEquals(cMajor, ScaleRegistry.defaults().fitTable("dorian", null));
+        assertThrows(IllegalArgumentException.class, () -> ScaleRegistry.defaults().fitTable("lydian", "C"));
+    }
+
+    @Test
+    public void testLibraryLoadsArraysAndNormalizesNames() throws Exception {
+        ScaleRegistry registry = new ScaleRegistry();
+        String json = "[{\"name\":\"Minor Pentatonic\",\"tonic\":\"A\",\"intervals\":[\"1P\",\"3m\",\"4P\",\"5P\",\"7m\"]},"
+                + "{\"name\":\"Harmonic Minor\",\"tonic\":\"A\",\"intervals\":[\"1P\",\"2M\",\"3m\",\"4P\",\"5P\",\"6m\",\"7M\"]}]";
+        assertEquals(2, registry.load(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+
+        Scale pentatonic = registry.get("minor_pentatonic");
+        assertEquals(5, pentatonic.size());
+        assertTrue(pentatonic.contains(0, 9));   // C is in A minor pentatonic
+        assertFalse(pentatonic.contains(11, 9)); // B is not
+        assertEquals(68, registry.fitTable("harmonic-minor", "A")[68]); // G#
+        // Scales with the same shape and root share one table
+        Scale again = registry.register("Blues-less", "C", List.of("1P", "3m", "4P", "5P", "7m"));
+        assertSame(pentatonic.fit(9), again.fit(9));
+    }
+}
@@ -0,0 +1,110 @@
+package io.dawsheet.pubsub;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AckPublisherPoolTest {
+
+    /** Records what the pool does with it; fails every publish when {@code failing} is set. */
+    private static final class FakePublisher implements AckPublisherPool.TopicPublisher {
+        final List<PubsubMessage> messages = new ArrayList<>();
+        boolean failing;
+        int flushes;
+        int shutdowns;
+        int awaits;
+
+        @Override
+        public ApiFuture<String> publish(PubsubMessage message) {
+            messages.add(message);
+            return failing
+                    ? ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable"))
+                    : ApiFutures.immediateFuture("id-" + messages.size());
+        }
+
+        @Override public void publishAllOutstanding() { flushes++; }
+        @Override public void shutdown() { shutdowns++; }
+        @Override public boolean awaitTermination(long duration, TimeUnit unit) { awaits++; return true; }
+    }
+
+    private final Map<String, FakePublisher> created = new ConcurrentHashMap<>();
+    private int factoryCalls;
+
+    private AckPublisherPool pool() {
+        return new AckPublisherPool(topic -> {
+            factoryCalls++;
+            FakePublisher p = new FakePublisher();
+            created.put(topic, p);
+            return p;
+        });
+    }
+
+    private static ByteString ack(String id) {
+        return ByteString.copyFromUtf8("{\"id\":\"" + id + "\"}");
+    }
+
+    @Test
+    public void testOnePublisherIsReusedPerTopic() {
+        AckPublisherPool pool = pool();
+        pool.publish("acks-a", ack("1"));
+        pool.publish("acks-a", ack("2"));
+        pool.publish("acks-b", ack("3"));
+        pool.publish("acks-a", ack("4"));
+
+        assertEquals(2, factoryCalls, "One publisher per topic");
+        assertEquals(3, created.get("acks-a").messages.size());
+        assertEquals(1, created.get("acks-b").messages.size());
+        assertEquals(4, pool.publishedCount());
+        assertEquals(0, pool.failureCount());
+        pool.close();
+    }
+
+    @Test
+    public void testFailuresAreCountedNotThrown() {
+        AckPublisherPool pool = new AckPublisherPool(topic -> {
+            if (topic.equals("missing")) throw new IllegalStateException("no such topic");
+            FakePublisher p = new FakePublisher();
+            p.failing = true;
+            return p;
+        });
+        pool.publish("acks", ack("1"));
+        pool.publish("missing", ack("2"));
+
+        assertEquals(0, pool.publishedCount());
+        assertEquals(2, pool.failureCount());
+        pool.close();
+    }
+
+    @Test
+    public void testCloseFlushesAndShutsDownEveryPublisher() {
+        AckPublisherPool pool = pool();
+        pool.publish("acks-a", ack("1"));
+        pool.publish("acks-b", ack("2"));
+        pool.close();
+
+        for (FakePublisher p : created.values()) {
+            assertEquals(1, p.flushes, "Pending batches are flushed before shutdown");
+            assertEquals(1, p.shutdowns);
+            assertEquals(1, p.awaits);
+        }
+
+        // After close, publishes are dropped and counted, and no publisher is recreated
+        pool.publish("acks-a", ack("3"));
+        assertEquals(2, factoryCalls);
+        assertEquals(1, pool.failureCount());
+        assertEquals(1, created.get("acks-a").messages.size());
+
+        pool.close();
+        assertEquals(1, created.get("acks-a").shutdowns, "A second close has nothing left to shut down");
+    }
+}
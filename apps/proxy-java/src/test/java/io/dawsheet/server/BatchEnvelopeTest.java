@@ -0,0 +1,85 @@
+package io.dawsheet.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchEnvelopeTest {
+
+    private static CommandEnvelope batch(List<Map<String, Object>> items) {
+        CommandEnvelope env = new CommandEnvelope();
+        env.v = 1;
+        env.type = "BATCH";
+        env.id = "batch-1";
+        env.origin = "sheets://Grid!A1:A4";
+        env.at = "now";
+        env.target = "default";
+        env.payload = new HashMap<>();
+        env.payload.put("items", items);
+        return env;
+    }
+
+    private static Map<String, Object> scene(String id, Object scene) {
+        Map<String, Object> payload = new HashMap<>();
+        if (scene != null) payload.put("scene", scene);
+        Map<String, Object> item = new HashMap<>();
+        item.put("type", "DAW.SCENE.LAUNCH");
+        if (id != null) item.put("id", id);
+        item.put("payload", payload);
+        return item;
+    }
+
+    @Test
+    public void testOneAggregatedAckWithPerItemStatus() throws Exception {
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        try (CommandRouter router = new CommandRouter("commands.schema.json", rec)) {
+            router.handle(batch(List.of(scene("s1", 1), scene(null, null), scene("s3", 3))));
+        }
+
+        assertEquals(1, rec.count, "a batch gets exactly one status");
+        assertFalse(rec.lastOk);
+        assertEquals("batch_partial", rec.lastCode);
+        assertEquals("sheets://Grid!A1:A4", rec.lastOrigin);
+        assertEquals(3, rec.lastItems.size());
+        assertTrue(rec.lastItems.get(0).ok);
+        assertEquals("s1", rec.lastItems.get(0).id);
+        assertFalse(rec.lastItems.get(1).ok);
+        assertEquals("batch-1#1", rec.lastItems.get(1).id, "items without an id get one derived from the batch");
+        assertEquals("schema_violation", rec.lastItems.get(1).code);
+        assertTrue(rec.lastItems.get(2).ok);
+    }
+
+    @Test
+    public void testOffsetItemsReportWhenTheLastOneRuns() throws Exception {
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        Map<String, Object> late = scene("late", 2);
+        late.put("offsetMs", 30);
+        try (CommandRouter router = new CommandRouter("commands.schema.json", rec)) {
+            router.handle(batch(List.of(scene("first", 1), late)));
+            assertEquals(0, rec.count, "the aggregated ACK waits for the offset item");
+            assertTrue(rec.awaitCount(1, 2000));
+        }
+        assertEquals(1, rec.count);
+        assertTrue(rec.lastOk);
+        assertTrue(java.time.Instant.parse(rec.lastItems.get(1).effectiveAt).isAfter(java.time.Instant.parse(rec.lastItems.get(0).effectiveAt)));
+    }
+
+    @Test
+    public void testNestedBatchIsRejectedPerItem() throws Exception {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("type", "BATCH");
+        nested.put("payload", Map.of("items", List.of(scene("x", 1))));
+
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        try (CommandRouter router = new CommandRouter("commands.schema.json", rec)) {
+            router.handle(batch(List.of(scene("ok", 1), nested)));
+        }
+        assertEquals(1, rec.count);
+        assertFalse(rec.lastOk);
+        assertEquals("nested_batch", rec.lastItems.get(1).code);
+    }
+}
@@ -0,0 +1,83 @@
+package io.dawsheet.server;
+
+import com.google.gson.Gson;
+import io.dawsheet.schema.AckStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchingStatusPublisherTest {
+
+    private static AckStatus[] parse(String json) {
+        return new Gson().fromJson(json, AckStatus[].class);
+    }
+
+    @Test
+    public void testRepeatedAcksFromOneOriginAreCoalesced() {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        BatchingStatusPublisher statuses = new BatchingStatusPublisher("proxy-1", sent::add, 64, 60_000, true, 64);
+        for (int i = 0; i < 5; i++) statuses.publish(true, "sheets://Grid!A5", "synth", Instant.now(), null, null);
+        statuses.publish(false, "sheets://Grid!A5", "synth", Instant.now(), "schema_violation", "bad");
+        statuses.publish(true, "sheets://Grid!A5", "synth", Instant.now(), null, null);
+        statuses.publish(true, "sheets://Grid!B5", "synth", Instant.now(), null, null);
+        statuses.close();
+
+        assertEquals(1, sent.size(), "everything pending is flushed as one message on close");
+        AckStatus[] got = parse(sent.get(0));
+        assertEquals(4, got.length);
+        assertEquals(Integer.valueOf(5), got[0].count);
+        assertEquals("proxy-1", got[0].proxy);
+        assertFalse(got[1].ok, "NACKs are never coalesced");
+        assertNull(got[2].count, "ACKs after a NACK start a new status");
+        assertEquals("sheets://Grid!B5", got[3].origin);
+        assertEquals(4, statuses.coalescedCount());
+    }
+
+    @Test
+    public void testFlushesOnSizeAndOnDelay() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        try (BatchingStatusPublisher statuses = new BatchingStatusPublisher("p", sent::add, 4, 20, false, 64)) {
+            for (int i = 0; i < 4; i++) statuses.publish(true, "o" + i, "t", Instant.now(), null, null);
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (sent.isEmpty() && System.nanoTime() < deadline) Thread.sleep(1);
+            assertEquals(4, parse(sent.get(0)).length, "a full batch is sent");
+
+            statuses.publish(true, "late", "t", Instant.now(), null, null);
+            deadline = System.nanoTime() + 2_000_000_000L;
+            while (sent.size() < 2 && System.nanoTime() < deadline) Thread.sleep(1);
+            assertEquals(2, sent.size(), "a partial batch is sent once the delay passes");
+            assertEquals("late", parse(sent.get(1))[0].origin);
+        }
+    }
+
+    @Test
+    public void testFullRingSendsOnCallerThread() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch inSink = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BatchingStatusPublisher statuses = new BatchingStatusPublisher("p", json -> {
+            if (Thread.currentThread().getName().equals("status-flusher")) {
+                inSink.countDown();
+                try { release.await(); } catch (InterruptedException ignored) {}
+            }
+            sent.add(json);
+        }, 1, 0, false, 2);
+
+        statuses.publish(true, "o0", "t", Instant.now(), null, null);
+        assertTrue(inSink.await(2, TimeUnit.SECONDS));
+        // The flusher is stuck in the sink; two statuses fill the ring and the next one overflows
+        for (int i = 1; i <= 3; i++) statuses.publish(true, "o" + i, "t", Instant.now(), null, null);
+        assertEquals(1, statuses.overflowCount());
+        assertEquals("o3", parse(sent.get(0))[0].origin);
+
+        release.countDown();
+        statuses.close();
+        assertEquals(4, sent.size());
+    }
+}
@@ -0,0 +1,82 @@
+package io.dawsheet.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryEnvelopeCodecTest {
+
+    private static final String JSON = "{\"v\":1,\"type\":\"NOTE.PLAY\",\"id\":\"cmd_001\",\"origin\":\"sheets://Grid!A5\","
+            + "\"at\":\"12:3:240\",\"quantize\":\"1/16\",\"target\":\"default\","
+            + "\"payload\":{\"note\":\"C4\",\"velocity\":100,\"durationSec\":0.5,\"channel\":1,\"articulation\":\"staccato\"},"
+            + "\"transform\":[{\"op\":\"transpose\",\"semitones\":12}]}";
+
+    @Test
+    public void testRoundTripPreservesEnvelope() throws Exception {
+        CommandEnvelope src = new EnvelopeDecoder().decode(JSON.getBytes(StandardCharsets.UTF_8), new CommandEnvelope());
+        BinaryEnvelopeCodec codec = new BinaryEnvelopeCodec();
+        byte[] bin = codec.encode(src);
+        assertTrue(BinaryEnvelopeCodec.isBinary(bin, 0, bin.length));
+        assertTrue(bin.length * 2 < JSON.length(), "binary frame should be far smaller than JSON: " + bin.length);
+
+        CommandEnvelope out = codec.decode(bin, 0, bin.length, new CommandEnvelope());
+        assertSame(src.type, out.type);
+        assertEquals(1, out.v);
+        assertEquals("cmd_001", out.id);
+        assertEquals("sheets://Grid!A5", out.origin);
+        assertEquals("12:3:240", out.at);
+        assertEquals("1/16", out.quantize);
+        assertEquals("default", out.target);
+        assertEquals(src.slots, out.slots);
+        assertEquals("C4", out.noteName);
+        assertEquals(100, out.velocity);
+        assertEquals(1, out.channel);
+        assertEquals(0.5, out.durationSec, 1e-9);
+        assertEquals("staccato", out.extra.get("articulation"));
+        assertEquals(12, ((Number) out.transform.get(0).get("semitones")).intValue());
+    }
+
+    @Test
+    public void testFrameOfManyAndMapBackedPayloads() throws Exception {
+        BinaryEnvelopeCodec codec = new BinaryEnvelopeCodec();
+        List<CommandEnvelope> envs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            CommandEnvelope env = new CommandEnvelope();
+            env.v = 1;
+            env.type = "PITCH.BEND";
+            env.id = "pb-" + i;
+            env.at = "now";
+            env.payload = new HashMap<>();
+            env.payload.put("value", -8192 + i);
+            env.payload.put("channel", 2);
+            envs.add(env);
+        }
+        byte[] bin = codec.encode(envs);
+
+        List<CommandEnvelope> got = new ArrayList<>();
+        assertEquals(3, codec.decodeFrame(bin, 0, bin.length, new EnvelopePool(4), got::add));
+        assertEquals("pb-2", got.get(2).id);
+        assertSame("now", got.get(0).at);
+        assertTrue(got.get(1).has(CommandEnvelope.SLOT_VALUE), "map payload fields land in slots");
+        assertEquals(-8191, got.get(1).value);
+        assertEquals(2, got.get(1).channel);
+    }
+
+    @Test
+    public void testRejectsJsonAndTruncatedFrames() throws Exception {
+        BinaryEnvelopeCodec codec = new BinaryEnvelopeCodec();
+        byte[] json = JSON.getBytes(StandardCharsets.UTF_8);
+        assertFalse(BinaryEnvelopeCodec.isBinary(json, 0, json.length));
+        assertThrows(IOException.class, () -> codec.decode(json, 0, json.length, new CommandEnvelope()));
+
+        CommandEnvelope src = new EnvelopeDecoder().decode(json, new CommandEnvelope());
+        byte[] bin = codec.encode(src);
+        assertThrows(IOException.class, () -> codec.decode(bin, 0, bin.length - 3, new CommandEnvelope()));
+    }
+}
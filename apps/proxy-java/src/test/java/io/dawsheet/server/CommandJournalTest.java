@@ -0,0 +1,128 @@
+package io.dawsheet.server;
+
+import io.dawsheet.midi.ModulationEngine;
+import io.dawsheet.transport.TransportClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private static CommandEnvelope ccSet(String id, int value) {
+        CommandEnvelope env = new CommandEnvelope();
+        env.v = 1;
+        env.type = "CC.SET";
+        env.id = id;
+        env.origin = "test";
+        env.at = "now";
+        env.target = "default";
+        env.payload = new HashMap<>();
+        env.payload.put("cc", 74);
+        env.payload.put("value", value);
+        env.payload.put("channel", 1);
+        return env;
+    }
+
+    @Test
+    public void testRecordsRollAcrossSegmentsAndReadBackInOrder() throws Exception {
+        Instant t0 = Instant.parse("2025-05-01T20:00:00Z");
+        try (CommandJournal journal = new CommandJournal(dir, 4096)) {
+            for (int i = 0; i < 200; i++) {
+                CommandEnvelope env = ccSet("cc-" + i, i % 128);
+                env.transform = List.of(Map.of("op", "transpose", "semitones", 1));
+                Map<String, Object> transformed = new HashMap<>(env.payload);
+                transformed.put("value", 127 - i % 128);
+                journal.append(env, transformed, t0.plusMillis(i), t0.plusMillis(i + 5));
+            }
+            assertEquals(200, journal.appendedCount());
+        }
+        assertTrue(JournalReader.segments(dir).size() > 1, "small segments roll");
+
+        List<CommandEnvelope> read = new ArrayList<>();
+        List<Instant> effective = new ArrayList<>();
+        long n = new JournalReader().forEach(dir, (env, receivedAt, effectiveAt) -> {
+            read.add(env);
+            effective.add(effectiveAt);
+        });
+        assertEquals(200, n);
+        assertEquals("cc-150", read.get(150).id);
+        assertEquals(127 - 150 % 128, ((Number) read.get(150).payloadMap().get("value")).intValue(), "the transformed payload is journaled");
+        assertNull(read.get(150).transform, "transforms are not replayed twice");
+        assertEquals(t0.plusMillis(155), effective.get(150));
+    }
+
+    @Test
+    public void testReopenContinuesInANewSegment() throws Exception {
+        try (CommandJournal journal = new CommandJournal(dir, 1 << 20)) {
+            journal.append(ccSet("a", 1), null, Instant.now(), Instant.now());
+        }
+        try (CommandJournal journal = new CommandJournal(dir, 1 << 20)) {
+            journal.append(ccSet("b", 2), null, Instant.now(), Instant.now());
+        }
+        List<String> ids = new ArrayList<>();
+        new JournalReader().forEach(dir, (env, receivedAt, effectiveAt) -> ids.add(env.id));
+        assertEquals(List.of("a", "b"), ids);
+        assertEquals(2, JournalReader.segments(dir).size());
+    }
+
+    @Test
+    public void testRouterJournalsAndReplayFeedsItBack() throws Exception {
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        try (CommandJournal journal = new CommandJournal(dir, 1 << 20);
+             CommandRouter router = new CommandRouter("commands.schema.json", rec, TransportClock.fromEnv(), null)) {
+            router.journalTo(journal);
+            for (int i = 0; i < 3; i++) router.handle(ccSet("cc-" + i, i));
+            CommandEnvelope invalid = ccSet("bad", 1);
+            invalid.payload.remove("cc");
+            router.handle(invalid);
+            assertEquals(3, journal.appendedCount(), "only accepted commands are journaled");
+        }
+
+        RecordingStatusPublisher replayed = new RecordingStatusPublisher();
+        try (CommandRouter router = new CommandRouter("commands.schema.json", replayed, TransportClock.fromEnv(), null)) {
+            assertEquals(3, JournalReplay.replay(dir, router, true));
+        }
+        assertEquals(3, replayed.count);
+        assertTrue(replayed.lastOk);
+    }
+
+    @Test
+    public void testReplayDrivesTheWiredEnginesAndPlaysLegacyNotes() throws Exception {
+        try (CommandJournal journal = new CommandJournal(dir, 1 << 20)) {
+            for (int i = 0; i < 3; i++) journal.append(ccSet("cc-" + i, 10 + i), null, Instant.now(), Instant.now());
+            CommandEnvelope note = new CommandEnvelope();
+            note.type = "NOTE";
+            note.origin = "sheets://Grid/A1";
+            note.noteName = "D4";
+            note.slots = CommandEnvelope.SLOT_NOTE_NAME;
+            journal.append(note, null, Instant.now(), Instant.now());
+        }
+
+        List<int[]> sent = new CopyOnWriteArrayList<>();
+        RecordingStatusPublisher replayed = new RecordingStatusPublisher();
+        TransportClock clock = TransportClock.fromEnv();
+        try (ModulationEngine modulation = new ModulationEngine((ch, cc, value) -> sent.add(new int[]{ch, cc, value}), clock);
+             CommandRouter router = new CommandRouter("commands.schema.json", replayed, clock, null)) {
+            router.modulationTo(modulation);
+            assertEquals(4, JournalReplay.replay(dir, router, true));
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (sent.size() < 3 && System.nanoTime() < deadline) Thread.sleep(2);
+        }
+        assertEquals(3, sent.size(), "every journaled CC reaches the modulation sink");
+        assertArrayEquals(new int[]{0, 74, 12}, sent.get(2));
+        assertEquals(4, replayed.count);
+        assertTrue(replayed.lastOk, "the legacy NOTE record is played, not NACKed");
+    }
+}
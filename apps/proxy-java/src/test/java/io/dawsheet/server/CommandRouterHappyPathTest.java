@@ -1,35 +1,53 @@
 package io.dawsheet.server;
 
+import io.dawsheet.midi.Arpeggiator;
+import io.dawsheet.midi.EngineFixtures;
+import io.dawsheet.midi.ModulationEngine;
+import io.dawsheet.midi.SongPlayer;
+import io.dawsheet.midi.StepSequencer;
+import io.dawsheet.song.SongCompiler;
+import io.dawsheet.song.SongTimeline;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.dawsheet.midi.EngineFixtures.await;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CommandRouterHappyPathTest {
 
-    @Test
-    public void testNotePlayWithTransformsAck() throws Exception {
+    /** A v1 envelope for the default target, due now, with a mutable payload built from key/value pairs. */
+    private static CommandEnvelope envelope(String type, String id, Object... payload) {
         CommandEnvelope env = new CommandEnvelope();
         env.v = 1;
-        env.type = "NOTE.PLAY";
-        env.id = "note-1";
+        env.type = type;
+        env.id = id;
         env.origin = "test";
         env.at = "now";
         env.target = "default";
-        env.payload = new java.util.HashMap<>();
-        env.payload.put("note", "C4");
-        env.payload.put("velocity", 90);
-        env.payload.put("durationSec", 0.1);
-        env.payload.put("channel", 1);
-        env.transform = java.util.List.of(
-                java.util.Map.of("op","transpose","semitones", 12),
-                java.util.Map.of("op","quantize","grid","1/16"),
-                java.util.Map.of("op","humanize","ms", 5)
+        env.payload = new HashMap<>();
+        for (int i = 0; i < payload.length; i += 2) env.payload.put((String) payload[i], payload[i + 1]);
+        return env;
+    }
+
+    @Test
+    public void testNotePlayWithTransformsAck() throws Exception {
+        CommandEnvelope env = envelope("NOTE.PLAY", "note-1",
+                "note", "C4", "velocity", 90, "durationSec", 0.1, "channel", 1);
+        env.transform = List.of(
+                Map.of("op", "transpose", "semitones", 12),
+                Map.of("op", "quantize", "grid", "1/16"),
+                Map.of("op", "humanize", "ms", 5)
         );
 
         RecordingStatusPublisher rec = new RecordingStatusPublisher();
         CommandRouter router = new CommandRouter("commands.schema.json", rec);
         router.handle(env);
 
+        // Quantized to 1/16, so it may be scheduled rather than run inline
+        assertTrue(rec.awaitCount(1, 2000));
         assertEquals(1, rec.count);
         assertTrue(rec.lastOk, "Expected ACK for valid NOTE.PLAY");
         assertNotNull(rec.lastEffectiveAt);
@@ -37,14 +55,7 @@ public class CommandRouterHappyPathTest {
 
     @Test
     public void testCcSetAck() throws Exception {
-        CommandEnvelope env = new CommandEnvelope();
-        env.v = 1;
-        env.type = "CC.SET";
-        env.id = "cc-1";
-        env.origin = "test";
-        env.at = "now";
-        env.target = "default";
-        env.payload = java.util.Map.of("cc", 1, "value", 64, "channel", 1);
+        CommandEnvelope env = envelope("CC.SET", "cc-1", "cc", 1, "value", 64, "channel", 1);
 
         RecordingStatusPublisher rec = new RecordingStatusPublisher();
         CommandRouter router = new CommandRouter("commands.schema.json", rec);
@@ -54,21 +65,104 @@ public class CommandRouterHappyPathTest {
         assertTrue(rec.lastOk, "Expected ACK for valid CC.SET");
     }
 
+    @Test
+    public void testCcRampRunsOnModulationEngine() throws Exception {
+        CommandEnvelope env = envelope("CC.RAMP", "ramp-1", "cc", 7, "from", 0, "to", 100, "timeMs", 20, "channel", 3);
+
+        EngineFixtures.Controls sent = new EngineFixtures.Controls();
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        CommandRouter router = new CommandRouter("commands.schema.json", rec);
+        try (ModulationEngine modulation = new ModulationEngine(sent, router.clock())) {
+            router.modulationTo(modulation);
+            router.handle(env);
+            assertEquals(1, rec.count);
+            assertTrue(rec.lastOk, "Expected ACK for valid CC.RAMP");
+            await(() -> sent.values(2, 7).contains(100), 2000);
+        }
+        List<Integer> values = sent.values(2, 7);
+        assertEquals(100, values.get(values.size() - 1).intValue());
+    }
+
+    @Test
+    public void testPatternTriggerUploadsAndPlaysOnSequencer() throws Exception {
+        CommandEnvelope env = envelope("PATTERN.TRIGGER", "pattern-1", "pattern", "bass",
+                "steps", List.of(Map.of("note", "C2", "ratchet", 2), Map.of(), Map.of("note", 40, "prob", 1.0)),
+                "rate", "1/32", "channel", 2);
+
+        EngineFixtures.Notes played = new EngineFixtures.Notes();
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        CommandRouter router = new CommandRouter("commands.schema.json", rec);
+        try (StepSequencer sequencer = new StepSequencer(played, router.clock())) {
+            router.sequencerTo(sequencer);
+            router.handle(env);
+            assertEquals(1, rec.count);
+            assertTrue(rec.lastOk, "Expected ACK for valid PATTERN.TRIGGER: " + rec.lastError);
+            await(() -> played.played.size() >= 3, 2000);
+        }
+        assertEquals(List.of(36, 36, 40), played.notes());
+    }
+
+    @Test
+    public void testArpeggiateFollowsHeldChord() throws Exception {
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        CommandRouter router = new CommandRouter("commands.schema.json", rec);
+        EngineFixtures.Notes played = new EngineFixtures.Notes();
+        try (Arpeggiator arpeggiator = new Arpeggiator(played, router.clock())) {
+            router.arpeggiatorTo(arpeggiator);
+
+            CommandEnvelope arp = envelope("ARPEGGIATE", "arp-1",
+                    "style", "down", "rate", "1/32", "gate", 0.5, "lengthBeats", 0.75, "channel", 3);
+            router.handle(arp);
+            assertEquals(1, rec.count);
+            assertFalse(rec.lastOk, "Nothing is held on the channel yet");
+
+            CommandEnvelope chord = envelope("CHORD.PLAY", "arp-chord", "root", "C4", "quality", "", "channel", 3);
+            router.handle(chord);
+
+            arp.id = "arp-2";
+            router.handle(arp);
+            assertEquals(3, rec.count);
+            assertTrue(rec.lastOk, "Expected ACK for ARPEGGIATE over the held chord: " + rec.lastError);
+            await(() -> arpeggiator.active() == 0, 2000);
+        }
+        // 3/4 of a beat in 1/32 steps: six notes down the C major triad, wrapping around
+        assertEquals(List.of(67, 64, 60, 67, 64, 60), played.notes());
+    }
+
+    @Test
+    public void testCueGotoSeeksTheLoadedSong() throws Exception {
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        CommandRouter router = new CommandRouter("commands.schema.json", rec);
+        EngineFixtures.Messages sent = new EngineFixtures.Messages();
+        try (SongPlayer player = new SongPlayer(sent, router.clock())) {
+            player.load(new SongCompiler().compile(Map.of("songId", "s", "meta", Map.of("bpm", 60),
+                    "sections", List.of(
+                            Map.of("sectionId", "verse", "lengthBars", 1, "chords", List.of(Map.of("symbol", "C", "beats", 4))),
+                            Map.of("sectionId", "chorus", "lengthBars", 1, "chords", List.of(Map.of("symbol", "x", "beats", 4, "notes", List.of("A4"))))),
+                    "arrangement", List.of(
+                            Map.of("arrangementIndex", 1, "sectionId", "verse", "startBar", 1),
+                            Map.of("arrangementIndex", 2, "sectionId", "chorus", "startBar", 2)))));
+            router.songTo(player);
+
+            CommandEnvelope env = envelope("CUE.GOTO", "cue-1", "position", "chorus");
+            router.handle(env);
+            assertEquals(1, rec.count);
+            assertTrue(rec.lastOk, "Expected ACK for CUE.GOTO: " + rec.lastError);
+            await(() -> !sent.sent.isEmpty(), 2000);
+            assertArrayEquals(new int[]{SongTimeline.NOTE_ON, 69, 100}, sent.sent.get(0), "Plays from the chorus, not the top");
+
+            env.id = "cue-2";
+            env.payload.put("position", "bridge");
+            router.handle(env);
+            assertEquals(2, rec.count);
+            assertFalse(rec.lastOk, "Unknown cues are NACKed");
+        }
+    }
+
     @Test
     public void testChordPlayAck() throws Exception {
-        CommandEnvelope env = new CommandEnvelope();
-        env.v = 1;
-        env.type = "CHORD.PLAY";
-        env.id = "chord-1";
-        env.origin = "test";
-        env.at = "now";
-        env.target = "default";
-        env.payload = new java.util.HashMap<>();
-        env.payload.put("root", "C4");
-        env.payload.put("quality", "maj7");
-        env.payload.put("channel", 1);
-        env.payload.put("velocity", 100);
-        env.payload.put("durationSec", 0.1);
+        CommandEnvelope env = envelope("CHORD.PLAY", "chord-1",
+                "root", "C4", "quality", "maj7", "channel", 1, "velocity", 100, "durationSec", 0.1);
 
         RecordingStatusPublisher rec = new RecordingStatusPublisher();
         CommandRouter router = new CommandRouter("commands.schema.json", rec);
@@ -77,4 +171,32 @@ public class CommandRouterHappyPathTest {
         assertEquals(1, rec.count);
         assertTrue(rec.lastOk, "Expected ACK for valid CHORD.PLAY");
     }
+
+    @Test
+    public void testChordPlayWithUnknownQualityNacks() throws Exception {
+        CommandEnvelope env = envelope("CHORD.PLAY", "chord-2", "root", "C", "quality", "maj7q", "channel", 1);
+
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        CommandRouter router = new CommandRouter("commands.schema.json", rec);
+        router.handle(env);
+
+        assertEquals(1, rec.count);
+        assertFalse(rec.lastOk);
+        assertEquals("execution_error", rec.lastCode);
+    }
+
+    @Test
+    public void testScaleFitWithUnknownScaleNacks() throws Exception {
+        CommandEnvelope env = envelope("NOTE.PLAY", "fit-1",
+                "note", "C4", "velocity", 100, "durationSec", 0.1, "channel", 1);
+        env.transform = List.of(Map.of("op", "scale_fit", "scale", "bebop", "root", "C"));
+
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        CommandRouter router = new CommandRouter("commands.schema.json", rec);
+        router.handle(env);
+
+        assertEquals(1, rec.count);
+        assertFalse(rec.lastOk);
+        assertEquals("invalid_transform", rec.lastCode);
+    }
 }
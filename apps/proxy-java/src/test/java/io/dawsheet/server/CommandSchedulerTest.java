@@ -0,0 +1,51 @@
+package io.dawsheet.server;
+
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandSchedulerTest {
+
+    @Test
+    public void testResolveBarBeatAgainstClock() {
+        TransportClock clock = new TransportClock(new TempoMap(120.0, 4));
+        CommandScheduler scheduler = new CommandScheduler(clock);
+        long origin = clock.originNanos();
+        // 120 bpm: one beat = 500ms, one bar = 2s
+        assertEquals(origin, scheduler.resolveAt("1:1"));
+        assertEquals(origin + TimeUnit.MILLISECONDS.toNanos(500), scheduler.resolveAt("1:2"));
+        assertEquals(origin + TimeUnit.MILLISECONDS.toNanos(2000), scheduler.resolveAt("2:1"));
+        assertEquals(origin + TimeUnit.MILLISECONDS.toNanos(250), scheduler.resolveAt("1:1:240"));
+    }
+
+    @Test
+    public void testRejectsMalformedAt() {
+        CommandScheduler scheduler = new CommandScheduler(new TransportClock(new TempoMap(120.0, 4)));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.resolveAt("1:"));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.resolveAt("soon"));
+    }
+
+    @Test
+    public void testIsoAtFiresOnDispatchThreadNotEarly() throws Exception {
+        try (CommandScheduler scheduler = new CommandScheduler(new TransportClock(new TempoMap(120.0, 4)))) {
+            long due = scheduler.resolveAt(Instant.now().plusMillis(50).toString());
+            assertFalse(scheduler.isDue(due));
+            AtomicLong firedAt = new AtomicLong();
+            CountDownLatch fired = new CountDownLatch(1);
+            scheduler.schedule(due, () -> {
+                firedAt.set(System.nanoTime());
+                fired.countDown();
+            });
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertTrue(firedAt.get() - due >= 0, "Command fired before its deadline");
+            assertEquals(0, scheduler.queued());
+        }
+    }
+}
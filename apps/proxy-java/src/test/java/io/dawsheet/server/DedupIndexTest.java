@@ -0,0 +1,92 @@
+package io.dawsheet.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DedupIndexTest {
+
+    @Test
+    public void testDuplicatesGetTheCachedResult() {
+        DedupIndex dedup = new DedupIndex(60_000, 1024, 4);
+        assertEquals(DedupIndex.MISS, dedup.admit("cmd-1"));
+        assertEquals(DedupIndex.IN_FLIGHT, dedup.admit("cmd-1"), "not reported yet");
+
+        Instant at = Instant.parse("2025-01-02T03:04:05.123456789Z");
+        dedup.complete("cmd-1", true, at);
+        assertEquals(at, DedupIndex.effectiveAt(dedup.admit("cmd-1")));
+        assertEquals(DedupIndex.MISS, dedup.admit("cmd-2"));
+        assertEquals(2, dedup.hitCount());
+        assertEquals(2, dedup.missCount());
+        assertEquals(0.5, dedup.hitRate(), 1e-9);
+    }
+
+    @Test
+    public void testFailedCommandsRunAgain() {
+        DedupIndex dedup = new DedupIndex(60_000, 1024, 4);
+        assertEquals(DedupIndex.MISS, dedup.admit("cmd-1"));
+        dedup.complete("cmd-1", false, null);
+        assertEquals(DedupIndex.MISS, dedup.admit("cmd-1"), "a NACKed command is retried on redelivery");
+        assertEquals(DedupIndex.IN_FLIGHT, dedup.admit("cmd-1"));
+    }
+
+    @Test
+    public void testMemoryBoundEvictsOldestIds() {
+        // 4 generations of 16 ids: filling more than the capacity rotates the first ids out
+        DedupIndex dedup = new DedupIndex(60_000, 64, 4);
+        for (int i = 0; i < 200; i++) assertEquals(DedupIndex.MISS, dedup.admit("id-" + i));
+        assertEquals(DedupIndex.MISS, dedup.admit("id-0"), "oldest ids are forgotten");
+        assertEquals(DedupIndex.IN_FLIGHT, dedup.admit("id-199"), "recent ids are kept");
+    }
+
+    @Test
+    public void testWindowExpires() throws Exception {
+        DedupIndex dedup = new DedupIndex(40, 1024, 2);
+        dedup.admit("old");
+        Thread.sleep(60);
+        dedup.admit("tick");
+        Thread.sleep(30);
+        assertEquals(DedupIndex.MISS, dedup.admit("old"));
+    }
+
+    @Test
+    public void testIdleWindowExpiresEveryGeneration() throws Exception {
+        DedupIndex dedup = new DedupIndex(40, 1024, 4);
+        dedup.admit("old");
+        dedup.complete("old", true, null);
+        // No admits in between, so the next one has to catch up on every elapsed period at once
+        Thread.sleep(60);
+        assertEquals(DedupIndex.MISS, dedup.admit("old"));
+    }
+
+    @Test
+    public void testRouterAcksRedeliveryWithoutReplaying() throws Exception {
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        DedupIndex dedup = new DedupIndex(60_000, 1024, 4);
+        try (CommandRouter router = new CommandRouter("commands.schema.json", rec,
+                io.dawsheet.transport.TransportClock.fromEnv(), dedup)) {
+            for (int i = 0; i < 2; i++) {
+                CommandEnvelope env = new CommandEnvelope();
+                env.v = 1;
+                env.type = "CC.SET";
+                env.id = "cc-dup";
+                env.origin = "test";
+                env.at = "now";
+                env.target = "default";
+                env.payload = new HashMap<>();
+                env.payload.put("cc", 1);
+                env.payload.put("value", 64);
+                env.payload.put("channel", 1);
+                router.handle(env);
+            }
+        }
+        assertEquals(2, rec.count);
+        assertTrue(rec.lastOk);
+        assertEquals("duplicate", rec.lastCode);
+        assertNotNull(rec.lastEffectiveAt, "the duplicate carries the first copy's effective time");
+        assertEquals(1, dedup.hitCount());
+    }
+}
@@ -0,0 +1,68 @@
+package io.dawsheet.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DispatchLanesTest {
+
+    @Test
+    public void testTasksForOneChannelRunInOrder() throws Exception {
+        try (DispatchLanes lanes = new DispatchLanes(4, 64)) {
+            int producers = 4, perProducer = 500;
+            List<List<Integer>> seen = new ArrayList<>();
+            for (int p = 0; p < producers; p++) seen.add(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(producers * perProducer);
+
+            Thread[] threads = new Thread[producers];
+            for (int p = 0; p < producers; p++) {
+                final int channel = p + 1;
+                final List<Integer> out = seen.get(p);
+                threads[p] = new Thread(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        final int n = i;
+                        while (!lanes.offer("synth", channel, () -> { out.add(n); done.countDown(); })) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                });
+                threads[p].start();
+            }
+            for (Thread t : threads) t.join();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            for (List<Integer> out : seen) {
+                for (int i = 0; i < perProducer; i++) assertEquals(i, out.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testFullLaneRejectsWithoutBlockingOthers() throws Exception {
+        try (DispatchLanes lanes = new DispatchLanes(2, 2)) {
+            int slow = lanes.laneFor("slow", 1);
+            int other = 1;
+            while (lanes.laneFor("fast", other) == slow) other++;
+
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            assertTrue(lanes.offer("slow", 1, () -> {
+                started.countDown();
+                try { release.await(); } catch (InterruptedException ignored) {}
+            }));
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+            assertTrue(lanes.offer("slow", 1, () -> {}));
+            assertTrue(lanes.offer("slow", 1, () -> {}));
+            assertFalse(lanes.offer("slow", 1, () -> {}), "blocked lane should reject once full");
+
+            CountDownLatch ran = new CountDownLatch(1);
+            assertTrue(lanes.offer("fast", other, ran::countDown));
+            assertTrue(ran.await(1, TimeUnit.SECONDS), "other lanes keep running");
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.dawsheet.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EnvelopeDecoderTest {
+
+    private static byte[] json(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPayloadFieldsDecodeIntoSlots() throws Exception {
+        EnvelopeDecoder decoder = new EnvelopeDecoder();
+        CommandEnvelope env = decoder.decode(json("{\"v\":1,\"type\":\"NOTE.PLAY\",\"id\":\"a1\",\"origin\":\"o\",\"at\":\"now\","
+                + "\"target\":\"synth\",\"payload\":{\"note\":60,\"velocity\":90,\"channel\":2,\"durationSec\":0.25}}"),
+                new CommandEnvelope());
+
+        assertSame(EnvelopeDecoder.KNOWN_TYPES[1], env.type, "known types are interned");
+        assertSame("now", env.at);
+        assertEquals("a1", env.id);
+        assertNull(env.payload, "slot-backed envelopes do not build a payload map");
+        assertTrue(env.hasPayload());
+        assertTrue(env.has(CommandEnvelope.SLOT_NOTE));
+        assertEquals(60, env.note);
+        assertEquals(90, env.velocity);
+        assertEquals(2, env.channel);
+        assertEquals(0.25, env.durationSec, 1e-9);
+        assertFalse(env.has(CommandEnvelope.SLOT_CC));
+    }
+
+    @Test
+    public void testExtraFieldsAndTransformsAreKept() throws Exception {
+        EnvelopeDecoder decoder = new EnvelopeDecoder();
+        CommandEnvelope env = decoder.decode(json("{\"type\":\"CHORD.PLAY\",\"payload\":{\"root\":\"C\",\"quality\":\"maj7\",\"note\":\"E4\"},"
+                + "\"transform\":[{\"op\":\"transpose\",\"semitones\":2}]}"), new CommandEnvelope());
+
+        assertTrue(env.has(CommandEnvelope.SLOT_NOTE_NAME));
+        assertEquals("E4", env.noteName);
+        assertEquals("C", env.extra.get("root"));
+        List<Map<String, Object>> transforms = env.transform;
+        assertEquals(1, transforms.size());
+        assertEquals(2, ((Number) transforms.get(0).get("semitones")).intValue());
+
+        Map<String, Object> payload = env.payloadMap();
+        assertEquals("E4", payload.get("note"));
+        assertEquals("maj7", payload.get("quality"));
+    }
+
+    @Test
+    public void testLegacyFlatNoteAndReuse() throws Exception {
+        EnvelopeDecoder decoder = new EnvelopeDecoder();
+        EnvelopePool pool = new EnvelopePool(1);
+        CommandEnvelope env = pool.acquire();
+        decoder.decode(json("{\"type\":\"NOTE\",\"note\":\"C4\",\"velocity\":100,\"channel\":1,\"durationSec\":1}"), env);
+        assertEquals("C4", env.noteName);
+        assertEquals(1.0, env.durationSec, 1e-9);
+        assertFalse(env.payloadPresent);
+        pool.release(env);
+
+        CommandEnvelope again = pool.acquire();
+        assertSame(env, again, "pooled envelope is reused");
+        assertEquals(0, again.slots, "released envelopes are reset");
+        decoder.decode(json("{\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":64}}"), again);
+        assertEquals(74, again.cc);
+        assertFalse(again.has(CommandEnvelope.SLOT_NOTE_NAME));
+    }
+
+    @Test
+    public void testTopLevelSlotFieldsOnlyApplyToLegacyNote() throws Exception {
+        EnvelopeDecoder decoder = new EnvelopeDecoder();
+        CommandEnvelope env = decoder.decode(json("{\"value\":64,\"type\":\"CC.SET\",\"payload\":{\"cc\":74}}"), new CommandEnvelope());
+        assertFalse(env.has(CommandEnvelope.SLOT_VALUE), "a stray top-level value is not payload.value");
+        assertFalse(env.payloadMap().containsKey("value"));
+
+        decoder.decode(json("{\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":10},\"value\":99}"), env);
+        assertEquals(10, env.value, "the payload wins over a later top-level field");
+        decoder.decode(json("{\"type\":\"CC.SET\",\"value\":99,\"payload\":{\"cc\":74,\"value\":10}}"), env);
+        assertEquals(10, env.value, "the payload wins over an earlier top-level field");
+
+        decoder.decode(json("{\"note\":60,\"type\":\"NOTE\",\"payload\":{\"note\":\"D4\"}}"), env);
+        assertFalse(env.has(CommandEnvelope.SLOT_NOTE));
+        assertEquals("D4", env.noteName);
+    }
+
+    @Test
+    public void testFrameWithArrayOfEnvelopes() throws Exception {
+        EnvelopeDecoder decoder = new EnvelopeDecoder();
+        EnvelopePool pool = new EnvelopePool(4);
+        List<CommandEnvelope> got = new ArrayList<>();
+        byte[] frame = json("[{\"type\":\"CC.SET\",\"id\":\"a\",\"payload\":{\"cc\":1,\"value\":2}},"
+                + "{\"type\":\"NOTE.PLAY\",\"id\":\"b\",\"payload\":{\"note\":61}}]");
+        assertEquals(2, decoder.decodeFrame(frame, 0, frame.length, pool, got::add));
+        assertEquals("a", got.get(0).id);
+        assertEquals(61, got.get(1).note);
+
+        byte[] single = json("{\"type\":\"CC.SET\",\"id\":\"c\"}");
+        assertEquals(1, decoder.decodeFrame(single, 0, single.length, pool, got::add));
+        assertEquals("c", got.get(2).id);
+
+        byte[] bad = json("[{\"type\":\"CC.SET\",\"id\":\"d\"}, 5]");
+        assertThrows(IOException.class, () -> decoder.decodeFrame(bad, 0, bad.length, pool, got::add));
+        assertEquals("d", got.get(3).id, "envelopes before the bad element are delivered");
+    }
+}
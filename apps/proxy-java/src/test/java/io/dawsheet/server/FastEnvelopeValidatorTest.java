@@ -0,0 +1,106 @@
+package io.dawsheet.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** The compiled fast path must accept and reject exactly what the full JSON Schema does. */
+public class FastEnvelopeValidatorTest {
+
+    private static final String HEAD = "\"v\":1,\"id\":\"c1\",\"origin\":\"sheets://Grid!A5\",\"at\":\"now\",\"target\":\"default\",";
+
+    private static final String[] VALID = {
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":100,\"durationSec\":0.5,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":60,\"velocity\":1,\"durationSec\":0,\"channel\":16},"
+                    + "\"quantize\":\"1/16\",\"transform\":[{\"op\":\"transpose\",\"semitones\":12},{\"op\":\"humanize\",\"ms\":5}],"
+                    + "\"meta\":{\"songId\":\"demo\",\"tags\":[\"live\"]}}",
+            "{\"v\":1,\"id\":\"c1\",\"origin\":\"o\",\"at\":\"12:3:240\",\"target\":\"t\",\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":0,\"channel\":2}}",
+            "{\"v\":1,\"id\":\"c1\",\"origin\":\"o\",\"at\":\"2025-01-01T12:00:00Z\",\"target\":\"t\",\"type\":\"PROGRAM.CHANGE\",\"payload\":{\"program\":5,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"CHORD.PLAY\",\"payload\":{\"root\":\"C\",\"quality\":\"maj7\",\"channel\":1,\"velocity\":90}}",
+            "{" + HEAD + "\"type\":\"CC.LFO\",\"payload\":{\"cc\":1,\"waveform\":\"sine\",\"sync\":\"1/8\",\"depth\":20,\"center\":64,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"PITCH.BEND\",\"payload\":{\"value\":-8192,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"DAW.TRACK.ARM\",\"payload\":{\"track\":0,\"state\":true}}",
+            "{" + HEAD + "\"type\":\"OSC.SEND\",\"payload\":{\"addr\":\"/live/play\",\"args\":[1,\"x\",2.5]}}",
+            "{" + HEAD + "\"type\":\"TRANSPORT.TEMPO_SET\",\"payload\":{\"bpm\":128.5}}",
+            "{" + HEAD + "\"type\":\"TRANSPORT.START\",\"payload\":{}}",
+            "{" + HEAD + "\"type\":\"PATTERN.TRIGGER\",\"payload\":{\"pattern\":\"bass\",\"channel\":2,\"rate\":\"1/16\",\"loops\":0,"
+                    + "\"steps\":[{\"note\":\"C2\",\"velocity\":100,\"gate\":0.5},{},{\"note\":40,\"prob\":0.5,\"ratchet\":3}]}}",
+            "{" + HEAD + "\"type\":\"STEP.PROB\",\"payload\":{\"pattern\":\"bass\",\"step\":2,\"prob\":0.25}}",
+            "{" + HEAD + "\"type\":\"ARPEGGIATE\",\"payload\":{\"style\":\"updown\",\"rate\":\"1/16\",\"gate\":0.5,\"lengthBeats\":4,\"channel\":1,"
+                    + "\"notes\":[\"C4\",64,\"G4\"],\"velocity\":90}}",
+    };
+
+    private static final String[] INVALID = {
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":0,\"durationSec\":0.5,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":128,\"velocity\":100,\"durationSec\":0.5,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":100,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":100,\"durationSec\":0.5,\"channel\":1,\"cc\":3}}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":100,\"durationSec\":-1,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":\"loud\",\"durationSec\":0.5,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":100,\"durationSec\":0.5,\"channel\":1},\"quantize\":\"1/3\"}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":100,\"durationSec\":0.5,\"channel\":1},\"transform\":[{\"op\":\"explode\"}]}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":100,\"durationSec\":0.5,\"channel\":1},\"transform\":[{\"semitones\":2}]}",
+            "{\"v\":2,\"id\":\"c1\",\"origin\":\"o\",\"at\":\"now\",\"target\":\"t\",\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":0,\"channel\":2}}",
+            "{\"v\":1,\"id\":\"c1\",\"origin\":\"o\",\"at\":\"soon\",\"target\":\"t\",\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":0,\"channel\":2}}",
+            "{\"v\":1,\"id\":\"\",\"origin\":\"o\",\"at\":\"now\",\"target\":\"t\",\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":0,\"channel\":2}}",
+            "{" + HEAD + "\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":128,\"channel\":2}}",
+            "{" + HEAD + "\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":64,\"channel\":0}}",
+            "{" + HEAD + "\"type\":\"CC.LFO\",\"payload\":{\"cc\":1,\"waveform\":\"sine\",\"depth\":20,\"center\":64,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"CC.LFO\",\"payload\":{\"cc\":1,\"waveform\":\"zigzag\",\"rateHz\":2,\"depth\":20,\"center\":64,\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"CHORD.PLAY\",\"payload\":{\"root\":\"C\",\"channel\":1}}",
+            "{" + HEAD + "\"type\":\"DAW.TRACK.ARM\",\"payload\":{\"track\":0,\"state\":\"on\"}}",
+            "{" + HEAD + "\"type\":\"TRANSPORT.TEMPO_SET\",\"payload\":{\"bpm\":0}}",
+            "{" + HEAD + "\"type\":\"PATTERN.TRIGGER\",\"payload\":{\"pattern\":\"bass\",\"channel\":1,\"steps\":[{\"note\":60,\"ratchet\":9}]}}",
+            "{" + HEAD + "\"type\":\"PATTERN.TRIGGER\",\"payload\":{\"pattern\":\"bass\",\"channel\":1,\"steps\":[{\"pitch\":60}]}}",
+            "{" + HEAD + "\"type\":\"STEP.RATCHET\",\"payload\":{\"pattern\":\"bass\",\"step\":-1,\"ratchet\":2}}",
+            "{" + HEAD + "\"type\":\"ARPEGGIATE\",\"payload\":{\"style\":\"up\",\"rate\":\"1/16\",\"gate\":0.5,\"lengthBeats\":4,\"channel\":1,\"notes\":[]}}",
+            "{" + HEAD + "\"type\":\"ARPEGGIATE\",\"payload\":{\"style\":\"up\",\"rate\":\"1/16\",\"gate\":0.5,\"lengthBeats\":4,\"channel\":1,\"notes\":[128]}}",
+            "{" + HEAD + "\"type\":\"NOTE.PLAY\",\"payload\":{\"note\":\"C4\",\"velocity\":100,\"durationSec\":0.5,\"channel\":1},\"meta\":{\"tags\":[1]}}",
+            "{" + HEAD + "\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":10,\"channel\":2},\"value\":99}",
+            "{" + HEAD + "\"type\":\"TRANSPORT.START\",\"payload\":{},\"priority\":\"high\"}",
+    };
+
+    private static CommandEnvelope decode(String json) throws Exception {
+        return new EnvelopeDecoder().decode(json.getBytes(StandardCharsets.UTF_8), new CommandEnvelope());
+    }
+
+    private static CommandEnvelope mapBacked(String json) throws Exception {
+        CommandEnvelope env = decode(json);
+        env.payload = env.toPayloadMap();
+        env.slots = 0;
+        env.extra.clear();
+        return env;
+    }
+
+    @Test
+    public void testFastAndFullAgreeOnCorpus() throws Exception {
+        CommandEnvelopeValidator validator = new CommandEnvelopeValidator("commands.schema.json", CommandEnvelopeValidator.Mode.BOTH);
+        for (String json : VALID) {
+            for (CommandEnvelope env : new CommandEnvelope[]{decode(json), mapBacked(json)}) {
+                List<String> fast = validator.validateFast(env);
+                assertNotNull(fast, "no fast validator for " + env.type);
+                assertTrue(fast.isEmpty(), "fast rejected " + json + ": " + fast);
+                assertTrue(validator.validateFull(env).isEmpty(), "full rejected " + json);
+            }
+        }
+        for (String json : INVALID) {
+            for (CommandEnvelope env : new CommandEnvelope[]{decode(json), mapBacked(json)}) {
+                List<String> fast = validator.validateFast(env);
+                assertNotNull(fast, "no fast validator for " + env.type);
+                assertFalse(fast.isEmpty(), "fast accepted " + json);
+                assertFalse(validator.validateFull(env).isEmpty(), "full accepted " + json);
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownTypeFallsBackToFullSchema() throws Exception {
+        CommandEnvelopeValidator validator = new CommandEnvelopeValidator("commands.schema.json", CommandEnvelopeValidator.Mode.FAST);
+        CommandEnvelope env = decode("{" + HEAD + "\"type\":\"NOTE.SPLAT\",\"payload\":{}}");
+        assertNull(validator.validateFast(env));
+        assertFalse(validator.validate(env).isEmpty());
+    }
+}
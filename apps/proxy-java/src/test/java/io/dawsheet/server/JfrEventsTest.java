@@ -0,0 +1,68 @@
+package io.dawsheet.server;
+
+import io.dawsheet.transport.TransportClock;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JfrEventsTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRouterEmitsCommandTransformAndExecuteEvents() throws Exception {
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        Path file = dir.resolve("router.jfr");
+        try (Recording recording = new Recording();
+             CommandRouter router = new CommandRouter("commands.schema.json", rec, TransportClock.fromEnv(), null)) {
+            recording.enable("io.dawsheet.Command");
+            recording.enable("io.dawsheet.Transform");
+            recording.enable("io.dawsheet.CommandExecute");
+            recording.start();
+
+            CommandEnvelope env = new CommandEnvelope();
+            env.v = 1;
+            env.type = "CC.SET";
+            env.id = "jfr-1";
+            env.origin = "sheets://Grid!A1";
+            env.at = "now";
+            env.target = "default";
+            env.payload = new HashMap<>(Map.of("cc", 7, "value", 100, "channel", 3));
+            router.handle(env);
+
+            recording.stop();
+            recording.dump(file);
+        }
+        assertTrue(rec.lastOk, String.valueOf(rec.lastError));
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        RecordedEvent command = find(events, "io.dawsheet.Command");
+        assertEquals("jfr-1", command.getString("id"));
+        assertEquals("CC.SET", command.getString("type"));
+        assertEquals(3, command.getInt("channel"));
+        assertNotNull(find(events, "io.dawsheet.Transform"));
+        RecordedEvent execute = find(events, "io.dawsheet.CommandExecute");
+        assertTrue(execute.getLong("actualNanos") >= execute.getLong("scheduledNanos") - CommandScheduler.IMMEDIATE_NANOS);
+    }
+
+    @Test
+    public void testEventsAreOffWithoutARecording() {
+        assertFalse(new CommandEvent().isEnabled());
+        assertFalse(new TransformEvent().isEnabled());
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent e : events) if (e.getEventType().getName().equals(name)) return e;
+        fail("no " + name + " event in recording");
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+package io.dawsheet.server;
+
+import io.dawsheet.transport.TransportClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyMetricsTest {
+
+    @Test
+    public void testHistogramPercentilesWithinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long us = 1; us <= 1000; us++) h.record(us * 1000);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(1000, s.count());
+        assertEquals(1_000_000, s.max());
+        assertEquals(500_000, s.percentile(0.50), 500_000 / 64.0);
+        assertEquals(990_000, s.percentile(0.99), 990_000 / 64.0);
+        assertTrue(s.percentile(0.99) >= 990_000, "percentiles round up, never under-report");
+        assertEquals(1_000_000, s.percentile(1.0));
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        long prev = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long hi = LatencyHistogram.highestValue(i);
+            assertTrue(hi > prev);
+            assertEquals(i, LatencyHistogram.index(hi));
+            assertEquals(i, LatencyHistogram.index(prev + 1));
+            prev = hi;
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, prev);
+    }
+
+    @Test
+    public void testStagesAreMeasuredFromTheLastStampedStage() {
+        LatencyMetrics metrics = new LatencyMetrics(false);
+        CommandEnvelope env = new CommandEnvelope();
+        env.type = "NOTE.PLAY";
+        long t = 1_000_000_000L;
+        env.stamps[LatencyStage.RECEIVED.ordinal()] = t;
+        env.stamps[LatencyStage.DECODED.ordinal()] = t + 2_000;
+        // validate and transform skipped, as on the Pub/Sub note path
+        env.stamps[LatencyStage.SCHEDULED.ordinal()] = t + 5_000;
+        env.stamps[LatencyStage.SENT.ordinal()] = t + 105_000;
+        metrics.record(env);
+
+        Map<String, Map<String, Long>> stages = metrics.snapshot().get("NOTE.PLAY");
+        assertEquals(2, (long) stages.get("decode").get("p50Us"));
+        assertEquals(3, (long) stages.get("wait").get("p50Us"));
+        assertEquals(100, stages.get("dispatch").get("p50Us"), 2);
+        assertEquals(105, stages.get("total").get("p50Us"), 2);
+        assertNull(stages.get("validate"));
+
+        metrics.reset();
+        assertTrue(metrics.snapshot().isEmpty());
+    }
+
+    @Test
+    public void testTypesAreBounded() {
+        LatencyMetrics metrics = new LatencyMetrics(false);
+        for (int i = 0; i < LatencyMetrics.MAX_TYPES * 2; i++) {
+            CommandEnvelope env = new CommandEnvelope();
+            env.type = "X" + i;
+            env.stamp(LatencyStage.RECEIVED);
+            env.stamps[LatencyStage.SENT.ordinal()] = env.stamps[LatencyStage.RECEIVED.ordinal()] + 1000;
+            metrics.record(env);
+        }
+        Map<String, Map<String, Map<String, Long>>> snap = metrics.snapshot();
+        assertTrue(snap.size() <= LatencyMetrics.MAX_TYPES + 1);
+        assertTrue(snap.containsKey("other"));
+    }
+
+    private static CommandEnvelope sent(long totalNanos) {
+        CommandEnvelope env = new CommandEnvelope();
+        env.type = "CC.SET";
+        env.stamps[LatencyStage.RECEIVED.ordinal()] = 1_000_000_000L;
+        env.stamps[LatencyStage.SENT.ordinal()] = 1_000_000_000L + totalNanos;
+        return env;
+    }
+
+    @Test
+    public void testAckPercentilesComeFromAPeriodicSnapshot() {
+        LatencyMetrics cached = new LatencyMetrics(true, Long.MAX_VALUE);
+        CommandEnvelope fast = sent(10_000);
+        cached.record(fast);
+        assertEquals(10, cached.latency(fast).p99Us, 1);
+        CommandEnvelope slow = sent(50_000_000);
+        cached.record(slow);
+        assertEquals(10, cached.latency(slow).p99Us, 1, "percentiles are not recomputed within the refresh interval");
+        assertEquals(50_000, (long) cached.latency(slow).stagesUs.get("total"), "the command's own intervals are always current");
+
+        LatencyMetrics fresh = new LatencyMetrics(true, 0);
+        fresh.record(fast);
+        fresh.latency(fast);
+        fresh.record(slow);
+        assertTrue(fresh.latency(slow).p99Us >= 50_000);
+    }
+
+    @Test
+    public void testRouterRecordsAndAttachesLatencyToAck() throws Exception {
+        RecordingStatusPublisher rec = new RecordingStatusPublisher();
+        LatencyMetrics metrics = new LatencyMetrics(true);
+        try (CommandRouter router = new CommandRouter("commands.schema.json", rec, TransportClock.fromEnv(), null)) {
+            router.metricsTo(metrics);
+            CommandEnvelope env = new CommandEnvelope();
+            env.v = 1;
+            env.type = "CC.SET";
+            env.id = "lat-1";
+            env.origin = "sheets://Grid!A1";
+            env.at = "now";
+            env.target = "default";
+            env.payload = new java.util.HashMap<>(Map.of("cc", 74, "value", 64, "channel", 1));
+            router.handle(env);
+        }
+        assertTrue(rec.lastOk, String.valueOf(rec.lastError));
+        assertNotNull(rec.lastLatency);
+        assertTrue(rec.lastLatency.stagesUs.containsKey("validate"));
+        assertTrue(rec.lastLatency.stagesUs.containsKey("dispatch"));
+        assertTrue(rec.lastLatency.stagesUs.containsKey("total"));
+        assertEquals(1, (long) metrics.snapshot().get("CC.SET").get("total").get("count"));
+    }
+}
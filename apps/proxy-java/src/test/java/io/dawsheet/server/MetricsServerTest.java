@@ -0,0 +1,75 @@
+package io.dawsheet.server;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsServerTest {
+
+    private static final HttpClient HTTP = HttpClient.newHttpClient();
+
+    private static void record(LatencyMetrics metrics, String type, long receivedNanos, long sentNanos) {
+        CommandEnvelope env = new CommandEnvelope();
+        env.type = type;
+        env.stamps[LatencyStage.RECEIVED.ordinal()] = receivedNanos;
+        env.stamps[LatencyStage.SENT.ordinal()] = sentNanos;
+        metrics.record(env);
+    }
+
+    private static HttpResponse<String> request(MetricsServer server, String method, String pathAndQuery) throws Exception {
+        InetSocketAddress a = server.address();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + a.getPort() + pathAndQuery))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return HTTP.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testGetReturnsPercentilesAndResetClearsThem() throws Exception {
+        LatencyMetrics metrics = new LatencyMetrics(false);
+        record(metrics, "NOTE.PLAY", 1_000_000L, 1_250_000L);
+        record(metrics, "NOTE.PLAY", 2_000_000L, 2_250_000L);
+        try (MetricsServer server = new MetricsServer(new InetSocketAddress("127.0.0.1", 0), metrics, "test-proxy")) {
+            server.start();
+            assertNotEquals(0, server.address().getPort(), "address() reports the bound port");
+
+            HttpResponse<String> response = request(server, "GET", "/metrics");
+            assertEquals(200, response.statusCode());
+            assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+            JsonObject body = JsonParser.parseString(response.body()).getAsJsonObject();
+            assertEquals("test-proxy", body.get("proxy").getAsString());
+            JsonObject total = body.getAsJsonObject("latency").getAsJsonObject("NOTE.PLAY").getAsJsonObject("total");
+            assertEquals(2, total.get("count").getAsLong());
+            assertTrue(total.get("p50Us").getAsLong() >= 250, "p50 of two 250us commands: " + total);
+
+            // A plain GET leaves the histograms alone; reset=true returns them, then clears them
+            assertFalse(metrics.snapshot().isEmpty());
+            response = request(server, "GET", "/metrics?reset=true");
+            assertEquals(200, response.statusCode());
+            body = JsonParser.parseString(response.body()).getAsJsonObject();
+            assertTrue(body.getAsJsonObject("latency").has("NOTE.PLAY"), "The reset response still carries the data");
+            assertTrue(metrics.snapshot().isEmpty(), "reset=true clears every histogram");
+            body = JsonParser.parseString(request(server, "GET", "/metrics").body()).getAsJsonObject();
+            assertEquals(0, body.getAsJsonObject("latency").size());
+        }
+    }
+
+    @Test
+    public void testOtherMethodsAreRejected() throws Exception {
+        LatencyMetrics metrics = new LatencyMetrics(false);
+        record(metrics, "CC.SET", 1_000_000L, 1_100_000L);
+        try (MetricsServer server = new MetricsServer(new InetSocketAddress("127.0.0.1", 0), metrics, "test-proxy")) {
+            server.start();
+            assertEquals(405, request(server, "POST", "/metrics?reset=true").statusCode());
+            assertFalse(metrics.snapshot().isEmpty(), "A rejected request must not reset");
+        }
+    }
+}
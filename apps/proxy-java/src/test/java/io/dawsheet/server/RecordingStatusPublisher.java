@@ -1,24 +1,52 @@
 package io.dawsheet.server;
 
+import io.dawsheet.schema.AckStatus;
+
 import java.time.Instant;
+import java.util.List;
 
 public class RecordingStatusPublisher implements StatusPublisher {
-    public int count = 0;
+    public volatile int count = 0;
     public boolean lastOk;
     public String lastOrigin;
     public String lastTarget;
     public Instant lastEffectiveAt;
     public String lastCode;
     public String lastError;
+    public List<AckStatus.Item> lastItems;
+    public AckStatus.Latency lastLatency;
 
     @Override
     public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error) {
-        count++;
         lastOk = ok;
         lastOrigin = origin;
         lastTarget = target;
         lastEffectiveAt = effectiveAt;
         lastCode = code;
         lastError = error;
+        count++; // last, so a reader that sees the count also sees the fields
+    }
+
+    @Override
+    public void publish(boolean ok, String origin, String target, Instant effectiveAt, String code, String error,
+                        AckStatus.Latency latency) {
+        lastLatency = latency;
+        publish(ok, origin, target, effectiveAt, code, error);
+    }
+
+    /** Waits for statuses of scheduled (quantized, future 'at') commands. */
+    public boolean awaitCount(int n, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (count < n) {
+            if (System.currentTimeMillis() > deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @Override
+    public void publishBatch(boolean ok, String origin, String target, Instant effectiveAt, List<AckStatus.Item> items) {
+        lastItems = items;
+        publish(ok, origin, target, effectiveAt, ok ? null : "batch_partial", null);
     }
 }
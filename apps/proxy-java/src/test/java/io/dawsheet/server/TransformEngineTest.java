@@ -0,0 +1,95 @@
+package io.dawsheet.server;
+
+import io.dawsheet.transport.TempoMap;
+import io.dawsheet.transport.TransportClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransformEngineTest {
+
+    private final TransformEngine engine = new TransformEngine(new TransportClock(new TempoMap(120, 4)));
+
+    @Test
+    public void testCompiledChainAppliesInOrder() {
+        List<Map<String, Object>> chain = List.of(
+                Map.of("op", "transpose", "semitones", 12),
+                Map.of("op", "limit", "min", 20, "max", 100),
+                Map.of("op", "curve", "shape", "exp", "amount", 0.5),
+                Map.of("op", "humanize", "ms", 5));
+        Map<String, Object> payload = new HashMap<>(Map.of("note", "C4", "velocity", 110, "value", 64));
+
+        TransformEngine.Result r = engine.apply("note-1", System.nanoTime(), chain, payload, null);
+
+        assertEquals(72, payload.get("note"));
+        assertEquals(62, payload.get("velocity"));   // clamp to 100, then exp curve
+        assertEquals(16, payload.get("value"));
+        // humanize is deterministic per (id, op index): "note-1:3" -> +3ms
+        assertEquals(3_000_000L, r.delayNanos);
+    }
+
+    @Test
+    public void testEqualChainsShareOneCompiledPipeline() {
+        List<Map<String, Object>> a = List.of(Map.of("op", "transpose", "semitones", -2));
+        List<Map<String, Object>> b = new ArrayList<>();
+        b.add(new HashMap<>(Map.of("op", "transpose", "semitones", -2)));
+
+        assertSame(engine.compile(a), engine.compile(b));
+        assertEquals(1, engine.cachedPipelines());
+        assertSame(TransformPipeline.IDENTITY, engine.compile(null));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        for (int i = 0; i < TransformEngine.PIPELINE_CACHE_SIZE + 10; i++) {
+            engine.compile(List.of(Map.of("op", "transpose", "semitones", i)));
+        }
+        assertEquals(TransformEngine.PIPELINE_CACHE_SIZE, engine.cachedPipelines());
+    }
+
+    @Test
+    public void testVelocityCurveOnlyTouchesVelocity() {
+        List<Map<String, Object>> chain = List.of(Map.of("op", "velocity_curve", "shape", "exp", "amount", 0.5));
+        Map<String, Object> payload = new HashMap<>(Map.of("velocity", 100, "value", 100));
+
+        engine.apply("cc-1", System.nanoTime(), chain, payload, null);
+
+        assertEquals(62, payload.get("velocity"));
+        assertEquals(100, payload.get("value"));
+    }
+
+    @Test
+    public void testCurveTablesAreSharedAndComposed() {
+        assertSame(CurveTables.curve("sine", 0.25), CurveTables.curve("sine", 0.25));
+        byte[] limited = CurveTables.compose(CurveTables.limit(10, 90), CurveTables.curve("exp", 0.0));
+        assertEquals(10, CurveTables.apply(limited, 0));
+        assertEquals(90, CurveTables.apply(limited, 127));
+        assertEquals(90, CurveTables.apply(limited, 500));
+    }
+
+    @Test
+    public void testScaleFitSnapsAfterTranspose() {
+        List<Map<String, Object>> chain = List.of(
+                Map.of("op", "transpose", "semitones", 1),
+                Map.of("op", "scale_fit", "scale", "Dorian", "root", "D"));
+        Map<String, Object> payload = new HashMap<>(Map.of("note", "E4"));
+
+        engine.apply("fit-1", System.nanoTime(), chain, payload, null);
+
+        assertEquals(65, payload.get("note")); // E4 + 1 = F4, already in D dorian
+
+        CommandEnvelope env = new CommandEnvelope();
+        env.note = 66; // F#4 ties between F and G
+        env.slots = CommandEnvelope.SLOT_NOTE;
+        engine.compile(List.of(Map.of("op", "scale_fit", "scale", "major", "root", "Eb"))).run("fit-2", 0L, env, null);
+        assertEquals(65, env.note);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.compile(List.of(Map.of("op", "scale_fit", "scale", "no-such-scale"))));
+    }
+}
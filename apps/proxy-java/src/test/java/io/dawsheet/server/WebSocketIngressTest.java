@@ -0,0 +1,134 @@
+package io.dawsheet.server;
+
+import com.google.gson.Gson;
+import io.dawsheet.schema.AckStatus;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs the ingress on a loopback port and talks to it through a real WebSocket client. */
+public class WebSocketIngressTest {
+
+    private CommandRouter router;
+    private WebSocketIngress ingress;
+    private Client client;
+
+    /** Records each status frame with the kind it arrived as: a String for text, byte[] for binary. */
+    private static final class Client extends WebSocketClient {
+        final BlockingQueue<Object> frames = new LinkedBlockingQueue<>();
+
+        Client(int port) throws Exception {
+            super(new URI("ws://127.0.0.1:" + port));
+        }
+
+        @Override public void onOpen(ServerHandshake handshake) {}
+        @Override public void onMessage(String message) { frames.add(message); }
+        @Override public void onMessage(ByteBuffer bytes) {
+            byte[] b = new byte[bytes.remaining()];
+            bytes.get(b);
+            frames.add(b);
+        }
+        @Override public void onClose(int code, String reason, boolean remote) {}
+        @Override public void onError(Exception ex) {}
+
+        Object next() throws InterruptedException {
+            Object frame = frames.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame, "Expected a status frame");
+            return frame;
+        }
+    }
+
+    private void start(int maxInFlight) throws Exception {
+        router = new CommandRouter("commands.schema.json", StatusPublisher.noop());
+        CountDownLatch started = new CountDownLatch(1);
+        ingress = new WebSocketIngress(new InetSocketAddress("127.0.0.1", 0), router, "test-proxy", maxInFlight) {
+            @Override
+            public void onStart() {
+                super.onStart();
+                started.countDown();
+            }
+        };
+        ingress.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS), "Ingress did not start");
+        client = new Client(ingress.getPort());
+        assertTrue(client.connectBlocking(5, TimeUnit.SECONDS), "Client did not connect");
+    }
+
+    @AfterEach
+    public void stop() throws Exception {
+        if (client != null) client.closeBlocking();
+        if (ingress != null) ingress.stop(1000);
+        if (router != null) router.close();
+    }
+
+    private static String ccSet(String id, String at) {
+        return "{\"v\":1,\"id\":\"" + id + "\",\"origin\":\"" + id + "\",\"at\":\"" + at + "\",\"target\":\"t\","
+                + "\"type\":\"CC.SET\",\"payload\":{\"cc\":74,\"value\":64,\"channel\":1}}";
+    }
+
+    private static AckStatus status(Object frame) {
+        String json = frame instanceof byte[] ? new String((byte[]) frame, StandardCharsets.UTF_8) : (String) frame;
+        return new Gson().fromJson(json, AckStatus.class);
+    }
+
+    @Test
+    public void testStatusEchoesTheClientsFrameKind() throws Exception {
+        start(WebSocketIngress.DEFAULT_MAX_IN_FLIGHT);
+
+        client.send(ccSet("text-1", "now"));
+        Object text = client.next();
+        assertTrue(text instanceof String, "A text command gets a text status");
+        assertEquals("ACK", status(text).type);
+        assertEquals("text-1", status(text).origin);
+        assertEquals("test-proxy", status(text).proxy);
+
+        client.send(ccSet("binary-1", "now").getBytes(StandardCharsets.UTF_8));
+        Object binary = client.next();
+        assertTrue(binary instanceof byte[], "A binary command gets a binary status");
+        assertEquals("binary-1", status(binary).origin);
+        assertTrue(status(binary).ok);
+
+        client.send("{not json");
+        Object error = client.next();
+        assertTrue(error instanceof String);
+        assertEquals("decode_error", status(error).code);
+    }
+
+    @Test
+    public void testCommandsBeyondTheInFlightLimitAreNackedWithBackpressure() throws Exception {
+        start(1);
+
+        // Scheduled well ahead, so it holds the connection's only slot until its status is sent
+        client.send(ccSet("later", Instant.now().plusSeconds(30).toString()));
+        client.send(ccSet("now-1", "now"));
+        AckStatus rejected = status(client.next());
+        assertFalse(rejected.ok);
+        assertEquals("backpressure", rejected.code);
+        assertEquals("now-1", rejected.origin);
+        assertNull(client.frames.poll(100, TimeUnit.MILLISECONDS), "The scheduled command has not fired yet");
+
+        // Another connection has its own budget
+        Client other = new Client(ingress.getPort());
+        try {
+            assertTrue(other.connectBlocking(5, TimeUnit.SECONDS));
+            other.send(ccSet("other-1", "now"));
+            AckStatus accepted = status(other.next());
+            assertTrue(accepted.ok, "Expected ACK, got " + accepted.code);
+        } finally {
+            other.closeBlocking();
+        }
+    }
+}
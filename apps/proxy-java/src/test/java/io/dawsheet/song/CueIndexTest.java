@@ -0,0 +1,74 @@
+package io.dawsheet.song;
+
+import io.dawsheet.transport.TempoMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CueIndexTest {
+    private static final int BAR = 4 * TempoMap.TICKS_PER_BEAT;
+
+    // intro (bar 1, 2 bars), verse (bar 3, 4 bars, twice), chorus (bar 11, 4 bars); the marker sits inside the verse
+    private static SongTimeline song() {
+        return new SongCompiler().compile(Map.of("songId", "s",
+                "meta", Map.of("bpm", 120, "markers", List.of(Map.of("name", "Drop", "bar", 5))),
+                "sections", List.of(
+                        Map.of("sectionId", "intro", "sectionName", "Intro", "lengthBars", 2, "program", 5,
+                                "chords", List.of(Map.of("symbol", "C", "beats", 8))),
+                        Map.of("sectionId", "verse", "sectionName", "Verse", "lengthBars", 4, "cc", Map.of("74", 40, "1", 0),
+                                "chords", List.of(Map.of("symbol", "Am", "beats", 16))),
+                        Map.of("sectionId", "chorus", "sectionName", "Chorus", "lengthBars", 4, "program", 9, "cc", Map.of("74", 110),
+                                "chords", List.of(Map.of("symbol", "F", "beats", 16)))),
+                "arrangement", List.of(
+                        Map.of("arrangementIndex", 1, "sectionId", "intro", "startBar", 1),
+                        Map.of("arrangementIndex", 2, "sectionId", "verse", "startBar", 3, "repeat", 2, "sceneRef", "scene:1"),
+                        Map.of("arrangementIndex", 3, "sectionId", "chorus", "startBar", 11, "sceneRef", "2"))));
+    }
+
+    @Test
+    public void testResolvesNamesScenesAndBarPositions() {
+        CueIndex cues = song().cues();
+        assertEquals(0, cues.tick("intro"));
+        assertEquals(2 * BAR, cues.tick("VERSE"));
+        assertEquals(10 * BAR, cues.tick(" Chorus "));
+        assertEquals(4 * BAR, cues.tick("drop"));
+        assertEquals(2 * BAR, cues.scene(1));
+        assertEquals(10 * BAR, cues.scene(2));
+        assertEquals(-1, cues.scene(3));
+        assertEquals(6 * BAR + TempoMap.TICKS_PER_BEAT + 240, cues.tick("7:2:240"));
+        assertEquals(13 * BAR, cues.tick("14"));
+        assertEquals(BAR, cues.tick("2"), "a bar number is a position even when a scene ref matches it");
+        assertEquals(10 * BAR, cues.tick("scene:2"));
+        assertThrows(IllegalArgumentException.class, () -> cues.tick("bridge"));
+        assertThrows(IllegalArgumentException.class, () -> cues.tick("15"));
+        assertThrows(IllegalArgumentException.class, () -> cues.tick("1:2:3:4"));
+    }
+
+    @Test
+    public void testChaseStateIsTheLastValuesBeforeTheCue() {
+        SongTimeline song = song();
+        CueIndex cues = song.cues();
+        assertEquals(0, cues.chaseAt(0).length);
+        // Only the intro's program before the verse; the verse's own CCs play from the cursor
+        int[] verse = cues.chaseAt(cues.tick("verse"));
+        assertEquals(1, verse.length);
+        assertEquals(SongTimeline.PROGRAM_CHANGE, CueIndex.type(verse[0]));
+        assertEquals(5, CueIndex.data1(verse[0]));
+
+        // Mid-bar, after both verse passes: program 5, CC1 0, CC74 40, in channel/type order
+        int[] late = cues.chaseAt(9 * BAR + 100);
+        assertEquals(3, late.length);
+        assertEquals(SongTimeline.PROGRAM_CHANGE, CueIndex.type(late[0]));
+        assertEquals(1, CueIndex.data1(late[1]));
+        assertEquals(0, CueIndex.data2(late[1]));
+        assertEquals(74, CueIndex.data1(late[2]));
+        assertEquals(40, CueIndex.data2(late[2]));
+
+        int[] chorus = cues.chaseAt(cues.tick("chorus") + 1);
+        assertEquals(9, CueIndex.data1(chorus[0]));
+        assertEquals(110, CueIndex.data2(chorus[2]));
+    }
+}
@@ -0,0 +1,109 @@
+package io.dawsheet.song;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dawsheet.transport.TempoMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SongCompilerTest {
+    private static final int BAR = 4 * TempoMap.TICKS_PER_BEAT;
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> schemaExample() throws Exception {
+        try (InputStream is = SongCompilerTest.class.getClassLoader().getResourceAsStream("song.schema.json")) {
+            assertNotNull(is, "song.schema.json should be on the classpath");
+            Map<String, Object> schema = new ObjectMapper().readValue(is, Map.class);
+            return (Map<String, Object>) ((List<?>) schema.get("examples")).get(0);
+        }
+    }
+
+    @Test
+    public void testCompilesSchemaExampleIntoSortedTimeline() throws Exception {
+        SongTimeline song = new SongCompiler().compile(schemaExample());
+
+        assertEquals("example-song-001", song.songId());
+        assertEquals(100.0, song.tempoMap().bpm(), 1e-9);
+        // Verse: Dm7 and G7 (4 notes each); chorus: Cmaj7, played twice
+        assertEquals(32, song.size());
+        assertEquals(24 * BAR, song.endTick());
+        assertEquals(24, song.bars());
+        for (int i = 1; i < song.size(); i++) assertTrue(song.tick(i - 1) <= song.tick(i));
+
+        assertEquals(SongTimeline.NOTE_ON, song.type(0));
+        assertEquals(0, song.tick(0));
+        assertEquals(0, song.channel(0));
+        assertEquals(100, song.data2(0));
+        assertArrayEquals(new int[]{62, 65, 69, 72}, new int[]{song.data1(0), song.data1(1), song.data1(2), song.data1(3)});
+
+        // Dm7 is released before G7 is struck on the same tick
+        int bar2 = song.indexAtBar(2);
+        assertEquals(BAR, song.tick(bar2));
+        for (int i = bar2; i < bar2 + 4; i++) assertEquals(SongTimeline.NOTE_OFF, song.type(i));
+        for (int i = bar2 + 4; i < bar2 + 8; i++) assertEquals(SongTimeline.NOTE_ON, song.type(i));
+
+        // Chorus at bar 9, repeated at bar 17; bars without events point at the next one
+        assertEquals(16, song.indexAtBar(5));
+        assertEquals(16, song.indexAtBar(9));
+        assertEquals(8 * BAR, song.tick(16));
+        assertEquals(16, song.indexAtTick(8 * BAR));
+        assertEquals(20, song.indexAtTick(8 * BAR + 1));
+        assertEquals(24, song.indexAtBar(17));
+        assertEquals(song.size(), song.indexAtTick(song.endTick() + 1));
+        assertThrows(IllegalArgumentException.class, () -> song.indexAtBar(25));
+    }
+
+    @Test
+    public void testChordsAreCutAtSectionEndAndMetaSetsVoicing() throws Exception {
+        String json = "{\"v\":1,\"songId\":\"s\",\"meta\":{\"title\":\"t\",\"bpm\":120,\"key\":\"C\",\"timeSignature\":\"3/4\","
+                + "\"channel\":10,\"velocity\":80,\"octave\":3},"
+                + "\"sections\":[{\"sectionId\":\"a\",\"sectionName\":\"A\",\"lengthBars\":1,"
+                + "\"chords\":[{\"symbol\":\"N.C.\",\"beats\":1},{\"symbol\":\"C\",\"beats\":4},{\"symbol\":\"F\",\"beats\":1}]},"
+                + "{\"sectionId\":\"b\",\"sectionName\":\"B\",\"lengthBars\":1,\"chords\":[{\"symbol\":\"x\",\"beats\":1,\"notes\":[\"E4\",\"B4\"]}]}],"
+                + "\"arrangement\":[{\"arrangementIndex\":2,\"sectionId\":\"b\",\"startBar\":2},"
+                + "{\"arrangementIndex\":1,\"sectionId\":\"a\",\"startBar\":1}]}";
+        SongTimeline song = new SongCompiler().compile(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        int beat = TempoMap.TICKS_PER_BEAT;
+
+        // A: rest for a beat, then C (48, 52, 55) held to the bar line; F never starts
+        assertEquals(6 + 4, song.size());
+        assertEquals(beat, song.tick(0));
+        assertEquals(9, song.channel(0));
+        assertEquals(80, song.data2(0));
+        assertEquals(48, song.data1(0));
+        assertEquals(3 * beat, song.tick(3));
+        assertEquals(SongTimeline.NOTE_OFF, song.type(3));
+        // B's explicit notes replace its symbol
+        assertEquals(3 * beat, song.tick(6));
+        assertEquals(SongTimeline.NOTE_ON, song.type(6));
+        assertEquals(64, song.data1(6));
+        assertEquals(6 * beat, song.endTick());
+        assertEquals(2, song.bars());
+    }
+
+    @Test
+    public void testRejectsUnknownSectionsAndChords() {
+        SongCompiler compiler = new SongCompiler();
+        Map<String, Object> unknownSection = Map.of("songId", "s", "meta", Map.of("bpm", 120),
+                "sections", List.of(), "arrangement", List.of(Map.of("arrangementIndex", 1, "sectionId", "x", "startBar", 1)));
+        assertThrows(IllegalArgumentException.class, () -> compiler.compile(unknownSection));
+        Map<String, Object> badChord = Map.of("songId", "s", "meta", Map.of("bpm", 120),
+                "sections", List.of(Map.of("sectionId", "a", "lengthBars", 1, "chords", List.of(Map.of("symbol", "Hmaj7", "beats", 4)))),
+                "arrangement", List.of(Map.of("arrangementIndex", 1, "sectionId", "a", "startBar", 1)));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> compiler.compile(badChord));
+        assertTrue(e.getMessage().startsWith("Section a"), e.getMessage());
+        for (Object beats : new Object[]{0, -1, "4"}) {
+            Map<String, Object> badBeats = Map.of("songId", "s", "meta", Map.of("bpm", 120),
+                    "sections", List.of(Map.of("sectionId", "a", "lengthBars", 1, "chords", List.of(Map.of("symbol", "C", "beats", beats)))),
+                    "arrangement", List.of(Map.of("arrangementIndex", 1, "sectionId", "a", "startBar", 1)));
+            e = assertThrows(IllegalArgumentException.class, () -> compiler.compile(badBeats), "beats " + beats);
+            assertTrue(e.getMessage().startsWith("Section a"), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.dawsheet.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TempoMapTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void testTempoAndMeterChangesFromSongMeta() {
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("bpm", 120);
+        meta.put("timeSignature", "4/4");
+        meta.put("tempoChanges", List.of(
+                Map.of("bar", 3, "bpm", 60),
+                Map.of("bar", 5, "timeSignature", "6/8")));
+        TempoMap map = TempoMap.fromSongMeta(meta);
+
+        assertEquals(2000 * MS, map.positionToNanos(2, 1, 0));
+        assertEquals(4000 * MS, map.positionToNanos(3, 1, 0));
+        assertEquals(8000 * MS, map.positionToNanos(4, 1, 0));
+        assertEquals(12000 * MS, map.positionToNanos(5, 1, 0));
+        // 6/8 at 60 quarter-note BPM: an eighth-note beat is 500ms, a bar is 3s
+        assertEquals(12500 * MS, map.positionToNanos(5, 2, 0));
+        assertEquals(15000 * MS, map.positionToNanos(6, 1, 0));
+        assertEquals(6 * TempoMap.TICKS_PER_BEAT / 2, map.ticksPerBarAt(map.toTick(5, 1, 0)));
+    }
+
+    @Test
+    public void testNanosToTickRoundTrip() {
+        TempoMap map = new TempoMap(100, 4).withTempoAt(TempoMap.TICKS_PER_BEAT * 6L, 140);
+        for (long tick = 0; tick < TempoMap.TICKS_PER_BEAT * 20L; tick += 37) {
+            assertEquals(tick, map.nanosToTick(map.tickToNanos(tick)), 1e-3);
+        }
+    }
+
+    @Test
+    public void testClockTempoChangeKeepsEarlierPositions() {
+        TransportClock clock = new TransportClock(new TempoMap(120, 4));
+        long origin = clock.originNanos();
+        clock.setTempo(origin + 1000 * MS, 60);
+        assertEquals(500 * MS, clock.nanosAt(1, 2, 0) - origin);
+        // Two beats left in bar 1 at the new tempo
+        assertEquals(3000 * MS, clock.nanosAt(2, 1, 0) - origin);
+    }
+}